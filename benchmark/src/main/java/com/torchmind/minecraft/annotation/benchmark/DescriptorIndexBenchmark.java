@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.benchmark;
+
+import com.torchmind.minecraft.annotation.runtime.BinaryDescriptorReader;
+import com.torchmind.minecraft.annotation.runtime.DescriptorIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Compares the cost of reading the descriptors of a plugins directory by opening every jar (as done by Bukkit) against
+ * reading them through the central directory of the mapped jars and against validating a cached index.
+ *
+ * Each synthetic jar contains a couple hundred class entries besides its descriptors. Note that the operating system
+ * caches the jars after the first iteration, thus the gap between the index and the jar based variants will be
+ * considerably larger on network file systems.
+ *
+ * @author Johannes Donath
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 10)
+@Fork (1)
+public class DescriptorIndexBenchmark {
+        private static final int CLASSES_PER_JAR = 250;
+
+        @Param ({"200"})
+        public int jars;
+
+        private Path directory;
+        private Path indexFile;
+        private List<Path> files;
+
+        @Setup (Level.Trial)
+        public void setup () throws IOException {
+                Random random = new Random (42);
+                this.directory = Files.createTempDirectory ("plugins");
+                this.indexFile = this.directory.resolve (DescriptorIndex.FILE_NAME);
+                this.files = new ArrayList<> ();
+
+                for (int i = 0; i < this.jars; i++) {
+                        Path jar = this.directory.resolve ("plugin" + i + ".jar");
+
+                        try (JarOutputStream outputStream = new JarOutputStream (Files.newOutputStream (jar))) {
+                                for (int j = 0; j < CLASSES_PER_JAR; j++) {
+                                        byte[] content = new byte[512 + random.nextInt (4096)];
+                                        random.nextBytes (content);
+
+                                        outputStream.putNextEntry (new ZipEntry (SyntheticProject.PACKAGE.replace ('.', '/') + "/plugin" + i + "/Class" + j + ".class"));
+                                        outputStream.write (content);
+                                }
+
+                                write (outputStream, "plugin.yml", ("main: " + SyntheticProject.PACKAGE + ".Plugin" + i + "\nname: Plugin" + i + "\nversion: 1.0.0\n").getBytes (StandardCharsets.UTF_8));
+                                write (outputStream, BinaryDescriptorReader.FILE_NAME, new byte[64]);
+                        }
+
+                        this.files.add (jar);
+                }
+
+                DescriptorIndex.update (this.directory, this.indexFile, DescriptorIndex.DEFAULT_RESOURCES);
+        }
+
+        @TearDown (Level.Trial)
+        public void tearDown () throws IOException {
+                try (Stream<Path> stream = Files.walk (this.directory)) {
+                        stream.sorted (Comparator.reverseOrder ()).forEach ((p) -> p.toFile ().delete ());
+                }
+        }
+
+        @Benchmark
+        public Object jarFile () throws IOException {
+                List<byte[]> descriptors = new ArrayList<> ();
+
+                for (Path file : this.files) {
+                        try (JarFile jar = new JarFile (file.toFile ())) {
+                                for (String name : DescriptorIndex.DEFAULT_RESOURCES) {
+                                        ZipEntry entry = jar.getEntry (name);
+
+                                        try (InputStream inputStream = jar.getInputStream (entry)) {
+                                                descriptors.add (read (inputStream));
+                                        }
+                                }
+                        }
+                }
+
+                return descriptors;
+        }
+
+        @Benchmark
+        public Object centralDirectory () throws IOException {
+                List<Object> descriptors = new ArrayList<> ();
+
+                for (Path file : this.files) {
+                        descriptors.add (DescriptorIndex.readEntries (file, DescriptorIndex.DEFAULT_RESOURCES));
+                }
+
+                return descriptors;
+        }
+
+        @Benchmark
+        public Object index () throws IOException {
+                DescriptorIndex index = DescriptorIndex.update (this.directory, this.indexFile, DescriptorIndex.DEFAULT_RESOURCES);
+                if (index.getReadCount () != 0) { throw new IllegalStateException ("Index has been invalidated"); }
+
+                return index;
+        }
+
+        /**
+         * Writes a deflated entry.
+         *
+         * @param outputStream The jar.
+         * @param name The entry name.
+         * @param content The entry content.
+         * @throws IOException when writing fails.
+         */
+        private static void write (JarOutputStream outputStream, String name, byte[] content) throws IOException {
+                outputStream.putNextEntry (new ZipEntry (name));
+                outputStream.write (content);
+        }
+
+        /**
+         * Reads a stream until its end.
+         *
+         * @param inputStream The stream.
+         * @return The contents.
+         * @throws IOException when reading fails.
+         */
+        private static byte[] read (InputStream inputStream) throws IOException {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+                byte[] buffer = new byte[4096];
+                int length;
+
+                while ((length = inputStream.read (buffer)) != -1) { outputStream.write (buffer, 0, length); }
+                return outputStream.toByteArray ();
+        }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.benchmark;
+
+import com.torchmind.minecraft.annotation.processor.BinaryDescriptorEmitter;
+import com.torchmind.minecraft.annotation.processor.DescriptorEmitter;
+import com.torchmind.minecraft.annotation.processor.YamlDescriptorEmitter;
+import com.torchmind.minecraft.annotation.runtime.BinaryDescriptorReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of loading a plugin.yml via SnakeYAML (as done by Bukkit) against loading the equivalent binary
+ * descriptor.
+ *
+ * @author Johannes Donath
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MICROSECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 10)
+@Fork (1)
+public class DescriptorParseBenchmark {
+        @Param ({"10", "1000", "10000"})
+        public int declarations;
+
+        private byte[] yamlDescriptor;
+        private byte[] binaryDescriptor;
+
+        @Setup (Level.Trial)
+        public void setup () throws IOException {
+                ByteArrayOutputStream yamlDescriptor = new ByteArrayOutputStream ();
+
+                try (Writer writer = new OutputStreamWriter (yamlDescriptor, StandardCharsets.UTF_8)) {
+                        emit (new YamlDescriptorEmitter (writer), this.declarations);
+                }
+
+                ByteArrayOutputStream binaryDescriptor = new ByteArrayOutputStream ();
+                emit (new BinaryDescriptorEmitter (binaryDescriptor), this.declarations);
+
+                this.yamlDescriptor = yamlDescriptor.toByteArray ();
+                this.binaryDescriptor = binaryDescriptor.toByteArray ();
+
+                if (!new Yaml ().load (new ByteArrayInputStream (this.yamlDescriptor)).equals (BinaryDescriptorReader.read (this.binaryDescriptor))) {
+                        throw new IllegalStateException ("Binary descriptor does not match its YAML counterpart");
+                }
+        }
+
+        @Benchmark
+        public Object yaml () {
+                // Note: Bukkit creates a new Yaml instance for every descriptor it loads
+                return new Yaml ().load (new ByteArrayInputStream (this.yamlDescriptor));
+        }
+
+        @Benchmark
+        public Object binary () throws IOException {
+                return BinaryDescriptorReader.read (this.binaryDescriptor);
+        }
+
+        /**
+         * Emits a synthetic descriptor with the specified amount of commands and permissions.
+         *
+         * @param emitter The emitter.
+         * @param declarations The amount of commands and permissions.
+         * @throws IOException when emitting fails.
+         */
+        private static void emit (DescriptorEmitter emitter, int declarations) throws IOException {
+                emitter.value ("main", SyntheticProject.PACKAGE + ".SyntheticPlugin");
+                emitter.value ("name", "SyntheticPlugin");
+                emitter.value ("version", "1.0.0");
+                emitter.value ("depend", new String[] {"Vault", "WorldEdit"});
+
+                emitter.beginMap ("commands");
+                for (int i = 0; i < declarations; i++) {
+                        emitter.beginMap ("command" + i);
+                        emitter.value ("description", "Synthetic command #" + i);
+                        emitter.value ("aliases", new String[] {"alias" + i});
+                        emitter.value ("permission", "synthetic.command" + i);
+                        emitter.value ("usage", "/command" + i + " <argument>");
+                        emitter.endMap ();
+                }
+                emitter.endMap ();
+
+                emitter.beginMap ("permissions");
+                for (int i = 0; i < declarations; i++) {
+                        emitter.beginMap ("synthetic.command" + i);
+                        emitter.value ("description", "Grants access to /command" + i);
+                        emitter.value ("default", "op");
+
+                        if (i != 0) {
+                                emitter.beginMap ("children");
+                                emitter.value ("synthetic.command" + ((i - 1) / 2), true);
+                                emitter.endMap ();
+                        }
+
+                        emitter.endMap ();
+                }
+                emitter.endMap ();
+
+                emitter.finish ();
+        }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.benchmark;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps all compiler output in memory to prevent file system access from skewing benchmark results.
+ *
+ * @author Johannes Donath
+ */
+public class InMemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+        private final Map<String, ByteArrayOutputStream> outputs = new HashMap<> ();
+
+        public InMemoryFileManager (JavaFileManager fileManager) {
+                super (fileManager);
+        }
+
+        /**
+         * Retrieves a previously written output.
+         *
+         * @param location The output location.
+         * @param relativeName The relative resource name.
+         * @return The output or null if no such output has been written.
+         */
+        public byte[] getOutput (Location location, String relativeName) {
+                ByteArrayOutputStream outputStream = this.outputs.get (location.getName () + "/" + relativeName);
+                return (outputStream == null ? null : outputStream.toByteArray ());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public FileObject getFileForInput (Location location, String packageName, String relativeName) throws IOException {
+                String key = location.getName () + "/" + resourceName (packageName, relativeName);
+                ByteArrayOutputStream outputStream = this.outputs.get (key);
+
+                if (outputStream != null) {
+                        return new Output (key, JavaFileObject.Kind.OTHER, this.outputs);
+                }
+
+                if (location == StandardLocation.CLASS_OUTPUT || location == StandardLocation.SOURCE_OUTPUT) {
+                        throw new FileNotFoundException (key);
+                }
+
+                return super.getFileForInput (location, packageName, relativeName);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public FileObject getFileForOutput (Location location, String packageName, String relativeName, FileObject sibling) {
+                return new Output (location.getName () + "/" + resourceName (packageName, relativeName), JavaFileObject.Kind.OTHER, this.outputs);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public JavaFileObject getJavaFileForOutput (Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new Output (location.getName () + "/" + className.replace ('.', '/') + kind.extension, kind, this.outputs);
+        }
+
+        /**
+         * Builds a relative resource name.
+         *
+         * @param packageName The package name.
+         * @param relativeName The relative name.
+         * @return The resource name.
+         */
+        private static String resourceName (String packageName, String relativeName) {
+                return (packageName.isEmpty () ? relativeName : packageName.replace ('.', '/') + "/" + relativeName);
+        }
+
+        /**
+         * Represents an in-memory output file.
+         */
+        private static class Output extends SimpleJavaFileObject {
+                private final String key;
+                private final Map<String, ByteArrayOutputStream> outputs;
+
+                Output (String key, Kind kind, Map<String, ByteArrayOutputStream> outputs) {
+                        super (URI.create ("memory:///" + key), kind);
+                        this.key = key;
+                        this.outputs = outputs;
+                }
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public CharSequence getCharContent (boolean ignoreEncodingErrors) {
+                        ByteArrayOutputStream outputStream = this.outputs.get (this.key);
+                        return (outputStream == null ? "" : new String (outputStream.toByteArray (), StandardCharsets.UTF_8));
+                }
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public InputStream openInputStream () throws IOException {
+                        ByteArrayOutputStream outputStream = this.outputs.get (this.key);
+                        if (outputStream == null) { throw new FileNotFoundException (this.key); }
+
+                        return new ByteArrayInputStream (outputStream.toByteArray ());
+                }
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public OutputStream openOutputStream () {
+                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+                        this.outputs.put (this.key, outputStream);
+                        return outputStream;
+                }
+        }
+}
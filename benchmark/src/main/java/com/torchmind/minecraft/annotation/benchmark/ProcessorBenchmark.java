@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.benchmark;
+
+import com.torchmind.minecraft.annotation.processor.PluginAnnotationProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.annotation.processing.Processor;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of running the plugin annotation processor against synthetic projects.
+ *
+ * Both benchmarks run javac with {@code -proc:only} against the same sources. The baseline does so without any
+ * processors which allows subtracting the cost of parsing and entering the sources from the processor benchmark.
+ *
+ * @author Johannes Donath
+ */
+@State (Scope.Benchmark)
+@BenchmarkMode (Mode.AverageTime)
+@OutputTimeUnit (TimeUnit.MILLISECONDS)
+@Warmup (iterations = 5)
+@Measurement (iterations = 10)
+@Fork (1)
+public class ProcessorBenchmark {
+        @Param ({"10", "1000", "10000"})
+        public int declarations;
+
+        private JavaCompiler compiler;
+        private StandardJavaFileManager fileManager;
+        private List<JavaFileObject> sources;
+        private List<String> options;
+
+        @Setup (Level.Trial)
+        public void setup () {
+                this.compiler = ToolProvider.getSystemJavaCompiler ();
+                if (this.compiler == null) { throw new IllegalStateException ("No system compiler available (are you running on a JRE?)"); }
+
+                this.fileManager = this.compiler.getStandardFileManager (null, null, StandardCharsets.UTF_8);
+                this.sources = SyntheticProject.generate (this.declarations);
+                this.options = Arrays.asList ("-proc:only", "-Xlint:-options", "-classpath", System.getProperty ("java.class.path"));
+        }
+
+        @TearDown (Level.Trial)
+        public void tearDown () throws IOException {
+                this.fileManager.close ();
+        }
+
+        @Benchmark
+        public Object baseline () {
+                return this.compile (Collections.emptyList ());
+        }
+
+        @Benchmark
+        public Object process () {
+                return this.compile (Collections.singletonList (new PluginAnnotationProcessor ()));
+        }
+
+        /**
+         * Compiles the synthetic project using the specified set of processors.
+         *
+         * @param processors The processors.
+         * @return The generated plugin descriptor (if any).
+         */
+        private byte[] compile (List<? extends Processor> processors) {
+                InMemoryFileManager fileManager = new InMemoryFileManager (this.fileManager);
+                DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<> ();
+
+                JavaCompiler.CompilationTask task = this.compiler.getTask (null, fileManager, diagnostics, this.options, null, this.sources);
+                task.setProcessors (processors);
+
+                if (!task.call ()) {
+                        throw new IllegalStateException ("Compilation of synthetic project failed: " + diagnostics.getDiagnostics ());
+                }
+
+                return fileManager.getOutput (StandardLocation.CLASS_OUTPUT, "plugin.yml");
+        }
+}
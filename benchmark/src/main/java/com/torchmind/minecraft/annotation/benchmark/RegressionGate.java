@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Runs all benchmarks and compares their results against a stored baseline.
+ *
+ * The baseline is stored within a properties file (see the benchmark.thresholds property) which contains the average
+ * time per operation (in the benchmark's time unit) and the normalized allocation rate (in bytes per operation) for
+ * each benchmark and parameter combination. The gate fails if any of these values exceeds its baseline by more than
+ * the configured tolerance. Benchmarks without a baseline fail the gate as well since their results could otherwise
+ * never be compared. The baseline is only written when benchmark.update is set to true (in which case all results are
+ * recorded and nothing is compared).
+ *
+ * @author Johannes Donath
+ */
+public class RegressionGate {
+        private static final String[] ALLOCATION_RESULTS = {"gc.alloc.rate.norm", "\u00b7gc.alloc.rate.norm"};
+
+        private RegressionGate () {
+        }
+
+        public static void main (String[] args) throws IOException, RunnerException {
+                Path thresholdsPath = Paths.get (System.getProperty ("benchmark.thresholds", "thresholds.properties"));
+                double tolerance = Double.parseDouble (System.getProperty ("benchmark.tolerance", "0.15"));
+                boolean update = Boolean.getBoolean ("benchmark.update");
+
+                Properties thresholds = new Properties ();
+                if (Files.exists (thresholdsPath)) {
+                        try (InputStream inputStream = Files.newInputStream (thresholdsPath)) {
+                                thresholds.load (inputStream);
+                        }
+                }
+
+                Options options = new OptionsBuilder ()
+                                          .include (System.getProperty ("benchmark.include", RegressionGate.class.getPackage ().getName () + ".*"))
+                                          .addProfiler (GCProfiler.class)
+                                          .build ();
+                Collection<RunResult> results = new Runner (options).run ();
+
+                List<String> regressions = new ArrayList<> ();
+                boolean modified = false;
+
+                for (RunResult result : results) {
+                        String name = result.getParams ().getBenchmark ().substring (RegressionGate.class.getPackage ().getName ().length () + 1);
+
+                        // make sure parameter combinations are stored in a stable order
+                        for (String key : new TreeSet<> (result.getParams ().getParamsKeys ())) {
+                                name += "." + key + "=" + result.getParams ().getParam (key);
+                        }
+
+                        modified |= check (thresholds, name + ".time", result.getPrimaryResult ().getScore (), tolerance, update, regressions);
+
+                        for (String allocationResult : ALLOCATION_RESULTS) {
+                                Result allocation = result.getSecondaryResults ().get (allocationResult);
+                                if (allocation == null) { continue; }
+
+                                modified |= check (thresholds, name + ".alloc", allocation.getScore (), tolerance, update, regressions);
+                                break;
+                        }
+                }
+
+                if (update && modified) {
+                        try (OutputStream outputStream = Files.newOutputStream (thresholdsPath)) {
+                                thresholds.store (outputStream, "Benchmark baseline (time in benchmark time unit, allocations in bytes per operation)");
+                        }
+                }
+
+                if (!regressions.isEmpty ()) {
+                        regressions.forEach (System.err::println);
+                        System.err.println ("Run \"mvn verify -Dbenchmark.update=true\" on the reference machine to record a new baseline if these changes are intentional.");
+                        System.exit (1);
+                }
+        }
+
+        /**
+         * Compares a single result against its baseline.
+         *
+         * @param thresholds The baseline.
+         * @param key The result key.
+         * @param score The measured score.
+         * @param tolerance The allowed relative deviation.
+         * @param update Indicates whether the baseline shall be replaced.
+         * @param regressions The list of detected regressions (and results without a baseline).
+         * @return True if the baseline has been modified.
+         */
+        private static boolean check (Properties thresholds, String key, double score, double tolerance, boolean update, List<String> regressions) {
+                String baseline = thresholds.getProperty (key);
+
+                if (update) {
+                        thresholds.setProperty (key, Double.toString (score));
+                        return true;
+                }
+
+                // silently adopting the current result would let every fresh checkout pass regardless of its performance
+                if (baseline == null) {
+                        regressions.add (String.format ("Missing baseline for %s (measured %.3f)", key, score));
+                        return false;
+                }
+
+                double limit = Double.parseDouble (baseline) * (1.0 + tolerance);
+                System.out.printf ("%s: %.3f (baseline %s, limit %.3f)%n", key, score, baseline, limit);
+
+                if (score > limit) {
+                        regressions.add (String.format ("Regression in %s: %.3f exceeds %.3f (baseline %s)", key, score, limit, baseline));
+                }
+
+                return false;
+        }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.benchmark;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic plugin sources with a configurable amount of declarations.
+ *
+ * @author Johannes Donath
+ */
+public class SyntheticProject {
+        public static final String PACKAGE = "com.example.synthetic";
+
+        private SyntheticProject () {
+        }
+
+        /**
+         * Generates a synthetic plugin.
+         *
+         * The resulting project contains one plugin class declaring the specified amount of dependencies as well as the
+         * specified amount of command executors which each declare a single command and permission. Permissions form a
+         * binary tree in order to exercise the permission hierarchy without creating unrealistically deep chains.
+         *
+         * @param declarations The amount of declarations per annotation type.
+         * @return The source files.
+         */
+        public static List<JavaFileObject> generate (int declarations) {
+                List<JavaFileObject> sources = new ArrayList<> (declarations + 1);
+                StringBuilder plugin = new StringBuilder ();
+
+                plugin.append ("package ").append (PACKAGE).append (";\n\n");
+                plugin.append ("@com.torchmind.minecraft.annotation.Plugin (name = \"Synthetic\", version = \"1.0.0\")\n");
+
+                for (int i = 0; i < declarations; i++) {
+                        plugin.append ("@com.torchmind.minecraft.annotation.dependency.Dependency (\"Dependency").append (i).append ("\")\n");
+                }
+
+                plugin.append ("public class SyntheticPlugin extends org.bukkit.plugin.java.JavaPlugin {\n}\n");
+                sources.add (new Source ("SyntheticPlugin", plugin.toString ()));
+
+                for (int i = 0; i < declarations; i++) {
+                        StringBuilder executor = new StringBuilder ();
+
+                        executor.append ("package ").append (PACKAGE).append (";\n\n");
+                        executor.append ("@com.torchmind.minecraft.annotation.command.Command (name = \"command").append (i).append ("\", aliases = \"alias").append (i).append ("\", permission = \"synthetic.").append (i).append ("\", usage = \"/<command>\")\n");
+                        executor.append ("@com.torchmind.minecraft.annotation.permission.Permission (name = \"synthetic.").append (i).append ("\", description = \"Synthetic permission ").append (i).append ("\"");
+
+                        int left = (i * 2) + 1;
+                        if (left < declarations) {
+                                executor.append (", children = { @com.torchmind.minecraft.annotation.permission.ChildPermission (\"synthetic.").append (left).append ("\")");
+
+                                if (left + 1 < declarations) {
+                                        executor.append (", @com.torchmind.minecraft.annotation.permission.ChildPermission (value = \"synthetic.").append (left + 1).append ("\", inherit = false)");
+                                }
+
+                                executor.append (" }");
+                        }
+
+                        executor.append (")\n");
+                        executor.append ("public class Executor").append (i).append (" implements org.bukkit.command.CommandExecutor {\n");
+                        executor.append ("        @Override\n");
+                        executor.append ("        public boolean onCommand (org.bukkit.command.CommandSender sender, org.bukkit.command.Command command, String label, String[] args) {\n");
+                        executor.append ("                return true;\n");
+                        executor.append ("        }\n");
+                        executor.append ("}\n");
+
+                        sources.add (new Source ("Executor" + i, executor.toString ()));
+                }
+
+                return sources;
+        }
+
+        /**
+         * Represents an in-memory source file.
+         */
+        private static class Source extends SimpleJavaFileObject {
+                private final String content;
+
+                Source (String simpleName, String content) {
+                        super (URI.create ("string:///" + PACKAGE.replace ('.', '/') + "/" + simpleName + Kind.SOURCE.extension), Kind.SOURCE);
+                        this.content = content;
+                }
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public CharSequence getCharContent (boolean ignoreEncodingErrors) {
+                        return this.content;
+                }
+        }
+}
@@ -27,7 +27,7 @@ import java.lang.annotation.*;
  */
 @Documented
 @Target (ElementType.TYPE)
-@Retention (RetentionPolicy.SOURCE)
+@Retention (RetentionPolicy.CLASS)
 public @interface Plugin {
         String MANIFEST_VALUE = "###MANIFEST###";
         String[] author () default { };
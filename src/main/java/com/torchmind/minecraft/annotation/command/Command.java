@@ -21,12 +21,20 @@ import java.lang.annotation.*;
 /**
  * Defines a plugin command.
  *
+ * When placed on a method, the generated command dispatcher parses the command arguments into the method parameters.
+ * The first parameter receives the command sender (either {@link org.bukkit.command.CommandSender} or
+ * {@link org.bukkit.entity.Player} for commands which may only be used by players) while the remaining parameters may
+ * be of type {@link String}, {@code int}, {@code long}, {@code float}, {@code double}, {@code boolean},
+ * {@link org.bukkit.entity.Player}, {@link org.bukkit.World} or any enum. The last parameter may be a varargs parameter
+ * of any of these types. Methods may either return {@code void} or {@code boolean} (where false causes the usage to be
+ * displayed).
+ *
  * @author Johannes Donath
  */
 @Documented
-@Target (ElementType.TYPE)
+@Target ({ElementType.TYPE, ElementType.METHOD})
 @Repeatable (Commands.class)
-@Retention (RetentionPolicy.SOURCE)
+@Retention (RetentionPolicy.CLASS)
 public @interface Command {
         String[] aliases () default { };
         String description () default "";
@@ -34,4 +42,21 @@ public @interface Command {
         String permission () default "";
         String permissionMessage () default "";
         String usage () default "";
+
+        /**
+         * Selects the thread on which the command is executed when dispatched by the generated command dispatcher.
+         * Commands which are not executed synchronously may not access most of the Bukkit API.
+         */
+        ExecutionMode executionMode () default ExecutionMode.SYNC;
+
+        /**
+         * Limits the amount of asynchronous executions of this command which a single sender may have in flight.
+         */
+        int maxInFlight () default 1;
+
+        /**
+         * Specifies the amount of milliseconds a player has to wait between two invocations of this command (zero
+         * disables the cooldown). Cooldowns are enforced by the generated command dispatcher.
+         */
+        long cooldown () default 0;
 }
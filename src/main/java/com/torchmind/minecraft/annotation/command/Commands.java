@@ -24,8 +24,8 @@ import java.lang.annotation.*;
  * @author Johannes Donath
  */
 @Documented
-@Target (ElementType.TYPE)
-@Retention (RetentionPolicy.SOURCE)
+@Target ({ElementType.TYPE, ElementType.METHOD})
+@Retention (RetentionPolicy.CLASS)
 public @interface Commands {
         Command[] value ();
 }
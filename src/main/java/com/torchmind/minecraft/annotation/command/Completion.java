@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.command;
+
+import java.lang.annotation.*;
+
+/**
+ * Defines a fixed set of tab completion candidates for a command argument.
+ *
+ * Candidates apply to the argument following the specified path (a list of preceding arguments which is matched
+ * case-insensitively) and thus allow declaring completions for sub commands as well.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.TYPE)
+@Repeatable (Completions.class)
+@Retention (RetentionPolicy.CLASS)
+public @interface Completion {
+        String command ();
+        String[] path () default { };
+        String[] value ();
+}
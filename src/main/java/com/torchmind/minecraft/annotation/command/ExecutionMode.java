@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.command;
+
+/**
+ * Defines the thread on which a command is executed.
+ *
+ * @author Johannes Donath
+ */
+public enum ExecutionMode {
+
+        /**
+         * Executes the command on the main server thread (Bukkit's default behavior).
+         */
+        SYNC,
+
+        /**
+         * Executes the command on a bounded pool of background threads.
+         */
+        ASYNC,
+
+        /**
+         * Executes the command on a virtual thread (falls back to {@link #ASYNC} on Java versions which do not provide
+         * virtual threads).
+         */
+        VIRTUAL_THREAD
+}
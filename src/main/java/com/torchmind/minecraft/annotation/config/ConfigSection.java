@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.config;
+
+import java.lang.annotation.*;
+
+/**
+ * Binds an interface to a section of the plugin configuration.
+ *
+ * An immutable snapshot implementation of the interface (named {@code <Interface>Snapshot}) is generated next to it
+ * which reads all values once and publishes them via {@code <Interface>Snapshot.reload (plugin)}. Each abstract method
+ * of the interface is bound to a configuration value (see {@link ConfigValue}) or, if it returns another interface,
+ * to a nested section. The defaults of all sections are written to the {@code config.yml} of the plugin.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.TYPE)
+@Retention (RetentionPolicy.CLASS)
+public @interface ConfigSection {
+        /**
+         * Specifies the path of the section within the configuration (or an empty string for the configuration root).
+         */
+        String value () default "";
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.config;
+
+import java.lang.annotation.*;
+
+/**
+ * Customizes the binding of a configuration value.
+ *
+ * Values may be of type {@code String}, {@code int}, {@code long}, {@code float}, {@code double}, {@code boolean} or
+ * {@code List<String>}. Methods which are not annotated are bound to the path derived from their name (for instance
+ * {@code spawnRadius} is bound to {@code spawn-radius}) and default to the zero value of their type.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.METHOD)
+@Retention (RetentionPolicy.CLASS)
+public @interface ConfigValue {
+        /**
+         * Specifies the path of the value relative to its section (or an empty string to derive it from the method name).
+         */
+        String path () default "";
+
+        /**
+         * Specifies the default value (or values in case of lists).
+         */
+        String[] defaultValue () default { };
+}
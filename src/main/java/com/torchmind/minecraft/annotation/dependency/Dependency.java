@@ -26,7 +26,7 @@ import java.lang.annotation.*;
 @Documented
 @Target (ElementType.TYPE)
 @Repeatable (Dependencies.class)
-@Retention (RetentionPolicy.SOURCE)
+@Retention (RetentionPolicy.CLASS)
 public @interface Dependency {
         String value ();
 }
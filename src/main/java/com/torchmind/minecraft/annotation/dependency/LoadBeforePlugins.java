@@ -25,7 +25,7 @@ import java.lang.annotation.*;
  */
 @Documented
 @Target (ElementType.TYPE)
-@Retention (RetentionPolicy.SOURCE)
+@Retention (RetentionPolicy.CLASS)
 public @interface LoadBeforePlugins {
         LoadBefore[] value ();
 }
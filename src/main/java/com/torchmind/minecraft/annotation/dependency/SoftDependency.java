@@ -25,7 +25,7 @@ import java.lang.annotation.*;
  */
 @Documented
 @Target (ElementType.TYPE)
-@Retention (RetentionPolicy.SOURCE)
+@Retention (RetentionPolicy.CLASS)
 @Repeatable (SoftDependencies.class)
 public @interface SoftDependency {
         String value ();
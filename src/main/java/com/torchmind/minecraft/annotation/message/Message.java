@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.message;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares a chat message template which is compiled into the generated messages class of the plugin.
+ *
+ * Templates may reference their arguments via {@code {0}}, {@code {1}} and so on and use {@code &} as an alternate
+ * color code character (for instance {@code &cError: {0}}). Color codes are translated at compile time and are thus
+ * never applied to the contents of arguments. Each message is exposed as a method named after its key in camel case
+ * ({@code player.not-found} becomes {@code playerNotFound}).
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.TYPE)
+@Repeatable (Messages.class)
+@Retention (RetentionPolicy.CLASS)
+public @interface Message {
+        String key ();
+        String template ();
+}
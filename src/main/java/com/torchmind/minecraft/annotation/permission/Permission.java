@@ -28,7 +28,7 @@ import java.lang.annotation.*;
 @Documented
 @Target (ElementType.TYPE)
 @Repeatable (Permissions.class)
-@Retention (RetentionPolicy.SOURCE)
+@Retention (RetentionPolicy.CLASS)
 public @interface Permission {
         ChildPermission[] children () default { };
         PermissionDefault defaultValue () default PermissionDefault.OP;
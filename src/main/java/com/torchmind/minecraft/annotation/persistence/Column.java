@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.persistence;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a field of an entity as persistent column.
+ *
+ * Columns may be of any primitive type (or its wrapper), {@code String}, {@code UUID} or an enum (which is stored by
+ * name). Wrapper and reference types are nullable while primitive columns are declared {@code NOT NULL}. Columns which
+ * do not specify a name are bound to the name derived from their field (for instance {@code lastSeen} is bound to
+ * {@code last_seen}). Fields which are not annotated are not persisted at all.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.FIELD)
+@Retention (RetentionPolicy.CLASS)
+public @interface Column {
+        /**
+         * Specifies the column name (or an empty string to derive it from the field name).
+         */
+        String name () default "";
+
+        /**
+         * Specifies the maximum length of string and enum columns.
+         */
+        int length () default 255;
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.persistence;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks a class as persistent entity for which a reflection free row mapper is generated.
+ *
+ * A mapper (named {@code <Entity>Mapper}) is generated next to the entity which binds all fields annotated with
+ * {@link Column} or {@link Id} to prepared statements and reads them back from result sets. Entities need to provide a
+ * default constructor and their persistent fields may neither be private, static nor final.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.TYPE)
+@Retention (RetentionPolicy.CLASS)
+public @interface Entity {
+        /**
+         * Specifies the table name (or an empty string to derive it from the class name).
+         */
+        String table () default "";
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.persistence;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks the field of an entity which holds its primary key.
+ *
+ * Each entity needs to declare exactly one identifier which may additionally be annotated with {@link Column} in order
+ * to customize its column.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.FIELD)
+@Retention (RetentionPolicy.CLASS)
+public @interface Id {
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Represents the types of command method parameters which the generated command dispatcher is capable of parsing.
+ *
+ * @author Johannes Donath
+ */
+public enum ArgumentType {
+        STRING,
+        INT,
+        LONG,
+        FLOAT,
+        DOUBLE,
+        BOOLEAN,
+        PLAYER,
+        WORLD,
+        ENUM;
+
+        /**
+         * Resolves the argument type of a parameter type.
+         *
+         * @param type The parameter type.
+         * @param processingEnv The processing environment.
+         * @return The argument type or null if the type is not supported.
+         */
+        public static ArgumentType of (TypeMirror type, ProcessingEnvironment processingEnv) {
+                switch (type.getKind ()) {
+                        case INT: return INT;
+                        case LONG: return LONG;
+                        case FLOAT: return FLOAT;
+                        case DOUBLE: return DOUBLE;
+                        case BOOLEAN: return BOOLEAN;
+                        case DECLARED: break;
+                        default: return null;
+                }
+
+                if (((DeclaredType) type).asElement ().getKind () == ElementKind.ENUM) { return ENUM; }
+
+                switch (processingEnv.getTypeUtils ().erasure (type).toString ()) {
+                        case "java.lang.String": return STRING;
+                        case "org.bukkit.entity.Player": return PLAYER;
+                        case "org.bukkit.World": return WORLD;
+                        default: return null;
+                }
+        }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.runtime.BinaryDescriptorReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes plugin descriptors in the compact binary format understood by {@link BinaryDescriptorReader}.
+ *
+ * Entries are buffered until {@link #finish()} is called as the string table (which is assigned while entries are
+ * passed to the emitter) needs to precede them.
+ *
+ * @author Johannes Donath
+ */
+public class BinaryDescriptorEmitter implements DescriptorEmitter {
+        private final OutputStream outputStream;
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream ();
+        private final Map<String, Integer> stringIndices = new HashMap<> ();
+        private final List<String> strings = new ArrayList<> ();
+
+        public BinaryDescriptorEmitter (OutputStream outputStream) {
+                this.outputStream = outputStream;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void beginMap (String key) throws IOException {
+                this.entries.write (BinaryDescriptorReader.TAG_MAP);
+                this.writeString (key);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void endMap () throws IOException {
+                this.entries.write (BinaryDescriptorReader.TAG_END);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void value (String key, String value) throws IOException {
+                this.entries.write (BinaryDescriptorReader.TAG_STRING);
+                this.writeString (key);
+                this.writeString (value);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void value (String key, boolean value) throws IOException {
+                this.entries.write (BinaryDescriptorReader.TAG_BOOLEAN);
+                this.writeString (key);
+                this.entries.write ((value ? 1 : 0));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void value (String key, String[] values) throws IOException {
+                this.entries.write (BinaryDescriptorReader.TAG_LIST);
+                this.writeString (key);
+                writeVarInt (this.entries, values.length);
+
+                for (String value : values) { this.writeString (value); }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void finish () throws IOException {
+                DataOutputStream output = new DataOutputStream (this.outputStream);
+
+                output.writeInt (BinaryDescriptorReader.MAGIC);
+                output.writeByte (BinaryDescriptorReader.VERSION);
+
+                writeVarInt (output, this.strings.size ());
+                for (String string : this.strings) { output.writeUTF (string); }
+
+                this.entries.writeTo (output);
+                output.writeByte (BinaryDescriptorReader.TAG_END);
+                output.flush ();
+        }
+
+        /**
+         * Writes a reference to a string (adding it to the string table if necessary).
+         *
+         * @param value The string.
+         * @throws IOException when writing fails.
+         */
+        private void writeString (String value) throws IOException {
+                Integer index = this.stringIndices.get (value);
+
+                if (index == null) {
+                        index = this.strings.size ();
+                        this.strings.add (value);
+                        this.stringIndices.put (value, index);
+                }
+
+                writeVarInt (this.entries, index);
+        }
+
+        /**
+         * Writes an unsigned variable length integer.
+         *
+         * @param outputStream The stream to write to.
+         * @param value The value.
+         * @throws IOException when writing fails.
+         */
+        private static void writeVarInt (OutputStream outputStream, int value) throws IOException {
+                while ((value & ~0x7F) != 0) {
+                        outputStream.write ((value & 0x7F) | 0x80);
+                        value >>>= 7;
+                }
+
+                outputStream.write (value);
+        }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.scheduler.TickBudgeted;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates factories which turn tick budgeted job methods into {@link com.torchmind.minecraft.annotation.runtime.BudgetedJob}s.
+ *
+ * Each factory is named after its job method (suffixed with a number if several methods share the same name) and
+ * passes items to the method directly (without any reflection). Instance methods of types other than the plugin are
+ * invoked on the instance passed to the factory.
+ *
+ * @author Johannes Donath
+ */
+public class BudgetedJobGenerator {
+        public static final String SUFFIX = "Jobs";
+        private final ProcessingEnvironment processingEnv;
+
+        public BudgetedJobGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Generates the job factories for the specified plugin.
+         *
+         * @param pluginPackage The plugin package.
+         * @param pluginType The qualified name of the plugin type.
+         * @param pluginSimpleName The simple name of the plugin type.
+         * @param methods The job methods.
+         * @param originatingElements The elements which declared the methods.
+         * @throws IOException when writing the source file fails.
+         */
+        public void generate (String pluginPackage, String pluginType, String pluginSimpleName, List<ExecutableElement> methods, Element[] originatingElements) throws IOException {
+                String className = pluginSimpleName + SUFFIX;
+                String qualifiedName = (pluginPackage.isEmpty () ? className : pluginPackage + "." + className);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, originatingElements).openWriter ())) {
+                        if (!pluginPackage.isEmpty ()) {
+                                writer.line ("package %s;", pluginPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Creates tick budgeted jobs for all job methods declared by {@link %s}.", pluginType);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s", className);
+                        writer.open ("private %s ()", className);
+                        writer.end ();
+
+                        Set<String> factoryNames = new HashSet<> ();
+
+                        for (ExecutableElement method : methods) {
+                                String ownerType = this.processingEnv.getTypeUtils ().erasure (method.getEnclosingElement ().asType ()).toString ();
+                                String itemType = this.getItemType (method);
+                                String jobType = "com.torchmind.minecraft.annotation.runtime.BudgetedJob<" + itemType + ">";
+                                String target;
+                                String owner = null;
+
+                                if (method.getModifiers ().contains (Modifier.STATIC)) {
+                                        target = ownerType;
+                                } else if (ownerType.equals (pluginType)) {
+                                        target = "plugin";
+                                } else {
+                                        String simpleName = method.getEnclosingElement ().getSimpleName ().toString ();
+                                        owner = Character.toLowerCase (simpleName.charAt (0)) + simpleName.substring (1);
+                                        if (owner.equals ("plugin") || owner.equals ("items")) { owner += "Instance"; }
+
+                                        target = owner;
+                                }
+
+                                String ownerParameter = (owner != null ? ", " + ownerType + " " + owner : "");
+                                String ownerArgument = (owner != null ? ", " + owner : "");
+
+                                String factoryName = method.getSimpleName ().toString ();
+                                for (int i = 1; !factoryNames.add (factoryName); i++) { factoryName = method.getSimpleName ().toString () + i; }
+
+                                String invocation = target + "." + method.getSimpleName () + " (item)";
+                                String name = SourceWriter.literal (SchedulerGenerator.getTaskName (method));
+                                long budget = method.getAnnotation (TickBudgeted.class).maxMicrosPerTick ();
+
+                                writer.line ();
+                                writer.line ("/**");
+                                writer.line (" * Creates a job which passes all items to {@link %s#%s(%s)}.", ownerType, method.getSimpleName (), this.processingEnv.getTypeUtils ().erasure (method.getParameters ().get (0).asType ()));
+                                writer.line (" *");
+                                writer.line (" * @param plugin The plugin.");
+                                if (owner != null) { writer.line (" * @param %s The instance to invoke the job method on.", owner); }
+                                writer.line (" * @param items The items.");
+                                writer.line (" * @return The job (which still needs to be started).");
+                                writer.line (" */");
+                                writer.open ("public static %s %s (%s plugin%s, java.lang.Iterable<? extends %s> items)", jobType, factoryName, pluginType, ownerParameter, itemType);
+                                writer.line ("return %s (plugin%s, items.spliterator ());", factoryName, ownerArgument);
+                                writer.end ();
+                                writer.line ();
+
+                                writer.line ("/**");
+                                writer.line (" * Creates a job which passes all items to {@link %s#%s(%s)}.", ownerType, method.getSimpleName (), this.processingEnv.getTypeUtils ().erasure (method.getParameters ().get (0).asType ()));
+                                writer.line (" *");
+                                writer.line (" * @param plugin The plugin.");
+                                if (owner != null) { writer.line (" * @param %s The instance to invoke the job method on.", owner); }
+                                writer.line (" * @param items The items.");
+                                writer.line (" * @return The job (which still needs to be started).");
+                                writer.line (" */");
+                                writer.open ("public static %s %s (%s plugin%s, java.util.Spliterator<? extends %s> items)", jobType, factoryName, pluginType, ownerParameter, itemType);
+                                if (owner != null) { writer.line ("java.util.Objects.requireNonNull (%s, %s);", owner, SourceWriter.literal (owner)); }
+
+                                if (method.getReturnType ().getKind () == TypeKind.BOOLEAN) {
+                                        writer.line ("return new com.torchmind.minecraft.annotation.runtime.BudgetedJob<%s> (plugin, %s, items, (item) -> %s, %dL);", itemType, name, invocation, budget);
+                                } else {
+                                        writer.line ("return new com.torchmind.minecraft.annotation.runtime.BudgetedJob<%s> (plugin, %s, items, (item) -> {", itemType, name);
+                                        writer.line ("        %s;", invocation);
+                                        writer.line ("        return true;");
+                                        writer.line ("}, %dL);", budget);
+                                }
+                                writer.end ();
+                        }
+
+                        writer.end ();
+                }
+        }
+
+        /**
+         * Retrieves the (boxed) item type of a job method.
+         *
+         * @param method The method.
+         * @return The type.
+         */
+        private String getItemType (ExecutableElement method) {
+                TypeMirror type = method.getParameters ().get (0).asType ();
+
+                if (type.getKind ().isPrimitive ()) {
+                        return this.processingEnv.getTypeUtils ().boxedClass ((PrimitiveType) type).getQualifiedName ().toString ();
+                }
+
+                return type.toString ();
+        }
+}
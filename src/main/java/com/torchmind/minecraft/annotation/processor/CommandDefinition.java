@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.command.Command;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a command which has been collected by the processor for code generation purposes.
+ *
+ * @author Johannes Donath
+ */
+public class CommandDefinition {
+        private final Command annotation;
+        private final String executorType;
+        private final String executorPackage;
+        private final boolean publicConstructor;
+        private final boolean tabCompleter;
+        private final ExecutableElement method;
+
+        /**
+         * Constructs a new command definition.
+         *
+         * @param annotation The command annotation.
+         * @param executorType The qualified name of the executor type or null if the command is handled by the plugin class.
+         * @param executorPackage The package of the executor type.
+         * @param publicConstructor Indicates whether the executor type and its default constructor are public.
+         * @param tabCompleter Indicates whether the executor also implements {@link org.bukkit.command.TabCompleter}.
+         */
+        public CommandDefinition (Command annotation, String executorType, String executorPackage, boolean publicConstructor, boolean tabCompleter) {
+                this (annotation, executorType, executorPackage, publicConstructor, tabCompleter, null);
+        }
+
+        /**
+         * Constructs a new command definition for a command method.
+         *
+         * @param annotation The command annotation.
+         * @param ownerType The qualified name of the type declaring the method.
+         * @param ownerPackage The package of the declaring type (or null if the type cannot be constructed).
+         * @param publicConstructor Indicates whether the declaring type and its default constructor are public.
+         * @param method The command method.
+         */
+        public CommandDefinition (Command annotation, String ownerType, String ownerPackage, boolean publicConstructor, ExecutableElement method) {
+                this (annotation, ownerType, ownerPackage, publicConstructor, false, method);
+        }
+
+        private CommandDefinition (Command annotation, String executorType, String executorPackage, boolean publicConstructor, boolean tabCompleter, ExecutableElement method) {
+                this.annotation = annotation;
+                this.executorType = executorType;
+                this.executorPackage = executorPackage;
+                this.publicConstructor = publicConstructor;
+                this.tabCompleter = tabCompleter;
+                this.method = method;
+        }
+
+        /**
+         * Retrieves the command annotation.
+         *
+         * @return The annotation.
+         */
+        public Command getAnnotation () {
+                return this.annotation;
+        }
+
+        /**
+         * Retrieves the command name.
+         *
+         * @return The name.
+         */
+        public String getName () {
+                return this.annotation.name ();
+        }
+
+        /**
+         * Retrieves the qualified name of the command executor.
+         *
+         * @return The type name or null if the command is handled by the plugin class itself.
+         */
+        public String getExecutorType () {
+                return this.executorType;
+        }
+
+        /**
+         * Checks whether the command is handled by the plugin class itself.
+         *
+         * @return True if handled by the plugin.
+         */
+        public boolean isPluginCommand () {
+                return (this.executorType == null);
+        }
+
+        /**
+         * Retrieves the command method.
+         *
+         * @return The method or null if the command is handled by a command executor.
+         */
+        public ExecutableElement getMethod () {
+                return this.method;
+        }
+
+        /**
+         * Checks whether the command is handled by a method (rather than a command executor).
+         *
+         * @return True if handled by a method.
+         */
+        public boolean isMethodCommand () {
+                return (this.method != null);
+        }
+
+        /**
+         * Retrieves the command usage.
+         *
+         * Command methods which do not declare a usage receive a usage which is derived from their parameter names.
+         *
+         * @return The usage or an empty string if the command is handled by a command executor and does not declare one.
+         */
+        public String getUsage () {
+                if (!this.annotation.usage ().isEmpty () || this.method == null) { return this.annotation.usage (); }
+
+                List<String> parameterNames = new ArrayList<> ();
+                for (int i = 1; i < this.method.getParameters ().size (); i++) { parameterNames.add (this.method.getParameters ().get (i).getSimpleName ().toString ()); }
+
+                return DescriptorWriter.deriveUsage (parameterNames, this.method.isVarArgs ());
+        }
+
+        /**
+         * Checks whether the command method is static (and thus does not require an instance of its type).
+         *
+         * @return True if static.
+         */
+        public boolean isStaticMethod () {
+                return (this.method != null && this.method.getModifiers ().contains (Modifier.STATIC));
+        }
+
+        /**
+         * Checks whether the executor provides its own tab completions.
+         *
+         * @return True if the executor implements {@link org.bukkit.command.TabCompleter}.
+         */
+        public boolean isTabCompleter () {
+                return this.tabCompleter;
+        }
+
+        /**
+         * Checks whether generated code within the specified package may construct the executor.
+         *
+         * @param packageName The package name.
+         * @return True if accessible.
+         */
+        public boolean isConstructibleFrom (String packageName) {
+                if (this.executorPackage == null) { return false; }
+                return (this.publicConstructor || this.executorPackage.equals (packageName));
+        }
+}
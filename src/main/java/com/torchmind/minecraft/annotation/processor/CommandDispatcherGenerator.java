@@ -0,0 +1,667 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.command.Command;
+import com.torchmind.minecraft.annotation.command.Completion;
+import com.torchmind.minecraft.annotation.command.ExecutionMode;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a command dispatcher which routes all declared commands to their respective executors.
+ *
+ * The generated class replaces the executor lookup of each individual command with a single switch over the command
+ * name (which the JVM resolves via the cached string hash code) and registers itself for all commands at once. It also
+ * acts as tab completer for all commands and answers fixed completions from immutable tries which are built once upon
+ * class initialization.
+ *
+ * Executors are not constructed along with the dispatcher. Instead each executor type is kept within its own holder
+ * class which the JVM initializes (exactly once and without any races) upon the first invocation of one of its
+ * commands. Neither the executor class nor any of its dependencies will thus be loaded unless the command is actually
+ * used. Commands which share an executor type share a single instance.
+ *
+ * Commands which declare an asynchronous {@link ExecutionMode} are passed on to an {@link com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner}
+ * which is owned by the dispatcher and needs to be shut down along with the plugin.
+ *
+ * Command methods are invoked through a parser which is generated specifically for their parameter list. The parser
+ * validates each argument before converting it (and thus never relies on exceptions) and reports invalid arguments
+ * along with the (pre-computed) command usage to the sender. Arguments are always parsed on the main thread, only the
+ * invocation of asynchronous command methods is passed on to their runner.
+ *
+ * Command cooldowns are checked before a command is passed on to its executor (or runner) using one
+ * {@link com.torchmind.minecraft.annotation.runtime.CooldownTable} per command. The dispatcher listens for players
+ * leaving the server in order to evict their cooldowns.
+ *
+ * Command permissions are left on their respective commands and thus checked by Bukkit (by name) before a command is
+ * passed on to the dispatcher. Executions are deliberately not checked against the pre-constructed permission
+ * instances instead since clearing the permission of a command would expose it to senders lacking the permission when
+ * listing commands or completing their names. Completions of commands which require a permission declared by the
+ * plugin itself are guarded by the pre-constructed permission instances of the generated permissions class (see
+ * {@link PermissionConstantsGenerator}) as Bukkit passes completion requests on without checking the command
+ * permission.
+ *
+ * When instrumentation is enabled, the execution time of each command is recorded within a
+ * {@link com.torchmind.minecraft.annotation.runtime.CommandTimings} instance which is reported by an additional timings
+ * command. Instrumentation is not generated at all otherwise.
+ *
+ * @author Johannes Donath
+ */
+public class CommandDispatcherGenerator {
+        public static final String SUFFIX = "CommandDispatcher";
+        private final ProcessingEnvironment processingEnv;
+
+        public CommandDispatcherGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Generates the dispatcher for the specified plugin.
+         *
+         * @param pluginPackage The plugin package.
+         * @param pluginType The qualified name of the plugin type.
+         * @param pluginSimpleName The simple name of the plugin type.
+         * @param commands The commands to dispatch.
+         * @param completions The declared tab completions (indexed by command name).
+         * @param permissions The pre-constructed permission constants (indexed by lower case permission name).
+         * @param timingsCommand The name of the timings command or null if commands are not instrumented.
+         * @param originatingElements The elements which declared the commands.
+         * @throws IOException when writing the source file fails.
+         */
+        public void generate (String pluginPackage, String pluginType, String pluginSimpleName, Collection<CommandDefinition> commands, Map<String, List<Completion>> completions, Map<String, String> permissions, String timingsCommand, Element[] originatingElements) throws IOException {
+                String dispatcherName = pluginSimpleName + SUFFIX;
+                List<CommandDefinition> dispatched = new ArrayList<> ();
+
+                for (CommandDefinition command : commands) {
+                        // executors which require constructor arguments cannot be created by us and thus stay in the
+                        // hands of the plugin author who will have to register them manually
+                        if (!command.isPluginCommand () && !command.isMethodCommand () && !command.isConstructibleFrom (pluginPackage)) {
+                                this.processingEnv.getMessager ().printMessage ((command.getAnnotation ().executionMode () == ExecutionMode.SYNC ? Diagnostic.Kind.NOTE : Diagnostic.Kind.WARNING), "Command executor " + command.getExecutorType () + " has no accessible default constructor and will not be dispatched by " + dispatcherName + (command.getAnnotation ().executionMode () == ExecutionMode.SYNC ? "." : " (its execution mode will be ignored)."));
+                                continue;
+                        }
+
+                        dispatched.add (command);
+                }
+
+                // each executor type is constructed exactly once regardless of the amount of commands it handles
+                Map<String, String> holders = new LinkedHashMap<> ();
+                Set<String> methodOwners = new HashSet<> ();
+
+                for (CommandDefinition command : dispatched) {
+                        if (command.isPluginCommand () || (command.isMethodCommand () && (command.isStaticMethod () || command.getExecutorType ().equals (pluginType)))) { continue; }
+
+                        if (!holders.containsKey (command.getExecutorType ())) { holders.put (command.getExecutorType (), "Executor" + holders.size ()); }
+                        if (command.isMethodCommand ()) { methodOwners.add (command.getExecutorType ()); }
+                }
+
+                String qualifiedName = (pluginPackage.isEmpty () ? dispatcherName : pluginPackage + "." + dispatcherName);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, originatingElements).openWriter ())) {
+                        if (!pluginPackage.isEmpty ()) {
+                                writer.line ("package %s;", pluginPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Dispatches all commands declared by {@link %s}.", pluginType);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        boolean cooldowns = dispatched.stream ().anyMatch ((c) -> c.getAnnotation ().cooldown () > 0);
+
+                        writer.open ("public final class %s implements org.bukkit.command.TabExecutor%s", dispatcherName, (cooldowns ? ", org.bukkit.event.Listener" : ""));
+
+                        for (int i = 0; i < dispatched.size (); i++) {
+                                List<Completion> commandCompletions = completions.get (dispatched.get (i).getName ());
+                                if (commandCompletions == null) { continue; }
+
+                                writer.line ("private static final com.torchmind.minecraft.annotation.runtime.CompletionTree COMPLETIONS%d = com.torchmind.minecraft.annotation.runtime.CompletionTree.builder ()", i);
+
+                                for (Completion completion : commandCompletions) {
+                                        writer.line ("        .add (new String[] {%s}, %s)", literals (completion.path ()), literals (completion.value ()));
+                                }
+
+                                writer.line ("        .build ();");
+                                writer.line ();
+                        }
+
+                        for (int i = 0; i < dispatched.size (); i++) {
+                                if (dispatched.get (i).isMethodCommand ()) { this.writeParserConstants (writer, i, dispatched.get (i)); }
+                        }
+
+                        boolean async = dispatched.stream ().anyMatch ((c) -> c.getAnnotation ().executionMode () == ExecutionMode.ASYNC);
+                        boolean virtual = dispatched.stream ().anyMatch ((c) -> c.getAnnotation ().executionMode () == ExecutionMode.VIRTUAL_THREAD);
+
+                        writer.line ("private final %s plugin;", pluginType);
+                        if (async) { writer.line ("private final com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner asyncRunner;"); }
+                        if (virtual) { writer.line ("private final com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner virtualThreadRunner;"); }
+                        if (timingsCommand != null) { writer.line ("private final com.torchmind.minecraft.annotation.runtime.CommandTimings timings;"); }
+
+                        for (int i = 0; i < dispatched.size (); i++) {
+                                long cooldown = dispatched.get (i).getAnnotation ().cooldown ();
+                                if (cooldown > 0) { writer.line ("private final com.torchmind.minecraft.annotation.runtime.CooldownTable cooldown%d = new com.torchmind.minecraft.annotation.runtime.CooldownTable (%dL);", i, cooldown); }
+                        }
+                        writer.line ();
+                        writer.open ("public %s (%s plugin)", dispatcherName, pluginType);
+                        writer.line ("this.plugin = plugin;");
+                        if (async) { writer.line ("this.asyncRunner = com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner.pooled (plugin);"); }
+                        if (virtual) { writer.line ("this.virtualThreadRunner = com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner.virtual (plugin);"); }
+
+                        if (timingsCommand != null) {
+                                String[] names = dispatched.stream ().map (CommandDefinition::getName).toArray (String[]::new);
+                                writer.line ("this.timings = new com.torchmind.minecraft.annotation.runtime.CommandTimings (plugin, new String[] {%s});", literals (names));
+                        }
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Registers a new dispatcher for all generated commands of the specified plugin.");
+                        writer.line (" *");
+                        writer.line (" * @param plugin The plugin.");
+                        writer.line (" * @return The dispatcher.");
+                        writer.line (" */");
+                        writer.open ("public static %s register (%s plugin)", dispatcherName, pluginType);
+                        writer.line ("%s dispatcher = new %s (plugin);", dispatcherName, dispatcherName);
+
+                        writer.line ("org.bukkit.command.PluginCommand command;");
+
+                        for (CommandDefinition command : dispatched) {
+                                Command annotation = command.getAnnotation ();
+
+                                writer.line ("command = plugin.getCommand (%s);", SourceWriter.literal (command.getName ()));
+                                writer.line ("command.setExecutor (dispatcher);");
+                                writer.line ("command.setTabCompleter (dispatcher);");
+
+                                // Bukkit substitutes the placeholder upon every denial otherwise
+                                if (!annotation.permission ().isEmpty () && annotation.permissionMessage ().contains ("<permission>")) {
+                                        writer.line ("command.setPermissionMessage (%s);", SourceWriter.literal (annotation.permissionMessage ().replace ("<permission>", annotation.permission ())));
+                                }
+                        }
+
+                        if (timingsCommand != null) {
+                                writer.line ("command = plugin.getCommand (%s);", SourceWriter.literal (timingsCommand));
+                                writer.line ("command.setExecutor (dispatcher);");
+                                writer.line ("command.setTabCompleter (dispatcher);");
+                        }
+
+                        if (cooldowns) {
+                                writer.line ();
+                                writer.line ("plugin.getServer ().getPluginManager ().registerEvent (org.bukkit.event.player.PlayerQuitEvent.class, dispatcher, org.bukkit.event.EventPriority.MONITOR, (listener, event) -> {");
+                                writer.line ("        if (event instanceof org.bukkit.event.player.PlayerQuitEvent) { ((%s) listener).evict (((org.bukkit.event.player.PlayerQuitEvent) event).getPlayer ().getUniqueId ()); }", dispatcherName);
+                                writer.line ("}, plugin, false);");
+                        }
+
+                        writer.line ("return dispatcher;");
+                        writer.end ();
+                        writer.line ();
+
+                        if (cooldowns) {
+                                writer.line ("/**");
+                                writer.line (" * Evicts all command cooldowns of a player.");
+                                writer.line (" *");
+                                writer.line (" * @param id The player identifier.");
+                                writer.line (" */");
+                                writer.open ("public void evict (java.util.UUID id)");
+
+                                for (int i = 0; i < dispatched.size (); i++) {
+                                        if (dispatched.get (i).getAnnotation ().cooldown () > 0) { writer.line ("this.cooldown%d.evict (id);", i); }
+                                }
+
+                                writer.end ();
+                                writer.line ();
+                        }
+
+                        if (async) {
+                                writer.line ("/**");
+                                writer.line (" * Retrieves the runner which executes commands with the ASYNC execution mode.");
+                                writer.line (" *");
+                                writer.line (" * @return The runner.");
+                                writer.line (" */");
+                                writer.open ("public com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner getAsyncRunner ()");
+                                writer.line ("return this.asyncRunner;");
+                                writer.end ();
+                                writer.line ();
+                        }
+
+                        if (virtual) {
+                                writer.line ("/**");
+                                writer.line (" * Retrieves the runner which executes commands with the VIRTUAL_THREAD execution mode.");
+                                writer.line (" *");
+                                writer.line (" * @return The runner.");
+                                writer.line (" */");
+                                writer.open ("public com.torchmind.minecraft.annotation.runtime.AsyncCommandRunner getVirtualThreadRunner ()");
+                                writer.line ("return this.virtualThreadRunner;");
+                                writer.end ();
+                                writer.line ();
+                        }
+
+                        if (timingsCommand != null) {
+                                writer.line ("/**");
+                                writer.line (" * Retrieves the execution times of all commands.");
+                                writer.line (" *");
+                                writer.line (" * @return The timings.");
+                                writer.line (" */");
+                                writer.open ("public com.torchmind.minecraft.annotation.runtime.CommandTimings getTimings ()");
+                                writer.line ("return this.timings;");
+                                writer.end ();
+                                writer.line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Stops all asynchronous command executions and waits for running executions to complete.");
+                        writer.line (" *");
+                        writer.line (" * This method should be called from within {@code onDisable}.");
+                        writer.line (" *");
+                        writer.line (" * @param timeout The maximum time to wait (per runner).");
+                        writer.line (" * @param unit The time unit.");
+                        writer.line (" * @return True if all executions completed in time.");
+                        writer.line (" * @throws InterruptedException when interrupted while waiting.");
+                        writer.line (" */");
+                        writer.open ("public boolean shutdown (long timeout, java.util.concurrent.TimeUnit unit) throws InterruptedException");
+                        writer.line ("boolean completed = true;");
+                        if (async) { writer.line ("completed &= this.asyncRunner.shutdown (timeout, unit);"); }
+                        if (virtual) { writer.line ("completed &= this.virtualThreadRunner.shutdown (timeout, unit);"); }
+                        writer.line ("return completed;");
+                        writer.end ();
+                        writer.line ();
+
+                        // Note: The holder fields are typed as CommandExecutor on purpose as referencing the actual
+                        // executor type within the dispatcher would cause the verifier to load it early
+                        // (unless the type declares command methods which need to be invoked directly)
+                        for (Map.Entry<String, String> holder : holders.entrySet ()) {
+                                writer.open ("private static final class %s", holder.getValue ());
+                                writer.line ("static final %s INSTANCE = new %s ();", (methodOwners.contains (holder.getKey ()) ? holder.getKey () : "org.bukkit.command.CommandExecutor"), holder.getKey ());
+                                writer.end ();
+                                writer.line ();
+                        }
+
+                        for (int i = 0; i < dispatched.size (); i++) {
+                                if (dispatched.get (i).isMethodCommand ()) { this.writeParser (writer, i, dispatched.get (i), pluginType, holders, (timingsCommand != null)); }
+                        }
+
+                        // Note: Bukkit resolves aliases to their respective command instance before passing them to us,
+                        // thus we only need to match against the actual command name here
+                        writer.line ("@Override");
+                        writer.open ("public boolean onCommand (org.bukkit.command.CommandSender sender, org.bukkit.command.Command command, String label, String[] args)");
+                        writer.open ("switch (command.getName ())");
+
+                        for (int i = 0; i < dispatched.size (); i++) {
+                                CommandDefinition command = dispatched.get (i);
+
+                                String executor = (command.isPluginCommand () ? "this.plugin" : (command.isMethodCommand () ? "this::command" + i : holders.get (command.getExecutorType ()) + ".INSTANCE"));
+
+                                writer.line ("case %s:", SourceWriter.literal (command.getName ()));
+
+                                if (command.getAnnotation ().cooldown () > 0) {
+                                        writer.line ("        if (this.cooldown%d.reject (sender)) { return true; }", i);
+                                }
+
+                                // instrumented commands pass their result through the timings which permits us to capture
+                                // the start time as an argument (Java evaluates arguments from left to right)
+                                String invocation = (command.isMethodCommand () ? "this.command" + i : executor + ".onCommand") + " (%s)";
+
+                                // asynchronous command methods are parsed on the main thread and submit their invocation
+                                // (and record its timings) themselves
+                                if (command.isMethodCommand () && command.getAnnotation ().executionMode () != ExecutionMode.SYNC) {
+                                        writer.line ("        return %s;", String.format (invocation, "sender, command, label, args"));
+                                        continue;
+                                }
+
+                                if (timingsCommand != null) { invocation = "this.timings.end (" + i + ", System.nanoTime (), " + invocation + ")"; }
+
+                                switch (command.getAnnotation ().executionMode ()) {
+                                        case ASYNC:
+                                                writer.line ("        return this.asyncRunner.submit (%s, sender, command, label, args, %d);", (timingsCommand != null ? "(s, c, l, a) -> " + String.format (invocation, "s, c, l, a") : executor), command.getAnnotation ().maxInFlight ());
+                                                break;
+                                        case VIRTUAL_THREAD:
+                                                writer.line ("        return this.virtualThreadRunner.submit (%s, sender, command, label, args, %d);", (timingsCommand != null ? "(s, c, l, a) -> " + String.format (invocation, "s, c, l, a") : executor), command.getAnnotation ().maxInFlight ());
+                                                break;
+                                        default:
+                                                writer.line ("        return %s;", String.format (invocation, "sender, command, label, args"));
+                                }
+                        }
+
+                        if (timingsCommand != null) {
+                                writer.line ("case %s:", SourceWriter.literal (timingsCommand));
+                                writer.line ("        return this.timings.onCommand (sender, label, args);");
+                        }
+
+                        writer.line ("default:");
+                        writer.line ("        return false;");
+                        writer.end ();
+                        writer.end ();
+                        writer.line ();
+
+                        // fixed completions take precedence, any arguments which do not have any declared completions are
+                        // passed on to the executor (if it is capable of providing completions)
+                        writer.line ("@Override");
+                        writer.open ("public java.util.List<String> onTabComplete (org.bukkit.command.CommandSender sender, org.bukkit.command.Command command, String alias, String[] args)");
+                        writer.line ("java.util.List<String> completions = null;");
+                        writer.line ();
+                        writer.open ("switch (command.getName ())");
+
+                        for (int i = 0; i < dispatched.size (); i++) {
+                                CommandDefinition command = dispatched.get (i);
+                                boolean fixed = completions.containsKey (command.getName ());
+                                String permission = permissionConstant (command.getAnnotation (), permissions);
+
+                                if (!fixed && !command.isTabCompleter () && permission == null) { continue; }
+
+                                writer.line ("case %s:", SourceWriter.literal (command.getName ()));
+
+                                if (permission != null) { writer.line ("        if (!sender.hasPermission (%s)) { return java.util.Collections.emptyList (); }", permission); }
+
+                                if (fixed) {
+                                        writer.line ("        completions = COMPLETIONS%d.complete (args);", i);
+                                        writer.line ("        if (completions != null) { return completions; }");
+                                }
+
+                                if (command.isPluginCommand ()) {
+                                        writer.line ("        return this.plugin.onTabComplete (sender, command, alias, args);");
+                                } else if (command.isTabCompleter ()) {
+                                        writer.line ("        return ((org.bukkit.command.TabCompleter) %s.INSTANCE).onTabComplete (sender, command, alias, args);", holders.get (command.getExecutorType ()));
+                                } else {
+                                        writer.line ("        return null;");
+                                }
+                        }
+
+                        if (timingsCommand != null) {
+                                writer.line ("case %s:", SourceWriter.literal (timingsCommand));
+                                writer.line ("        return this.timings.complete (args);");
+                        }
+
+                        writer.line ("default:");
+                        writer.line ("        return null;");
+                        writer.end ();
+                        writer.end ();
+                        writer.end ();
+                }
+        }
+
+        /**
+         * Writes the constants used by the parser of a command method (the usage as well as lookup tables for all enum
+         * parameters).
+         *
+         * @param writer The writer.
+         * @param index The command index.
+         * @param command The command.
+         * @throws IOException when writing fails.
+         */
+        private void writeParserConstants (SourceWriter writer, int index, CommandDefinition command) throws IOException {
+                ExecutableElement method = command.getMethod ();
+                List<? extends VariableElement> parameters = method.getParameters ();
+                // commands which do not declare a usage receive one derived from their parameter names
+                String usage = command.getUsage ();
+
+                // the usage is split into lines and segments around the command label at compile time so that the
+                // parser merely needs to join the segments with the label used when reporting an error
+                writer.line ("private static final String[][] USAGE%d = %s;", index, usageSegments (usage));
+
+                for (int i = 1; i < parameters.size (); i++) {
+                        TypeMirror type = this.getArgumentType (method, i);
+                        if (ArgumentType.of (type, this.processingEnv) != ArgumentType.ENUM) { continue; }
+
+                        String enumType = this.processingEnv.getTypeUtils ().erasure (type).toString ();
+                        writer.line ("private static final java.util.Map<String, %s> CHOICES%d_%d = com.torchmind.minecraft.annotation.runtime.Arguments.choices (%s.values ());", enumType, index, i, enumType);
+                }
+
+                writer.line ();
+        }
+
+        /**
+         * Writes the parser of a command method.
+         *
+         * @param writer The writer.
+         * @param index The command index.
+         * @param command The command.
+         * @param pluginType The qualified name of the plugin type.
+         * @param holders The executor holder classes (indexed by executor type).
+         * @param instrumented Indicates whether command timings are recorded.
+         * @throws IOException when writing fails.
+         */
+        private void writeParser (SourceWriter writer, int index, CommandDefinition command, String pluginType, Map<String, String> holders, boolean instrumented) throws IOException {
+                ExecutableElement method = command.getMethod ();
+                List<? extends VariableElement> parameters = method.getParameters ();
+                boolean player = this.processingEnv.getTypeUtils ().erasure (parameters.get (0).asType ()).toString ().equals ("org.bukkit.entity.Player");
+                int required = parameters.size () - (method.isVarArgs () ? 2 : 1);
+                String usage = "USAGE" + index;
+
+                writer.open ("private boolean command%d (org.bukkit.command.CommandSender sender, org.bukkit.command.Command command, String label, String[] args)", index);
+
+                if (player) {
+                        writer.line ("if (!(sender instanceof org.bukkit.entity.Player)) { return com.torchmind.minecraft.annotation.runtime.Arguments.fail (sender, \"This command can only be used by players.\"); }");
+                }
+
+                writer.line ("if (args.length %s %d) { return com.torchmind.minecraft.annotation.runtime.Arguments.fail (sender, label, null, %s); }", (method.isVarArgs () ? "<" : "!="), required, usage);
+
+                StringBuilder invocation = new StringBuilder ((player ? "(org.bukkit.entity.Player) sender" : "sender"));
+
+                for (int i = 1; i < parameters.size (); i++) {
+                        TypeMirror type = this.getArgumentType (method, i);
+                        String typeName = this.processingEnv.getTypeUtils ().erasure (type).toString ();
+                        String variable = "argument" + i;
+
+                        if (method.isVarArgs () && i == parameters.size () - 1) {
+                                if (ArgumentType.of (type, this.processingEnv) == ArgumentType.STRING) {
+                                        writer.line ("String[] %s = java.util.Arrays.copyOfRange (args, %d, args.length);", variable, i - 1);
+                                } else {
+                                        writer.line ("%s[] %s = new %s[args.length - %d];", typeName, variable, typeName, i - 1);
+                                        writer.open ("for (int i = %d; i < args.length; i++)", i - 1);
+                                        this.writeArgument (writer, index, i, type, "args[i]", "value", usage);
+                                        writer.line ("%s[i - %d] = value;", variable, i - 1);
+                                        writer.end ();
+                                }
+                        } else {
+                                this.writeArgument (writer, index, i, type, "args[" + (i - 1) + "]", variable, usage);
+                        }
+
+                        invocation.append (", ").append (variable);
+                }
+
+                String receiver;
+                if (command.isStaticMethod ()) {
+                        receiver = this.processingEnv.getTypeUtils ().erasure (method.getEnclosingElement ().asType ()).toString ();
+                } else if (command.getExecutorType ().equals (pluginType)) {
+                        receiver = "this.plugin";
+                } else {
+                        receiver = holders.get (command.getExecutorType ()) + ".INSTANCE";
+                }
+
+                writer.line ();
+
+                boolean result = (method.getReturnType ().getKind () == TypeKind.BOOLEAN);
+                ExecutionMode mode = command.getAnnotation ().executionMode ();
+
+                if (mode == ExecutionMode.SYNC) {
+                        if (result) {
+                                writer.line ("return %s.%s (%s);", receiver, method.getSimpleName (), invocation);
+                        } else {
+                                writer.line ("%s.%s (%s);", receiver, method.getSimpleName (), invocation);
+                                writer.line ("return true;");
+                        }
+
+                        writer.end ();
+                        writer.line ();
+                        return;
+                }
+
+                // arguments are parsed (and thus players and worlds looked up) on the main thread while only the actual
+                // invocation is passed on to the runner
+                writer.open ("return this.%s.submit ((s, c, l, a) ->", (mode == ExecutionMode.ASYNC ? "asyncRunner" : "virtualThreadRunner"));
+                if (instrumented) { writer.line ("long start = System.nanoTime ();"); }
+
+                String outcome = "true";
+                if (result) {
+                        writer.line ("boolean result = %s.%s (%s);", receiver, method.getSimpleName (), invocation);
+                        outcome = "result";
+                } else {
+                        writer.line ("%s.%s (%s);", receiver, method.getSimpleName (), invocation);
+                }
+
+                writer.line ("return %s;", (instrumented ? "this.timings.end (" + index + ", start, " + outcome + ")" : outcome));
+                writer.close (", sender, command, label, args, " + command.getAnnotation ().maxInFlight () + ");");
+                writer.end ();
+                writer.line ();
+        }
+
+        /**
+         * Writes the code which validates and converts a single argument.
+         *
+         * @param writer The writer.
+         * @param index The command index.
+         * @param parameter The parameter index.
+         * @param type The (component) type of the parameter.
+         * @param source The expression which provides the raw argument.
+         * @param variable The name of the variable to declare.
+         * @param usage The name of the usage constant.
+         * @throws IOException when writing fails.
+         */
+        private void writeArgument (SourceWriter writer, int index, int parameter, TypeMirror type, String source, String variable, String usage) throws IOException {
+                String fail = "return com.torchmind.minecraft.annotation.runtime.Arguments.fail (sender, label, %s, " + usage + ");";
+                String typeName = this.processingEnv.getTypeUtils ().erasure (type).toString ();
+
+                switch (ArgumentType.of (type, this.processingEnv)) {
+                        case STRING:
+                                writer.line ("String %s = %s;", variable, source);
+                                break;
+                        case INT:
+                                writer.line ("if (!com.torchmind.minecraft.annotation.runtime.Arguments.isInt (%s)) { " + fail + " }", source, "\"\\\"\" + " + source + " + \"\\\" is not a valid number.\"");
+                                writer.line ("int %s = Integer.parseInt (%s);", variable, source);
+                                break;
+                        case LONG:
+                                writer.line ("if (!com.torchmind.minecraft.annotation.runtime.Arguments.isLong (%s)) { " + fail + " }", source, "\"\\\"\" + " + source + " + \"\\\" is not a valid number.\"");
+                                writer.line ("long %s = Long.parseLong (%s);", variable, source);
+                                break;
+                        case FLOAT:
+                                writer.line ("if (!com.torchmind.minecraft.annotation.runtime.Arguments.isDecimal (%s)) { " + fail + " }", source, "\"\\\"\" + " + source + " + \"\\\" is not a valid number.\"");
+                                writer.line ("float %s = Float.parseFloat (%s);", variable, source);
+                                break;
+                        case DOUBLE:
+                                writer.line ("if (!com.torchmind.minecraft.annotation.runtime.Arguments.isDecimal (%s)) { " + fail + " }", source, "\"\\\"\" + " + source + " + \"\\\" is not a valid number.\"");
+                                writer.line ("double %s = Double.parseDouble (%s);", variable, source);
+                                break;
+                        case BOOLEAN:
+                                writer.line ("if (!com.torchmind.minecraft.annotation.runtime.Arguments.isBoolean (%s)) { " + fail + " }", source, "\"\\\"\" + " + source + " + \"\\\" is neither true nor false.\"");
+                                writer.line ("boolean %s = com.torchmind.minecraft.annotation.runtime.Arguments.parseBoolean (%s);", variable, source);
+                                break;
+                        case PLAYER:
+                                writer.line ("org.bukkit.entity.Player %s = org.bukkit.Bukkit.getPlayer (%s);", variable, source);
+                                writer.line ("if (%s == null) { " + fail + " }", variable, "\"Player \\\"\" + " + source + " + \"\\\" is not online.\"");
+                                break;
+                        case WORLD:
+                                writer.line ("org.bukkit.World %s = org.bukkit.Bukkit.getWorld (%s);", variable, source);
+                                writer.line ("if (%s == null) { " + fail + " }", variable, "\"World \\\"\" + " + source + " + \"\\\" does not exist.\"");
+                                break;
+                        case ENUM:
+                                StringBuilder choices = new StringBuilder ();
+
+                                for (Element constant : ((DeclaredType) type).asElement ().getEnclosedElements ()) {
+                                        if (constant.getKind () != ElementKind.ENUM_CONSTANT) { continue; }
+                                        if (choices.length () != 0) { choices.append (", "); }
+                                        choices.append (constant.getSimpleName ().toString ().toLowerCase (Locale.ROOT));
+                                }
+
+                                writer.line ("%s %s = CHOICES%d_%d.get (%s.toLowerCase (java.util.Locale.ROOT));", typeName, variable, index, parameter, source);
+                                writer.line ("if (%s == null) { " + fail + " }", variable, "\"\\\"\" + " + source + " + " + SourceWriter.literal ("\" is not one of: " + choices));
+                                break;
+                }
+        }
+
+        /**
+         * Retrieves the type of a single argument (unwrapping varargs).
+         *
+         * @param method The command method.
+         * @param parameter The parameter index.
+         * @return The type.
+         */
+        private TypeMirror getArgumentType (ExecutableElement method, int parameter) {
+                TypeMirror type = method.getParameters ().get (parameter).asType ();
+
+                if (method.isVarArgs () && parameter == method.getParameters ().size () - 1) {
+                        return ((ArrayType) type).getComponentType ();
+                }
+
+                return type;
+        }
+
+        /**
+         * Resolves the pre-constructed permission constant which guards a command.
+         *
+         * Commands which accept one of multiple permissions (separated by semicolons) or which require a permission
+         * that has not been declared by the plugin are left to Bukkit.
+         *
+         * @param annotation The command annotation.
+         * @param permissions The permission constants (indexed by lower case permission name).
+         * @return The qualified constant or null if no constant is available.
+         */
+        private static String permissionConstant (Command annotation, Map<String, String> permissions) {
+                if (annotation.permission ().isEmpty () || annotation.permission ().indexOf (';') != -1) { return null; }
+                return permissions.get (annotation.permission ().toLowerCase (Locale.ENGLISH));
+        }
+
+        /**
+         * Converts a usage into an array initializer which contains the segments (separated by the command label) of
+         * each of its lines.
+         *
+         * @param usage The usage.
+         * @return The array initializer.
+         */
+        private static String usageSegments (String usage) {
+                StringBuilder builder = new StringBuilder ("{");
+
+                for (String line : usage.split ("\n")) {
+                        if (builder.length () != 1) { builder.append (", "); }
+                        builder.append ('{').append (literals (line.split ("<command>", -1))).append ('}');
+                }
+
+                return builder.append ('}').toString ();
+        }
+
+        /**
+         * Converts an array of strings into a comma separated list of literals.
+         *
+         * @param values The values.
+         * @return The literals.
+         */
+        private static String literals (String[] values) {
+                StringBuilder builder = new StringBuilder ();
+
+                for (String value : values) {
+                        if (builder.length () != 0) { builder.append (", "); }
+                        builder.append (SourceWriter.literal (value));
+                }
+
+                return builder.toString ();
+        }
+}
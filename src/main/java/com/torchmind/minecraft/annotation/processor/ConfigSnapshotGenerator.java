@@ -0,0 +1,609 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.config.ConfigSection;
+import com.torchmind.minecraft.annotation.config.ConfigValue;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates immutable snapshot implementations of configuration section interfaces.
+ *
+ * Bukkit resolves every {@code getInt ("a.b.c")} by splitting the path and walking the section maps. The generated
+ * snapshot performs these lookups exactly once (upon reload) and stores their results within final fields. The most
+ * recent snapshot is published via a volatile reference and thus reads on hot paths boil down to a volatile read
+ * followed by a plain field load.
+ *
+ * @author Johannes Donath
+ */
+public class ConfigSnapshotGenerator {
+        public static final String SUFFIX = "Snapshot";
+        private final ProcessingEnvironment processingEnv;
+
+        public ConfigSnapshotGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Retrieves the simple name of the class generated for the specified section.
+         *
+         * Nested section types are flattened by joining the names of all enclosing types with an underscore.
+         *
+         * @param sectionType The section type.
+         * @return The simple name.
+         */
+        public String getGeneratedName (TypeElement sectionType) {
+                String packageName = this.getPackageName (sectionType);
+                String qualifiedName = sectionType.getQualifiedName ().toString ();
+
+                return (packageName.isEmpty () ? qualifiedName : qualifiedName.substring (packageName.length () + 1)).replace ('.', '_') + SUFFIX;
+        }
+
+        /**
+         * Generates the snapshot for the specified section.
+         *
+         * @param sectionType The section type.
+         * @return The default values of the section (indexed by path relative to the section) or null if the section is invalid.
+         * @throws IOException when writing the source file fails.
+         */
+        public Map<String, Object> generate (TypeElement sectionType) throws IOException {
+                String sectionPackage = this.getPackageName (sectionType);
+                Section section = this.collect (sectionType, sectionPackage, new HashSet<> ());
+                if (section == null) { return null; }
+
+                String generatedName = this.getGeneratedName (sectionType);
+                String qualifiedName = (sectionPackage.isEmpty () ? generatedName : sectionPackage + "." + generatedName);
+                String path = sectionType.getAnnotation (ConfigSection.class).value ();
+                List<Section> descendants = section.descendants ();
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, sectionType).openWriter ())) {
+                        if (!sectionPackage.isEmpty ()) {
+                                writer.line ("package %s;", sectionPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Provides an immutable snapshot of {@link %s}.", section.typeName);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s implements %s", generatedName, section.typeName);
+                        this.writeBody (writer, generatedName, section, true);
+
+                        writer.line ();
+                        writer.line ("/**");
+                        writer.line (" * Retrieves the most recently published snapshot.");
+                        writer.line (" *");
+                        writer.line (" * Snapshots consist of default values only until {@link #reload(org.bukkit.plugin.Plugin)} is called.");
+                        writer.line (" *");
+                        writer.line (" * @return The snapshot.");
+                        writer.line (" */");
+                        writer.open ("public static %s get ()", section.typeName);
+                        writer.line ("return current;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Reads a new snapshot from the specified configuration and publishes it.");
+                        writer.line (" *");
+                        writer.line (" * @param configuration The configuration root.");
+                        writer.line (" * @return The snapshot.");
+                        writer.line (" */");
+                        writer.open ("public static %s reload (org.bukkit.configuration.ConfigurationSection configuration)", section.typeName);
+                        writer.line ("%s snapshot = new %s (%s);", generatedName, generatedName, (path.isEmpty () ? "configuration" : "configuration.getConfigurationSection (" + SourceWriter.literal (path) + ")"));
+                        writer.line ("current = snapshot;");
+                        writer.line ("return snapshot;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Reloads the configuration of the specified plugin (writing the default configuration if necessary) and");
+                        writer.line (" * publishes a new snapshot.");
+                        writer.line (" *");
+                        writer.line (" * @param plugin The plugin.");
+                        writer.line (" * @return The snapshot.");
+                        writer.line (" */");
+                        writer.open ("public static %s reload (org.bukkit.plugin.Plugin plugin)", section.typeName);
+                        writer.line ("plugin.saveDefaultConfig ();");
+                        writer.line ("plugin.reloadConfig ();");
+                        writer.line ("return reload (plugin.getConfig ());");
+                        writer.end ();
+
+                        for (Section child : descendants) {
+                                writer.line ();
+                                writer.open ("private static final class %s implements %s", child.className, child.typeName);
+                                this.writeBody (writer, child.className, child, false);
+                                writer.end ();
+                        }
+
+                        writer.end ();
+                }
+
+                return section.defaults ();
+        }
+
+        /**
+         * Writes the fields, constructor and accessors of a section implementation.
+         *
+         * @param writer The writer.
+         * @param className The simple name of the implementation.
+         * @param section The section.
+         * @param root Indicates whether the section is the root of the snapshot (and thus holds the published instance).
+         * @throws IOException when writing fails.
+         */
+        private void writeBody (SourceWriter writer, String className, Section section, boolean root) throws IOException {
+                boolean constants = false;
+
+                for (Binding binding : section.bindings) {
+                        if (binding.kind != Kind.LIST) { continue; }
+
+                        String[] values = (String[]) binding.defaultValue;
+                        writer.line ("private static final java.util.List<String> %s = %s;", defaultConstant (binding), (values.length == 0 ? "java.util.Collections.emptyList ()" : "java.util.Collections.unmodifiableList (java.util.Arrays.asList (" + literals (values) + "))"));
+                        constants = true;
+                }
+
+                // the initial instance relies on the default constants and thus needs to be declared after them
+                if (root) {
+                        writer.line ("private static volatile %s current = new %s (null);", className, className);
+                        constants = true;
+                }
+
+                if (constants) { writer.line (); }
+
+                for (Binding binding : section.bindings) {
+                        writer.line ("private final %s %s;", binding.type, binding.name);
+                }
+
+                writer.line ();
+                writer.open ("private %s (org.bukkit.configuration.ConfigurationSection section)", className);
+
+                for (Binding binding : section.bindings) {
+                        String path = SourceWriter.literal (binding.path);
+                        String value = literal (binding);
+
+                        switch (binding.kind) {
+                                case STRING:
+                                        writer.line ("this.%s = (section != null ? section.getString (%s, %s) : %s);", binding.name, path, value, value);
+                                        break;
+                                case INT:
+                                        writer.line ("this.%s = (section != null ? section.getInt (%s, %s) : %s);", binding.name, path, value, value);
+                                        break;
+                                case LONG:
+                                        writer.line ("this.%s = (section != null ? section.getLong (%s, %s) : %s);", binding.name, path, value, value);
+                                        break;
+                                case FLOAT:
+                                        writer.line ("this.%s = (section != null ? (float) section.getDouble (%s, %s) : %s);", binding.name, path, value, value);
+                                        break;
+                                case DOUBLE:
+                                        writer.line ("this.%s = (section != null ? section.getDouble (%s, %s) : %s);", binding.name, path, value, value);
+                                        break;
+                                case BOOLEAN:
+                                        writer.line ("this.%s = (section != null ? section.getBoolean (%s, %s) : %s);", binding.name, path, value, value);
+                                        break;
+                                case LIST:
+                                        writer.line ("this.%s = (section != null && section.isList (%s) ? java.util.Collections.unmodifiableList (new java.util.ArrayList<> (section.getStringList (%s))) : %s);", binding.name, path, path, defaultConstant (binding));
+                                        break;
+                                case SECTION:
+                                        writer.line ("this.%s = new %s (section != null ? section.getConfigurationSection (%s) : null);", binding.name, binding.section.className, path);
+                                        break;
+                        }
+                }
+
+                writer.end ();
+
+                for (Binding binding : section.bindings) {
+                        writer.line ();
+                        writer.line ("@Override");
+                        writer.open ("public %s %s ()", binding.type, binding.name);
+                        writer.line ("return this.%s;", binding.name);
+                        writer.end ();
+                }
+        }
+
+        /**
+         * Collects the bindings of a section type (and all of its nested sections).
+         *
+         * @param sectionType The section type.
+         * @param rootPackage The package of the generated snapshot.
+         * @param visiting The section types which are currently being collected (used to detect cycles).
+         * @return The section or null if the section is invalid.
+         */
+        private Section collect (TypeElement sectionType, String rootPackage, Set<String> visiting) {
+                Diagnostic.Kind error = Diagnostic.Kind.ERROR;
+
+                if (sectionType.getKind () != ElementKind.INTERFACE || !sectionType.getTypeParameters ().isEmpty ()) {
+                        this.processingEnv.getMessager ().printMessage (error, "Configuration sections need to be non-generic interfaces.", sectionType);
+                        return null;
+                }
+
+                if (!this.isAccessibleFrom (sectionType, rootPackage)) {
+                        this.processingEnv.getMessager ().printMessage (error, "Configuration section is not accessible from package \"" + rootPackage + "\".", sectionType);
+                        return null;
+                }
+
+                String typeName = sectionType.getQualifiedName ().toString ();
+                if (!visiting.add (typeName)) {
+                        this.processingEnv.getMessager ().printMessage (error, "Configuration section contains itself.", sectionType);
+                        return null;
+                }
+
+                Section section = new Section (typeName);
+                Map<String, Object> paths = new LinkedHashMap<> ();
+
+                for (ExecutableElement method : ElementFilter.methodsIn (this.processingEnv.getElementUtils ().getAllMembers (sectionType))) {
+                        if (!method.getModifiers ().contains (Modifier.ABSTRACT)) { continue; }
+
+                        if (!method.getParameters ().isEmpty () || !method.getTypeParameters ().isEmpty () || !method.getThrownTypes ().isEmpty ()) {
+                                this.processingEnv.getMessager ().printMessage (error, "Configuration values need to be declared as methods without parameters.", method);
+                                return null;
+                        }
+
+                        ConfigValue annotation = method.getAnnotation (ConfigValue.class);
+                        String[] defaultValue = (annotation != null ? annotation.defaultValue () : new String[0]);
+                        String path = (annotation != null && !annotation.path ().isEmpty () ? annotation.path () : derivePath (method.getSimpleName ().toString ()));
+
+                        if (path.startsWith (".") || path.endsWith (".") || path.contains ("..")) {
+                                this.processingEnv.getMessager ().printMessage (error, "Invalid configuration path \"" + path + "\".", method);
+                                return null;
+                        }
+
+                        TypeMirror type = method.getReturnType ();
+                        Kind kind = this.getKind (type);
+
+                        if (kind == null) {
+                                this.processingEnv.getMessager ().printMessage (error, "Unsupported configuration value type " + type + ".", method);
+                                return null;
+                        }
+
+                        // paths may not be bound more than once nor may values be bound to a path within another value
+                        if (!merge (paths, path, (kind == Kind.SECTION ? new LinkedHashMap<> () : Boolean.TRUE))) {
+                                this.processingEnv.getMessager ().printMessage (error, "Configuration path \"" + path + "\" conflicts with another value.", method);
+                                return null;
+                        }
+
+                        Binding binding = new Binding (method.getSimpleName ().toString (), type.toString (), path);
+                        binding.kind = kind;
+
+                        if (binding.kind == Kind.SECTION) {
+                                if (defaultValue.length != 0) {
+                                        this.processingEnv.getMessager ().printMessage (error, "Nested configuration sections cannot declare a default value.", method);
+                                        return null;
+                                }
+
+                                binding.section = this.collect ((TypeElement) ((DeclaredType) type).asElement (), rootPackage, visiting);
+                                if (binding.section == null) { return null; }
+                        } else {
+                                binding.defaultValue = parseDefault (binding.kind, defaultValue);
+
+                                if (binding.defaultValue == null) {
+                                        this.processingEnv.getMessager ().printMessage (error, "Invalid default value for configuration value of type " + type + ".", method);
+                                        return null;
+                                }
+                        }
+
+                        section.bindings.add (binding);
+                }
+
+                visiting.remove (typeName);
+                return section;
+        }
+
+        /**
+         * Resolves the kind of value represented by a type.
+         *
+         * @param type The type.
+         * @return The kind or null if not supported.
+         */
+        private Kind getKind (TypeMirror type) {
+                switch (type.getKind ()) {
+                        case INT: return Kind.INT;
+                        case LONG: return Kind.LONG;
+                        case FLOAT: return Kind.FLOAT;
+                        case DOUBLE: return Kind.DOUBLE;
+                        case BOOLEAN: return Kind.BOOLEAN;
+                        case DECLARED:
+                                DeclaredType declaredType = (DeclaredType) type;
+                                String name = ((TypeElement) declaredType.asElement ()).getQualifiedName ().toString ();
+
+                                if (String.class.getName ().equals (name)) { return Kind.STRING; }
+
+                                if (List.class.getName ().equals (name)) {
+                                        List<? extends TypeMirror> arguments = declaredType.getTypeArguments ();
+                                        return (arguments.size () == 1 && arguments.get (0).getKind () == TypeKind.DECLARED && String.class.getName ().equals (((TypeElement) ((DeclaredType) arguments.get (0)).asElement ()).getQualifiedName ().toString ()) ? Kind.LIST : null);
+                                }
+
+                                return (declaredType.asElement ().getKind () == ElementKind.INTERFACE ? Kind.SECTION : null);
+                        default:
+                                return null;
+                }
+        }
+
+        /**
+         * Checks whether the specified type may be referenced from within a package.
+         *
+         * @param typeElement The type.
+         * @param packageName The package name.
+         * @return True if accessible.
+         */
+        private boolean isAccessibleFrom (TypeElement typeElement, String packageName) {
+                boolean samePackage = this.getPackageName (typeElement).equals (packageName);
+                Element element = typeElement;
+
+                while (element instanceof TypeElement) {
+                        NestingKind nestingKind = ((TypeElement) element).getNestingKind ();
+
+                        if (element.getModifiers ().contains (Modifier.PRIVATE) || (nestingKind != NestingKind.TOP_LEVEL && nestingKind != NestingKind.MEMBER)) { return false; }
+                        if (!samePackage && !element.getModifiers ().contains (Modifier.PUBLIC)) { return false; }
+                        element = element.getEnclosingElement ();
+                }
+
+                return true;
+        }
+
+        /**
+         * Retrieves the name of the package which contains the specified type.
+         *
+         * @param typeElement The type.
+         * @return The package name.
+         */
+        private String getPackageName (TypeElement typeElement) {
+                return this.processingEnv.getElementUtils ().getPackageOf (typeElement).getQualifiedName ().toString ();
+        }
+
+        /**
+         * Derives a configuration path from a method name (for instance {@code spawnRadius} becomes {@code spawn-radius}).
+         *
+         * @param name The method name.
+         * @return The path.
+         */
+        public static String derivePath (String name) {
+                StringBuilder builder = new StringBuilder ();
+
+                for (int i = 0; i < name.length (); i++) {
+                        char c = name.charAt (i);
+
+                        if (Character.isUpperCase (c) && i != 0 && (Character.isLowerCase (name.charAt (i - 1)) || Character.isDigit (name.charAt (i - 1)))) {
+                                builder.append ('-');
+                        }
+
+                        builder.append (Character.toLowerCase (c));
+                }
+
+                return builder.toString ();
+        }
+
+        /**
+         * Parses the declared default value of a binding.
+         *
+         * @param kind The kind of value.
+         * @param values The declared values.
+         * @return The default value (a string, boolean, number or string array) or null if invalid.
+         */
+        private static Object parseDefault (Kind kind, String[] values) {
+                if (kind == Kind.LIST) { return values; }
+                if (values.length > 1) { return null; }
+
+                String value = (values.length == 0 ? null : values[0].trim ());
+
+                try {
+                        switch (kind) {
+                                case STRING: return (values.length == 0 ? "" : values[0]);
+                                case INT: return (value == null ? 0 : Integer.parseInt (value));
+                                case LONG: return (value == null ? 0L : Long.parseLong (value));
+                                case FLOAT:
+                                        float floatValue = (value == null ? 0.0f : Float.parseFloat (value));
+                                        return (Float.isInfinite (floatValue) || Float.isNaN (floatValue) ? null : floatValue);
+                                case DOUBLE:
+                                        double doubleValue = (value == null ? 0.0 : Double.parseDouble (value));
+                                        return (Double.isInfinite (doubleValue) || Double.isNaN (doubleValue) ? null : doubleValue);
+                                case BOOLEAN:
+                                        if (value == null || "false".equalsIgnoreCase (value)) { return false; }
+                                        return ("true".equalsIgnoreCase (value) ? true : null);
+                                default:
+                                        return null;
+                        }
+                } catch (NumberFormatException ex) {
+                        return null;
+                }
+        }
+
+        /**
+         * Converts the default value of a binding into a Java literal.
+         *
+         * @param binding The binding.
+         * @return The literal.
+         */
+        private static String literal (Binding binding) {
+                switch (binding.kind) {
+                        case STRING: return SourceWriter.literal ((String) binding.defaultValue);
+                        case LONG: return binding.defaultValue + "L";
+                        case FLOAT: return binding.defaultValue + "f";
+                        default: return String.valueOf (binding.defaultValue);
+                }
+        }
+
+        /**
+         * Retrieves the name of the constant which holds the default value of a list binding.
+         *
+         * @param binding The binding.
+         * @return The constant name.
+         */
+        private static String defaultConstant (Binding binding) {
+                return "DEFAULT_" + derivePath (binding.name).replace ('-', '_').toUpperCase (Locale.ENGLISH);
+        }
+
+        /**
+         * Converts an array of strings into a comma separated list of literals.
+         *
+         * @param values The values.
+         * @return The literals.
+         */
+        private static String literals (String[] values) {
+                StringBuilder builder = new StringBuilder ();
+
+                for (String value : values) {
+                        if (builder.length () != 0) { builder.append (", "); }
+                        builder.append (SourceWriter.literal (value));
+                }
+
+                return builder.toString ();
+        }
+
+        /**
+         * Merges a value into a tree of default values.
+         *
+         * @param tree The tree.
+         * @param path The path of the value (relative to the tree).
+         * @param value The value (or a map of values).
+         * @return True if merged, false if the path conflicts with a value which is already present.
+         */
+        @SuppressWarnings ("unchecked")
+        public static boolean merge (Map<String, Object> tree, String path, Object value) {
+                int separator = path.indexOf ('.');
+
+                if (separator != -1) {
+                        return merge (tree, path.substring (0, separator), merge (path.substring (separator + 1), value));
+                }
+
+                Object previous = tree.get (path);
+                if (previous == null) {
+                        tree.put (path, value);
+                        return true;
+                }
+
+                if (!(previous instanceof Map) || !(value instanceof Map)) { return false; }
+
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet ()) {
+                        if (!merge ((Map<String, Object>) previous, entry.getKey (), entry.getValue ())) { return false; }
+                }
+
+                return true;
+        }
+
+        /**
+         * Wraps a value into a tree of maps which represent the specified path.
+         *
+         * @param path The path.
+         * @param value The value.
+         * @return The tree.
+         */
+        private static Map<String, Object> merge (String path, Object value) {
+                Map<String, Object> tree = new LinkedHashMap<> ();
+                merge (tree, path, value);
+                return tree;
+        }
+
+        /**
+         * Represents the kind of value a method is bound to.
+         */
+        private enum Kind {
+                STRING,
+                INT,
+                LONG,
+                FLOAT,
+                DOUBLE,
+                BOOLEAN,
+                LIST,
+                SECTION
+        }
+
+        /**
+         * Represents a method which has been bound to a configuration value.
+         */
+        private static final class Binding {
+                final String name;
+                final String type;
+                final String path;
+                Kind kind;
+                Object defaultValue;
+                Section section;
+
+                Binding (String name, String type, String path) {
+                        this.name = name;
+                        this.type = type;
+                        this.path = path;
+                }
+        }
+
+        /**
+         * Represents a (possibly nested) configuration section.
+         */
+        private static final class Section {
+                final String typeName;
+                final List<Binding> bindings = new ArrayList<> ();
+                String className;
+
+                Section (String typeName) {
+                        this.typeName = typeName;
+                }
+
+                /**
+                 * Retrieves all nested sections (assigning each of them a unique class name).
+                 *
+                 * @return The sections.
+                 */
+                List<Section> descendants () {
+                        List<Section> sections = new ArrayList<> ();
+                        this.descendants (sections);
+                        return sections;
+                }
+
+                private void descendants (List<Section> sections) {
+                        for (Binding binding : this.bindings) {
+                                if (binding.section == null) { continue; }
+
+                                sections.add (binding.section);
+                                binding.section.className = "Section" + sections.size ();
+                                binding.section.descendants (sections);
+                        }
+                }
+
+                /**
+                 * Builds the tree of default values of this section.
+                 *
+                 * @return The tree.
+                 */
+                Map<String, Object> defaults () {
+                        Map<String, Object> tree = new LinkedHashMap<> ();
+
+                        for (Binding binding : this.bindings) {
+                                ConfigSnapshotGenerator.merge (tree, binding.path, (binding.section != null ? binding.section.defaults () : binding.defaultValue));
+                        }
+
+                        return tree;
+                }
+        }
+}
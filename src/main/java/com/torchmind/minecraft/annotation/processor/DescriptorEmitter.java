@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import java.io.IOException;
+
+/**
+ * Provides a streaming interface for writing plugin descriptors.
+ *
+ * Implementations write each value as soon as it is passed to them and thus do not require the descriptor to be
+ * represented as an object tree first.
+ *
+ * @author Johannes Donath
+ */
+public interface DescriptorEmitter {
+
+        /**
+         * Begins a nested map.
+         *
+         * @param key The map key.
+         * @throws IOException when writing fails.
+         */
+        void beginMap (String key) throws IOException;
+
+        /**
+         * Ends the current nested map.
+         *
+         * @throws IOException when writing fails.
+         */
+        void endMap () throws IOException;
+
+        /**
+         * Writes a string value.
+         *
+         * @param key The key.
+         * @param value The value.
+         * @throws IOException when writing fails.
+         */
+        void value (String key, String value) throws IOException;
+
+        /**
+         * Writes a boolean value.
+         *
+         * @param key The key.
+         * @param value The value.
+         * @throws IOException when writing fails.
+         */
+        void value (String key, boolean value) throws IOException;
+
+        /**
+         * Writes a list of strings.
+         *
+         * @param key The key.
+         * @param values The values.
+         * @throws IOException when writing fails.
+         */
+        void value (String key, String[] values) throws IOException;
+
+        /**
+         * Finishes the descriptor.
+         *
+         * @throws IOException when writing fails.
+         */
+        void finish () throws IOException;
+}
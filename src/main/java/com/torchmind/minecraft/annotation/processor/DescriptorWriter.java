@@ -0,0 +1,270 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.Plugin;
+import com.torchmind.minecraft.annotation.command.Command;
+import com.torchmind.minecraft.annotation.dependency.Dependency;
+import com.torchmind.minecraft.annotation.dependency.LoadBefore;
+import com.torchmind.minecraft.annotation.dependency.SoftDependency;
+import com.torchmind.minecraft.annotation.permission.ChildPermission;
+import com.torchmind.minecraft.annotation.permission.Permission;
+import org.bukkit.permissions.PermissionDefault;
+import org.bukkit.plugin.PluginLoadOrder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts plugin, command and permission annotations into descriptor values.
+ *
+ * This logic is shared between the {@link PluginAnnotationProcessor} and the
+ * {@link com.torchmind.minecraft.annotation.tool.DescriptorGenerator} in order to guarantee that both produce the
+ * exact same descriptor regardless of whether the annotations have been read from sources or class files.
+ *
+ * @author Johannes Donath
+ */
+public final class DescriptorWriter {
+
+        private DescriptorWriter () {
+        }
+
+        /**
+         * Creates the top level descriptor values of a plugin.
+         *
+         * Values are only included if they differ from Bukkit's defaults and are kept in the order in which they will be
+         * written to the descriptor.
+         *
+         * @param mainClass The qualified name of the main plugin class.
+         * @param annotation The plugin annotation.
+         * @param name The (resolved) plugin name.
+         * @param version The (resolved) plugin version.
+         * @param dependencies The hard dependencies.
+         * @param loadBeforePlugins The plugins to load before.
+         * @param softDependencies The soft dependencies.
+         * @return The descriptor values.
+         */
+        public static Map<String, Object> createValues (String mainClass, Plugin annotation, String name, String version, Dependency[] dependencies, LoadBefore[] loadBeforePlugins, SoftDependency[] softDependencies) {
+                Map<String, Object> plugin = new LinkedHashMap<> ();
+
+                plugin.put ("main", mainClass);
+                plugin.put ("name", name);
+                plugin.put ("version", version);
+
+                if (!"".equals (annotation.description ())) {
+                        plugin.put ("description", annotation.description ());
+                }
+
+                if (PluginLoadOrder.POSTWORLD != annotation.load ()) {
+                        plugin.put ("load", annotation.load ().toString ());
+                }
+
+                if (annotation.author ().length == 1) {
+                        plugin.put ("author", annotation.author ()[0]);
+                } else if (annotation.author ().length > 1) {
+                        plugin.put ("authors", annotation.author ());
+                }
+
+                if (!"".equals (annotation.website ())) { plugin.put ("website", annotation.website ()); }
+                if (annotation.database ()) { plugin.put ("database", annotation.database ()); }
+                if (!"".equals (annotation.prefix ())) { plugin.put ("prefix", annotation.prefix ()); }
+
+                if (dependencies.length > 0) {
+                        String[] pluginDependencies = new String[dependencies.length];
+
+                        for (int i = 0; i < pluginDependencies.length; i++) {
+                                pluginDependencies[i] = dependencies[i].value ();
+                        }
+
+                        plugin.put ("depend", pluginDependencies);
+                }
+
+                if (loadBeforePlugins.length > 0) {
+                        String[] loadBefore = new String[loadBeforePlugins.length];
+
+                        for (int i = 0; i < loadBefore.length; i++) {
+                                loadBefore[i] = loadBeforePlugins[i].value ();
+                        }
+
+                        plugin.put ("loadbefore", loadBefore);
+                }
+
+                if (softDependencies.length > 0) {
+                        String[] pluginDependencies = new String[softDependencies.length];
+
+                        for (int i = 0; i < pluginDependencies.length; i++) {
+                                pluginDependencies[i] = softDependencies[i].value ();
+                        }
+
+                        plugin.put ("softdepend", pluginDependencies);
+                }
+
+                return plugin;
+        }
+
+        /**
+         * Passes a plugin descriptor to an emitter.
+         *
+         * @param emitter The emitter.
+         * @param plugin The top level descriptor values.
+         * @param commands The commands (in the order in which they are to be written).
+         * @param usages The usages derived for commands which do not declare one (indexed by command name).
+         * @param permissions The permissions (in the order in which they are to be written).
+         * @param timingsCommand The name of the generated timings command or null if commands are not instrumented.
+         * @throws IOException when writing fails.
+         */
+        public static void emitDescriptor (DescriptorEmitter emitter, Map<String, Object> plugin, Collection<Command> commands, Map<String, String> usages, Collection<Permission> permissions, String timingsCommand) throws IOException {
+                for (Map.Entry<String, Object> entry : plugin.entrySet ()) {
+                        if (entry.getValue () instanceof String[]) {
+                                emitter.value (entry.getKey (), (String[]) entry.getValue ());
+                        } else if (entry.getValue () instanceof Boolean) {
+                                emitter.value (entry.getKey (), (boolean) entry.getValue ());
+                        } else {
+                                emitter.value (entry.getKey (), entry.getValue ().toString ());
+                        }
+                }
+
+                emitter.beginMap ("commands");
+                for (Command command : commands) {
+                        emitCommand (emitter, command, usages.get (command.name ()));
+                }
+
+                if (timingsCommand != null) {
+                        emitter.beginMap (timingsCommand);
+                        emitter.value ("description", "Reports the execution times of all commands.");
+                        emitter.value ("permission", timingsCommand + ".use");
+                        emitter.value ("usage", "/<command> [reset|export]");
+                        emitter.endMap ();
+                }
+                emitter.endMap ();
+
+                emitter.beginMap ("permissions");
+                for (Permission permission : permissions) {
+                        emitPermission (emitter, permission);
+                }
+                emitter.endMap ();
+
+                emitter.finish ();
+        }
+
+        /**
+         * Emits the dependency fragment which is consumed by the
+         * {@link com.torchmind.minecraft.annotation.tool.LoadPlanner} when assembling a server wide load plan.
+         *
+         * @param emitter The emitter.
+         * @param plugin The top level descriptor values.
+         * @throws IOException when emitting fails.
+         */
+        public static void emitDependencies (DescriptorEmitter emitter, Map<String, Object> plugin) throws IOException {
+                emitter.value ("name", (String) plugin.get ("name"));
+                emitter.value ("version", (String) plugin.get ("version"));
+                emitter.value ("load", (String) plugin.getOrDefault ("load", PluginLoadOrder.POSTWORLD.toString ()));
+
+                for (String key : new String[] {"depend", "softdepend", "loadbefore"}) {
+                        emitter.value (key, (String[]) plugin.getOrDefault (key, new String[0]));
+                }
+
+                emitter.finish ();
+        }
+
+        /**
+         * Emits a single command.
+         *
+         * @param emitter The descriptor emitter.
+         * @param commandAnnotation The annotation.
+         * @param derivedUsage The usage to fall back to if the annotation does not specify one or null.
+         * @throws IOException when writing fails.
+         */
+        public static void emitCommand (DescriptorEmitter emitter, Command commandAnnotation, String derivedUsage) throws IOException {
+                emitter.beginMap (commandAnnotation.name ());
+
+                if (commandAnnotation.aliases ().length == 1) {
+                        emitter.value ("aliases", commandAnnotation.aliases ()[0]);
+                } else if (commandAnnotation.aliases ().length > 1) {
+                        emitter.value ("aliases", commandAnnotation.aliases ());
+                }
+
+                if (!"".equals (commandAnnotation.description ())) {
+                        emitter.value ("description", commandAnnotation.description ());
+                }
+                if (!"".equals (commandAnnotation.permission ())) {
+                        emitter.value ("permission", commandAnnotation.permission ());
+                }
+                if (!"".equals (commandAnnotation.permissionMessage ())) {
+                        emitter.value ("permission-message", commandAnnotation.permissionMessage ());
+                }
+                if (!"".equals (commandAnnotation.usage ())) {
+                        emitter.value ("usage", commandAnnotation.usage ());
+                } else if (derivedUsage != null) {
+                        emitter.value ("usage", derivedUsage);
+                }
+
+                emitter.endMap ();
+        }
+
+        /**
+         * Derives the usage of a command method from its parameter names.
+         *
+         * @param parameterNames The names of all parameters following the command sender.
+         * @param varArgs Indicates whether the last parameter accepts a variable amount of arguments.
+         * @return The usage.
+         */
+        public static String deriveUsage (List<String> parameterNames, boolean varArgs) {
+                StringBuilder builder = new StringBuilder ("/<command>");
+
+                for (int i = 0; i < parameterNames.size (); i++) {
+                        boolean last = (varArgs && i == parameterNames.size () - 1);
+                        builder.append (last ? " [" : " <").append (parameterNames.get (i)).append (last ? "...]" : ">");
+                }
+
+                return builder.toString ();
+        }
+
+        /**
+         * Emits a single permission.
+         *
+         * @param emitter The descriptor emitter.
+         * @param permissionAnnotation The annotation.
+         * @throws IOException when writing fails.
+         */
+        public static void emitPermission (DescriptorEmitter emitter, Permission permissionAnnotation) throws IOException {
+                emitter.beginMap (permissionAnnotation.name ());
+
+                if (!"".equals (permissionAnnotation.description ())) {
+                        emitter.value ("description", permissionAnnotation.description ());
+                }
+
+                if (PermissionDefault.OP != permissionAnnotation.defaultValue ()) {
+                        emitter.value ("default", permissionAnnotation.defaultValue ().toString ().toLowerCase ());
+                }
+
+                if (permissionAnnotation.children ().length > 0) {
+                        emitter.beginMap ("children");
+
+                        for (ChildPermission childPermission : permissionAnnotation.children ()) {
+                                emitter.value (childPermission.value (), childPermission.inherit ());
+                        }
+
+                        emitter.endMap ();
+                }
+
+                emitter.endMap ();
+        }
+}
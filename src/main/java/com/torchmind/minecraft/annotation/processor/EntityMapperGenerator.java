@@ -0,0 +1,499 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.persistence.Column;
+import com.torchmind.minecraft.annotation.persistence.Entity;
+import com.torchmind.minecraft.annotation.persistence.Id;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Generates reflection free row mappers for persistent entities.
+ *
+ * Each mapper binds the fields of its entity to prepared statements and reads them back from result sets by column
+ * index (the select statement lists its columns in the very same order as the insert and update statements) and thus
+ * neither relies on reflection nor on looking up columns by name. The statements themselves are restricted to plain
+ * SQL which is understood by H2, SQLite and MySQL alike.
+ *
+ * @author Johannes Donath
+ */
+public class EntityMapperGenerator {
+        public static final String SUFFIX = "Mapper";
+        private static final Pattern IDENTIFIER = Pattern.compile ("[A-Za-z_][A-Za-z0-9_]*");
+        private final ProcessingEnvironment processingEnv;
+
+        public EntityMapperGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Retrieves the simple name of the class generated for the specified entity.
+         *
+         * Nested entity types are flattened by joining the names of all enclosing types with an underscore.
+         *
+         * @param entityType The entity type.
+         * @return The simple name.
+         */
+        public String getGeneratedName (TypeElement entityType) {
+                String packageName = this.getPackageName (entityType);
+                String qualifiedName = entityType.getQualifiedName ().toString ();
+
+                return (packageName.isEmpty () ? qualifiedName : qualifiedName.substring (packageName.length () + 1)).replace ('.', '_') + SUFFIX;
+        }
+
+        /**
+         * Generates the mapper for the specified entity.
+         *
+         * @param entityType The entity type.
+         * @return True if the mapper was generated, false if an error has been raised.
+         * @throws IOException when writing the source file fails.
+         */
+        public boolean generate (TypeElement entityType) throws IOException {
+                List<Property> properties = this.collect (entityType);
+                if (properties == null) { return false; }
+
+                String entityPackage = this.getPackageName (entityType);
+                String generatedName = this.getGeneratedName (entityType);
+                String qualifiedName = (entityPackage.isEmpty () ? generatedName : entityPackage + "." + generatedName);
+                String entityName = entityType.getQualifiedName ().toString ();
+
+                String table = entityType.getAnnotation (Entity.class).table ();
+                if (table.isEmpty ()) { table = derive (entityType.getSimpleName ().toString ()); }
+
+                if (!IDENTIFIER.matcher (table).matches ()) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Invalid table name \"" + table + "\".", entityType);
+                        return false;
+                }
+
+                // the identifier is always kept as last property so that the insert and update statements share the
+                // order of their parameters
+                Property id = properties.get (properties.size () - 1);
+                List<Property> columns = properties.subList (0, properties.size () - 1);
+                String queueType = "com.torchmind.minecraft.annotation.runtime.WriteBehindQueue";
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, entityType).openWriter ())) {
+                        if (!entityPackage.isEmpty ()) {
+                                writer.line ("package %s;", entityPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Maps {@link %s} onto the rows of table %s.", entityName, table);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s implements com.torchmind.minecraft.annotation.runtime.EntityMapper<%s, %s>", generatedName, entityName, id.boxedType);
+                        writer.line ("public static final %s INSTANCE = new %s ();", generatedName, generatedName);
+                        writer.line ();
+
+                        writer.open ("private %s ()", generatedName);
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Creates a write-behind queue which persists entities of this type using the default batch size and");
+                        writer.line (" * flush interval.");
+                        writer.line (" *");
+                        writer.line (" * @param connectionFactory The connection factory.");
+                        writer.line (" * @return The queue.");
+                        writer.line (" */");
+                        writer.open ("public static %s<%s, %s> queue (%s.ConnectionFactory connectionFactory)", queueType, entityName, id.boxedType, queueType);
+                        writer.line ("return new %s<> (INSTANCE, connectionFactory);", queueType);
+                        writer.end ();
+
+                        StringBuilder definitions = new StringBuilder ();
+                        StringBuilder names = new StringBuilder ();
+                        StringBuilder parameters = new StringBuilder ();
+                        StringBuilder assignments = new StringBuilder ();
+
+                        for (Property property : properties) {
+                                if (names.length () != 0) {
+                                        definitions.append (", ");
+                                        names.append (", ");
+                                        parameters.append (", ");
+                                }
+
+                                definitions.append (property.column).append (' ').append (property.kind.getDefinition (property.length)).append ((property.primitive || property == id ? " NOT NULL" : ""));
+                                names.append (property.column);
+                                parameters.append ('?');
+                        }
+
+                        for (Property property : columns) {
+                                if (assignments.length () != 0) { assignments.append (", "); }
+                                assignments.append (property.column).append (" = ?");
+                        }
+
+                        this.writeStatement (writer, "getTable", table);
+                        this.writeStatement (writer, "getCreateStatement", "CREATE TABLE IF NOT EXISTS " + table + " (" + definitions + ", PRIMARY KEY (" + id.column + "))");
+                        this.writeStatement (writer, "getSelectStatement", "SELECT " + names + " FROM " + table + " WHERE " + id.column + " = ?");
+                        this.writeStatement (writer, "getInsertStatement", "INSERT INTO " + table + " (" + names + ") VALUES (" + parameters + ")");
+                        this.writeStatement (writer, "getUpdateStatement", "UPDATE " + table + " SET " + assignments + " WHERE " + id.column + " = ?");
+                        this.writeStatement (writer, "getDeleteStatement", "DELETE FROM " + table + " WHERE " + id.column + " = ?");
+
+                        writer.line ();
+                        writer.line ("@Override");
+                        writer.open ("public %s getKey (%s entity)", id.boxedType, entityName);
+                        writer.line ("return entity.%s;", id.name);
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("@Override");
+                        writer.open ("public %s copy (%s entity)", entityName, entityName);
+                        writer.line ("%s copy = new %s ();", entityName, entityName);
+                        for (Property property : properties) { writer.line ("copy.%s = entity.%s;", property.name, property.name); }
+                        writer.line ("return copy;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("@Override");
+                        writer.open ("public void bind (java.sql.PreparedStatement statement, %s entity) throws java.sql.SQLException", entityName);
+                        for (int i = 0; i < properties.size (); i++) { this.writeBind (writer, i + 1, "entity." + properties.get (i).name, properties.get (i)); }
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("@Override");
+                        writer.open ("public void bindKey (java.sql.PreparedStatement statement, %s key) throws java.sql.SQLException", id.boxedType);
+                        this.writeBind (writer, 1, "key", id);
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("@Override");
+                        writer.open ("public %s map (java.sql.ResultSet resultSet) throws java.sql.SQLException", entityName);
+                        writer.line ("%s entity = new %s ();", entityName, entityName);
+                        for (int i = 0; i < properties.size (); i++) { this.writeMap (writer, i + 1, properties.get (i)); }
+                        writer.line ("return entity;");
+                        writer.end ();
+                        writer.end ();
+                }
+
+                return true;
+        }
+
+        /**
+         * Writes a method which returns a constant statement.
+         *
+         * @param writer The writer.
+         * @param methodName The method name.
+         * @param statement The statement.
+         * @throws IOException when writing fails.
+         */
+        private void writeStatement (SourceWriter writer, String methodName, String statement) throws IOException {
+                writer.line ();
+                writer.line ("@Override");
+                writer.open ("public String %s ()", methodName);
+                writer.line ("return %s;", SourceWriter.literal (statement));
+                writer.end ();
+        }
+
+        /**
+         * Writes the statements which bind a value to a statement parameter.
+         *
+         * @param writer The writer.
+         * @param index The parameter index.
+         * @param value The value expression.
+         * @param property The property.
+         * @throws IOException when writing fails.
+         */
+        private void writeBind (SourceWriter writer, int index, String value, Property property) throws IOException {
+                if (property.primitive) {
+                        writer.line ("statement.set%s (%d, %s);", property.kind.accessor, index, value);
+                        return;
+                }
+
+                String converted;
+
+                switch (property.kind) {
+                        case UUID: converted = value + ".toString ()"; break;
+                        case ENUM: converted = value + ".name ()"; break;
+                        default: converted = value;
+                }
+
+                writer.line ("if (%s == null) { statement.setNull (%d, java.sql.Types.%s); } else { statement.set%s (%d, %s); }", value, index, property.kind.sqlType, property.kind.accessor, index, converted);
+        }
+
+        /**
+         * Writes the statements which read a property from a result set.
+         *
+         * @param writer The writer.
+         * @param index The column index.
+         * @param property The property.
+         * @throws IOException when writing fails.
+         */
+        private void writeMap (SourceWriter writer, int index, Property property) throws IOException {
+                if (property.primitive || property.kind == Kind.STRING) {
+                        writer.line ("entity.%s = resultSet.get%s (%d);", property.name, property.kind.accessor, index);
+                        return;
+                }
+
+                switch (property.kind) {
+                        case UUID:
+                                writer.line ("String value%d = resultSet.getString (%d);", index, index);
+                                writer.line ("entity.%s = (value%d != null ? java.util.UUID.fromString (value%d) : null);", property.name, index, index);
+                                break;
+                        case ENUM:
+                                writer.line ("String value%d = resultSet.getString (%d);", index, index);
+                                writer.line ("entity.%s = (value%d != null ? %s.valueOf (value%d) : null);", property.name, index, property.type, index);
+                                break;
+                        default:
+                                // wrapper types need to be checked for null since primitive getters return zero instead
+                                writer.line ("%s value%d = resultSet.get%s (%d);", property.kind.primitiveType, index, property.kind.accessor, index);
+                                writer.line ("entity.%s = (resultSet.wasNull () ? null : %s.valueOf (value%d));", property.name, property.type, index);
+                }
+        }
+
+        /**
+         * Collects the persistent properties of an entity type.
+         *
+         * @param entityType The entity type.
+         * @return The properties (with the identifier as last element) or null if the entity is invalid.
+         */
+        private List<Property> collect (TypeElement entityType) {
+                Diagnostic.Kind error = Diagnostic.Kind.ERROR;
+
+                if (entityType.getKind () != ElementKind.CLASS || entityType.getModifiers ().contains (Modifier.ABSTRACT) || !entityType.getTypeParameters ().isEmpty ()) {
+                        this.processingEnv.getMessager ().printMessage (error, "Entities need to be non-abstract, non-generic classes.", entityType);
+                        return null;
+                }
+
+                if (!this.isConstructible (entityType)) {
+                        this.processingEnv.getMessager ().printMessage (error, "Entity needs to be accessible from within its package and declare a default constructor.", entityType);
+                        return null;
+                }
+
+                List<Property> properties = new ArrayList<> ();
+                Set<String> columnNames = new HashSet<> ();
+                Property id = null;
+
+                for (VariableElement field : ElementFilter.fieldsIn (entityType.getEnclosedElements ())) {
+                        Column column = field.getAnnotation (Column.class);
+                        boolean identifier = (field.getAnnotation (Id.class) != null);
+                        if (column == null && !identifier) { continue; }
+
+                        if (field.getModifiers ().contains (Modifier.PRIVATE) || field.getModifiers ().contains (Modifier.STATIC) || field.getModifiers ().contains (Modifier.FINAL)) {
+                                this.processingEnv.getMessager ().printMessage (error, "Persistent fields may neither be private, static nor final.", field);
+                                return null;
+                        }
+
+                        TypeMirror type = field.asType ();
+                        Kind kind = this.getKind (type);
+
+                        if (kind == null) {
+                                this.processingEnv.getMessager ().printMessage (error, "Unsupported column type " + type + ".", field);
+                                return null;
+                        }
+
+                        String name = (column != null && !column.name ().isEmpty () ? column.name () : derive (field.getSimpleName ().toString ()));
+
+                        if (!IDENTIFIER.matcher (name).matches () || !columnNames.add (name.toLowerCase (Locale.ENGLISH))) {
+                                this.processingEnv.getMessager ().printMessage (error, "Invalid or duplicate column name \"" + name + "\".", field);
+                                return null;
+                        }
+
+                        if (column != null && column.length () < 1) {
+                                this.processingEnv.getMessager ().printMessage (error, "Column length needs to be positive.", field);
+                                return null;
+                        }
+
+                        Property property = new Property (field.getSimpleName ().toString (), name, kind, this.processingEnv.getTypeUtils ().erasure (type).toString (), (column != null ? column.length () : 255));
+                        property.primitive = type.getKind ().isPrimitive ();
+                        property.boxedType = (property.primitive ? this.processingEnv.getTypeUtils ().boxedClass ((PrimitiveType) type).getQualifiedName ().toString () : property.type);
+
+                        if (!identifier) {
+                                properties.add (property);
+                                continue;
+                        }
+
+                        if (id != null) {
+                                this.processingEnv.getMessager ().printMessage (error, "Entities may only declare a single @Id field.", field);
+                                return null;
+                        }
+
+                        id = property;
+                }
+
+                if (id == null || properties.isEmpty ()) {
+                        this.processingEnv.getMessager ().printMessage (error, "Entities need to declare an @Id field and at least one @Column field.", entityType);
+                        return null;
+                }
+
+                properties.add (id);
+                return properties;
+        }
+
+        /**
+         * Checks whether the generated mapper may construct instances of the specified entity type.
+         *
+         * @param entityType The entity type.
+         * @return True if constructible.
+         */
+        private boolean isConstructible (TypeElement entityType) {
+                Element element = entityType;
+
+                while (element instanceof TypeElement) {
+                        NestingKind nestingKind = ((TypeElement) element).getNestingKind ();
+
+                        if (element.getModifiers ().contains (Modifier.PRIVATE) || (nestingKind != NestingKind.TOP_LEVEL && nestingKind != NestingKind.MEMBER)) { return false; }
+                        if (nestingKind == NestingKind.MEMBER && element == entityType && !element.getModifiers ().contains (Modifier.STATIC)) { return false; }
+                        element = element.getEnclosingElement ();
+                }
+
+                for (ExecutableElement constructor : ElementFilter.constructorsIn (entityType.getEnclosedElements ())) {
+                        if (constructor.getParameters ().isEmpty () && !constructor.getModifiers ().contains (Modifier.PRIVATE)) { return true; }
+                }
+
+                return false;
+        }
+
+        /**
+         * Resolves the kind of column a field type is stored in.
+         *
+         * @param type The field type.
+         * @return The kind or null if the type is not supported.
+         */
+        private Kind getKind (TypeMirror type) {
+                if (type.getKind ().isPrimitive ()) {
+                        return Kind.of (type.getKind ().name ());
+                }
+
+                if (!(type instanceof DeclaredType)) { return null; }
+                if (((DeclaredType) type).asElement ().getKind () == ElementKind.ENUM) { return Kind.ENUM; }
+
+                switch (this.processingEnv.getTypeUtils ().erasure (type).toString ()) {
+                        case "java.lang.String": return Kind.STRING;
+                        case "java.util.UUID": return Kind.UUID;
+                        default:
+                                try {
+                                        return Kind.of (this.processingEnv.getTypeUtils ().unboxedType (type).getKind ().name ());
+                                } catch (IllegalArgumentException ex) {
+                                        return null;
+                                }
+                }
+        }
+
+        /**
+         * Retrieves the name of the package which contains the specified type.
+         *
+         * @param typeElement The type.
+         * @return The package name.
+         */
+        private String getPackageName (TypeElement typeElement) {
+                return this.processingEnv.getElementUtils ().getPackageOf (typeElement).getQualifiedName ().toString ();
+        }
+
+        /**
+         * Derives a table or column name from a type or field name (for instance {@code lastSeen} becomes
+         * {@code last_seen}).
+         *
+         * @param name The type or field name.
+         * @return The table or column name.
+         */
+        public static String derive (String name) {
+                return ConfigSnapshotGenerator.derivePath (name).replace ('-', '_');
+        }
+
+        /**
+         * Represents the kinds of values which may be stored within a column.
+         */
+        private enum Kind {
+                BOOLEAN ("BOOLEAN", "Boolean", "BOOLEAN", "boolean"),
+                BYTE ("TINYINT", "Byte", "TINYINT", "byte"),
+                SHORT ("SMALLINT", "Short", "SMALLINT", "short"),
+                INT ("INTEGER", "Int", "INTEGER", "int"),
+                LONG ("BIGINT", "Long", "BIGINT", "long"),
+                FLOAT ("REAL", "Float", "REAL", "float"),
+                DOUBLE ("DOUBLE PRECISION", "Double", "DOUBLE", "double"),
+                STRING ("VARCHAR(%d)", "String", "VARCHAR", null),
+                UUID ("CHAR(36)", "String", "CHAR", null),
+                ENUM ("VARCHAR(%d)", "String", "VARCHAR", null);
+
+                final String definition;
+                final String accessor;
+                final String sqlType;
+                final String primitiveType;
+
+                Kind (String definition, String accessor, String sqlType, String primitiveType) {
+                        this.definition = definition;
+                        this.accessor = accessor;
+                        this.sqlType = sqlType;
+                        this.primitiveType = primitiveType;
+                }
+
+                /**
+                 * Retrieves the column definition.
+                 *
+                 * @param length The maximum length of string values.
+                 * @return The definition.
+                 */
+                String getDefinition (int length) {
+                        return String.format (this.definition, length);
+                }
+
+                /**
+                 * Resolves the kind which corresponds to a primitive type kind.
+                 *
+                 * @param typeKind The name of the primitive type kind.
+                 * @return The kind or null if the type is not supported.
+                 */
+                static Kind of (String typeKind) {
+                        for (Kind kind : values ()) {
+                                if (kind.primitiveType != null && kind.name ().equals (typeKind)) { return kind; }
+                        }
+
+                        return null;
+                }
+        }
+
+        /**
+         * Represents a field which has been bound to a column.
+         */
+        private static final class Property {
+                final String name;
+                final String column;
+                final Kind kind;
+                final String type;
+                final int length;
+                boolean primitive;
+                String boxedType;
+
+                Property (String name, String column, Kind kind, String type, int length) {
+                        this.name = name;
+                        this.column = column;
+                        this.kind = kind;
+                        this.type = type;
+                        this.length = length;
+                }
+        }
+}
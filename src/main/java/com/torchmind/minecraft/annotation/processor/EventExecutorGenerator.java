@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.EventHandler;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Generates reflection free event executors for all handlers declared by a listener.
+ *
+ * Bukkit invokes each handler registered via {@link org.bukkit.plugin.PluginManager#registerEvents(org.bukkit.event.Listener, org.bukkit.plugin.Plugin)}
+ * through {@link java.lang.reflect.Method#invoke(Object, Object...)}. The generated class provides one executor per
+ * handler which calls the handler method directly instead as well as a registration method which passes them on to
+ * {@link org.bukkit.plugin.PluginManager#registerEvent(Class, org.bukkit.event.Listener, org.bukkit.event.EventPriority, org.bukkit.plugin.EventExecutor, org.bukkit.plugin.Plugin, boolean)}.
+ *
+ * When profiling is enabled the executors additionally record the execution time of each handler as well as whether it
+ * cancelled the event within a {@link com.torchmind.minecraft.annotation.runtime.HandlerProfile} which is flushed to
+ * disk by the {@link com.torchmind.minecraft.annotation.runtime.HandlerProfiler} of the plugin.
+ *
+ * @author Johannes Donath
+ */
+public class EventExecutorGenerator {
+        public static final String SUFFIX = "EventExecutors";
+        private final ProcessingEnvironment processingEnv;
+        private final boolean profile;
+
+        public EventExecutorGenerator (ProcessingEnvironment processingEnv) {
+                this (processingEnv, false);
+        }
+
+        /**
+         * Constructs a new generator.
+         *
+         * @param processingEnv The processing environment.
+         * @param profile Indicates whether the generated executors are to be profiled.
+         */
+        public EventExecutorGenerator (ProcessingEnvironment processingEnv, boolean profile) {
+                this.processingEnv = processingEnv;
+                this.profile = profile;
+        }
+
+        /**
+         * Retrieves the simple name of the class generated for the specified listener.
+         *
+         * Nested listener types are flattened by joining the names of all enclosing types with an underscore.
+         *
+         * @param listenerType The listener type.
+         * @return The simple name.
+         */
+        public String getGeneratedName (TypeElement listenerType) {
+                String packageName = this.processingEnv.getElementUtils ().getPackageOf (listenerType).getQualifiedName ().toString ();
+                String qualifiedName = listenerType.getQualifiedName ().toString ();
+
+                return (packageName.isEmpty () ? qualifiedName : qualifiedName.substring (packageName.length () + 1)).replace ('.', '_') + SUFFIX;
+        }
+
+        /**
+         * Generates the executors for the specified listener.
+         *
+         * @param listenerType The listener type.
+         * @param handlers The handler methods (all of which need to be accessible from within the listener package).
+         * @throws IOException when writing the source file fails.
+         */
+        public void generate (TypeElement listenerType, List<ExecutableElement> handlers) throws IOException {
+                String listenerPackage = this.processingEnv.getElementUtils ().getPackageOf (listenerType).getQualifiedName ().toString ();
+                String listenerName = this.processingEnv.getTypeUtils ().erasure (listenerType.asType ()).toString ();
+                String generatedName = this.getGeneratedName (listenerType);
+                String qualifiedName = (listenerPackage.isEmpty () ? generatedName : listenerPackage + "." + generatedName);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, listenerType).openWriter ())) {
+                        if (!listenerPackage.isEmpty ()) {
+                                writer.line ("package %s;", listenerPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Provides reflection free executors for all event handlers declared by {@link %s}.", listenerName);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s", generatedName);
+                        if (this.profile) {
+                                writer.line ("private static final com.torchmind.minecraft.annotation.runtime.HandlerProfile PROFILE = new com.torchmind.minecraft.annotation.runtime.HandlerProfile (new String[] {");
+
+                                for (int i = 0; i < handlers.size (); i++) {
+                                        writer.line ("        %s%s", SourceWriter.literal (listenerType.getQualifiedName () + "#" + handlers.get (i).getSimpleName ()), (i + 1 < handlers.size () ? "," : ""));
+                                }
+
+                                writer.line ("});");
+                                writer.line ();
+                        }
+
+                        writer.open ("private %s ()", generatedName);
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Registers all event handlers of the specified listener.");
+                        writer.line (" *");
+                        writer.line (" * This method replaces calls to {@link org.bukkit.plugin.PluginManager#registerEvents(org.bukkit.event.Listener, org.bukkit.plugin.Plugin)}.");
+                        writer.line (" *");
+                        writer.line (" * @param listener The listener.");
+                        writer.line (" * @param plugin The owning plugin.");
+                        writer.line (" */");
+                        writer.open ("public static void register (%s listener, org.bukkit.plugin.Plugin plugin)", listenerName);
+                        writer.line ("org.bukkit.plugin.PluginManager pluginManager = plugin.getServer ().getPluginManager ();");
+
+                        for (int i = 0; i < handlers.size (); i++) {
+                                ExecutableElement handler = handlers.get (i);
+                                EventHandler annotation = handler.getAnnotation (EventHandler.class);
+
+                                writer.line ("pluginManager.registerEvent (%s.class, listener, org.bukkit.event.EventPriority.%s, new Executor%d (), plugin, %s);", this.getEventType (handler), annotation.priority ().name (), i, annotation.ignoreCancelled ());
+                        }
+
+                        if (this.profile) {
+                                writer.line ();
+                                writer.line ("com.torchmind.minecraft.annotation.runtime.HandlerProfiler.attach (plugin, PROFILE);");
+                        }
+
+                        writer.end ();
+
+                        if (this.profile) {
+                                writer.line ();
+                                writer.line ("/**");
+                                writer.line (" * Retrieves the profile which records the invocations of all event handlers.");
+                                writer.line (" *");
+                                writer.line (" * @return The profile.");
+                                writer.line (" */");
+                                writer.open ("public static com.torchmind.minecraft.annotation.runtime.HandlerProfile getProfile ()");
+                                writer.line ("return PROFILE;");
+                                writer.end ();
+                        }
+
+                        for (int i = 0; i < handlers.size (); i++) {
+                                ExecutableElement handler = handlers.get (i);
+                                String eventType = this.getEventType (handler);
+
+                                writer.line ();
+                                writer.open ("private static final class Executor%d implements org.bukkit.plugin.EventExecutor", i);
+                                writer.line ("@Override");
+                                writer.open ("public void execute (org.bukkit.event.Listener listener, org.bukkit.event.Event event) throws org.bukkit.event.EventException");
+
+                                // Bukkit shares handler lists between an event and its sub types (unless they declare
+                                // their own) and thus expects executors to filter out events they cannot handle
+                                writer.line ("if (!(event instanceof %s)) { return; }", eventType);
+                                writer.line ();
+
+                                // only cancellations performed by the handler itself are attributed to it
+                                boolean cancellable = this.profile && this.isCancellable (handler);
+
+                                if (cancellable) {
+                                        writer.line ("boolean cancelled = ((org.bukkit.event.Cancellable) event).isCancelled ();");
+                                }
+
+                                if (this.profile) {
+                                        writer.line ("long start = System.nanoTime ();");
+                                        writer.line ();
+                                }
+
+                                writer.open ("try");
+
+                                if (handler.getModifiers ().contains (Modifier.STATIC)) {
+                                        writer.line ("%s.%s ((%s) event);", this.processingEnv.getTypeUtils ().erasure (handler.getEnclosingElement ().asType ()), handler.getSimpleName (), eventType);
+                                } else {
+                                        writer.line ("((%s) listener).%s ((%s) event);", listenerName, handler.getSimpleName (), eventType);
+                                }
+
+                                writer.close (" catch (Throwable ex) {");
+                                writer.line ("        throw new org.bukkit.event.EventException (ex);");
+
+                                if (cancellable) {
+                                        writer.line ("} finally {");
+                                        writer.line ("        PROFILE.record (%d, start, !cancelled && ((org.bukkit.event.Cancellable) event).isCancelled ());", i);
+                                } else if (this.profile) {
+                                        writer.line ("} finally {");
+                                        writer.line ("        PROFILE.record (%d, start, false);", i);
+                                }
+
+                                writer.line ("}");
+                                writer.end ();
+                                writer.end ();
+                        }
+
+                        writer.end ();
+                }
+        }
+
+        /**
+         * Retrieves the (erased) event type accepted by the specified handler.
+         *
+         * @param handler The handler method.
+         * @return The qualified type name.
+         */
+        private String getEventType (ExecutableElement handler) {
+                return this.processingEnv.getTypeUtils ().erasure (handler.getParameters ().get (0).asType ()).toString ();
+        }
+
+        /**
+         * Checks whether the event accepted by the specified handler may be cancelled.
+         *
+         * @param handler The handler method.
+         * @return True if cancellable.
+         */
+        private boolean isCancellable (ExecutableElement handler) {
+                TypeElement cancellableType = this.processingEnv.getElementUtils ().getTypeElement (Cancellable.class.getName ());
+                return this.processingEnv.getTypeUtils ().isAssignable (handler.getParameters ().get (0).asType (), cancellableType.asType ());
+        }
+}
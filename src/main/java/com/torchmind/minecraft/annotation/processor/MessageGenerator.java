@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.message.Message;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a class which provides pre-compiled versions of all message templates declared by a plugin.
+ *
+ * Templates are split into literal segments and argument references at compile time (with their alternate color codes
+ * already translated) and thus formatting a message at runtime merely appends the segments and arguments to a reused
+ * builder instead of scanning the template for placeholders and color codes on every invocation.
+ *
+ * @author Johannes Donath
+ */
+public class MessageGenerator {
+        public static final String SUFFIX = "Messages";
+
+        // mirrors the codes accepted by ChatColor#translateAlternateColorCodes
+        private static final String COLOR_CODES = "0123456789AaBbCcDdEeFfKkLlMmNnOoRr";
+        private static final char COLOR_CHARACTER = '\u00a7';
+
+        // the send method passes the sender in addition to all arguments and the JVM limits methods to 255 parameters
+        private static final int MAXIMUM_ARGUMENTS = 254;
+
+        // builders which have been grown beyond this capacity by exceptionally long arguments are not reused
+        private static final int MAXIMUM_CAPACITY = 8192;
+
+        private static final Set<String> OBJECT_METHODS = new HashSet<> (Arrays.asList ("clone", "equals", "finalize", "getClass", "hashCode", "notify", "notifyAll", "toString", "wait"));
+
+        private final ProcessingEnvironment processingEnv;
+
+        public MessageGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Generates the messages class for the specified plugin.
+         *
+         * @param pluginPackage The plugin package.
+         * @param pluginType The qualified name of the plugin type.
+         * @param pluginSimpleName The simple name of the plugin type.
+         * @param messages The declared messages (indexed by key).
+         * @param originatingElements The elements which declared the messages.
+         * @return True if the class was generated, false if an error has been raised.
+         * @throws IOException when writing the source file fails.
+         */
+        public boolean generate (String pluginPackage, String pluginType, String pluginSimpleName, Map<String, Message> messages, Element[] originatingElements) throws IOException {
+                Map<String, String> methodNames = new HashMap<> ();
+                Map<String, List<Object>> segments = new HashMap<> ();
+                Set<String> usedNames = new HashSet<> ();
+
+                for (Message message : messages.values ()) {
+                        String methodName = methodName (message.key ());
+
+                        if (methodName == null) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Message key \"" + message.key () + "\" cannot be converted into a method name.");
+                                return false;
+                        }
+
+                        // static methods cannot hide the instance methods of Object (and overloading them is confusing)
+                        if (OBJECT_METHODS.contains (methodName)) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Message key \"" + message.key () + "\" converts into the method name " + methodName + " which collides with a method of java.lang.Object.");
+                                return false;
+                        }
+
+                        if (!usedNames.add (methodName) || !usedNames.add (sendMethodName (methodName))) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Message key \"" + message.key () + "\" collides with the method name of another message.");
+                                return false;
+                        }
+
+                        List<Object> compiled = compile (message.template ());
+
+                        if (argumentCount (compiled) > MAXIMUM_ARGUMENTS) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Message \"" + message.key () + "\" references more than " + MAXIMUM_ARGUMENTS + " arguments.");
+                                return false;
+                        }
+
+                        methodNames.put (message.key (), methodName);
+                        segments.put (message.key (), compiled);
+                }
+
+                String className = pluginSimpleName + SUFFIX;
+                String qualifiedName = (pluginPackage.isEmpty () ? className : pluginPackage + "." + className);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, originatingElements).openWriter ())) {
+                        if (!pluginPackage.isEmpty ()) {
+                                writer.line ("package %s;", pluginPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Provides pre-compiled versions of all message templates declared by {@link %s}.", pluginType);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s", className);
+                        writer.line ("private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial (() -> new StringBuilder (256));");
+                        writer.line ();
+
+                        writer.open ("private %s ()", className);
+                        writer.end ();
+
+                        for (Message message : messages.values ()) {
+                                this.writeMessage (writer, message.key (), methodNames.get (message.key ()), segments.get (message.key ()));
+                        }
+
+                        writer.end ();
+                }
+
+                return true;
+        }
+
+        /**
+         * Writes the format and send methods of a single message.
+         *
+         * @param writer The writer.
+         * @param key The message key.
+         * @param methodName The method name.
+         * @param segments The compiled template.
+         * @throws IOException when writing fails.
+         */
+        private void writeMessage (SourceWriter writer, String key, String methodName, List<Object> segments) throws IOException {
+                int arguments = argumentCount (segments);
+                StringBuilder parameters = new StringBuilder ();
+                StringBuilder invocation = new StringBuilder ();
+
+                for (int i = 0; i < arguments; i++) {
+                        if (i != 0) {
+                                parameters.append (", ");
+                                invocation.append (", ");
+                        }
+
+                        parameters.append ("Object arg").append (i);
+                        invocation.append ("arg").append (i);
+                }
+
+                writer.line ();
+                writer.line ("/**");
+                writer.line (" * Formats the %s message.", key);
+                writer.line (" *");
+                for (int i = 0; i < arguments; i++) { writer.line (" * @param arg%d The value substituted for {%d}.", i, i); }
+                writer.line (" * @return The message.");
+                writer.line (" */");
+                writer.open ("public static String %s (%s)", methodName, parameters);
+
+                if (arguments == 0) {
+                        // messages without arguments are entirely constant and do not need a builder at all
+                        writer.line ("return %s;", SourceWriter.literal (segments.isEmpty () ? "" : (String) segments.get (0)));
+                } else {
+                        StringBuilder expression = new StringBuilder ("builder");
+                        Set<Object> converted = new HashSet<> ();
+
+                        // arguments are converted before the shared builder is touched since their toString method may
+                        // format another message on the same thread (which would reset the builder)
+                        for (Object segment : segments) {
+                                if (segment instanceof Integer && converted.add (segment)) { writer.line ("String value%d = String.valueOf (arg%d);", segment, segment); }
+                                expression.append (".append (").append ((segment instanceof String ? SourceWriter.literal ((String) segment) : "value" + segment)).append (")");
+                        }
+
+                        writer.line ();
+                        writer.line ("StringBuilder builder = BUILDER.get ();");
+                        writer.line ("builder.setLength (0);");
+                        writer.line ();
+                        writer.line ("String message = %s.toString ();", expression);
+                        writer.line ("if (builder.capacity () > %d) { BUILDER.remove (); }", MAXIMUM_CAPACITY);
+                        writer.line ("return message;");
+                }
+
+                writer.end ();
+
+                writer.line ();
+                writer.line ("/**");
+                writer.line (" * Formats the %s message and sends it to the specified recipient.", key);
+                writer.line (" *");
+                writer.line (" * @param recipient The recipient.");
+                for (int i = 0; i < arguments; i++) { writer.line (" * @param arg%d The value substituted for {%d}.", i, i); }
+                writer.line (" */");
+                writer.open ("public static void %s (org.bukkit.command.CommandSender recipient%s)", sendMethodName (methodName), (arguments == 0 ? "" : ", " + parameters));
+                writer.line ("recipient.sendMessage (%s (%s));", methodName, invocation);
+                writer.end ();
+        }
+
+        /**
+         * Compiles a template into a list of literal segments (strings) and argument references (integers).
+         *
+         * Placeholders consist of a decimal argument index enclosed in braces while braces which do not form a valid
+         * placeholder are kept as is. Alternate color codes are translated within literal segments.
+         *
+         * @param template The template.
+         * @return The segments.
+         */
+        public static List<Object> compile (String template) {
+                List<Object> segments = new ArrayList<> ();
+                StringBuilder literal = new StringBuilder ();
+                int i = 0;
+
+                while (i < template.length ()) {
+                        char c = template.charAt (i);
+                        int end = (c == '{' ? template.indexOf ('}', i + 1) : -1);
+
+                        if (end > i + 1 && end - i <= 4 && isDigits (template, i + 1, end)) {
+                                if (literal.length () != 0) {
+                                        segments.add (translateColorCodes (literal.toString ()));
+                                        literal.setLength (0);
+                                }
+
+                                segments.add (Integer.parseInt (template.substring (i + 1, end)));
+                                i = end + 1;
+                                continue;
+                        }
+
+                        literal.append (c);
+                        i++;
+                }
+
+                if (literal.length () != 0) { segments.add (translateColorCodes (literal.toString ())); }
+                return segments;
+        }
+
+        /**
+         * Translates alternate color codes (prefixed by an ampersand) into their native representation.
+         *
+         * @param value The value.
+         * @return The translated value.
+         */
+        public static String translateColorCodes (String value) {
+                char[] characters = value.toCharArray ();
+
+                for (int i = 0; i < characters.length - 1; i++) {
+                        if (characters[i] == '&' && COLOR_CODES.indexOf (characters[i + 1]) != -1) {
+                                characters[i] = COLOR_CHARACTER;
+                                characters[i + 1] = Character.toLowerCase (characters[i + 1]);
+                        }
+                }
+
+                return new String (characters);
+        }
+
+        /**
+         * Converts a message key into the name of its format method.
+         *
+         * Keys may consist of letters, digits, dots, dashes and underscores where each separator capitalizes the
+         * following character.
+         *
+         * @param key The message key.
+         * @return The method name or null if the key cannot be converted.
+         */
+        public static String methodName (String key) {
+                StringBuilder builder = new StringBuilder ();
+                boolean upper = false;
+
+                for (int i = 0; i < key.length (); i++) {
+                        char c = key.charAt (i);
+
+                        if (c == '.' || c == '-' || c == '_') {
+                                upper = (builder.length () != 0);
+                                continue;
+                        }
+
+                        if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z') && (c < '0' || c > '9')) { return null; }
+
+                        builder.append ((upper ? Character.toUpperCase (c) : c));
+                        upper = false;
+                }
+
+                String name = builder.toString ();
+                return (SourceVersion.isName (name) ? name : null);
+        }
+
+        /**
+         * Converts the name of a format method into the name of its send method.
+         *
+         * @param methodName The format method name.
+         * @return The send method name.
+         */
+        private static String sendMethodName (String methodName) {
+                return "send" + Character.toUpperCase (methodName.charAt (0)) + methodName.substring (1);
+        }
+
+        /**
+         * Computes the amount of arguments referenced by a compiled template.
+         *
+         * @param segments The compiled template.
+         * @return The argument count.
+         */
+        private static int argumentCount (List<Object> segments) {
+                int count = 0;
+
+                for (Object segment : segments) {
+                        if (segment instanceof Integer) { count = Math.max (count, ((Integer) segment) + 1); }
+                }
+
+                return count;
+        }
+
+        /**
+         * Checks whether a section of a string consists of decimal digits only.
+         *
+         * @param value The value.
+         * @param start The start index (inclusive).
+         * @param end The end index (exclusive).
+         * @return True if digits only.
+         */
+        private static boolean isDigits (String value, int start, int end) {
+                for (int i = start; i < end; i++) {
+                        if (value.charAt (i) < '0' || value.charAt (i) > '9') { return false; }
+                }
+
+                return true;
+        }
+}
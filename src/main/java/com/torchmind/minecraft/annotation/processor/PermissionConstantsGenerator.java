@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.permission.ChildPermission;
+import com.torchmind.minecraft.annotation.permission.Permission;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a class which holds pre-constructed {@link org.bukkit.permissions.Permission} instances for all permissions
+ * declared by a plugin.
+ *
+ * Checking a permission via its {@link org.bukkit.permissions.Permission} instance (rather than its name) spares
+ * Bukkit the lookup of the permission in order to resolve its default value. Names are normalized to lower case which
+ * further spares Bukkit from copying the name on every check.
+ *
+ * @author Johannes Donath
+ */
+public class PermissionConstantsGenerator {
+        public static final String SUFFIX = "Permissions";
+        private final ProcessingEnvironment processingEnv;
+
+        public PermissionConstantsGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Assigns a unique constant name to each permission.
+         *
+         * @param permissions The permissions (indexed by name).
+         * @return A map of permission names and their respective constant names.
+         */
+        public static Map<String, String> constantNames (Map<String, Permission> permissions) {
+                Map<String, String> constants = new LinkedHashMap<> ();
+                Set<String> used = new HashSet<> ();
+                used.add ("ALL");
+
+                int i = 0;
+                for (String name : permissions.keySet ()) {
+                        String constant = PermissionIndexGenerator.constantName (name);
+                        if (!used.add (constant)) { constant = constant + "_" + i; }
+
+                        constants.put (name, constant);
+                        i++;
+                }
+
+                return constants;
+        }
+
+        /**
+         * Generates the permission constants for the specified plugin.
+         *
+         * @param pluginPackage The plugin package.
+         * @param pluginType The qualified name of the plugin type.
+         * @param pluginSimpleName The simple name of the plugin type.
+         * @param permissions The declared permissions (indexed by name).
+         * @param originatingElements The elements which declared the permissions.
+         * @throws IOException when writing the source file fails.
+         */
+        public void generate (String pluginPackage, String pluginType, String pluginSimpleName, Map<String, Permission> permissions, Element[] originatingElements) throws IOException {
+                String className = pluginSimpleName + SUFFIX;
+                String qualifiedName = (pluginPackage.isEmpty () ? className : pluginPackage + "." + className);
+                Map<String, String> constants = constantNames (permissions);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, originatingElements).openWriter ())) {
+                        if (!pluginPackage.isEmpty ()) {
+                                writer.line ("package %s;", pluginPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Provides pre-constructed instances of all permissions declared by {@link %s}.", pluginType);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s", className);
+
+                        for (Permission permission : permissions.values ()) {
+                                writer.line ("public static final org.bukkit.permissions.Permission %s = new org.bukkit.permissions.Permission (%s, %s, org.bukkit.permissions.PermissionDefault.%s, children (%s));", constants.get (permission.name ()), SourceWriter.literal (permission.name ().toLowerCase (Locale.ENGLISH)), SourceWriter.literal (permission.description ()), permission.defaultValue ().name (), this.children (permission));
+                        }
+
+                        writer.line ();
+                        writer.line ("private static final org.bukkit.permissions.Permission[] ALL = {%s};", String.join (", ", constants.values ()));
+                        writer.line ();
+
+                        writer.open ("private %s ()", className);
+                        writer.end ();
+                        writer.line ();
+
+                        // Bukkit registers the permissions listed within the plugin.yml on its own, we will replace them
+                        // with our instances in order to ensure that there is only one instance of each permission
+                        writer.line ("/**");
+                        writer.line (" * Registers all permissions with the specified plugin manager (replacing any previously registered permission");
+                        writer.line (" * of the same name).");
+                        writer.line (" *");
+                        writer.line (" * @param pluginManager The plugin manager.");
+                        writer.line (" */");
+                        writer.open ("public static void registerAll (org.bukkit.plugin.PluginManager pluginManager)");
+                        writer.open ("for (org.bukkit.permissions.Permission permission : ALL)");
+                        writer.line ("org.bukkit.permissions.Permission registered = pluginManager.getPermission (permission.getName ());");
+                        writer.line ("if (registered == permission) { continue; }");
+                        writer.line ("if (registered != null) { pluginManager.removePermission (registered); }");
+                        writer.line ();
+                        writer.line ("pluginManager.addPermission (permission);");
+                        writer.end ();
+                        writer.end ();
+
+                        for (Permission permission : permissions.values ()) {
+                                String constant = constants.get (permission.name ());
+
+                                writer.line ();
+                                writer.line ("/**");
+                                writer.line (" * Checks whether the specified permissible has been granted the %s permission.", permission.name ().replace ("*/", "*&#47;"));
+                                writer.line (" *");
+                                writer.line (" * @param permissible The permissible.");
+                                writer.line (" * @return True if granted.");
+                                writer.line (" */");
+                                writer.open ("public static boolean has%s (org.bukkit.permissions.Permissible permissible)", methodName (constant));
+                                writer.line ("return permissible.hasPermission (%s);", constant);
+                                writer.end ();
+                        }
+
+                        writer.line ();
+                        writer.open ("private static java.util.Map<String, Boolean> children (Object... children)");
+                        writer.line ("java.util.Map<String, Boolean> map = new java.util.LinkedHashMap<> ();");
+                        writer.line ("for (int i = 0; i < children.length; i += 2) { map.put ((String) children[i], (Boolean) children[i + 1]); }");
+                        writer.line ("return map;");
+                        writer.end ();
+                        writer.end ();
+                }
+        }
+
+        /**
+         * Converts the children of a permission into a list of name and value pairs.
+         *
+         * @param permission The permission.
+         * @return The argument list.
+         */
+        private String children (Permission permission) {
+                StringBuilder builder = new StringBuilder ();
+
+                for (ChildPermission child : permission.children ()) {
+                        if (builder.length () != 0) { builder.append (", "); }
+                        builder.append (SourceWriter.literal (child.value ())).append (", ").append (child.inherit ());
+                }
+
+                return builder.toString ();
+        }
+
+        /**
+         * Converts a constant name into the camel case suffix of a check method.
+         *
+         * @param constant The constant name.
+         * @return The method name suffix.
+         */
+        private static String methodName (String constant) {
+                StringBuilder builder = new StringBuilder ();
+                boolean upper = true;
+
+                for (int i = 0; i < constant.length (); i++) {
+                        char c = constant.charAt (i);
+
+                        if (c == '_') {
+                                upper = true;
+                                continue;
+                        }
+
+                        builder.append (upper ? c : Character.toLowerCase (c));
+                        upper = false;
+                }
+
+                return builder.toString ();
+        }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.permission.ChildPermission;
+import com.torchmind.minecraft.annotation.permission.Permission;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Computes the transitive closure of all declared permissions and generates an index which allows checking permissions
+ * against a pre-computed bit set.
+ *
+ * Each permission (including children which have not been declared by the plugin itself) is assigned a dense integer
+ * identifier in alphabetical order. Permission names are converted to lower case (as Bukkit does) and thus references
+ * which only differ in case resolve to the same permission. For every permission the generated index knows which permissions are granted and
+ * which are revoked once the permission itself is granted (following Bukkit's semantics of inverting the subtree of
+ * children which are declared with {@code inherit = false}).
+ *
+ * @author Johannes Donath
+ */
+public class PermissionIndexGenerator {
+        public static final String SUFFIX = "PermissionIndex";
+
+        // the closure is encoded into string constants (one character per permission identifier) which are decoded
+        // upon class initialization as array initializers quickly exceed the maximum method size for larger plugins
+        private static final int CHUNK_LENGTH = 8192;
+
+        private final ProcessingEnvironment processingEnv;
+
+        public PermissionIndexGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Generates the permission index for the specified plugin.
+         *
+         * @param pluginPackage The plugin package.
+         * @param pluginType The qualified name of the plugin type.
+         * @param pluginSimpleName The simple name of the plugin type.
+         * @param permissions The declared permissions.
+         * @param originatingElements The elements which declared the permissions.
+         * @return True if the index was generated, false if an error has been raised.
+         * @throws IOException when writing the source file fails.
+         */
+        public boolean generate (String pluginPackage, String pluginType, String pluginSimpleName, Map<String, Permission> permissions, Element[] originatingElements) throws IOException {
+                // build the graph of permission nodes, children which have not been declared by the plugin are still
+                // assigned an identifier since they are affected by granting their parent
+                Map<String, Map<String, Boolean>> graph = new HashMap<> ();
+                Map<String, String> spellings = new HashMap<> ();
+                Set<String> nodeNames = new TreeSet<> ();
+
+                for (Permission permission : permissions.values ()) {
+                        String name = permission.name ().toLowerCase (Locale.ENGLISH);
+                        Map<String, Boolean> children = graph.computeIfAbsent (name, (n) -> new LinkedHashMap<> ());
+
+                        for (ChildPermission child : permission.children ()) {
+                                String childName = child.value ().toLowerCase (Locale.ENGLISH);
+
+                                children.put (childName, child.inherit ());
+                                spellings.putIfAbsent (childName, child.value ());
+                                nodeNames.add (childName);
+                        }
+
+                        // constants are named after the declared spelling of a permission
+                        spellings.put (name, permission.name ());
+                        nodeNames.add (name);
+                }
+
+                if (nodeNames.size () > Character.MAX_VALUE) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Cannot index more than " + ((int) Character.MAX_VALUE) + " permissions.");
+                        return false;
+                }
+
+                List<String> path = this.findCycle (graph);
+                if (path != null) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Permission hierarchy contains a cycle: " + String.join (" -> ", path));
+                        return false;
+                }
+
+                List<String> names = new ArrayList<> (nodeNames);
+                Map<String, Integer> identifiers = new HashMap<> ();
+                for (int i = 0; i < names.size (); i++) { identifiers.put (names.get (i), i); }
+
+                Map<String, Map<String, Boolean>> closures = new HashMap<> ();
+                StringBuilder encoded = new StringBuilder ();
+
+                for (String name : names) {
+                        Map<String, Boolean> closure = this.computeClosure (name, graph, closures);
+                        List<Integer> granted = new ArrayList<> ();
+                        List<Integer> revoked = new ArrayList<> ();
+
+                        granted.add (identifiers.get (name));
+                        closure.forEach ((n, v) -> (v ? granted : revoked).add (identifiers.get (n)));
+
+                        encoded.append ((char) granted.size ());
+                        granted.forEach ((i) -> encoded.append ((char) i.intValue ()));
+                        encoded.append ((char) revoked.size ());
+                        revoked.forEach ((i) -> encoded.append ((char) i.intValue ()));
+                }
+
+                String indexName = pluginSimpleName + SUFFIX;
+                String qualifiedName = (pluginPackage.isEmpty () ? indexName : pluginPackage + "." + indexName);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, originatingElements).openWriter ())) {
+                        if (!pluginPackage.isEmpty ()) {
+                                writer.line ("package %s;", pluginPackage).line ();
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Provides a pre-computed index of all permissions declared by {@link %s}.", pluginType);
+                        writer.line (" *");
+                        writer.line (" * Permission states are stored within a bit set (as returned by {@link #newSet()}) which may be computed once");
+                        writer.line (" * whenever the permissions of a player change and queried in constant time afterwards.");
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s", indexName);
+                        writer.line ("public static final int SIZE = %d;", names.size ());
+
+                        Set<String> constants = new HashSet<> ();
+                        constants.add ("SIZE");
+                        constants.add ("WORDS");
+                        constants.add ("NAMES");
+                        constants.add ("IDENTIFIERS");
+                        constants.add ("GRANTED");
+                        constants.add ("REVOKED");
+
+                        for (int i = 0; i < names.size (); i++) {
+                                String constant = constantName (spellings.get (names.get (i)));
+                                if (!constants.add (constant)) { constant = constant + "_" + i; }
+
+                                writer.line ("public static final int %s = %d;", constant, i);
+                        }
+
+                        writer.line ();
+                        writer.line ("private static final int WORDS = %d;", (names.size () + 63) >>> 6);
+                        writer.line ("private static final String[] NAMES = new String[SIZE];");
+                        writer.line ("private static final java.util.Map<String, Integer> IDENTIFIERS = new java.util.HashMap<> (SIZE * 2);");
+                        writer.line ("private static final long[][] GRANTED = new long[SIZE][WORDS];");
+                        writer.line ("private static final long[][] REVOKED = new long[SIZE][WORDS];");
+                        writer.line ();
+
+                        writer.open ("static");
+                        this.writeChunks (writer, "names", String.join ("\n", names));
+                        writer.line ("String[] splitNames = names.split (\"\\n\", -1);");
+                        writer.open ("for (int i = 0; i < SIZE; i++)");
+                        writer.line ("NAMES[i] = splitNames[i];");
+                        writer.line ("IDENTIFIERS.put (splitNames[i], i);");
+                        writer.end ();
+                        writer.line ();
+
+                        this.writeChunks (writer, "closure", encoded.toString ());
+                        writer.line ("int offset = 0;");
+                        writer.open ("for (int i = 0; i < SIZE; i++)");
+                        writer.line ("int granted = closure.charAt (offset++);");
+                        writer.line ("for (int j = 0; j < granted; j++) { set (GRANTED[i], closure.charAt (offset++)); }");
+                        writer.line ("int revoked = closure.charAt (offset++);");
+                        writer.line ("for (int j = 0; j < revoked; j++) { set (REVOKED[i], closure.charAt (offset++)); }");
+                        writer.end ();
+                        writer.end ();
+                        writer.line ();
+
+                        writer.open ("private %s ()", indexName);
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Creates a new empty permission set.");
+                        writer.line (" *");
+                        writer.line (" * @return The set.");
+                        writer.line (" */");
+                        writer.open ("public static long[] newSet ()");
+                        writer.line ("return new long[WORDS];");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Creates a permission set which reflects the current state of a permissible.");
+                        writer.line (" *");
+                        writer.line (" * @param permissible The permissible.");
+                        writer.line (" * @return The set.");
+                        writer.line (" */");
+                        writer.open ("public static long[] snapshot (org.bukkit.permissions.Permissible permissible)");
+                        writer.line ("long[] set = newSet ();");
+                        writer.open ("for (int i = 0; i < SIZE; i++)");
+                        writer.line ("if (permissible.hasPermission (NAMES[i])) { set (set, i); }");
+                        writer.end ();
+                        writer.line ("return set;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Applies a permission (including all of its transitive children) to a permission set.");
+                        writer.line (" *");
+                        writer.line (" * @param set The set.");
+                        writer.line (" * @param permission The permission identifier.");
+                        writer.line (" * @param value The permission value.");
+                        writer.line (" */");
+                        writer.open ("public static void apply (long[] set, int permission, boolean value)");
+                        writer.line ("long[] granted = (value ? GRANTED[permission] : REVOKED[permission]);");
+                        writer.line ("long[] revoked = (value ? REVOKED[permission] : GRANTED[permission]);");
+                        writer.open ("for (int i = 0; i < WORDS; i++)");
+                        writer.line ("set[i] = (set[i] | granted[i]) & ~revoked[i];");
+                        writer.end ();
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Checks whether a permission is set within a permission set.");
+                        writer.line (" *");
+                        writer.line (" * @param set The set.");
+                        writer.line (" * @param permission The permission identifier.");
+                        writer.line (" * @return True if granted.");
+                        writer.line (" */");
+                        writer.open ("public static boolean has (long[] set, int permission)");
+                        writer.line ("return (set[permission >>> 6] & (1L << permission)) != 0;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Retrieves the identifier of a permission.");
+                        writer.line (" *");
+                        writer.line (" * @param name The permission name (which is matched regardless of its case).");
+                        writer.line (" * @return The identifier or -1 if the permission is unknown.");
+                        writer.line (" */");
+                        writer.open ("public static int indexOf (String name)");
+                        writer.line ("Integer identifier = IDENTIFIERS.get (name.toLowerCase (java.util.Locale.ENGLISH));");
+                        writer.line ("return (identifier == null ? -1 : identifier);");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Retrieves the name of a permission.");
+                        writer.line (" *");
+                        writer.line (" * @param permission The permission identifier.");
+                        writer.line (" * @return The name.");
+                        writer.line (" */");
+                        writer.open ("public static String nameOf (int permission)");
+                        writer.line ("return NAMES[permission];");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.open ("private static void set (long[] set, int permission)");
+                        writer.line ("set[permission >>> 6] |= (1L << permission);");
+                        writer.end ();
+                        writer.end ();
+                }
+
+                return true;
+        }
+
+        /**
+         * Computes the transitive closure of a permission.
+         *
+         * @param name The permission name.
+         * @param graph The permission graph.
+         * @param closures A cache of previously computed closures.
+         * @return A map of affected permissions and their values when the permission is granted.
+         */
+        protected Map<String, Boolean> computeClosure (String name, Map<String, Map<String, Boolean>> graph, Map<String, Map<String, Boolean>> closures) {
+                Map<String, Boolean> closure = closures.get (name);
+                if (closure != null) { return closure; }
+
+                closure = new LinkedHashMap<> ();
+
+                // Bukkit applies each child (with its declared value) followed by its own children which are inverted
+                // if the child itself has been declared as non-inheriting. Later entries override earlier ones.
+                for (Map.Entry<String, Boolean> child : graph.getOrDefault (name, Collections.emptyMap ()).entrySet ()) {
+                        closure.remove (child.getKey ());
+                        closure.put (child.getKey (), child.getValue ());
+
+                        for (Map.Entry<String, Boolean> descendant : this.computeClosure (child.getKey (), graph, closures).entrySet ()) {
+                                closure.remove (descendant.getKey ());
+                                closure.put (descendant.getKey (), child.getValue ().equals (descendant.getValue ()));
+                        }
+                }
+
+                closures.put (name, closure);
+                return closure;
+        }
+
+        /**
+         * Searches the permission graph for cycles.
+         *
+         * @param graph The permission graph.
+         * @return The path of the first cycle or null if the graph is acyclic.
+         */
+        protected List<String> findCycle (Map<String, Map<String, Boolean>> graph) {
+                Set<String> visited = new HashSet<> ();
+
+                for (String name : new TreeSet<> (graph.keySet ())) {
+                        List<String> path = this.findCycle (name, graph, visited, new ArrayList<> ());
+                        if (path != null) { return path; }
+                }
+
+                return null;
+        }
+
+        /**
+         * Searches the permission graph for cycles starting at the specified node.
+         *
+         * @param name The node name.
+         * @param graph The permission graph.
+         * @param visited The set of nodes which are known to be free of cycles.
+         * @param path The current path.
+         * @return The path of the first cycle or null if no cycle is reachable from the node.
+         */
+        private List<String> findCycle (String name, Map<String, Map<String, Boolean>> graph, Set<String> visited, List<String> path) {
+                int index = path.indexOf (name);
+
+                if (index != -1) {
+                        List<String> cycle = new ArrayList<> (path.subList (index, path.size ()));
+                        cycle.add (name);
+                        return cycle;
+                }
+
+                if (visited.contains (name)) { return null; }
+
+                path.add (name);
+
+                for (String child : graph.getOrDefault (name, Collections.emptyMap ()).keySet ()) {
+                        List<String> cycle = this.findCycle (child, graph, visited, path);
+                        if (cycle != null) { return cycle; }
+                }
+
+                path.remove (path.size () - 1);
+                visited.add (name);
+                return null;
+        }
+
+        /**
+         * Writes a string constant which exceeds the constant pool limits by splitting it into multiple chunks.
+         *
+         * @param writer The writer.
+         * @param variable The local variable to store the result in.
+         * @param value The value.
+         * @throws IOException when writing fails.
+         */
+        private void writeChunks (SourceWriter writer, String variable, String value) throws IOException {
+                writer.line ("StringBuilder %sBuilder = new StringBuilder (%d);", variable, value.length ());
+
+                for (int i = 0; i < value.length (); i += CHUNK_LENGTH) {
+                        writer.line ("%sBuilder.append (%s);", variable, SourceWriter.literal (value.substring (i, Math.min (value.length (), i + CHUNK_LENGTH))));
+                }
+
+                writer.line ("String %s = %sBuilder.toString ();", variable, variable);
+        }
+
+        /**
+         * Converts a permission name into a constant name.
+         *
+         * @param name The permission name.
+         * @return The constant name.
+         */
+        protected static String constantName (String name) {
+                StringBuilder builder = new StringBuilder ();
+
+                for (int i = 0; i < name.length (); i++) {
+                        char c = name.charAt (i);
+
+                        if (Character.isUpperCase (c) && i > 0 && Character.isLowerCase (name.charAt (i - 1))) {
+                                builder.append ('_');
+                        }
+
+                        builder.append ((Character.isLetterOrDigit (c) && c < 0x80) ? Character.toUpperCase (c) : '_');
+                }
+
+                if (builder.length () == 0 || Character.isDigit (builder.charAt (0))) { builder.insert (0, '_'); }
+                return builder.toString ();
+        }
+}
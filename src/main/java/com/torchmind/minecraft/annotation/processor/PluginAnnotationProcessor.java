@@ -19,39 +19,73 @@ package com.torchmind.minecraft.annotation.processor;
 import com.torchmind.minecraft.annotation.Plugin;
 import com.torchmind.minecraft.annotation.command.Command;
 import com.torchmind.minecraft.annotation.command.Commands;
-import com.torchmind.minecraft.annotation.dependency.Dependencies;
-import com.torchmind.minecraft.annotation.dependency.LoadBeforePlugins;
-import com.torchmind.minecraft.annotation.dependency.SoftDependencies;
-import com.torchmind.minecraft.annotation.permission.ChildPermission;
+import com.torchmind.minecraft.annotation.command.Completion;
+import com.torchmind.minecraft.annotation.command.Completions;
+import com.torchmind.minecraft.annotation.config.ConfigSection;
+import com.torchmind.minecraft.annotation.dependency.Dependency;
+import com.torchmind.minecraft.annotation.dependency.LoadBefore;
+import com.torchmind.minecraft.annotation.dependency.SoftDependency;
+import com.torchmind.minecraft.annotation.message.Message;
+import com.torchmind.minecraft.annotation.message.Messages;
 import com.torchmind.minecraft.annotation.permission.Permission;
 import com.torchmind.minecraft.annotation.permission.Permissions;
+import com.torchmind.minecraft.annotation.persistence.Entity;
+import com.torchmind.minecraft.annotation.runtime.BinaryDescriptorReader;
+import com.torchmind.minecraft.annotation.scheduler.Scheduled;
+import com.torchmind.minecraft.annotation.scheduler.TickBudgeted;
+import com.torchmind.minecraft.annotation.tool.LoadPlanner;
 import org.bukkit.command.CommandExecutor;
-import org.bukkit.permissions.PermissionDefault;
-import org.bukkit.plugin.PluginLoadOrder;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabCompleter;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
 import org.bukkit.plugin.java.JavaPlugin;
-import org.yaml.snakeyaml.Yaml;
 
 import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic;
 import javax.tools.FileObject;
 import javax.tools.StandardLocation;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -61,25 +95,176 @@ import java.util.jar.Manifest;
  * @author Johannes Donath
  */
 @SupportedSourceVersion (SourceVersion.RELEASE_8)
+@SupportedOptions ({
+                           PluginAnnotationProcessor.OPTION_TIMESTAMP,
+                           PluginAnnotationProcessor.OPTION_INSTRUMENT_COMMANDS,
+                           PluginAnnotationProcessor.OPTION_TIMINGS_COMMAND,
+                           PluginAnnotationProcessor.OPTION_PROFILE_LISTENERS,
+                           PluginAnnotationProcessor.OPTION_STATISTICS
+                   })
 @SupportedAnnotationTypes ({
                                    "com.torchmind.minecraft.annotation.Plugin",
                                    "com.torchmind.minecraft.annotation.command.*",
+                                   "com.torchmind.minecraft.annotation.config.*",
                                    "com.torchmind.minecraft.annotation.dependency.*",
-                                   "com.torchmind.minecraft.annotation.permission.*"
+                                   "com.torchmind.minecraft.annotation.message.*",
+                                   "com.torchmind.minecraft.annotation.permission.*",
+                                   "com.torchmind.minecraft.annotation.persistence.*",
+                                   "com.torchmind.minecraft.annotation.scheduler.*",
+                                   "org.bukkit.event.EventHandler"
                            })
 public class PluginAnnotationProcessor extends AbstractProcessor {
-        private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat ("MM/DD/yyyy HH:mm:ss");
-        private boolean pluginMainElementLocated = false;
+        public static final String OPTION_TIMESTAMP = "pluginAnnotations.timestamp";
+        public static final String OPTION_INSTRUMENT_COMMANDS = "pluginAnnotations.instrumentCommands";
+        public static final String OPTION_TIMINGS_COMMAND = "pluginAnnotations.timingsCommand";
+        public static final String OPTION_PROFILE_LISTENERS = "pluginAnnotations.profileListeners";
+        public static final String OPTION_STATISTICS = "pluginAnnotations.statistics";
+        private static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
+        private static final String DESCRIPTOR_FILE = "plugin.yml";
+        private static final String CONFIGURATION_FILE = "config.yml";
+        private static final String STATISTICS_FILE = "META-INF/plugin-annotations/statistics.json";
+
+        // since javac may call us several times (once per round plus a final round once all sources have been
+        // generated) we will keep track of everything we have collected so far and only write the descriptor once
+        // the compiler tells us that there is nothing left to process. We also keep track of the qualified name of
+        // every contributing element so that build tools which support incremental processing (such as Gradle's
+        // aggregating mode) can associate the generated descriptor with its sources.
+        private String mainPluginTypeName;
+        private Map<String, Object> plugin;
+        private final Set<String> originatingTypes = new TreeSet<> ();
+
+        // commands and permissions are kept in alphabetical order to ensure that the generated descriptor (and sources)
+        // stay identical between builds regardless of the order in which the compiler hands us elements
+        private final Map<String, CommandDefinition> commandDefinitions = new TreeMap<> ();
+        private final Map<String, Permission> permissionDefinitions = new TreeMap<> ();
+        private final Map<String, List<Completion>> completionDefinitions = new TreeMap<> ();
+        private final Map<String, Message> messageDefinitions = new TreeMap<> ();
+        private final Map<String, ExecutableElement> scheduledMethods = new TreeMap<> ();
+        private final Map<String, ExecutableElement> jobMethods = new TreeMap<> ();
+        private boolean sourcesGenerated = false;
+        private String timingsCommand;
+
+        // event executors are generated on a per listener basis as soon as the respective listener is discovered
+        private final Set<String> generatedListeners = new TreeSet<> ();
+
+        // configuration snapshots are generated per section as well while their defaults are combined into a single
+        // config.yml within the final round (indexed by section type in order to keep the output stable)
+        private final Map<String, Map<String, Object>> configurationDefaults = new TreeMap<> ();
+        private final Set<String> entityTypes = new TreeSet<> ();
+        private boolean failed = false;
+
+        // statistics are only recorded when requested via -ApluginAnnotations.statistics=true
+        private ProcessorStatistics statistics = new ProcessorStatistics (false);
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized void init (ProcessingEnvironment processingEnv) {
+                super.init (processingEnv);
+                this.statistics = new ProcessorStatistics (Boolean.parseBoolean (processingEnv.getOptions ().get (OPTION_STATISTICS)));
+        }
 
         /**
          * {@inheritDoc}
          */
         @Override
         public boolean process (Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+                this.statistics.beginRound (annotations, roundEnv);
+                boolean result = this.processRound (roundEnv);
+                this.statistics.endRound ();
+
+                if (roundEnv.processingOver () && this.statistics.isEnabled ()) { this.writeStatistics (); }
+                return result;
+        }
+
+        /**
+         * Processes a single round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if the annotations have been claimed, false otherwise.
+         */
+        protected boolean processRound (RoundEnvironment roundEnv) {
+                if (roundEnv.processingOver ()) {
+                        this.statistics.enter (ProcessorStatistics.Phase.SERIALIZATION);
+                        if (!this.failed && this.plugin != null) { this.writeDescriptor (); }
+                        if (!this.failed && !this.configurationDefaults.isEmpty ()) { this.writeConfiguration (); }
+                        this.statistics.exit ();
+                        return false;
+                }
+
+                if (this.failed) { return false; }
+
+                // phases which are left through an early return are closed once the round ends
+                this.statistics.enter (ProcessorStatistics.Phase.COLLECTION);
+
+                if (!this.processPluginType (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                if (!this.collectCommands (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                this.collectPermissions (roundEnv);
+                this.collectCompletions (roundEnv);
+
+                if (!this.collectMessages (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                if (!this.collectScheduledMethods (roundEnv) || !this.collectJobMethods (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                this.statistics.exit ();
+                this.statistics.enter (ProcessorStatistics.Phase.GENERATION);
+
+                if (!this.processListeners (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                if (!this.processConfigSections (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                if (!this.processEntities (roundEnv)) {
+                        this.failed = true;
+                        return false;
+                }
+
+                // generated sources need to be written before the final round as they would otherwise not be passed to
+                // any other processors (as the compiler is no longer willing to start a new round at that point)
+                if (this.plugin != null && !this.sourcesGenerated) {
+                        this.sourcesGenerated = true;
+
+                        if (!this.generateSources ()) {
+                                this.failed = true;
+                                return false;
+                        }
+                }
+
+                this.statistics.exit ();
+                return true;
+        }
+
+        /**
+         * Locates and processes the main plugin type (if present within the current round).
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean processPluginType (RoundEnvironment roundEnv) {
                 // for sanity reasons we will need to verify whether there is more than one class annotated with our
                 // @Plugin annotation. Luckily we can combine this check with our search for the main plugin class
                 // as Java does not seem to sanely provide us with those.
-                Set<? extends Element> annotatedElements = roundEnv.getElementsAnnotatedWith (Plugin.class);
+                Set<? extends Element> annotatedElements = this.getElementsAnnotatedWith (roundEnv, Plugin.class);
 
                 if (annotatedElements.size () > 1) {
                         this.raiseError ("Found more than one plugin class.");
@@ -89,15 +274,14 @@ public class PluginAnnotationProcessor extends AbstractProcessor {
                 // make sure we found at least one instance of @Plugin before actually generating the plugin metadata
                 // Note: Stopping silently might not be the sanest choice here however this might be a saner solution
                 // than raising a warning as plugins may choose to depend on another plugin that utilizes this processor.
-                if (annotatedElements.size () == 0) { return false; }
+                if (annotatedElements.size () == 0) { return true; }
 
-                if (this.pluginMainElementLocated) {
+                if (this.mainPluginTypeName != null) {
                         this.raiseError ("The plugin class has already been located.");
                         return false;
                 }
 
                 Element mainPluginElement = annotatedElements.iterator ().next ();
-                this.pluginMainElementLocated = true;
 
                 if (!(mainPluginElement instanceof TypeElement)) {
                         this.raiseError ("Element annotated with @Plugin is not a type!");
@@ -105,6 +289,7 @@ public class PluginAnnotationProcessor extends AbstractProcessor {
                 }
 
                 TypeElement mainPluginType = ((TypeElement) mainPluginElement);
+                this.mainPluginTypeName = mainPluginType.getQualifiedName ().toString ();
 
                 // due to the fact that we cannot instantiate non-static inner classes we will have to check whether the
                 // annotated class is encapsulated in a package (top level class) or marked as static (inner class).
@@ -117,23 +302,20 @@ public class PluginAnnotationProcessor extends AbstractProcessor {
                 // class, we will also verify whether the class extends Bukkit's JavaPlugin (which is required here anyways
                 // as it is the only plugin loader implementation that uses the plugin.yml metadata file which we will
                 // use here until Bukkit gets it's own annotation based system).
-                if (!this.processingEnv.getTypeUtils ().isSubtype (mainPluginType.asType (), this.processingEnv.getElementUtils ().getTypeElement (JavaPlugin.class.getName ()).asType ())) {
+                if (!this.isAssignable (mainPluginType.asType (), JavaPlugin.class)) {
                         this.raiseError ("Plugin class does not extend org.bukkit.plugin.java.JavaPlugin.");
                         return false;
                 }
 
                 // retrieve the plugin manifest (if present) to allow automatic insertion of values like the plugin's
                 // name and version via the MANIFEST_VALUE magical value.
+                this.statistics.enter (ProcessorStatistics.Phase.MANIFEST);
                 Manifest manifest = this.retrieveManifest ();
-
-                // as of now we'll set up a small little map containing the chosen nodes that will be inserted into
-                // the plugin.yml (given that their value differs from Bukkit's default values). This might not be the
-                // best way of generating the plugin metadata however this system is not as messy as an object based
-                // method would be.
-                Map<String, Object> plugin = new HashMap<> ();
+                this.statistics.exit ();
 
                 Plugin pluginAnnotation = mainPluginType.getAnnotation (Plugin.class);
-                plugin.put ("main", mainPluginType.getQualifiedName ().toString ());
+                String name = pluginAnnotation.name ();
+                String version = pluginAnnotation.version ();
 
                 // make sure the manifest is present when using the magical value (see retrieveManifest () for a couple
                 // of reasons why this could technically fail - I'm too lazy to explain this again).
@@ -146,232 +328,946 @@ public class PluginAnnotationProcessor extends AbstractProcessor {
                         Attributes attributes = manifest.getMainAttributes ();
 
                         if (Plugin.MANIFEST_VALUE.equals (pluginAnnotation.name ())) {
-                                if (!attributes.containsKey ("Implementation-Title")) {
+                                if (!attributes.containsKey (Attributes.Name.IMPLEMENTATION_TITLE)) {
                                         this.raiseError ("Implementation-Title is not specified in plugin manifest.");
                                         return false;
                                 }
 
-                                plugin.put ("name", attributes.getValue ("Implementation-Title"));
+                                name = attributes.getValue ("Implementation-Title");
                         }
 
                         if (Plugin.MANIFEST_VALUE.equals (pluginAnnotation.version ())) {
-                                if (!attributes.containsKey ("Implementation-Version")) {
+                                if (!attributes.containsKey (Attributes.Name.IMPLEMENTATION_VERSION)) {
                                         this.raiseError ("Implementation-Version is not specified in plugin manifest");
                                         return false;
                                 }
 
-                                plugin.put ("version", attributes.getValue ("Implementation-Version"));
+                                version = attributes.getValue ("Implementation-Version");
+                        }
+                }
+
+                // as of now we'll set up a small little map containing the chosen nodes that will be inserted into
+                // the plugin.yml (given that their value differs from Bukkit's default values). This might not be the
+                // best way of generating the plugin metadata however this system is not as messy as an object based
+                // method would be.
+                // Note: We are using getAnnotationsByType here since Java will only wrap repeated annotations in their
+                // container type if they have been specified more than once.
+                Map<String, Object> plugin = DescriptorWriter.createValues (mainPluginType.getQualifiedName ().toString (), pluginAnnotation, name, version, mainPluginType.getAnnotationsByType (Dependency.class), mainPluginType.getAnnotationsByType (LoadBefore.class), mainPluginType.getAnnotationsByType (SoftDependency.class));
+
+                if (!this.validateDependencies (plugin)) { return false; }
+
+                //Check the main class separately for command and permission annotations
+                Command[] commands = mainPluginType.getAnnotationsByType (Command.class);
+                if (commands.length > 0) {
+                        for (Command command : commands) {
+                                this.commandDefinitions.put (command.name (), new CommandDefinition (command, null, null, false, true));
+                        }
+                }
+
+                Permission[] permissions = mainPluginType.getAnnotationsByType (Permission.class);
+                if (permissions.length > 0) {
+                        for (Permission permission : permissions) {
+                                this.permissionDefinitions.put (permission.name (), permission);
+                        }
+                }
+
+                this.plugin = plugin;
+                this.originatingTypes.add (this.mainPluginTypeName);
+                return true;
+        }
+
+        /**
+         * Validates the dependency declarations of a plugin.
+         *
+         * Bukkit will only detect most of these mistakes when the server starts (if at all) and will simply refuse to
+         * load the plugin, thus we will check them as early as possible.
+         *
+         * @param plugin The plugin descriptor values.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean validateDependencies (Map<String, Object> plugin) {
+                String name = (String) plugin.get ("name");
+                Map<String, String> declarations = new TreeMap<> ();
+
+                for (String key : new String[] {"depend", "softdepend", "loadbefore"}) {
+                        String[] values = (String[]) plugin.get (key);
+                        if (values == null) { continue; }
+
+                        for (String value : values) {
+                                if (value.isEmpty ()) {
+                                        this.raiseError ("Dependency names (" + key + ") may not be empty.");
+                                        return false;
+                                }
+
+                                if (value.equals (name)) {
+                                        this.raiseError ("Plugin \"" + name + "\" cannot reference itself as a dependency (" + key + ").");
+                                        return false;
+                                }
+
+                                String previous = declarations.putIfAbsent (value, key);
+                                if (previous == null) { continue; }
+
+                                // a plugin cannot be loaded both before and after another plugin at the same time
+                                if (previous.equals ("loadbefore") != key.equals ("loadbefore")) {
+                                        this.raiseError ("Plugin \"" + value + "\" is declared as both " + previous + " and " + key + " which forms a dependency cycle.");
+                                        return false;
+                                }
+
+                                this.raiseWarning ("Plugin \"" + value + "\" is declared more than once (" + previous + (previous.equals (key) ? "" : " and " + key) + ").");
+                        }
+                }
+
+                return true;
+        }
+
+        /**
+         * Collects all external command executors which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean collectCommands (RoundEnvironment roundEnv) {
+                //Begin processing external command annotations
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, Command.class, Commands.class)) {
+                        if (element instanceof ExecutableElement) {
+                                if (!this.collectCommandMethod ((ExecutableElement) element)) { return false; }
+                                continue;
+                        }
+
+                        //Check to see if someone annotated a non-class with this.
+                        if (!(element instanceof TypeElement)) {
+                                this.raiseError ("Specified Command Executor class is not a class.");
+                                return false;
+                        }
+
+                        TypeElement typeElement = (TypeElement) element;
+                        if (typeElement.getAnnotation (Plugin.class) != null) { continue; }
+
+                        //Check to see if annotated class is actually a command executor
+                        if (!this.isAssignable (typeElement.asType (), CommandExecutor.class)) {
+                                this.raiseError ("Specified Command Executor class is not assignable from CommandExecutor");
+                                return false;
+                        }
+
+                        Command[] commands = typeElement.getAnnotationsByType (Command.class);
+                        this.originatingTypes.add (typeElement.getQualifiedName ().toString ());
+
+                        if (this.sourcesGenerated) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Command executor has been introduced after the command dispatcher has been generated and will not be dispatched.", typeElement);
+                        }
+
+                        ExecutableElement constructor = this.findDefaultConstructor (typeElement);
+                        boolean publicConstructor = (constructor != null && typeElement.getModifiers ().contains (Modifier.PUBLIC) && constructor.getModifiers ().contains (Modifier.PUBLIC));
+                        String executorPackage = (constructor != null ? this.processingEnv.getElementUtils ().getPackageOf (typeElement).getQualifiedName ().toString () : null);
+                        boolean tabCompleter = this.isAssignable (typeElement.asType (), TabCompleter.class);
+
+                        for (Command command : commands) {
+                                this.commandDefinitions.put (command.name (), new CommandDefinition (command, typeElement.getQualifiedName ().toString (), executorPackage, publicConstructor, tabCompleter));
+                        }
+                }
+
+                return true;
+        }
+
+        /**
+         * Collects all commands declared by a command method.
+         *
+         * @param method The method.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean collectCommandMethod (ExecutableElement method) {
+                TypeElement ownerType = (TypeElement) method.getEnclosingElement ();
+                boolean pluginMethod = (ownerType.getAnnotation (Plugin.class) != null);
+
+                if (method.getModifiers ().contains (Modifier.PRIVATE) || method.getModifiers ().contains (Modifier.ABSTRACT) || !this.isAccessibleFromPackage (ownerType)) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Command methods need to be non-private, non-abstract and declared by an accessible type.", method);
+                        return false;
+                }
+
+                if (method.getReturnType ().getKind () != TypeKind.VOID && method.getReturnType ().getKind () != TypeKind.BOOLEAN) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Command methods need to return either void or boolean.", method);
+                        return false;
+                }
+
+                List<? extends VariableElement> parameters = method.getParameters ();
+                TypeMirror senderType = (parameters.isEmpty () ? null : this.processingEnv.getTypeUtils ().erasure (parameters.get (0).asType ()));
+
+                if (senderType == null || (!senderType.toString ().equals (CommandSender.class.getName ()) && !senderType.toString ().equals (Player.class.getName ()))) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "The first parameter of a command method needs to be a CommandSender or Player.", method);
+                        return false;
+                }
+
+                for (int i = 1; i < parameters.size (); i++) {
+                        TypeMirror type = parameters.get (i).asType ();
+
+                        // varargs are passed as an array and thus need to be unwrapped first
+                        if (method.isVarArgs () && i == parameters.size () - 1) { type = ((ArrayType) type).getComponentType (); }
+
+                        if (ArgumentType.of (type, this.processingEnv) == null) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Unsupported command parameter type: " + type, parameters.get (i));
+                                return false;
                         }
                 }
 
-                if (!plugin.containsKey ("name")) { plugin.put ("name", pluginAnnotation.name ()); }
-                if (!plugin.containsKey ("version")) { plugin.put ("version", pluginAnnotation.version ()); }
-                if (!"".equals (pluginAnnotation.description ())) {
-                        plugin.put ("description", pluginAnnotation.description ());
+                // instance methods of types other than the plugin type require us to construct their type
+                ExecutableElement constructor = this.findDefaultConstructor (ownerType);
+                boolean publicConstructor = (constructor != null && ownerType.getModifiers ().contains (Modifier.PUBLIC) && constructor.getModifiers ().contains (Modifier.PUBLIC));
+
+                if (!pluginMethod && !method.getModifiers ().contains (Modifier.STATIC) && constructor == null) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Command methods need to be static or declared by the plugin type or a type with an accessible default constructor.", method);
+                        return false;
+                }
+
+                if (this.sourcesGenerated) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Command method has been introduced after the command dispatcher has been generated and will not be dispatched.", method);
                 }
-                if (PluginLoadOrder.POSTWORLD != pluginAnnotation.load ()) {
-                        plugin.put ("load", pluginAnnotation.load ().toString ());
+
+                String ownerPackage = this.processingEnv.getElementUtils ().getPackageOf (ownerType).getQualifiedName ().toString ();
+                this.originatingTypes.add (ownerType.getQualifiedName ().toString ());
+
+                for (Command command : method.getAnnotationsByType (Command.class)) {
+                        this.commandDefinitions.put (command.name (), new CommandDefinition (command, ownerType.getQualifiedName ().toString (), ownerPackage, publicConstructor, method));
                 }
 
-                if (pluginAnnotation.author ().length == 1) {
-                        plugin.put ("author", pluginAnnotation.author ()[0]);
-                } else if (pluginAnnotation.author ().length > 1) {
-                        plugin.put ("authors", pluginAnnotation.author ());
+                return true;
+        }
+
+        /**
+         * Collects all scheduled methods which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean collectScheduledMethods (RoundEnvironment roundEnv) {
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, Scheduled.class)) {
+                        ExecutableElement method = (ExecutableElement) element;
+                        TypeElement ownerType = (TypeElement) method.getEnclosingElement ();
+                        Scheduled annotation = method.getAnnotation (Scheduled.class);
+
+                        if (!this.isInvocable (method, "Scheduled methods")) { return false; }
+
+                        if (!method.getParameters ().isEmpty () || !method.getTypeParameters ().isEmpty ()) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Scheduled methods cannot accept any parameters.", method);
+                                return false;
+                        }
+
+                        if (annotation.period () < 1 || annotation.delay () < 0) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Scheduled methods need to declare a period of at least one tick and a non-negative delay.", method);
+                                return false;
+                        }
+
+                        if (this.sourcesGenerated) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Scheduled method has been introduced after the scheduler has been generated and will not be scheduled.", method);
+                        }
+
+                        this.originatingTypes.add (ownerType.getQualifiedName ().toString ());
+                        this.scheduledMethods.put (SchedulerGenerator.getTaskName (method), method);
                 }
 
-                if (!"".equals (pluginAnnotation.website ())) { plugin.put ("website", pluginAnnotation.website ()); }
-                if (pluginAnnotation.database ()) { plugin.put ("database", pluginAnnotation.database ()); }
-                if (!"".equals (pluginAnnotation.prefix ())) { plugin.put ("prefix", pluginAnnotation.prefix ()); }
+                return true;
+        }
+
+        /**
+         * Collects all tick budgeted job methods which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean collectJobMethods (RoundEnvironment roundEnv) {
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, TickBudgeted.class)) {
+                        ExecutableElement method = (ExecutableElement) element;
+                        TypeElement ownerType = (TypeElement) method.getEnclosingElement ();
 
-                Dependencies dependencies = mainPluginType.getAnnotation (Dependencies.class);
+                        if (!this.isInvocable (method, "Job methods")) { return false; }
+
+                        if (method.getParameters ().size () != 1 || !method.getTypeParameters ().isEmpty () || (method.getReturnType ().getKind () != TypeKind.VOID && method.getReturnType ().getKind () != TypeKind.BOOLEAN)) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Job methods need to accept exactly one item and return either void or boolean.", method);
+                                return false;
+                        }
+
+                        if (method.getAnnotation (TickBudgeted.class).maxMicrosPerTick () < 1) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Job methods need to permit at least one microsecond per tick.", method);
+                                return false;
+                        }
 
-                if (dependencies != null) {
-                        String[] pluginDependencies = new String[dependencies.value ().length];
-                        for (int i = 0; i < pluginDependencies.length; i++) {
-                                pluginDependencies[i] = dependencies.value ()[i].value ();
+                        if (this.sourcesGenerated) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Job method has been introduced after the job factories have been generated and will not be available.", method);
                         }
 
-                        plugin.put ("depend", pluginDependencies);
+                        this.originatingTypes.add (ownerType.getQualifiedName ().toString ());
+                        this.jobMethods.put (SchedulerGenerator.getTaskName (method), method);
                 }
 
-                LoadBeforePlugins loadBeforePlugins = mainPluginType.getAnnotation (LoadBeforePlugins.class);
+                return true;
+        }
+
+        /**
+         * Checks whether generated sources may invoke a method.
+         *
+         * This requires a non-private, non-abstract method declared by an accessible type (instances of types other than
+         * the plugin type are passed to the generated sources).
+         *
+         * @param method The method.
+         * @param description The description of the method kind (as used within error messages).
+         * @return True if invocable, false if an error has been raised.
+         */
+        protected boolean isInvocable (ExecutableElement method, String description) {
+                TypeElement ownerType = (TypeElement) method.getEnclosingElement ();
+
+                if (method.getModifiers ().contains (Modifier.PRIVATE) || method.getModifiers ().contains (Modifier.ABSTRACT) || !this.isAccessibleFromPackage (ownerType)) {
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, description + " need to be non-private, non-abstract and declared by an accessible type.", method);
+                        return false;
+                }
+
+                return true;
+        }
+
+        /**
+         * Checks whether a method may be invoked from within the plugin package.
+         *
+         * @param method The method (which needs to be invocable).
+         * @param pluginPackage The plugin package.
+         * @return True if accessible.
+         */
+        protected boolean isInvocableFrom (ExecutableElement method, String pluginPackage) {
+                if (pluginPackage.equals (this.processingEnv.getElementUtils ().getPackageOf (method).getQualifiedName ().toString ())) { return true; }
+
+                // methods of types within other packages can only be invoked if both are public
+                TypeElement owner = (TypeElement) method.getEnclosingElement ();
+                return (method.getModifiers ().contains (Modifier.PUBLIC) && owner.getModifiers ().contains (Modifier.PUBLIC));
+        }
+
+        /**
+         * Locates the default constructor of a type which may be invoked from within generated sources.
+         *
+         * This requires a non-private default constructor on a non-abstract top level or static inner class.
+         *
+         * @param typeElement The type.
+         * @return The constructor or null if the type cannot be constructed.
+         */
+        protected ExecutableElement findDefaultConstructor (TypeElement typeElement) {
+                if (typeElement.getModifiers ().contains (Modifier.ABSTRACT) || typeElement.getModifiers ().contains (Modifier.PRIVATE)) { return null; }
+                if (!(typeElement.getEnclosingElement () instanceof PackageElement) && !typeElement.getModifiers ().contains (Modifier.STATIC)) { return null; }
+
+                return ElementFilter.constructorsIn (typeElement.getEnclosedElements ()).stream ()
+                                    .filter ((c) -> c.getParameters ().isEmpty () && !c.getModifiers ().contains (Modifier.PRIVATE))
+                                    .findAny ()
+                                    .orElse (null);
+        }
+
+        /**
+         * Collects all external permissions which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         */
+        protected void collectPermissions (RoundEnvironment roundEnv) {
+                //Now let's do the external permission annotations, just like the commands
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, Permission.class, Permissions.class)) {
+                        if (element.getAnnotation (Plugin.class) != null || !(element instanceof TypeElement)) { continue; }
+
+                        Permission[] permissions = element.getAnnotationsByType (Permission.class);
+                        this.originatingTypes.add (((TypeElement) element).getQualifiedName ().toString ());
 
-                if (loadBeforePlugins != null) {
-                        String[] loadBefore = new String[loadBeforePlugins.value ().length];
-                        for (int i = 0; i < loadBefore.length; i++) {
-                                loadBefore[i] = loadBeforePlugins.value ()[i].value ();
+                        if (this.sourcesGenerated) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Permission has been introduced after the permission index has been generated and will not be indexed.", element);
                         }
 
-                        plugin.put ("loadbefore", loadBefore);
+                        for (Permission permission : permissions) {
+                                this.permissionDefinitions.put (permission.name (), permission);
+                        }
                 }
+        }
 
-                SoftDependencies softDependencies = mainPluginType.getAnnotation (SoftDependencies.class);
+        /**
+         * Collects all tab completions which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         */
+        protected void collectCompletions (RoundEnvironment roundEnv) {
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, Completion.class, Completions.class)) {
+                        if (this.sourcesGenerated) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Completion has been introduced after the command dispatcher has been generated and will be ignored.", element);
+                                continue;
+                        }
 
-                if (softDependencies != null) {
-                        String[] pluginDependencies = new String[softDependencies.value ().length];
-                        for (int i = 0; i < pluginDependencies.length; i++) {
-                                pluginDependencies[i] = softDependencies.value ()[i].value ();
+                        for (Completion completion : element.getAnnotationsByType (Completion.class)) {
+                                this.completionDefinitions.computeIfAbsent (completion.command (), (c) -> new ArrayList<> ()).add (completion);
                         }
 
-                        plugin.put ("softdepend", pluginDependencies);
+                        this.originatingTypes.add (((TypeElement) element).getQualifiedName ().toString ());
                 }
+        }
 
-                Map<String, Map<String, Object>> commandMetadata = new HashMap<> ();
-                //Begin processing external command annotations
-                Set<? extends Element> commandExecutors = roundEnv.getElementsAnnotatedWith (Command.class);
-                if (commandExecutors.size () > 0) {
-                        for (Element element : commandExecutors) {
-                                //Check to see if someone annotated a non-class with this.
-                                if (!(element instanceof TypeElement)) {
-                                        this.raiseError ("Specified Command Executor class is not a class.");
+        /**
+         * Collects all message templates which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean collectMessages (RoundEnvironment roundEnv) {
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, Message.class, Messages.class)) {
+                        if (this.sourcesGenerated) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Message has been introduced after the messages class has been generated and will be ignored.", element);
+                                continue;
+                        }
+
+                        for (Message message : element.getAnnotationsByType (Message.class)) {
+                                Message previous = this.messageDefinitions.putIfAbsent (message.key (), message);
+
+                                // the same message may be declared by several types as long as they agree on its template
+                                if (previous != null && !previous.template ().equals (message.template ())) {
+                                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Message \"" + message.key () + "\" has already been declared with a different template.", element);
                                         return false;
                                 }
+                        }
 
-                                TypeElement typeElement = (TypeElement) element;
-                                if (typeElement.equals (mainPluginType)) { continue; }
+                        this.originatingTypes.add (((TypeElement) element).getQualifiedName ().toString ());
+                }
 
-                                //Check to see if annotated class is actually a command executor
-                                if (!(this.processingEnv.getTypeUtils ().isAssignable (typeElement.asType (), this.processingEnv.getElementUtils ().getTypeElement (CommandExecutor.class.getName ()).asType ()))) {
-                                        this.raiseError ("Specified Command Executor class is not assignable from CommandExecutor");
-                                        return false;
+                return true;
+        }
+
+        /**
+         * Generates event executors for all listeners which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean processListeners (RoundEnvironment roundEnv) {
+                Map<String, TypeElement> listenerTypes = new TreeMap<> ();
+
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, EventHandler.class)) {
+                        TypeElement typeElement = (TypeElement) element.getEnclosingElement ();
+                        listenerTypes.putIfAbsent (typeElement.getQualifiedName ().toString (), typeElement);
+                }
+
+                EventExecutorGenerator generator = new EventExecutorGenerator (this.processingEnv, Boolean.parseBoolean (this.processingEnv.getOptions ().get (OPTION_PROFILE_LISTENERS)));
+
+                for (TypeElement typeElement : listenerTypes.values ()) {
+                        if (!this.generatedListeners.add (typeElement.getQualifiedName ().toString ())) { continue; }
+
+                        // Bukkit will only ever look at handlers of listener instances, thus we will not bother about
+                        // any other types (and neither about listeners which cannot be referenced from the outside)
+                        if (!this.isAssignable (typeElement.asType (), Listener.class)) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Event handlers declared outside of a listener will never be called.", typeElement);
+                                continue;
+                        }
+
+                        if (!this.isAccessibleFromPackage (typeElement)) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.NOTE, "Listener is not accessible from within its package, no event executors will be generated.", typeElement);
+                                continue;
+                        }
+
+                        // mirror the behavior of Bukkit which considers all methods declared by the listener itself as
+                        // well as all public methods inherited from its parents
+                        List<ExecutableElement> handlers = new ArrayList<> ();
+                        boolean valid = true;
+
+                        for (ExecutableElement method : ElementFilter.methodsIn (this.processingEnv.getElementUtils ().getAllMembers (typeElement))) {
+                                if (method.getAnnotation (EventHandler.class) == null) { continue; }
+                                if (method.getEnclosingElement () != typeElement && !method.getModifiers ().contains (Modifier.PUBLIC)) { continue; }
+
+                                if (method.getParameters ().size () != 1 || !this.isAssignable (method.getParameters ().get (0).asType (), Event.class)) {
+                                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Event handler does not accept exactly one event and will never be called.", method);
+                                        continue;
+                                }
+
+                                if (method.getModifiers ().contains (Modifier.PRIVATE)) {
+                                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, "Private event handlers cannot be called by generated executors, listener will need to be registered via PluginManager#registerEvents.", method);
+                                        valid = false;
+                                        break;
                                 }
-                                Command commandAnnotation = typeElement.getAnnotation (Command.class);
-                                commandMetadata.put (commandAnnotation.name (), this.processCommand (commandAnnotation));
+
+                                handlers.add (method);
+                        }
+
+                        if (!valid || handlers.isEmpty ()) { continue; }
+
+                        try {
+                                generator.generate (typeElement, handlers);
+                        } catch (IOException ex) {
+                                this.raiseError ("Cannot generate event executors for " + typeElement.getQualifiedName () + ": " + ex.getMessage ());
+                                return false;
                         }
                 }
 
-                Commands commands = mainPluginType.getAnnotation (Commands.class);
+                return true;
+        }
 
-                //Check the main class separately for command annotations
-                if (commands != null) {
-                        //If there are commands in the main class, merge that map with the one generated before
-                        Map<String, Map<String, Object>> joined = new HashMap<> ();
-                        joined.putAll (commandMetadata);
-                        joined.putAll (this.processCommands (commands));
-                        commandMetadata = joined;
+        /**
+         * Generates snapshots for all configuration sections which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean processConfigSections (RoundEnvironment roundEnv) {
+                Map<String, TypeElement> sectionTypes = new TreeMap<> ();
+
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, ConfigSection.class)) {
+                        TypeElement typeElement = (TypeElement) element;
+                        sectionTypes.put (typeElement.getQualifiedName ().toString (), typeElement);
                 }
-                plugin.put ("commands", commandMetadata);
 
-                Map<String, Map<String, Object>> permissionMetadata = new HashMap<> ();
-                //Now let's do the external permission annotations, just like the commands
-                Set<? extends Element> permissionAnnotations = roundEnv.getElementsAnnotatedWith (Command.class);
-                if (permissionAnnotations.size () > 0) {
-                        for (Element element : permissionAnnotations) {
-                                if (element.equals (mainPluginElement)) { continue; }
+                ConfigSnapshotGenerator generator = new ConfigSnapshotGenerator (this.processingEnv);
+
+                for (Map.Entry<String, TypeElement> entry : sectionTypes.entrySet ()) {
+                        if (this.configurationDefaults.containsKey (entry.getKey ())) { continue; }
+
+                        Map<String, Object> defaults;
+
+                        try {
+                                defaults = generator.generate (entry.getValue ());
+                        } catch (IOException ex) {
+                                this.raiseError ("Cannot generate configuration snapshot for " + entry.getKey () + ": " + ex.getMessage ());
+                                return false;
+                        }
+
+                        // the generator reports the exact cause of invalid sections on its own
+                        if (defaults == null) { return false; }
+
+                        String path = entry.getValue ().getAnnotation (ConfigSection.class).value ();
+                        Map<String, Object> tree = new LinkedHashMap<> ();
+
+                        if (path.isEmpty ()) {
+                                tree = defaults;
+                        } else {
+                                ConfigSnapshotGenerator.merge (tree, path, defaults);
+                        }
+
+                        this.configurationDefaults.put (entry.getKey (), tree);
+                }
+
+                return true;
+        }
+
+        /**
+         * Generates row mappers for all entities which have been introduced within the current round.
+         *
+         * @param roundEnv The round environment.
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean processEntities (RoundEnvironment roundEnv) {
+                Map<String, TypeElement> entityTypes = new TreeMap<> ();
+
+                for (Element element : this.getElementsAnnotatedWith (roundEnv, Entity.class)) {
+                        TypeElement typeElement = (TypeElement) element;
+                        entityTypes.put (typeElement.getQualifiedName ().toString (), typeElement);
+                }
 
-                                Permission permissionAnnotation = element.getAnnotation (Permission.class);
-                                permissionMetadata.put (permissionAnnotation.name (), this.processPermission (permissionAnnotation));
+                EntityMapperGenerator generator = new EntityMapperGenerator (this.processingEnv);
+
+                for (Map.Entry<String, TypeElement> entry : entityTypes.entrySet ()) {
+                        if (!this.entityTypes.add (entry.getKey ())) { continue; }
+
+                        try {
+                                // the generator reports the exact cause of invalid entities on its own
+                                if (!generator.generate (entry.getValue ())) { return false; }
+                        } catch (IOException ex) {
+                                this.raiseError ("Cannot generate row mapper for " + entry.getKey () + ": " + ex.getMessage ());
+                                return false;
                         }
                 }
 
-                Permissions permissions = mainPluginType.getAnnotation (Permissions.class);
-                if (permissions != null) {
-                        Map<String, Map<String, Object>> joined = new HashMap<> ();
-                        joined.putAll (permissionMetadata);
-                        joined.putAll (this.processPermissions (permissions));
-                        permissionMetadata = joined;
+                return true;
+        }
+
+        /**
+         * Checks whether the specified type may be referenced from within its own package.
+         *
+         * @param typeElement The type.
+         * @return True if accessible.
+         */
+        protected boolean isAccessibleFromPackage (TypeElement typeElement) {
+                Element element = typeElement;
+
+                while (element instanceof TypeElement) {
+                        NestingKind nestingKind = ((TypeElement) element).getNestingKind ();
+
+                        if (element.getModifiers ().contains (Modifier.PRIVATE) || (nestingKind != NestingKind.TOP_LEVEL && nestingKind != NestingKind.MEMBER)) { return false; }
+                        element = element.getEnclosingElement ();
                 }
-                plugin.put ("permissions", permissionMetadata);
 
+                return true;
+        }
+
+        /**
+         * Retrieves all elements annotated with a repeatable annotation or its container.
+         *
+         * @param roundEnv The round environment.
+         * @param annotationType The repeatable annotation type.
+         * @param containerType The container annotation type.
+         * @return The annotated elements.
+         */
+        protected Set<Element> getElementsAnnotatedWith (RoundEnvironment roundEnv, Class<? extends Annotation> annotationType, Class<? extends Annotation> containerType) {
+                Set<Element> elements = new LinkedHashSet<> ();
+
+                elements.addAll (this.getElementsAnnotatedWith (roundEnv, annotationType));
+                elements.addAll (this.getElementsAnnotatedWith (roundEnv, containerType));
+
+                return elements;
+        }
+
+        /**
+         * Retrieves all elements annotated with an annotation.
+         *
+         * @param roundEnv The round environment.
+         * @param annotationType The annotation type.
+         * @return The annotated elements.
+         */
+        protected Set<? extends Element> getElementsAnnotatedWith (RoundEnvironment roundEnv, Class<? extends Annotation> annotationType) {
+                this.statistics.enter (ProcessorStatistics.Phase.DISCOVERY);
+                Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith (annotationType);
+                this.statistics.exit ();
+
+                return elements;
+        }
+
+        /**
+         * Checks whether a type is assignable to another type.
+         *
+         * @param type The type.
+         * @param targetType The target type.
+         * @return True if assignable.
+         */
+        protected boolean isAssignable (TypeMirror type, Class<?> targetType) {
+                this.statistics.enter (ProcessorStatistics.Phase.TYPE_CHECKS);
+                boolean assignable = this.processingEnv.getTypeUtils ().isAssignable (type, this.processingEnv.getElementUtils ().getTypeElement (targetType.getName ()).asType ());
+                this.statistics.exit ();
+
+                return assignable;
+        }
+
+        /**
+         * Generates all plugin specific sources.
+         *
+         * @return True if processing may continue, false if an error has been raised.
+         */
+        protected boolean generateSources () {
+                TypeElement mainPluginType = this.processingEnv.getElementUtils ().getTypeElement (this.mainPluginTypeName);
+                String pluginPackage = this.processingEnv.getElementUtils ().getPackageOf (mainPluginType).getQualifiedName ().toString ();
+                String pluginSimpleName = mainPluginType.getSimpleName ().toString ();
+
+                for (CommandDefinition command : this.commandDefinitions.values ()) {
+                        if (command.getAnnotation ().maxInFlight () < 1) {
+                                this.raiseError ("Command \"" + command.getName () + "\" needs to permit at least one execution in flight.");
+                                return false;
+                        }
 
-                Yaml yaml = new Yaml ();
+                        // methods of types within other packages can only be invoked if both are public
+                        if (command.isMethodCommand () && !pluginPackage.equals (this.processingEnv.getElementUtils ().getPackageOf (command.getMethod ()).getQualifiedName ().toString ())) {
+                                Element owner = command.getMethod ().getEnclosingElement ();
+
+                                if (!command.getMethod ().getModifiers ().contains (Modifier.PUBLIC) || !owner.getModifiers ().contains (Modifier.PUBLIC) || (!command.isStaticMethod () && !owner.equals (mainPluginType) && !command.isConstructibleFrom (pluginPackage))) {
+                                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Command method is not accessible from within the plugin package.", command.getMethod ());
+                                        return false;
+                                }
+                        }
+
+                        if (command.getAnnotation ().cooldown () < 0) {
+                                this.raiseError ("Command \"" + command.getName () + "\" declares a negative cooldown.");
+                                return false;
+                        }
+                }
+
+                for (ExecutableElement method : this.scheduledMethods.values ()) {
+                        if (!this.isInvocableFrom (method, pluginPackage)) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Scheduled method is not accessible from within the plugin package.", method);
+                                return false;
+                        }
+                }
+
+                for (ExecutableElement method : this.jobMethods.values ()) {
+                        if (!this.isInvocableFrom (method, pluginPackage)) {
+                                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, "Job method is not accessible from within the plugin package.", method);
+                                return false;
+                        }
+                }
+
+                for (String command : this.completionDefinitions.keySet ()) {
+                        if (!this.commandDefinitions.containsKey (command)) {
+                                this.raiseError ("Cannot declare completions for unknown command \"" + command + "\".");
+                                return false;
+                        }
+                }
+
+                // instrumentation is opt-in and adds a command to the descriptor which reports the collected timings
+                if (!this.commandDefinitions.isEmpty () && Boolean.parseBoolean (this.processingEnv.getOptions ().get (OPTION_INSTRUMENT_COMMANDS))) {
+                        String timingsCommand = this.processingEnv.getOptions ().get (OPTION_TIMINGS_COMMAND);
+                        if (timingsCommand == null) { timingsCommand = this.plugin.get ("name").toString ().toLowerCase (Locale.ENGLISH).replaceAll ("[^a-z0-9]", "") + "timings"; }
+
+                        if (timingsCommand.isEmpty () || timingsCommand.contains (" ") || this.commandDefinitions.containsKey (timingsCommand)) {
+                                this.raiseError ("Cannot use \"" + timingsCommand + "\" as timings command name, specify another name via -A" + OPTION_TIMINGS_COMMAND + ".");
+                                return false;
+                        }
+
+                        this.timingsCommand = timingsCommand;
+                }
 
                 try {
-                        FileObject descriptorFile = this.processingEnv.getFiler ().createResource (StandardLocation.CLASS_OUTPUT, "", "plugin.yml");
+                        Map<String, String> permissionConstants = new HashMap<> ();
+
+                        if (!this.permissionDefinitions.isEmpty ()) {
+                                (new PermissionConstantsGenerator (this.processingEnv)).generate (pluginPackage, this.mainPluginTypeName, pluginSimpleName, this.permissionDefinitions, this.getOriginatingElements ());
+
+                                String permissionsType = pluginSimpleName + PermissionConstantsGenerator.SUFFIX;
+                                PermissionConstantsGenerator.constantNames (this.permissionDefinitions).forEach ((n, c) -> permissionConstants.put (n.toLowerCase (Locale.ENGLISH), permissionsType + "." + c));
+                        }
+
+                        if (!this.scheduledMethods.isEmpty ()) {
+                                (new SchedulerGenerator (this.processingEnv)).generate (pluginPackage, this.mainPluginTypeName, pluginSimpleName, new ArrayList<> (this.scheduledMethods.values ()), this.getOriginatingElements ());
+                        }
 
-                        try (Writer writer = descriptorFile.openWriter ()) {
-                                writer.append ("# Plugin descriptor automatically generated at " + DATE_FORMAT.format (new Date ()) + ".\n");
-                                yaml.dump (plugin, writer);
+                        if (!this.jobMethods.isEmpty ()) {
+                                (new BudgetedJobGenerator (this.processingEnv)).generate (pluginPackage, this.mainPluginTypeName, pluginSimpleName, new ArrayList<> (this.jobMethods.values ()), this.getOriginatingElements ());
                         }
 
-                        return true;
+                        if (!this.commandDefinitions.isEmpty ()) {
+                                (new CommandDispatcherGenerator (this.processingEnv)).generate (pluginPackage, this.mainPluginTypeName, pluginSimpleName, this.commandDefinitions.values (), this.completionDefinitions, permissionConstants, this.timingsCommand, this.getOriginatingElements ());
+                        }
+
+                        if (!this.messageDefinitions.isEmpty () && !(new MessageGenerator (this.processingEnv)).generate (pluginPackage, this.mainPluginTypeName, pluginSimpleName, this.messageDefinitions, this.getOriginatingElements ())) {
+                                return false;
+                        }
+
+                        // permission cycles would cause Bukkit to recurse endlessly when calculating attachments, thus
+                        // we will treat them as errors instead of generating a descriptor which cannot be loaded
+                        if (!this.permissionDefinitions.isEmpty () && !(new PermissionIndexGenerator (this.processingEnv)).generate (pluginPackage, this.mainPluginTypeName, pluginSimpleName, this.permissionDefinitions, this.getOriginatingElements ())) {
+                                return false;
+                        }
                 } catch (IOException ex) {
-                        throw new RuntimeException ("Cannot serialize plugin descriptor: " + ex.getMessage (), ex);
+                        this.raiseError ("Cannot generate plugin sources: " + ex.getMessage ());
+                        return false;
                 }
+
+                return true;
         }
 
         /**
-         * Processes a single command.
-         *
-         * @param commandAnnotation The annotation.
-         * @return The generated command metadata.
+         * Writes the processor statistics report and summarizes it within a note.
          */
-        protected Map<String, Object> processCommand (Command commandAnnotation) {
-                Map<String, Object> command = new HashMap<> ();
+        protected void writeStatistics () {
+                try {
+                        FileObject resource = this.processingEnv.getFiler ().createResource (StandardLocation.CLASS_OUTPUT, "", STATISTICS_FILE);
 
-                if (commandAnnotation.aliases ().length == 1) {
-                        command.put ("aliases", commandAnnotation.aliases ()[0]);
-                } else if (commandAnnotation.aliases ().length > 1) {
-                        command.put ("aliases", commandAnnotation.aliases ());
-                }
+                        try (OutputStream outputStream = resource.openOutputStream ()) {
+                                outputStream.write (this.statistics.toJson ().getBytes (StandardCharsets.UTF_8));
+                        }
 
-                if (!"".equals (commandAnnotation.description ())) {
-                        command.put ("description", commandAnnotation.description ());
+                        this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.NOTE, this.statistics.toSummary () + " (see " + resource.toUri () + ")");
+                } catch (IOException ex) {
+                        this.raiseWarning ("Cannot write processor statistics: " + ex.getMessage ());
                 }
-                if (!"".equals (commandAnnotation.permission ())) {
-                        command.put ("permission", commandAnnotation.permission ());
+        }
+
+        /**
+         * Writes the default configuration which combines the defaults of all configuration sections.
+         */
+        protected void writeConfiguration () {
+                Map<String, Object> configuration = new LinkedHashMap<> ();
+
+                for (Map.Entry<String, Map<String, Object>> entry : this.configurationDefaults.entrySet ()) {
+                        for (Map.Entry<String, Object> value : entry.getValue ().entrySet ()) {
+                                if (!ConfigSnapshotGenerator.merge (configuration, value.getKey (), value.getValue ())) {
+                                        this.raiseError ("Configuration section " + entry.getKey () + " conflicts with the values of another section.");
+                                        return;
+                                }
+                        }
                 }
-                if (!"".equals (commandAnnotation.permissionMessage ())) {
-                        command.put ("permission-message", commandAnnotation.permissionMessage ());
+
+                try {
+                        StringWriter writer = new StringWriter ();
+                        YamlDescriptorEmitter emitter = new YamlDescriptorEmitter (writer);
+                        String timestamp = this.getTimestamp ();
+
+                        emitter.comment ("Default configuration automatically generated" + (timestamp != null ? " at " + timestamp : "") + ".");
+                        this.emitConfiguration (emitter, configuration);
+                        emitter.finish ();
+
+                        this.writeResource (CONFIGURATION_FILE, writer.toString ().getBytes (StandardCharsets.UTF_8));
+                } catch (IOException ex) {
+                        throw new RuntimeException ("Cannot serialize default configuration: " + ex.getMessage (), ex);
                 }
-                if (!"".equals (commandAnnotation.usage ())) { command.put ("usage", commandAnnotation.usage ()); }
+        }
+
+        /**
+         * Emits a tree of configuration values.
+         *
+         * @param emitter The emitter.
+         * @param values The values (indexed by key).
+         * @throws IOException when emitting fails.
+         */
+        @SuppressWarnings ("unchecked")
+        protected void emitConfiguration (YamlDescriptorEmitter emitter, Map<String, Object> values) throws IOException {
+                for (Map.Entry<String, Object> entry : values.entrySet ()) {
+                        Object value = entry.getValue ();
 
-                return command;
+                        if (value instanceof Map) {
+                                emitter.beginMap (entry.getKey ());
+                                this.emitConfiguration (emitter, (Map<String, Object>) value);
+                                emitter.endMap ();
+                        } else if (value instanceof Boolean) {
+                                emitter.value (entry.getKey (), (boolean) value);
+                        } else if (value instanceof Number) {
+                                emitter.value (entry.getKey (), (Number) value);
+                        } else if (value instanceof String[]) {
+                                emitter.value (entry.getKey (), (String[]) value);
+                        } else {
+                                emitter.value (entry.getKey (), (String) value);
+                        }
+                }
         }
 
         /**
-         * Processes a set of commands.
+         * Writes the plugin descriptor.
          *
-         * @param commands The annotation.
-         * @return The generated command metadata.
+         * Besides the plugin.yml we will also generate a binary version of the descriptor which can be read without
+         * a YAML parser (see {@link BinaryDescriptorReader}).
          */
-        protected Map<String, Map<String, Object>> processCommands (Commands commands) {
-                Map<String, Map<String, Object>> commandList = new HashMap<> ();
-                for (Command command : commands.value ()) {
-                        commandList.put (command.name (), this.processCommand (command));
+        protected void writeDescriptor () {
+                try {
+                        StringWriter descriptor = new StringWriter ();
+                        YamlDescriptorEmitter emitter = new YamlDescriptorEmitter (descriptor);
+                        String timestamp = this.getTimestamp ();
+
+                        emitter.comment ("Plugin descriptor automatically generated" + (timestamp != null ? " at " + timestamp : "") + ".");
+                        this.emitDescriptor (emitter);
+
+                        // Note: The emitter escapes all non-ASCII characters thus the encoding does not matter here
+                        this.writeResource (DESCRIPTOR_FILE, descriptor.toString ().getBytes (StandardCharsets.UTF_8));
+
+                        ByteArrayOutputStream binaryDescriptor = new ByteArrayOutputStream ();
+                        this.emitDescriptor (new BinaryDescriptorEmitter (binaryDescriptor));
+                        this.writeResource (BinaryDescriptorReader.FILE_NAME, binaryDescriptor.toByteArray ());
+
+                        StringWriter dependencies = new StringWriter ();
+                        emitter = new YamlDescriptorEmitter (dependencies);
+
+                        emitter.comment ("Plugin dependency fragment automatically generated" + (timestamp != null ? " at " + timestamp : "") + ".");
+                        this.emitDependencies (emitter);
+                        this.writeResource (LoadPlanner.FRAGMENT_FILE, dependencies.toString ().getBytes (StandardCharsets.UTF_8));
+                } catch (IOException ex) {
+                        throw new RuntimeException ("Cannot serialize plugin descriptor: " + ex.getMessage (), ex);
                 }
-                return commandList;
         }
 
         /**
-         * Processes a command.
+         * Writes a resource to the class output.
          *
-         * @param permissionAnnotation The annotation.
-         * @return The generated permission metadata.
+         * Resources are only written if their contents differ from a previously generated version in order to allow
+         * packaging and caching layers to detect that nothing has changed.
+         *
+         * @param name The resource name.
+         * @param content The resource content.
+         * @throws IOException when writing fails.
          */
-        protected Map<String, Object> processPermission (Permission permissionAnnotation) {
-                Map<String, Object> permission = new HashMap<> ();
+        protected void writeResource (String name, byte[] content) throws IOException {
+                if (Arrays.equals (content, this.readPreviousResource (name))) { return; }
+
+                FileObject resource = this.processingEnv.getFiler ().createResource (StandardLocation.CLASS_OUTPUT, "", name, this.getOriginatingElements ());
 
-                if (!"".equals (permissionAnnotation.description ())) {
-                        permission.put ("description", permissionAnnotation.description ());
+                try (OutputStream outputStream = resource.openOutputStream ()) {
+                        outputStream.write (content);
                 }
-                if (PermissionDefault.OP != permissionAnnotation.defaultValue ()) {
-                        permission.put ("default", permissionAnnotation.defaultValue ().toString ().toLowerCase ());
+        }
+
+        /**
+         * Retrieves the timestamp to include within generated resources.
+         *
+         * Timestamps are omitted by default in order to keep builds reproducible. When the SOURCE_DATE_EPOCH environment
+         * variable is present, its value will be used instead of the current time.
+         *
+         * @return The formatted timestamp or null if no timestamp shall be included.
+         */
+        protected String getTimestamp () {
+                String sourceDateEpoch = System.getenv (SOURCE_DATE_EPOCH);
+
+                if (sourceDateEpoch == null && !Boolean.parseBoolean (this.processingEnv.getOptions ().get (OPTION_TIMESTAMP))) {
+                        return null;
                 }
 
-                if (permissionAnnotation.children ().length > 0) {
-                        Map<String, Boolean> childrenList = new HashMap<> ();
-                        for (ChildPermission childPermission : permissionAnnotation.children ()) {
-                                childrenList.put (childPermission.value (), childPermission.inherit ());
+                SimpleDateFormat format = new SimpleDateFormat ("MM/dd/yyyy HH:mm:ss z");
+                Date date = new Date ();
+
+                if (sourceDateEpoch != null) {
+                        try {
+                                date = new Date (Long.parseLong (sourceDateEpoch.trim ()) * 1000L);
+                        } catch (NumberFormatException ex) {
+                                this.raiseWarning ("Ignoring malformed " + SOURCE_DATE_EPOCH + " value: " + sourceDateEpoch);
                         }
-                        permission.put ("children", childrenList);
                 }
 
-                return permission;
+                format.setTimeZone (TimeZone.getTimeZone ("UTC"));
+                return format.format (date);
         }
 
         /**
-         * Processes a set of permissions.
+         * Reads a resource which has been generated by a previous build (if present).
          *
-         * @param permissions The annotation.
-         * @return The generated permission metadata.
+         * @param name The resource name.
+         * @return The resource contents or null if no such resource exists.
          */
-        protected Map<String, Map<String, Object>> processPermissions (Permissions permissions) {
-                Map<String, Map<String, Object>> permissionList = new HashMap<> ();
-                for (Permission permission : permissions.value ()) {
-                        permissionList.put (permission.name (), this.processPermission (permission));
+        protected byte[] readPreviousResource (String name) {
+                try {
+                        FileObject object = this.processingEnv.getFiler ().getResource (StandardLocation.CLASS_OUTPUT, "", name);
+
+                        try (InputStream inputStream = object.openInputStream ()) {
+                                ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+                                byte[] buffer = new byte[4096];
+                                int length;
+
+                                while ((length = inputStream.read (buffer)) != -1) {
+                                        outputStream.write (buffer, 0, length);
+                                }
+
+                                return outputStream.toByteArray ();
+                        }
+                } catch (IOException | IllegalArgumentException ex) {
+                        // this is perfectly normal as the resource is usually missing on clean builds and some compilers
+                        // will refuse to read from their output locations at all
+                        return null;
                 }
-                return permissionList;
+        }
+
+        /**
+         * Passes the plugin descriptor to an emitter.
+         *
+         * @param emitter The emitter.
+         * @throws IOException when writing fails.
+         */
+        protected void emitDescriptor (DescriptorEmitter emitter) throws IOException {
+                List<Command> commands = new ArrayList<> ();
+                Map<String, String> usages = new HashMap<> ();
+
+                for (CommandDefinition command : this.commandDefinitions.values ()) {
+                        commands.add (command.getAnnotation ());
+                        if (command.isMethodCommand ()) { usages.put (command.getName (), command.getUsage ()); }
+                }
+
+                DescriptorWriter.emitDescriptor (emitter, this.plugin, commands, usages, this.permissionDefinitions.values (), this.timingsCommand);
+        }
+
+        /**
+         * Emits the dependency fragment which is consumed by the {@link LoadPlanner} when assembling a server wide
+         * load plan.
+         *
+         * @param emitter The emitter.
+         * @throws IOException when emitting fails.
+         */
+        protected void emitDependencies (DescriptorEmitter emitter) throws IOException {
+                DescriptorWriter.emitDependencies (emitter, this.plugin);
+        }
+
+        /**
+         * Resolves all elements which contributed to the plugin descriptor.
+         *
+         * @return The originating elements.
+         */
+        protected Element[] getOriginatingElements () {
+                // elements may not be passed between rounds so we will have to look them up again by their name
+                return this.originatingTypes.stream ()
+                                .map ((n) -> this.processingEnv.getElementUtils ().getTypeElement (n))
+                                .filter ((e) -> e != null)
+                                .toArray (Element[]::new);
         }
 
         /**
@@ -383,6 +1279,15 @@ public class PluginAnnotationProcessor extends AbstractProcessor {
                 this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.ERROR, message);
         }
 
+        /**
+         * Raises a processor warning.
+         *
+         * @param message The warning message.
+         */
+        protected void raiseWarning (String message) {
+                this.processingEnv.getMessager ().printMessage (Diagnostic.Kind.WARNING, message);
+        }
+
         /**
          * Retrieves the plugin manifest (if present).
          *
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the time spent within each phase of the processor as well as the amount of elements it encountered.
+ *
+ * Phases may be nested in which case the time spent within the inner phase is not attributed to the outer phase (e.g.
+ * type checks performed while collecting commands are only counted as type checks). Time spent outside of any phase
+ * (such as within the compiler itself between two calls) is not recorded. When disabled, all methods return
+ * immediately.
+ *
+ * @author Johannes Donath
+ */
+public class ProcessorStatistics {
+        private static final int MAX_DEPTH = 16;
+        private final boolean enabled;
+        private final List<Round> rounds = new ArrayList<> ();
+        private final long[] totals = new long[Phase.values ().length];
+        private final Phase[] stack = new Phase[MAX_DEPTH];
+        private int depth = 0;
+        private long mark;
+        private Round round;
+
+        /**
+         * Constructs a new set of statistics.
+         *
+         * @param enabled Indicates whether statistics are to be recorded at all.
+         */
+        public ProcessorStatistics (boolean enabled) {
+                this.enabled = enabled;
+        }
+
+        /**
+         * Checks whether statistics are recorded.
+         *
+         * @return True if enabled.
+         */
+        public boolean isEnabled () {
+                return this.enabled;
+        }
+
+        /**
+         * Begins a new round and counts the elements and annotations passed to it.
+         *
+         * @param annotations The annotation types passed to the processor.
+         * @param roundEnv The round environment.
+         */
+        public void beginRound (Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+                if (!this.enabled) { return; }
+
+                Round round = new Round (this.rounds.size () + 1);
+                round.rootElements = roundEnv.getRootElements ().size ();
+
+                for (Element element : roundEnv.getRootElements ()) { round.elements += count (element); }
+
+                for (TypeElement annotation : annotations) {
+                        int count = roundEnv.getElementsAnnotatedWith (annotation).size ();
+
+                        round.annotations.put (annotation.getQualifiedName ().toString (), count);
+                        round.annotatedElements += count;
+                }
+
+                this.rounds.add (round);
+                this.round = round;
+                this.depth = 0;
+                round.start = System.nanoTime ();
+        }
+
+        /**
+         * Ends the current round.
+         */
+        public void endRound () {
+                if (!this.enabled || this.round == null) { return; }
+
+                // phases which have not been exited (due to an early return) are closed implicitly
+                while (this.depth > 0) { this.exit (); }
+
+                this.round.nanos = System.nanoTime () - this.round.start;
+                this.round = null;
+        }
+
+        /**
+         * Enters a phase.
+         *
+         * @param phase The phase.
+         */
+        public void enter (Phase phase) {
+                if (!this.enabled || this.round == null || this.depth == MAX_DEPTH) { return; }
+
+                long now = System.nanoTime ();
+                if (this.depth != 0) { this.attribute (this.stack[this.depth - 1], now); }
+
+                this.stack[this.depth++] = phase;
+                this.mark = now;
+        }
+
+        /**
+         * Exits the most recently entered phase.
+         */
+        public void exit () {
+                if (!this.enabled || this.round == null || this.depth == 0) { return; }
+
+                long now = System.nanoTime ();
+                this.attribute (this.stack[--this.depth], now);
+                this.mark = now;
+        }
+
+        /**
+         * Attributes the time since the last phase change to a phase.
+         *
+         * @param phase The phase.
+         * @param now The current time.
+         */
+        private void attribute (Phase phase, long now) {
+                this.round.phases[phase.ordinal ()] += now - this.mark;
+                this.totals[phase.ordinal ()] += now - this.mark;
+        }
+
+        /**
+         * Counts an element along with all of its enclosed elements.
+         *
+         * @param element The element.
+         * @return The element count.
+         */
+        private static int count (Element element) {
+                int count = 1;
+                for (Element enclosed : element.getEnclosedElements ()) { count += count (enclosed); }
+                return count;
+        }
+
+        /**
+         * Serializes the statistics of all rounds.
+         *
+         * @return The JSON representation.
+         */
+        public String toJson () {
+                StringBuilder builder = new StringBuilder ("{\n");
+                long nanos = 0;
+                int elements = 0;
+                int annotatedElements = 0;
+
+                for (Round round : this.rounds) {
+                        nanos += round.nanos;
+                        elements += round.elements;
+                        annotatedElements += round.annotatedElements;
+                }
+
+                builder.append ("  \"nanos\": ").append (nanos).append (",\n");
+                builder.append ("  \"rounds\": ").append (this.rounds.size ()).append (",\n");
+                builder.append ("  \"elements\": ").append (elements).append (",\n");
+                builder.append ("  \"annotatedElements\": ").append (annotatedElements).append (",\n");
+                builder.append ("  \"phases\": ");
+                appendPhases (builder, this.totals);
+                builder.append (",\n  \"perRound\": [");
+
+                for (int i = 0; i < this.rounds.size (); i++) {
+                        Round round = this.rounds.get (i);
+
+                        builder.append (i == 0 ? "\n" : ",\n");
+                        builder.append ("    {\"round\": ").append (round.number);
+                        builder.append (", \"nanos\": ").append (round.nanos);
+                        builder.append (", \"rootElements\": ").append (round.rootElements);
+                        builder.append (", \"elements\": ").append (round.elements);
+                        builder.append (", \"annotatedElements\": ").append (round.annotatedElements);
+                        builder.append (", \"phases\": ");
+                        appendPhases (builder, round.phases);
+                        builder.append (", \"annotations\": {");
+
+                        boolean first = true;
+
+                        for (Map.Entry<String, Integer> entry : round.annotations.entrySet ()) {
+                                if (!first) { builder.append (", "); }
+                                builder.append (SourceWriter.literal (entry.getKey ())).append (": ").append (entry.getValue ());
+                                first = false;
+                        }
+
+                        builder.append ("}}");
+                }
+
+                return builder.append ("\n  ]\n}\n").toString ();
+        }
+
+        /**
+         * Appends the time spent within each phase as a JSON object.
+         *
+         * @param builder The builder.
+         * @param phases The time per phase.
+         */
+        private static void appendPhases (StringBuilder builder, long[] phases) {
+                builder.append ('{');
+
+                for (Phase phase : Phase.values ()) {
+                        if (phase.ordinal () != 0) { builder.append (", "); }
+                        builder.append ('"').append (phase.getKey ()).append ("\": ").append (phases[phase.ordinal ()]);
+                }
+
+                builder.append ('}');
+        }
+
+        /**
+         * Summarizes the statistics within a single line.
+         *
+         * @return The summary.
+         */
+        public String toSummary () {
+                long nanos = 0;
+                int elements = 0;
+                for (Round round : this.rounds) {
+                        nanos += round.nanos;
+                        elements += round.elements;
+                }
+
+                StringBuilder builder = new StringBuilder (String.format (Locale.ROOT, "Plugin annotation processing took %.2f ms within %d rounds (%d elements):", nanos / 1000000.0, this.rounds.size (), elements));
+
+                for (Phase phase : Phase.values ()) {
+                        builder.append (String.format (Locale.ROOT, "%s %s %.2f ms", (phase.ordinal () == 0 ? "" : ","), phase.getKey (), this.totals[phase.ordinal ()] / 1000000.0));
+                }
+
+                return builder.toString ();
+        }
+
+        /**
+         * Represents the phases of the processor.
+         */
+        public enum Phase {
+                DISCOVERY ("discovery"),
+                TYPE_CHECKS ("typeChecks"),
+                MANIFEST ("manifest"),
+                COLLECTION ("collection"),
+                GENERATION ("generation"),
+                SERIALIZATION ("serialization");
+
+                private final String key;
+
+                Phase (String key) {
+                        this.key = key;
+                }
+
+                /**
+                 * Retrieves the key used to identify the phase within reports.
+                 *
+                 * @return The key.
+                 */
+                public String getKey () {
+                        return this.key;
+                }
+        }
+
+        /**
+         * Stores the statistics of a single round.
+         */
+        private static final class Round {
+                private final int number;
+                private final long[] phases = new long[Phase.values ().length];
+                private final Map<String, Integer> annotations = new TreeMap<> ();
+                private int rootElements;
+                private int elements;
+                private int annotatedElements;
+                private long start;
+                private long nanos;
+
+                Round (int number) {
+                        this.number = number;
+                }
+        }
+}
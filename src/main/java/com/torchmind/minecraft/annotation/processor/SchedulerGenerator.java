@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.scheduler.Scheduled;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates a single scheduler task which drives all scheduled methods of a plugin.
+ *
+ * Rather than registering one repeating task per method (each of which occupies its own entry within the server
+ * scheduler's queue), the generated class registers one task which advances a {@link com.torchmind.minecraft.annotation.runtime.TimerWheel}
+ * every tick and dispatches due methods via a switch over their index.
+ *
+ * Methods of types other than the plugin type are invoked on the instances which are passed to the generated
+ * {@code start} method (one per declaring type) as these types are usually instantiated by the plugin itself (e.g. when
+ * registering a listener) and a private instance would not share any state with them.
+ *
+ * @author Johannes Donath
+ */
+public class SchedulerGenerator {
+        public static final String SUFFIX = "Scheduler";
+        private final ProcessingEnvironment processingEnv;
+
+        public SchedulerGenerator (ProcessingEnvironment processingEnv) {
+                this.processingEnv = processingEnv;
+        }
+
+        /**
+         * Retrieves the name which identifies a scheduled method within logs and statistics.
+         *
+         * @param method The method.
+         * @return The name.
+         */
+        public static String getTaskName (ExecutableElement method) {
+                return ((TypeElement) method.getEnclosingElement ()).getQualifiedName () + "#" + method.getSimpleName ();
+        }
+
+        /**
+         * Generates the scheduler for the specified plugin.
+         *
+         * @param pluginPackage The plugin package.
+         * @param pluginType The qualified name of the plugin type.
+         * @param pluginSimpleName The simple name of the plugin type.
+         * @param methods The scheduled methods.
+         * @param originatingElements The elements which declared the methods.
+         * @throws IOException when writing the source file fails.
+         */
+        public void generate (String pluginPackage, String pluginType, String pluginSimpleName, List<ExecutableElement> methods, Element[] originatingElements) throws IOException {
+                String schedulerName = pluginSimpleName + SUFFIX;
+                String qualifiedName = (pluginPackage.isEmpty () ? schedulerName : pluginPackage + "." + schedulerName);
+
+                try (SourceWriter writer = new SourceWriter (this.processingEnv.getFiler ().createSourceFile (qualifiedName, originatingElements).openWriter ())) {
+                        if (!pluginPackage.isEmpty ()) {
+                                writer.line ("package %s;", pluginPackage).line ();
+                        }
+
+                        // methods which are declared by the same type share a single instance of it
+                        Map<String, String> owners = new LinkedHashMap<> ();
+
+                        for (ExecutableElement method : methods) {
+                                String ownerType = this.processingEnv.getTypeUtils ().erasure (method.getEnclosingElement ().asType ()).toString ();
+                                if (method.getModifiers ().contains (Modifier.STATIC) || ownerType.equals (pluginType) || owners.containsKey (ownerType)) { continue; }
+
+                                String simpleName = method.getEnclosingElement ().getSimpleName ().toString ();
+                                String name = Character.toLowerCase (simpleName.charAt (0)) + simpleName.substring (1);
+                                if (name.equals ("plugin") || owners.containsValue (name)) { name += owners.size (); }
+
+                                owners.put (ownerType, name);
+                        }
+
+                        StringBuilder parameters = new StringBuilder ();
+                        StringBuilder arguments = new StringBuilder ();
+
+                        for (Map.Entry<String, String> owner : owners.entrySet ()) {
+                                parameters.append (", ").append (owner.getKey ()).append (' ').append (owner.getValue ());
+                                arguments.append (", ").append (owner.getValue ());
+                        }
+
+                        StringBuilder names = new StringBuilder ();
+                        StringBuilder periods = new StringBuilder ();
+                        StringBuilder delays = new StringBuilder ();
+                        StringBuilder async = new StringBuilder ();
+
+                        for (ExecutableElement method : methods) {
+                                Scheduled annotation = method.getAnnotation (Scheduled.class);
+
+                                if (names.length () != 0) {
+                                        names.append (", ");
+                                        periods.append (", ");
+                                        delays.append (", ");
+                                        async.append (", ");
+                                }
+
+                                names.append (SourceWriter.literal (getTaskName (method)));
+                                periods.append (annotation.period ()).append ('L');
+                                delays.append (annotation.delay ()).append ('L');
+                                async.append (annotation.async ());
+                        }
+
+                        writer.line ("/**");
+                        writer.line (" * Drives all scheduled methods declared by {@link %s}.", pluginType);
+                        writer.line (" *");
+                        writer.line (" * This class has been generated automatically and should not be modified.");
+                        writer.line (" */");
+                        writer.open ("public final class %s implements com.torchmind.minecraft.annotation.runtime.TimerWheel.Handler", schedulerName);
+                        writer.line ("public static final String[] TASKS = {%s};", names);
+                        writer.line ("private static final long[] PERIODS = {%s};", periods);
+                        writer.line ("private static final long[] DELAYS = {%s};", delays);
+                        writer.line ("private static final boolean[] ASYNC = {%s};", async);
+                        writer.line ();
+                        writer.line ("private final %s plugin;", pluginType);
+                        for (Map.Entry<String, String> owner : owners.entrySet ()) { writer.line ("private final %s %s;", owner.getKey (), owner.getValue ()); }
+                        writer.line ("private final com.torchmind.minecraft.annotation.runtime.TimerWheel wheel;");
+                        writer.line ("private org.bukkit.scheduler.BukkitTask task;");
+                        writer.line ();
+
+                        writer.open ("private %s (%s plugin%s)", schedulerName, pluginType, parameters);
+                        writer.line ("this.plugin = plugin;");
+                        for (String owner : owners.values ()) { writer.line ("this.%s = java.util.Objects.requireNonNull (%s, %s);", owner, owner, SourceWriter.literal (owner)); }
+                        writer.line ("this.wheel = new com.torchmind.minecraft.annotation.runtime.TimerWheel (plugin, this, TASKS, PERIODS, DELAYS, ASYNC);");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Schedules all methods of the specified plugin.");
+                        writer.line (" *");
+                        writer.line (" * @param plugin The plugin.");
+                        for (Map.Entry<String, String> owner : owners.entrySet ()) { writer.line (" * @param %s The instance to invoke the scheduled methods of {@link %s} on.", owner.getValue (), owner.getKey ()); }
+                        writer.line (" * @return The scheduler.");
+                        writer.line (" */");
+                        writer.open ("public static %s start (%s plugin%s)", schedulerName, pluginType, parameters);
+                        writer.line ("%s scheduler = new %s (plugin%s);", schedulerName, schedulerName, arguments);
+                        writer.line ("scheduler.task = plugin.getServer ().getScheduler ().runTaskTimer (plugin, scheduler.wheel, 1L, 1L);");
+                        writer.line ("return scheduler;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Stops executing all scheduled methods.");
+                        writer.line (" */");
+                        writer.open ("public void cancel ()");
+                        writer.line ("this.task.cancel ();");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("/**");
+                        writer.line (" * Retrieves the timer wheel which provides the execution statistics of each method (indexed as in {@link #TASKS}).");
+                        writer.line (" *");
+                        writer.line (" * @return The wheel.");
+                        writer.line (" */");
+                        writer.open ("public com.torchmind.minecraft.annotation.runtime.TimerWheel getWheel ()");
+                        writer.line ("return this.wheel;");
+                        writer.end ();
+                        writer.line ();
+
+                        writer.line ("@Override");
+                        writer.open ("public void run (int task) throws Exception");
+                        writer.open ("switch (task)");
+
+                        for (int i = 0; i < methods.size (); i++) {
+                                ExecutableElement method = methods.get (i);
+                                String ownerType = this.processingEnv.getTypeUtils ().erasure (method.getEnclosingElement ().asType ()).toString ();
+                                String target;
+
+                                if (method.getModifiers ().contains (Modifier.STATIC)) {
+                                        target = ownerType;
+                                } else if (ownerType.equals (pluginType)) {
+                                        target = "this.plugin";
+                                } else {
+                                        target = "this." + owners.get (ownerType);
+                                }
+
+                                writer.line ("case %d:", i);
+                                writer.line ("        %s.%s ();", target, method.getSimpleName ());
+                                writer.line ("        return;");
+                        }
+
+                        writer.line ("default:");
+                        writer.line ("        throw new IllegalArgumentException (\"No such task: \" + task);");
+                        writer.end ();
+                        writer.end ();
+                        writer.end ();
+                }
+        }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Provides a minimal indentation aware writer for generated Java sources.
+ *
+ * @author Johannes Donath
+ */
+public class SourceWriter implements AutoCloseable {
+        private static final String INDENTATION = "        ";
+        private final Writer writer;
+        private int depth = 0;
+
+        public SourceWriter (Writer writer) {
+                this.writer = writer;
+        }
+
+        /**
+         * Writes a single (formatted) line at the current indentation level.
+         *
+         * @param format The line format.
+         * @param arguments The format arguments.
+         * @return The writer.
+         * @throws IOException when writing fails.
+         */
+        public SourceWriter line (String format, Object... arguments) throws IOException {
+                for (int i = 0; i < this.depth; i++) { this.writer.write (INDENTATION); }
+
+                this.writer.write ((arguments.length == 0 ? format : String.format (format, arguments)));
+                this.writer.write ('\n');
+                return this;
+        }
+
+        /**
+         * Writes an empty line.
+         *
+         * @return The writer.
+         * @throws IOException when writing fails.
+         */
+        public SourceWriter line () throws IOException {
+                this.writer.write ('\n');
+                return this;
+        }
+
+        /**
+         * Writes a line which opens a new block and increases the indentation level.
+         *
+         * @param format The line format.
+         * @param arguments The format arguments.
+         * @return The writer.
+         * @throws IOException when writing fails.
+         */
+        public SourceWriter open (String format, Object... arguments) throws IOException {
+                this.line ((arguments.length == 0 ? format : String.format (format, arguments)) + " {");
+                this.depth++;
+                return this;
+        }
+
+        /**
+         * Closes the current block and decreases the indentation level.
+         *
+         * @param suffix A suffix to append to the closing brace (such as a semicolon).
+         * @return The writer.
+         * @throws IOException when writing fails.
+         */
+        public SourceWriter close (String suffix) throws IOException {
+                this.depth--;
+                return this.line ("}" + suffix);
+        }
+
+        /**
+         * Closes the current block and decreases the indentation level.
+         *
+         * @return The writer.
+         * @throws IOException when writing fails.
+         */
+        public SourceWriter end () throws IOException {
+                return this.close ("");
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close () throws IOException {
+                this.writer.close ();
+        }
+
+        /**
+         * Converts a string into a quoted Java string literal.
+         *
+         * @param value The value.
+         * @return The literal.
+         */
+        public static String literal (String value) {
+                if (value == null) { return "null"; }
+
+                StringBuilder builder = new StringBuilder (value.length () + 2).append ('"');
+
+                for (int i = 0; i < value.length (); i++) {
+                        char c = value.charAt (i);
+
+                        switch (c) {
+                                case '"': builder.append ("\\\""); break;
+                                case '\\': builder.append ("\\\\"); break;
+                                case '\n': builder.append ("\\n"); break;
+                                case '\r': builder.append ("\\r"); break;
+                                case '\t': builder.append ("\\t"); break;
+                                default:
+                                        if (c < 0x20 || c > 0x7E) {
+                                                builder.append (String.format ("\\u%04x", (int) c));
+                                        } else {
+                                                builder.append (c);
+                                        }
+                        }
+                }
+
+                return builder.append ('"').toString ();
+        }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.regex.Pattern;
+
+/**
+ * Writes plugin descriptors in Bukkit's YAML format.
+ *
+ * All strings are written as double quoted scalars (with non-ASCII characters escaped) which guarantees that values
+ * retain their type and allows the output to be read correctly regardless of the encoding used to write it.
+ *
+ * @author Johannes Donath
+ */
+public class YamlDescriptorEmitter implements DescriptorEmitter {
+        private static final Pattern PLAIN_KEY = Pattern.compile ("[A-Za-z0-9_][A-Za-z0-9_.\\-]*");
+        private final Writer writer;
+        private int depth = 0;
+        private boolean pendingMap = false;
+
+        public YamlDescriptorEmitter (Writer writer) {
+                this.writer = writer;
+        }
+
+        /**
+         * Writes a comment line.
+         *
+         * @param comment The comment.
+         * @throws IOException when writing fails.
+         */
+        public void comment (String comment) throws IOException {
+                this.writer.write ("# ");
+                this.writer.write (comment);
+                this.writer.write ('\n');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void beginMap (String key) throws IOException {
+                this.key (key);
+                this.pendingMap = true;
+                this.depth++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void endMap () throws IOException {
+                // empty maps have to be written in flow style as an empty block would be interpreted as null
+                if (this.pendingMap) {
+                        this.writer.write (" {}\n");
+                        this.pendingMap = false;
+                }
+
+                this.depth--;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void value (String key, String value) throws IOException {
+                this.key (key);
+                this.writer.write (' ');
+                this.scalar (value);
+                this.writer.write ('\n');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void value (String key, boolean value) throws IOException {
+                this.key (key);
+                this.writer.write (value ? " true\n" : " false\n");
+        }
+
+        /**
+         * Writes a numeric value.
+         *
+         * Floating point values are always written in plain notation as YAML 1.1 would otherwise not recognize
+         * exponents without an explicit sign.
+         *
+         * @param key The key.
+         * @param value The value.
+         * @throws IOException when writing fails.
+         */
+        public void value (String key, Number value) throws IOException {
+                this.key (key);
+                this.writer.write (' ');
+
+                if (value instanceof Float || value instanceof Double) {
+                        String plain = new BigDecimal (value.toString ()).toPlainString ();
+                        this.writer.write ((plain.indexOf ('.') == -1 ? plain + ".0" : plain));
+                } else {
+                        this.writer.write (value.toString ());
+                }
+
+                this.writer.write ('\n');
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void value (String key, String[] values) throws IOException {
+                this.key (key);
+
+                if (values.length == 0) {
+                        this.writer.write (" []\n");
+                        return;
+                }
+
+                this.writer.write ('\n');
+
+                for (String value : values) {
+                        this.indent (this.depth + 1);
+                        this.writer.write ("- ");
+                        this.scalar (value);
+                        this.writer.write ('\n');
+                }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void finish () throws IOException {
+                this.writer.flush ();
+        }
+
+        /**
+         * Writes a key at the current depth.
+         *
+         * @param key The key.
+         * @throws IOException when writing fails.
+         */
+        private void key (String key) throws IOException {
+                if (this.pendingMap) {
+                        this.writer.write ('\n');
+                        this.pendingMap = false;
+                }
+
+                this.indent (this.depth);
+
+                if (PLAIN_KEY.matcher (key).matches () && !isReserved (key)) {
+                        this.writer.write (key);
+                } else {
+                        this.scalar (key);
+                }
+
+                this.writer.write (':');
+        }
+
+        /**
+         * Writes the indentation for the specified depth.
+         *
+         * @param depth The depth.
+         * @throws IOException when writing fails.
+         */
+        private void indent (int depth) throws IOException {
+                for (int i = 0; i < depth; i++) { this.writer.write ("  "); }
+        }
+
+        /**
+         * Writes a double quoted scalar.
+         *
+         * @param value The value.
+         * @throws IOException when writing fails.
+         */
+        private void scalar (String value) throws IOException {
+                this.writer.write ('"');
+
+                for (int i = 0; i < value.length (); i++) {
+                        char c = value.charAt (i);
+
+                        switch (c) {
+                                case '"': this.writer.write ("\\\""); break;
+                                case '\\': this.writer.write ("\\\\"); break;
+                                case '\n': this.writer.write ("\\n"); break;
+                                case '\r': this.writer.write ("\\r"); break;
+                                case '\t': this.writer.write ("\\t"); break;
+                                default:
+                                        if (c < 0x20 || c > 0x7E) {
+                                                this.writer.write (String.format ("\\u%04x", (int) c));
+                                        } else {
+                                                this.writer.write (c);
+                                        }
+                        }
+                }
+
+                this.writer.write ('"');
+        }
+
+        /**
+         * Checks whether a key would be interpreted as something other than a string when written as a plain scalar.
+         *
+         * @param key The key.
+         * @return True if reserved.
+         */
+        private static boolean isReserved (String key) {
+                switch (key.toLowerCase ()) {
+                        case "y": case "yes": case "n": case "no":
+                        case "true": case "false": case "on": case "off":
+                        case "null": case "~":
+                                return true;
+                        default:
+                                return Character.isDigit (key.charAt (0)) || key.charAt (0) == '-' || key.charAt (0) == '.';
+                }
+        }
+}
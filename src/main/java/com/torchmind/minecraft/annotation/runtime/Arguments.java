@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Provides exception free argument checks for generated command parsers.
+ *
+ * Each check accepts a subset of the inputs accepted by the respective JDK parse method which allows parsers to
+ * validate an argument first and parse it afterwards without ever having to deal with exceptions.
+ *
+ * @author Johannes Donath
+ */
+public final class Arguments {
+
+        private Arguments () {
+        }
+
+        /**
+         * Checks whether an argument is a valid {@code int}.
+         *
+         * @param argument The argument.
+         * @return True if valid.
+         */
+        public static boolean isInt (String argument) {
+                return isInteger (argument, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Checks whether an argument is a valid {@code long}.
+         *
+         * @param argument The argument.
+         * @return True if valid.
+         */
+        public static boolean isLong (String argument) {
+                return isInteger (argument, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+
+        /**
+         * Checks whether an argument is a valid decimal number (digits with an optional sign, fraction and exponent).
+         *
+         * @param argument The argument.
+         * @return True if valid.
+         */
+        public static boolean isDecimal (String argument) {
+                int length = argument.length ();
+                int i = 0;
+
+                if (i < length && (argument.charAt (i) == '-' || argument.charAt (i) == '+')) { i++; }
+
+                int digits = 0;
+                while (i < length && isDigit (argument.charAt (i))) { i++; digits++; }
+
+                if (i < length && argument.charAt (i) == '.') {
+                        i++;
+                        while (i < length && isDigit (argument.charAt (i))) { i++; digits++; }
+                }
+
+                if (digits == 0) { return false; }
+
+                if (i < length && (argument.charAt (i) == 'e' || argument.charAt (i) == 'E')) {
+                        i++;
+                        if (i < length && (argument.charAt (i) == '-' || argument.charAt (i) == '+')) { i++; }
+
+                        int exponentDigits = 0;
+                        while (i < length && isDigit (argument.charAt (i))) { i++; exponentDigits++; }
+                        if (exponentDigits == 0) { return false; }
+                }
+
+                return (i == length);
+        }
+
+        /**
+         * Checks whether an argument is a valid boolean ({@code true}, {@code false}, {@code yes}, {@code no},
+         * {@code on} or {@code off}).
+         *
+         * @param argument The argument.
+         * @return True if valid.
+         */
+        public static boolean isBoolean (String argument) {
+                return parseBoolean (argument) || isFalse (argument);
+        }
+
+        /**
+         * Parses a boolean argument.
+         *
+         * @param argument The argument.
+         * @return True if the argument represents true.
+         */
+        public static boolean parseBoolean (String argument) {
+                return argument.equalsIgnoreCase ("true") || argument.equalsIgnoreCase ("yes") || argument.equalsIgnoreCase ("on");
+        }
+
+        /**
+         * Creates a case-insensitive lookup table for the constants of an enum.
+         *
+         * @param values The enum constants.
+         * @param <E> The enum type.
+         * @return The lookup table (keyed by the lower case constant name).
+         */
+        public static <E extends Enum<E>> Map<String, E> choices (E[] values) {
+                Map<String, E> choices = new HashMap<> ();
+
+                for (E value : values) {
+                        choices.put (value.name ().toLowerCase (Locale.ROOT), value);
+                }
+
+                return choices;
+        }
+
+        /**
+         * Reports a parse error (without a usage) to the sender.
+         *
+         * @param sender The command sender.
+         * @param message The error message.
+         * @return Always true (which tells Bukkit that the command has been handled).
+         */
+        public static boolean fail (CommandSender sender, String message) {
+                sender.sendMessage (ChatColor.RED + message);
+                return true;
+        }
+
+        /**
+         * Reports a parse error to the sender using a pre-compiled usage.
+         *
+         * @param sender The command sender.
+         * @param label The alias used.
+         * @param message The error message (or null if only the usage should be displayed).
+         * @param usage The lines of the command usage split around each occurrence of the command label.
+         * @return Always true (which tells Bukkit that the command has been handled).
+         */
+        public static boolean fail (CommandSender sender, String label, String message, String[][] usage) {
+                if (message != null) { sender.sendMessage (ChatColor.RED + message); }
+
+                for (String[] segments : usage) {
+                        if (segments.length == 1) {
+                                sender.sendMessage (segments[0]);
+                                continue;
+                        }
+
+                        StringBuilder builder = new StringBuilder (segments[0]);
+                        for (int i = 1; i < segments.length; i++) { builder.append (label).append (segments[i]); }
+                        sender.sendMessage (builder.toString ());
+                }
+
+                return true;
+        }
+
+        /**
+         * Checks whether an argument represents false.
+         *
+         * @param argument The argument.
+         * @return True if false.
+         */
+        private static boolean isFalse (String argument) {
+                return argument.equalsIgnoreCase ("false") || argument.equalsIgnoreCase ("no") || argument.equalsIgnoreCase ("off");
+        }
+
+        /**
+         * Checks whether an argument is a decimal integer within the specified range.
+         *
+         * @param argument The argument.
+         * @param min The lower bound.
+         * @param max The upper bound.
+         * @return True if valid.
+         */
+        private static boolean isInteger (String argument, long min, long max) {
+                int length = argument.length ();
+                if (length == 0) { return false; }
+
+                int i = 0;
+                boolean negative = false;
+
+                if (argument.charAt (0) == '-' || argument.charAt (0) == '+') {
+                        negative = (argument.charAt (0) == '-');
+                        if (++i == length) { return false; }
+                }
+
+                // accumulate negatively (like Long.parseLong does) since the negative range is larger
+                long limit = (negative ? min : -max);
+                long value = 0;
+
+                for (; i < length; i++) {
+                        char c = argument.charAt (i);
+                        if (!isDigit (c)) { return false; }
+
+                        int digit = c - '0';
+                        if (value < (limit + digit) / 10) { return false; }
+
+                        value = value * 10 - digit;
+                        if (value < limit) { return false; }
+                }
+
+                return true;
+        }
+
+        /**
+         * Checks whether a character is an ASCII digit.
+         *
+         * @param c The character.
+         * @return True if digit.
+         */
+        private static boolean isDigit (char c) {
+                return (c >= '0' && c <= '9');
+        }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.IllegalPluginAccessException;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Executes commands off the main server thread and hands their results back to it.
+ *
+ * Each sender may only have a limited amount of executions in flight and the total amount of queued executions is
+ * bounded as well, excess executions are rejected (and the sender notified) instead of piling up. Once an execution
+ * completes, its result is passed back to the main thread via the scheduler where usage messages and errors are
+ * reported in the same manner Bukkit would report them for synchronous commands.
+ *
+ * @author Johannes Donath
+ */
+public final class AsyncCommandRunner {
+        public static final int DEFAULT_QUEUE_CAPACITY = 256;
+        private static final Method NEW_VIRTUAL_THREAD_EXECUTOR;
+        private static final String BUSY_MESSAGE = ChatColor.RED + "The server is busy, please try again later.";
+
+        static {
+                // virtual threads are only available on Java 21+ while we still target Java 8, thus we will look up the
+                // factory method once instead of linking against it
+                Method method;
+
+                try {
+                        method = Executors.class.getMethod ("newVirtualThreadPerTaskExecutor");
+                } catch (NoSuchMethodException ex) {
+                        method = null;
+                }
+
+                NEW_VIRTUAL_THREAD_EXECUTOR = method;
+        }
+
+        private final Plugin plugin;
+        private final ExecutorService executorService;
+        private final int queueCapacity;
+        private final ConcurrentHashMap<Object, Integer> inFlight = new ConcurrentHashMap<> ();
+        private final AtomicInteger queued = new AtomicInteger ();
+        private final AtomicInteger active = new AtomicInteger ();
+        private final LongAdder completed = new LongAdder ();
+        private final LongAdder failed = new LongAdder ();
+        private final LongAdder rejected = new LongAdder ();
+
+        /**
+         * Constructs a new runner which is backed by a fixed pool of platform threads.
+         *
+         * @param plugin The owning plugin.
+         * @param threads The amount of threads.
+         * @param queueCapacity The maximum amount of executions which may wait for a thread.
+         */
+        public AsyncCommandRunner (Plugin plugin, int threads, int queueCapacity) {
+                this.plugin = plugin;
+                this.executorService = Executors.newFixedThreadPool (threads, new RunnerThreadFactory (plugin.getName ()));
+                this.queueCapacity = queueCapacity;
+        }
+
+        private AsyncCommandRunner (Plugin plugin, ExecutorService executorService, int queueCapacity) {
+                this.plugin = plugin;
+                this.executorService = executorService;
+                this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * Creates a runner which is backed by a pool of platform threads (one per available processor).
+         *
+         * @param plugin The owning plugin.
+         * @return The runner.
+         */
+        public static AsyncCommandRunner pooled (Plugin plugin) {
+                return new AsyncCommandRunner (plugin, Math.max (2, Runtime.getRuntime ().availableProcessors ()), DEFAULT_QUEUE_CAPACITY);
+        }
+
+        /**
+         * Creates a runner which executes every command on its own virtual thread.
+         *
+         * If the runtime does not support virtual threads, a pooled runner is returned instead.
+         *
+         * @param plugin The owning plugin.
+         * @return The runner.
+         */
+        public static AsyncCommandRunner virtual (Plugin plugin) {
+                if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+                        try {
+                                return new AsyncCommandRunner (plugin, (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke (null), DEFAULT_QUEUE_CAPACITY);
+                        } catch (ReflectiveOperationException ex) {
+                                plugin.getLogger ().log (Level.WARNING, "Cannot create virtual thread executor: " + ex.getMessage (), ex);
+                        }
+                }
+
+                return pooled (plugin);
+        }
+
+        /**
+         * Submits a command for asynchronous execution.
+         *
+         * This method needs to be called from the main server thread.
+         *
+         * @param executor The command executor.
+         * @param sender The command sender.
+         * @param command The command.
+         * @param label The alias used.
+         * @param args The command arguments.
+         * @param maxInFlight The maximum amount of executions the sender may have in flight at the same time.
+         * @return Always true as usage messages are sent once the command completes.
+         */
+        public boolean submit (CommandExecutor executor, CommandSender sender, Command command, String label, String[] args, int maxInFlight) {
+                Object key = (sender instanceof Player ? ((Player) sender).getUniqueId () : sender.getName ());
+
+                if (!this.acquire (key, maxInFlight)) {
+                        this.rejected.increment ();
+                        sender.sendMessage (ChatColor.RED + "Please wait for your previous command to complete.");
+                        return true;
+                }
+
+                if (this.queued.incrementAndGet () > this.queueCapacity) {
+                        this.queued.decrementAndGet ();
+                        this.release (key);
+                        this.rejected.increment ();
+                        sender.sendMessage (BUSY_MESSAGE);
+                        return true;
+                }
+
+                try {
+                        this.executorService.execute (() -> this.run (key, executor, sender, command, label, args));
+                } catch (RejectedExecutionException ex) {
+                        // the runner has been shut down (e.g. the plugin is being disabled)
+                        this.queued.decrementAndGet ();
+                        this.release (key);
+                        this.rejected.increment ();
+                        sender.sendMessage (BUSY_MESSAGE);
+                }
+
+                return true;
+        }
+
+        /**
+         * Executes a command on the current (background) thread and passes its result on to the main thread.
+         */
+        private void run (Object key, CommandExecutor executor, CommandSender sender, Command command, String label, String[] args) {
+                this.queued.decrementAndGet ();
+                this.active.incrementAndGet ();
+
+                boolean success = false;
+                Throwable error = null;
+
+                try {
+                        success = executor.onCommand (sender, command, label, args);
+                } catch (Throwable ex) {
+                        error = ex;
+                } finally {
+                        this.active.decrementAndGet ();
+                        this.release (key);
+                        (error == null ? this.completed : this.failed).increment ();
+                }
+
+                if (!this.plugin.isEnabled ()) { return; }
+
+                final boolean result = success;
+                final Throwable cause = error;
+
+                try {
+                        this.plugin.getServer ().getScheduler ().runTask (this.plugin, () -> this.complete (sender, command, label, result, cause));
+                } catch (IllegalPluginAccessException ex) {
+                        // the plugin has been disabled since the check above, the result is dropped as well
+                }
+        }
+
+        /**
+         * Reports the result of a command on the main thread.
+         */
+        private void complete (CommandSender sender, Command command, String label, boolean success, Throwable error) {
+                if (error != null) {
+                        this.plugin.getLogger ().log (Level.SEVERE, "Unhandled exception executing command '" + label + "' in plugin " + this.plugin.getName (), error);
+                        sender.sendMessage (ChatColor.RED + "An internal error occurred while attempting to perform this command");
+                        return;
+                }
+
+                String usage = command.getUsage ();
+                if (success || usage == null || usage.isEmpty ()) { return; }
+
+                for (String line : usage.replace ("<command>", label).split ("\n")) {
+                        sender.sendMessage (line);
+                }
+        }
+
+        /**
+         * Attempts to reserve an execution slot for a sender.
+         *
+         * @param key The sender key.
+         * @param maxInFlight The maximum amount of executions in flight.
+         * @return True if a slot has been reserved.
+         */
+        private boolean acquire (Object key, int maxInFlight) {
+                boolean[] acquired = {false};
+
+                this.inFlight.compute (key, (k, count) -> {
+                        int current = (count == null ? 0 : count);
+                        if (current >= maxInFlight) { return count; }
+
+                        acquired[0] = true;
+                        return current + 1;
+                });
+
+                return acquired[0];
+        }
+
+        /**
+         * Releases an execution slot of a sender.
+         *
+         * @param key The sender key.
+         */
+        private void release (Object key) {
+                this.inFlight.computeIfPresent (key, (k, count) -> (count <= 1 ? null : count - 1));
+        }
+
+        /**
+         * Retrieves the amount of executions which are waiting for a thread.
+         *
+         * @return The queue depth.
+         */
+        public int getQueueDepth () {
+                return this.queued.get ();
+        }
+
+        /**
+         * Retrieves the amount of executions which are currently running.
+         *
+         * @return The amount of active executions.
+         */
+        public int getActiveCount () {
+                return this.active.get ();
+        }
+
+        /**
+         * Retrieves the amount of senders which currently have at least one execution in flight.
+         *
+         * @return The amount of senders.
+         */
+        public int getSenderCount () {
+                return this.inFlight.size ();
+        }
+
+        /**
+         * Retrieves the amount of executions which completed normally.
+         *
+         * @return The amount of executions.
+         */
+        public long getCompletedCount () {
+                return this.completed.sum ();
+        }
+
+        /**
+         * Retrieves the amount of executions which failed with an exception.
+         *
+         * @return The amount of executions.
+         */
+        public long getFailedCount () {
+                return this.failed.sum ();
+        }
+
+        /**
+         * Retrieves the amount of executions which have been rejected due to the in-flight or queue limits.
+         *
+         * @return The amount of executions.
+         */
+        public long getRejectedCount () {
+                return this.rejected.sum ();
+        }
+
+        /**
+         * Stops accepting new executions and waits for running executions to complete.
+         *
+         * @param timeout The maximum time to wait.
+         * @param unit The time unit.
+         * @return True if all executions completed within the timeout.
+         * @throws InterruptedException when the calling thread is interrupted while waiting.
+         */
+        public boolean shutdown (long timeout, TimeUnit unit) throws InterruptedException {
+                this.executorService.shutdown ();
+                return this.executorService.awaitTermination (timeout, unit);
+        }
+
+        /**
+         * Creates named daemon threads for pooled runners.
+         */
+        private static final class RunnerThreadFactory implements ThreadFactory {
+                private final String prefix;
+                private final AtomicInteger counter = new AtomicInteger ();
+
+                RunnerThreadFactory (String pluginName) {
+                        this.prefix = pluginName + " Command Thread #";
+                }
+
+                @Override
+                public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread (runnable, this.prefix + this.counter.incrementAndGet ());
+                        thread.setDaemon (true);
+                        return thread;
+                }
+        }
+}
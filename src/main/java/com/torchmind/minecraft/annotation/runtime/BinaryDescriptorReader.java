@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads binary plugin descriptors (plugin.bin) which are generated alongside the plugin.yml.
+ *
+ * The resulting structure is identical to the one produced by loading the respective plugin.yml with a YAML parser
+ * (nested maps with string, boolean and string list values) but does not require any parsing beyond reading a string
+ * table and a flat sequence of tagged entries.
+ *
+ * The format consists of a header (magic number and version), a length-prefixed table of all strings (each stored in
+ * modified UTF-8 as written by {@link java.io.DataOutput#writeUTF(String)}) and a sequence of entries which reference
+ * strings by their index within the table. All counts and indices are stored as unsigned variable length integers.
+ *
+ * @author Johannes Donath
+ */
+public final class BinaryDescriptorReader {
+        public static final String FILE_NAME = "plugin.bin";
+        public static final int MAGIC = 0x42504144;
+        public static final int VERSION = 1;
+
+        public static final int TAG_END = 0;
+        public static final int TAG_MAP = 1;
+        public static final int TAG_STRING = 2;
+        public static final int TAG_BOOLEAN = 3;
+        public static final int TAG_LIST = 4;
+
+        private BinaryDescriptorReader () {
+        }
+
+        /**
+         * Reads a binary descriptor.
+         *
+         * @param data The encoded descriptor.
+         * @return The descriptor contents.
+         * @throws IOException when the descriptor is malformed.
+         */
+        public static Map<String, Object> read (byte[] data) throws IOException {
+                return read (new ByteArrayInputStream (data));
+        }
+
+        /**
+         * Reads a binary descriptor.
+         *
+         * @param inputStream The stream to read from.
+         * @return The descriptor contents.
+         * @throws IOException when the descriptor is malformed or reading fails.
+         */
+        @SuppressWarnings ("unchecked")
+        public static Map<String, Object> read (InputStream inputStream) throws IOException {
+                DataInputStream input = new DataInputStream (inputStream);
+
+                if (input.readInt () != MAGIC) { throw new IOException ("Not a binary plugin descriptor"); }
+
+                int version = input.readUnsignedByte ();
+                if (version != VERSION) { throw new IOException ("Unsupported binary plugin descriptor version: " + version); }
+
+                String[] strings = new String[readVarInt (input)];
+                for (int i = 0; i < strings.length; i++) { strings[i] = input.readUTF (); }
+
+                Map<String, Object> root = new LinkedHashMap<> ();
+                Deque<Map<String, Object>> stack = new ArrayDeque<> ();
+                Map<String, Object> current = root;
+
+                while (true) {
+                        int tag = input.readUnsignedByte ();
+
+                        if (tag == TAG_END) {
+                                if (stack.isEmpty ()) { return root; }
+
+                                current = stack.pop ();
+                                continue;
+                        }
+
+                        String key = strings[readVarInt (input)];
+
+                        switch (tag) {
+                                case TAG_MAP:
+                                        Map<String, Object> map = new LinkedHashMap<> ();
+                                        current.put (key, map);
+                                        stack.push (current);
+                                        current = map;
+                                        break;
+                                case TAG_STRING:
+                                        current.put (key, strings[readVarInt (input)]);
+                                        break;
+                                case TAG_BOOLEAN:
+                                        current.put (key, input.readBoolean ());
+                                        break;
+                                case TAG_LIST:
+                                        int length = readVarInt (input);
+                                        List<String> list = new ArrayList<> (length);
+
+                                        for (int i = 0; i < length; i++) { list.add (strings[readVarInt (input)]); }
+
+                                        current.put (key, list);
+                                        break;
+                                default:
+                                        throw new IOException ("Unknown entry tag: " + tag);
+                        }
+                }
+        }
+
+        /**
+         * Reads an unsigned variable length integer.
+         *
+         * @param input The input.
+         * @return The value.
+         * @throws IOException when reading fails.
+         */
+        private static int readVarInt (DataInputStream input) throws IOException {
+                int value = 0;
+
+                for (int shift = 0; shift < 35; shift += 7) {
+                        int b = input.readUnsignedByte ();
+                        value |= (b & 0x7F) << shift;
+
+                        if ((b & 0x80) == 0) { return value; }
+                }
+
+                throw new IOException ("Malformed variable length integer");
+        }
+}
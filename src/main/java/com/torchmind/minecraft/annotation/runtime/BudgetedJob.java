@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Spliterator;
+import java.util.logging.Level;
+
+/**
+ * Processes the items of a large batch on the main thread without exceeding a fixed time budget per tick.
+ *
+ * Once started, the job is run every tick and processes items until its budget is used up or all items have been
+ * processed. The budget is reduced while the server falls behind its target tick rate (as measured by the interval
+ * between two executions of the job) in order to not slow it down any further. Jobs may be paused and resumed at any
+ * time and report their progress (once per tick) as well as their completion to an optional listener.
+ *
+ * All methods are expected to be invoked from within the main server thread.
+ *
+ * @param <T> The item type.
+ * @author Johannes Donath
+ */
+public final class BudgetedJob<T> implements Runnable {
+        public static final long TICK_NANOS = 50000000L;
+
+        // the budget never drops below a tenth of its configured value as jobs would otherwise be starved on servers
+        // which permanently run behind their target tick rate
+        private static final long MINIMUM_BUDGET_DIVISOR = 10;
+
+        private final Plugin plugin;
+        private final String name;
+        private final Spliterator<? extends T> items;
+        private final Step<? super T> step;
+        private final long budgetNanos;
+        private final long estimatedSize;
+        private Listener listener;
+
+        private BukkitTask task;
+        private State state = State.CREATED;
+        private long processed;
+        private long lastRun;
+        private long averageInterval = TICK_NANOS;
+        private boolean stopped;
+
+        /**
+         * Constructs a new job.
+         *
+         * @param plugin The owning plugin.
+         * @param name The job name (as used within log messages).
+         * @param items The items to process.
+         * @param step The step which processes a single item (and returns false in order to stop the job).
+         * @param maxMicrosPerTick The maximum amount of time (in microseconds) to spend within a single tick.
+         */
+        public BudgetedJob (Plugin plugin, String name, Spliterator<? extends T> items, Step<? super T> step, long maxMicrosPerTick) {
+                if (maxMicrosPerTick < 1) { throw new IllegalArgumentException ("Budget needs to be at least one microsecond"); }
+
+                this.plugin = plugin;
+                this.name = name;
+                this.items = items;
+                this.step = step;
+                this.budgetNanos = maxMicrosPerTick * 1000L;
+                this.estimatedSize = (items.hasCharacteristics (Spliterator.SIZED) ? items.getExactSizeIfKnown () : items.estimateSize ());
+        }
+
+        /**
+         * Sets the listener which is notified about the progress of this job.
+         *
+         * @param listener The listener.
+         * @return The job.
+         */
+        public BudgetedJob<T> listener (Listener listener) {
+                this.listener = listener;
+                return this;
+        }
+
+        /**
+         * Starts (or resumes) processing items within the next tick.
+         *
+         * @return The job.
+         */
+        public BudgetedJob<T> start () {
+                if (this.state == State.RUNNING) { return this; }
+                if (this.state.isFinal ()) { throw new IllegalStateException ("Job " + this.name + " has already finished"); }
+
+                this.state = State.RUNNING;
+                this.lastRun = 0;
+                this.task = this.plugin.getServer ().getScheduler ().runTaskTimer (this.plugin, this, 1L, 1L);
+                return this;
+        }
+
+        /**
+         * Stops processing items until the job is started again.
+         */
+        public void pause () {
+                if (this.state != State.RUNNING) { return; }
+
+                this.state = State.PAUSED;
+                this.task.cancel ();
+        }
+
+        /**
+         * Stops processing items permanently.
+         */
+        public void cancel () {
+                if (this.state.isFinal ()) { return; }
+                if (this.state == State.RUNNING) { this.task.cancel (); }
+
+                this.state = State.CANCELLED;
+        }
+
+        /**
+         * Processes items until the budget of the current tick is used up.
+         */
+        @Override
+        public void run () {
+                if (this.state != State.RUNNING) { return; }
+
+                long start = System.nanoTime ();
+                long budget = this.getBudget (start);
+                long deadline = start + budget;
+                boolean remaining;
+
+                try {
+                        do {
+                                remaining = this.items.tryAdvance (this::process);
+                        } while (remaining && !this.stopped && this.state == State.RUNNING && System.nanoTime () - deadline < 0);
+                } catch (Throwable ex) {
+                        Throwable cause = (ex instanceof JobException ? ex.getCause () : ex);
+
+                        this.task.cancel ();
+                        this.state = State.FAILED;
+                        this.plugin.getLogger ().log (Level.SEVERE, "Job " + this.name + " generated an exception while processing item #" + this.processed, cause);
+
+                        if (this.listener != null) { this.listener.onFailure (this.processed, cause); }
+                        return;
+                }
+
+                if (this.listener != null) { this.listener.onProgress (this.processed, this.estimatedSize); }
+
+                // steps may pause or cancel their own job in which case we will leave its state untouched
+                if (this.state == State.RUNNING && (!remaining || this.stopped)) {
+                        this.task.cancel ();
+                        this.state = State.COMPLETED;
+
+                        if (this.listener != null) { this.listener.onComplete (this.processed); }
+                }
+        }
+
+        /**
+         * Processes a single item.
+         *
+         * @param item The item.
+         */
+        private void process (T item) {
+                try {
+                        this.stopped = !this.step.process (item);
+                } catch (RuntimeException ex) {
+                        throw ex;
+                } catch (Exception ex) {
+                        throw new JobException (ex);
+                }
+
+                this.processed++;
+        }
+
+        /**
+         * Computes the budget for the current tick.
+         *
+         * @param now The current time.
+         * @return The budget (in nanoseconds).
+         */
+        private long getBudget (long now) {
+                if (this.lastRun != 0) {
+                        // exponentially weighted moving average with a weight of 1/8 which smooths out single slow ticks
+                        // (such as garbage collections) while still reacting to sustained lag within a couple of seconds
+                        this.averageInterval += (now - this.lastRun - this.averageInterval) >> 3;
+                }
+
+                this.lastRun = now;
+
+                if (this.averageInterval <= TICK_NANOS) { return this.budgetNanos; }
+                return Math.max (this.budgetNanos / MINIMUM_BUDGET_DIVISOR, (long) (this.budgetNanos * ((double) TICK_NANOS / this.averageInterval)));
+        }
+
+        /**
+         * Retrieves the job name.
+         *
+         * @return The name.
+         */
+        public String getName () {
+                return this.name;
+        }
+
+        /**
+         * Retrieves the current state.
+         *
+         * @return The state.
+         */
+        public State getState () {
+                return this.state;
+        }
+
+        /**
+         * Retrieves the amount of items which have been processed so far.
+         *
+         * @return The item count.
+         */
+        public long getProcessed () {
+                return this.processed;
+        }
+
+        /**
+         * Retrieves the estimated total amount of items.
+         *
+         * @return The item count or {@link Long#MAX_VALUE} if unknown.
+         */
+        public long getEstimatedSize () {
+                return this.estimatedSize;
+        }
+
+        /**
+         * Retrieves the average interval between two executions of this job.
+         *
+         * @return The interval (in nanoseconds).
+         */
+        public long getAverageInterval () {
+                return this.averageInterval;
+        }
+
+        /**
+         * Processes a single item of a job.
+         *
+         * @param <T> The item type.
+         */
+        @FunctionalInterface
+        public interface Step<T> {
+
+                /**
+                 * Processes an item.
+                 *
+                 * @param item The item.
+                 * @return True if the job shall continue, false otherwise.
+                 * @throws Exception when processing fails.
+                 */
+                boolean process (T item) throws Exception;
+        }
+
+        /**
+         * Receives progress notifications of a job.
+         */
+        public interface Listener {
+
+                /**
+                 * Handles the progress of a job (once per tick).
+                 *
+                 * @param processed The amount of processed items.
+                 * @param estimatedSize The estimated total amount of items (or {@link Long#MAX_VALUE} if unknown).
+                 */
+                default void onProgress (long processed, long estimatedSize) {
+                }
+
+                /**
+                 * Handles the completion of a job.
+                 *
+                 * @param processed The amount of processed items.
+                 */
+                default void onComplete (long processed) {
+                }
+
+                /**
+                 * Handles the failure of a job.
+                 *
+                 * @param processed The amount of items which were processed successfully.
+                 * @param cause The cause.
+                 */
+                default void onFailure (long processed, Throwable cause) {
+                }
+        }
+
+        /**
+         * Represents the states of a job.
+         */
+        public enum State {
+                CREATED,
+                RUNNING,
+                PAUSED,
+                COMPLETED,
+                CANCELLED,
+                FAILED;
+
+                /**
+                 * Checks whether a job in this state will not process any further items.
+                 *
+                 * @return True if final.
+                 */
+                public boolean isFinal () {
+                        return (this == COMPLETED || this == CANCELLED || this == FAILED);
+                }
+        }
+
+        /**
+         * Wraps checked exceptions raised by a job step.
+         */
+        private static final class JobException extends RuntimeException {
+                private static final long serialVersionUID = 1L;
+
+                JobException (Exception cause) {
+                        super (cause);
+                }
+        }
+}
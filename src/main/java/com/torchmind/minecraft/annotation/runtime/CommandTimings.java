@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+
+/**
+ * Keeps track of the execution times of all commands of a plugin.
+ *
+ * Instrumented dispatchers pass each execution to {@link #end(int, long, boolean)} which records it within the
+ * {@link LatencyHistogram} of the respective command. The collected data may be reported to a command sender (via
+ * {@link #onCommand(CommandSender, String, String[])}) or exported as JSON.
+ *
+ * @author Johannes Donath
+ */
+public final class CommandTimings {
+        public static final int REPORT_LIMIT = 10;
+        private final Plugin plugin;
+        private final String[] names;
+        private final LatencyHistogram[] histograms;
+        private volatile long since = System.currentTimeMillis ();
+
+        /**
+         * Constructs a new set of timings.
+         *
+         * @param plugin The owning plugin.
+         * @param names The command names (indexed by command).
+         */
+        public CommandTimings (Plugin plugin, String[] names) {
+                this.plugin = plugin;
+                this.names = names.clone ();
+                this.histograms = new LatencyHistogram[names.length];
+
+                for (int i = 0; i < names.length; i++) { this.histograms[i] = new LatencyHistogram (); }
+        }
+
+        /**
+         * Records the completion of a command execution.
+         *
+         * This method is designed to wrap the invocation of the executor in order to permit recording an execution
+         * within a single expression: {@code timings.end (index, System.nanoTime (), executor.onCommand (...))}.
+         *
+         * @param command The command index.
+         * @param start The time at which the execution started (as reported by {@link System#nanoTime()}).
+         * @param result The execution result.
+         * @return The execution result.
+         */
+        public boolean end (int command, long start, boolean result) {
+                this.histograms[command].record (System.nanoTime () - start);
+                return result;
+        }
+
+        /**
+         * Retrieves the histogram of a command.
+         *
+         * @param command The command index.
+         * @return The histogram.
+         */
+        public LatencyHistogram getHistogram (int command) {
+                return this.histograms[command];
+        }
+
+        /**
+         * Retrieves the name of a command.
+         *
+         * @param command The command index.
+         * @return The name.
+         */
+        public String getName (int command) {
+                return this.names[command];
+        }
+
+        /**
+         * Retrieves the amount of instrumented commands.
+         *
+         * @return The command count.
+         */
+        public int getCommandCount () {
+                return this.names.length;
+        }
+
+        /**
+         * Resets the histograms of all commands.
+         */
+        public void reset () {
+                for (LatencyHistogram histogram : this.histograms) { histogram.reset (); }
+                this.since = System.currentTimeMillis ();
+        }
+
+        /**
+         * Handles the timings command.
+         *
+         * Without any arguments the most expensive commands (by total execution time) are reported, {@code reset} resets
+         * all histograms and {@code export} writes them to a JSON file within the data folder of the plugin.
+         *
+         * @param sender The command sender.
+         * @param label The command label.
+         * @param args The command arguments.
+         * @return True if the command has been handled, false if its usage is to be reported.
+         */
+        public boolean onCommand (CommandSender sender, String label, String[] args) {
+                if (args.length == 0) {
+                        this.report (sender);
+                        return true;
+                }
+
+                if (args.length != 1) { return false; }
+
+                switch (args[0].toLowerCase (Locale.ROOT)) {
+                        case "reset":
+                                this.reset ();
+                                sender.sendMessage (ChatColor.GREEN + "Command timings have been reset.");
+                                return true;
+                        case "export":
+                                this.export (sender);
+                                return true;
+                        default:
+                                return false;
+                }
+        }
+
+        /**
+         * Retrieves the completions for the arguments of the timings command.
+         *
+         * @param args The command arguments.
+         * @return The completions.
+         */
+        public List<String> complete (String[] args) {
+                List<String> completions = new ArrayList<> ();
+                if (args.length != 1) { return completions; }
+
+                for (String candidate : new String[] {"export", "reset"}) {
+                        if (candidate.startsWith (args[0].toLowerCase (Locale.ROOT))) { completions.add (candidate); }
+                }
+
+                return completions;
+        }
+
+        /**
+         * Reports the most expensive commands to a sender.
+         *
+         * @param sender The sender.
+         */
+        private void report (CommandSender sender) {
+                Integer[] order = new Integer[this.names.length];
+                long[] totals = new long[this.names.length];
+
+                for (int i = 0; i < order.length; i++) {
+                        order[i] = i;
+                        totals[i] = this.histograms[i].getTotal ();
+                }
+
+                Arrays.sort (order, (a, b) -> Long.compare (totals[b], totals[a]));
+
+                sender.sendMessage (ChatColor.GOLD + "Command timings of " + this.plugin.getName () + " (since " + this.formatDate (this.since) + "):");
+                int reported = 0;
+
+                for (Integer command : order) {
+                        LatencyHistogram histogram = this.histograms[command];
+                        long[] buckets = histogram.getBuckets ();
+                        long count = 0;
+                        for (long bucket : buckets) { count += bucket; }
+
+                        if (count == 0 || reported++ == REPORT_LIMIT) { break; }
+
+                        long max = histogram.getMax ();
+                        sender.sendMessage (String.format (Locale.ROOT, "%s/%s%s: %d calls, total %.2f ms, p50 %s, p99 %s, max %s", ChatColor.YELLOW, this.names[command], ChatColor.RESET, count, totals[command] / 1000000.0, formatNanos (LatencyHistogram.percentile (buckets, max, 0.5)), formatNanos (LatencyHistogram.percentile (buckets, max, 0.99)), formatNanos (max)));
+                }
+
+                if (reported == 0) { sender.sendMessage (ChatColor.GRAY + "No commands have been executed yet."); }
+        }
+
+        /**
+         * Exports the timings to a file within the data folder of the plugin.
+         *
+         * The snapshot is taken on the calling thread while the file is written asynchronously.
+         *
+         * @param sender The sender which is notified about the result.
+         */
+        private void export (CommandSender sender) {
+                String json = this.toJson ();
+                File file = new File (new File (this.plugin.getDataFolder (), "timings"), "commands-" + new SimpleDateFormat ("yyyyMMdd-HHmmss").format (new Date ()) + ".json");
+
+                this.plugin.getServer ().getScheduler ().runTaskAsynchronously (this.plugin, () -> {
+                        String message;
+
+                        try {
+                                Files.createDirectories (file.getParentFile ().toPath ());
+                                Files.write (file.toPath (), json.getBytes (StandardCharsets.UTF_8));
+                                message = ChatColor.GREEN + "Command timings have been exported to " + file.getPath () + ".";
+                        } catch (IOException ex) {
+                                this.plugin.getLogger ().log (Level.WARNING, "Cannot export command timings: " + ex.getMessage (), ex);
+                                message = ChatColor.RED + "Cannot export command timings: " + ex.getMessage ();
+                        }
+
+                        String result = message;
+                        this.plugin.getServer ().getScheduler ().runTask (this.plugin, () -> sender.sendMessage (result));
+                });
+        }
+
+        /**
+         * Serializes the timings of all commands.
+         *
+         * @return The JSON representation.
+         */
+        public String toJson () {
+                StringBuilder builder = new StringBuilder ();
+
+                builder.append ("{\"plugin\":").append (quote (this.plugin.getName ()));
+                builder.append (",\"since\":").append (this.since);
+                builder.append (",\"timestamp\":").append (System.currentTimeMillis ());
+                builder.append (",\"commands\":[");
+
+                for (int i = 0; i < this.names.length; i++) {
+                        LatencyHistogram histogram = this.histograms[i];
+                        long[] buckets = histogram.getBuckets ();
+                        long max = histogram.getMax ();
+                        long count = 0;
+                        for (long bucket : buckets) { count += bucket; }
+
+                        if (i != 0) { builder.append (','); }
+                        builder.append ("{\"name\":").append (quote (this.names[i]));
+                        builder.append (",\"count\":").append (count);
+                        builder.append (",\"totalNanos\":").append (histogram.getTotal ());
+                        builder.append (",\"p50Nanos\":").append (LatencyHistogram.percentile (buckets, max, 0.5));
+                        builder.append (",\"p99Nanos\":").append (LatencyHistogram.percentile (buckets, max, 0.99));
+                        builder.append (",\"maxNanos\":").append (max);
+
+                        // buckets are exported as a sparse map of their (exclusive) upper bound to their count
+                        builder.append (",\"buckets\":{");
+                        boolean first = true;
+
+                        for (int j = 0; j < buckets.length; j++) {
+                                if (buckets[j] == 0) { continue; }
+                                if (!first) { builder.append (','); }
+
+                                builder.append ('"').append (j == 0 ? "1" : (j == 64 ? "inf" : Long.toUnsignedString (1L << j))).append ("\":").append (buckets[j]);
+                                first = false;
+                        }
+
+                        builder.append ("}}");
+                }
+
+                return builder.append ("]}").toString ();
+        }
+
+        /**
+         * Formats a latency for display.
+         *
+         * @param nanos The latency (in nanoseconds).
+         * @return The formatted latency.
+         */
+        private static String formatNanos (long nanos) {
+                if (nanos < 1000) { return nanos + " ns"; }
+                if (nanos < 1000000) { return String.format (Locale.ROOT, "%.1f \u00b5s", nanos / 1000.0); }
+                return String.format (Locale.ROOT, "%.2f ms", nanos / 1000000.0);
+        }
+
+        /**
+         * Formats a timestamp for display.
+         *
+         * @param timestamp The timestamp.
+         * @return The formatted timestamp.
+         */
+        private String formatDate (long timestamp) {
+                return new SimpleDateFormat ("yyyy-MM-dd HH:mm:ss").format (new Date (timestamp));
+        }
+
+        /**
+         * Converts a string into a quoted JSON string.
+         *
+         * @param value The value.
+         * @return The JSON string.
+         */
+        private static String quote (String value) {
+                StringBuilder builder = new StringBuilder (value.length () + 2).append ('"');
+
+                for (int i = 0; i < value.length (); i++) {
+                        char c = value.charAt (i);
+
+                        if (c == '"' || c == '\\') {
+                                builder.append ('\\').append (c);
+                        } else if (c < 0x20) {
+                                builder.append (String.format ("\\u%04x", (int) c));
+                        } else {
+                                builder.append (c);
+                        }
+                }
+
+                return builder.append ('"').toString ();
+        }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides tab completions for a single command and its sub commands.
+ *
+ * Each level of the tree corresponds to one argument. Preceding arguments select the sub tree (case-insensitively)
+ * while the last argument is completed using the {@link CompletionTrie} of the selected level.
+ *
+ * @author Johannes Donath
+ */
+public final class CompletionTree {
+        private final CompletionTrie trie;
+        private final String[] tokens;
+        private final CompletionTree[] children;
+
+        private CompletionTree (CompletionTrie trie, String[] tokens, CompletionTree[] children) {
+                this.trie = trie;
+                this.tokens = tokens;
+                this.children = children;
+        }
+
+        /**
+         * Creates a new builder.
+         *
+         * @return The builder.
+         */
+        public static Builder builder () {
+                return new Builder ();
+        }
+
+        /**
+         * Completes the last of the specified arguments.
+         *
+         * @param args The command arguments.
+         * @return An immutable list of candidates or null if no completions have been declared for the argument.
+         */
+        public List<String> complete (String[] args) {
+                CompletionTree tree = this;
+
+                for (int i = 0; i < args.length - 1 && tree != null; i++) {
+                        tree = tree.child (args[i]);
+                }
+
+                if (tree == null || tree.trie == null) { return null; }
+                return tree.trie.complete ((args.length == 0 ? "" : args[args.length - 1]));
+        }
+
+        /**
+         * Retrieves the sub tree for the specified argument.
+         *
+         * @param token The argument.
+         * @return The sub tree or null if no such sub tree exists.
+         */
+        private CompletionTree child (String token) {
+                for (int i = 0; i < this.tokens.length; i++) {
+                        if (this.tokens[i].equalsIgnoreCase (token)) { return this.children[i]; }
+                }
+
+                return null;
+        }
+
+        /**
+         * Provides a builder for completion trees.
+         */
+        public static final class Builder {
+                private final List<String> candidates = new ArrayList<> ();
+                private final Map<String, Builder> children = new LinkedHashMap<> ();
+                private boolean completable = false;
+
+                private Builder () {
+                }
+
+                /**
+                 * Adds a set of candidates for the argument following the specified path.
+                 *
+                 * @param path The preceding arguments.
+                 * @param candidates The candidates.
+                 * @return The builder.
+                 */
+                public Builder add (String[] path, String... candidates) {
+                        Builder builder = this;
+
+                        for (String token : path) {
+                                builder = builder.children.computeIfAbsent (token.toLowerCase (), (t) -> new Builder ());
+                        }
+
+                        builder.completable = true;
+                        Collections.addAll (builder.candidates, candidates);
+                        return this;
+                }
+
+                /**
+                 * Builds the completion tree.
+                 *
+                 * @return The tree.
+                 */
+                public CompletionTree build () {
+                        String[] tokens = this.children.keySet ().toArray (new String[this.children.size ()]);
+                        CompletionTree[] children = new CompletionTree[tokens.length];
+
+                        for (int i = 0; i < tokens.length; i++) {
+                                children[i] = this.children.get (tokens[i]).build ();
+                        }
+
+                        return new CompletionTree ((this.completable ? new CompletionTrie (this.candidates.toArray (new String[this.candidates.size ()])) : null), tokens, children);
+                }
+        }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Provides an immutable prefix trie over a fixed set of tab completion candidates.
+ *
+ * Every node of the trie references a pre-computed immutable view of all candidates which share its prefix. Looking
+ * up completions thus walks the trie once (matching characters case-insensitively) and returns an existing list
+ * without allocating any objects.
+ *
+ * @author Johannes Donath
+ */
+public final class CompletionTrie {
+        private final Node root;
+
+        public CompletionTrie (String... candidates) {
+                TreeSet<String> sorted = new TreeSet<> (String.CASE_INSENSITIVE_ORDER);
+                Collections.addAll (sorted, candidates);
+
+                List<String> values = Collections.unmodifiableList (new ArrayList<> (sorted));
+                this.root = build (values, 0, values.size (), 0);
+        }
+
+        /**
+         * Builds a node for the candidates within the specified range.
+         *
+         * @param values The sorted candidates.
+         * @param from The first candidate (inclusive).
+         * @param to The last candidate (exclusive).
+         * @param depth The node depth (length of its prefix).
+         * @return The node.
+         */
+        private static Node build (List<String> values, int from, int to, int depth) {
+                // candidates which end at this node are sorted first as they are a prefix of all following candidates
+                int start = from;
+                while (start < to && values.get (start).length () == depth) { start++; }
+
+                List<Character> keys = new ArrayList<> ();
+                List<Node> children = new ArrayList<> ();
+
+                while (start < to) {
+                        char key = Character.toLowerCase (values.get (start).charAt (depth));
+                        int end = start + 1;
+
+                        while (end < to && Character.toLowerCase (values.get (end).charAt (depth)) == key) { end++; }
+
+                        keys.add (key);
+                        children.add (build (values, start, end, depth + 1));
+                        start = end;
+                }
+
+                char[] keyArray = new char[keys.size ()];
+                for (int i = 0; i < keyArray.length; i++) { keyArray[i] = keys.get (i); }
+
+                return new Node (keyArray, children.toArray (new Node[children.size ()]), values.subList (from, to));
+        }
+
+        /**
+         * Retrieves all candidates which start with the specified prefix (ignoring case).
+         *
+         * @param prefix The prefix.
+         * @return An immutable list of candidates.
+         */
+        public List<String> complete (String prefix) {
+                Node node = this.root;
+
+                for (int i = 0; i < prefix.length () && node != null; i++) {
+                        node = node.child (Character.toLowerCase (prefix.charAt (i)));
+                }
+
+                return (node == null ? Collections.<String>emptyList () : node.candidates);
+        }
+
+        /**
+         * Represents a single node within the trie.
+         */
+        private static final class Node {
+                private final char[] keys;
+                private final Node[] children;
+                private final List<String> candidates;
+
+                Node (char[] keys, Node[] children, List<String> candidates) {
+                        this.keys = keys;
+                        this.children = children;
+                        this.candidates = candidates;
+                }
+
+                /**
+                 * Retrieves the child node for the specified (lower case) character.
+                 *
+                 * @param key The character.
+                 * @return The child or null if no candidate continues with the specified character.
+                 */
+                Node child (char key) {
+                        int index = Arrays.binarySearch (this.keys, key);
+                        return (index < 0 ? null : this.children[index]);
+                }
+        }
+}
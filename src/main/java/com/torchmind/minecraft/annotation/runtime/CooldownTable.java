@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tracks per-player command cooldowns without boxing or locking.
+ *
+ * Players are identified by a 64-bit fingerprint of their UUID and stored within an open addressing table (with linear
+ * probing) which is backed by two primitive arrays: One holding the fingerprints and one holding the time at which
+ * the cooldown of the respective player expires. Slots are claimed and updated via compare-and-set. Evicted slots are
+ * turned into tombstones which are dropped when the table is rebuilt once too many slots are in use.
+ *
+ * Note that two UUIDs which share the same fingerprint share their cooldown as well. Given a 64-bit fingerprint this is
+ * practically impossible to run into.
+ *
+ * @author Johannes Donath
+ */
+public final class CooldownTable {
+        private static final long EMPTY = 0;
+        private static final long TOMBSTONE = 1;
+        private static final int DEFAULT_CAPACITY = 1024;
+
+        private final long cooldown;
+        private final long origin = System.nanoTime ();
+        private final AtomicReference<Slots> slots;
+
+        /**
+         * Constructs a new cooldown table.
+         *
+         * @param cooldown The cooldown duration in milliseconds.
+         */
+        public CooldownTable (long cooldown) {
+                this (cooldown, DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Constructs a new cooldown table.
+         *
+         * @param cooldown The cooldown duration in milliseconds.
+         * @param capacity The initial capacity (will be rounded up to the next power of two).
+         */
+        public CooldownTable (long cooldown, int capacity) {
+                this.cooldown = Math.max (1, TimeUnit.MILLISECONDS.toNanos (cooldown));
+                this.slots = new AtomicReference<> (new Slots (Integer.highestOneBit (Math.max (16, capacity) * 2 - 1)));
+        }
+
+        /**
+         * Checks whether a sender is still on cooldown and starts a new cooldown otherwise.
+         *
+         * Senders other than players are never subject to cooldowns. Players which are still on cooldown are notified
+         * about the remaining time.
+         *
+         * @param sender The command sender.
+         * @return True if the command has to be rejected.
+         */
+        public boolean reject (CommandSender sender) {
+                if (!(sender instanceof Player)) { return false; }
+
+                long remaining = this.tryAcquire (((Player) sender).getUniqueId (), System.nanoTime ());
+                if (remaining == 0) { return false; }
+
+                sender.sendMessage (ChatColor.RED + "You have to wait " + ((TimeUnit.NANOSECONDS.toMillis (remaining) + 999) / 1000) + " second(s) before using this command again.");
+                return true;
+        }
+
+        /**
+         * Attempts to start a new cooldown for the specified player.
+         *
+         * @param id The player identifier.
+         * @param now The current time (as returned by {@link System#nanoTime()}).
+         * @return Zero if the cooldown has been started or the remaining cooldown in nanoseconds otherwise.
+         */
+        public long tryAcquire (UUID id, long now) {
+                // expiries are stored relative to the creation of the table which guarantees that they are always
+                // positive and allows us to use zero as a marker for slots which are being claimed
+                long key = fingerprint (id);
+                now -= this.origin;
+                long expiry = now + this.cooldown;
+
+                while (true) {
+                        Slots slots = this.slots.get ();
+                        int mask = slots.keys.length () - 1;
+                        int index = spread (key) & mask;
+
+                        for (int probe = 0; probe <= mask; probe++, index = (index + 1) & mask) {
+                                long current = slots.keys.get (index);
+
+                                if (current == key) {
+                                        long previous = slots.expiries.get (index);
+                                        if (previous == 0) { return this.cooldown; }
+                                        if (previous - now > 0) { return previous - now; }
+
+                                        // another thread may have started the cooldown in the meantime in which case
+                                        // we will simply re-evaluate the slot
+                                        if (slots.expiries.compareAndSet (index, previous, expiry)) { return 0; }
+
+                                        probe--;
+                                        index = (index - 1) & mask;
+                                        continue;
+                                }
+
+                                if (current == EMPTY) {
+                                        if (slots.used >= slots.threshold ()) { break; }
+
+                                        if (slots.keys.compareAndSet (index, EMPTY, key)) {
+                                                slots.expiries.set (index, expiry);
+                                                slots.used++;
+                                                return 0;
+                                        }
+
+                                        probe--;
+                                        index = (index - 1) & mask;
+                                }
+                        }
+
+                        this.rebuild (slots, now);
+                }
+        }
+
+        /**
+         * Evicts the cooldown of a player (for instance when leaving the server).
+         *
+         * @param id The player identifier.
+         */
+        public void evict (UUID id) {
+                long key = fingerprint (id);
+                Slots slots = this.slots.get ();
+                int mask = slots.keys.length () - 1;
+                int index = spread (key) & mask;
+
+                for (int probe = 0; probe <= mask; probe++, index = (index + 1) & mask) {
+                        long current = slots.keys.get (index);
+                        if (current == EMPTY) { return; }
+
+                        if (current == key) {
+                                slots.keys.compareAndSet (index, key, TOMBSTONE);
+                                return;
+                        }
+                }
+        }
+
+        /**
+         * Retrieves the amount of players which are currently tracked (including players whose cooldown expired but
+         * have not been evicted yet).
+         *
+         * @return The amount of players.
+         */
+        public int size () {
+                Slots slots = this.slots.get ();
+                int size = 0;
+
+                for (int i = 0; i < slots.keys.length (); i++) {
+                        long key = slots.keys.get (i);
+                        if (key != EMPTY && key != TOMBSTONE) { size++; }
+                }
+
+                return size;
+        }
+
+        /**
+         * Replaces the current slots with a compacted (and possibly enlarged) copy which only contains players that are
+         * still on cooldown.
+         *
+         * Cooldowns which are started by other threads while the copy is created may be lost which merely permits a
+         * single additional command execution for the affected player.
+         *
+         * @param slots The slots which have been found to be full.
+         * @param now The current time (relative to the creation of the table).
+         */
+        private void rebuild (Slots slots, long now) {
+                int live = 0;
+
+                for (int i = 0; i < slots.keys.length (); i++) {
+                        long key = slots.keys.get (i);
+                        if (key != EMPTY && key != TOMBSTONE && slots.expiries.get (i) - now > 0) { live++; }
+                }
+
+                Slots replacement = new Slots ((live >= slots.threshold () / 2 ? slots.keys.length () * 2 : slots.keys.length ()));
+                int mask = replacement.keys.length () - 1;
+
+                for (int i = 0; i < slots.keys.length (); i++) {
+                        long key = slots.keys.get (i);
+                        long expiry = slots.expiries.get (i);
+                        if (key == EMPTY || key == TOMBSTONE || expiry - now <= 0) { continue; }
+
+                        int index = spread (key) & mask;
+                        while (replacement.keys.get (index) != EMPTY) { index = (index + 1) & mask; }
+
+                        replacement.keys.set (index, key);
+                        replacement.expiries.set (index, expiry);
+                        replacement.used++;
+                }
+
+                this.slots.compareAndSet (slots, replacement);
+        }
+
+        /**
+         * Computes the fingerprint of a player identifier.
+         *
+         * @param id The identifier.
+         * @return The fingerprint (which never collides with the reserved slot markers).
+         */
+        private static long fingerprint (UUID id) {
+                long key = id.getMostSignificantBits () ^ Long.rotateLeft (id.getLeastSignificantBits () * 0x9E3779B97F4A7C15L, 31);
+                return (key == EMPTY || key == TOMBSTONE ? key + 2 : key);
+        }
+
+        /**
+         * Spreads the bits of a fingerprint in order to compute its preferred slot.
+         *
+         * @param key The fingerprint.
+         * @return The hash.
+         */
+        private static int spread (long key) {
+                key ^= (key >>> 33);
+                key *= 0xFF51AFD7ED558CCDL;
+                key ^= (key >>> 33);
+                return (int) key;
+        }
+
+        /**
+         * Represents a single generation of the table.
+         */
+        private static final class Slots {
+                private final AtomicLongArray keys;
+                private final AtomicLongArray expiries;
+
+                // Note: This counter is only used as a heuristic to decide when to rebuild and is thus not required to
+                // be exact when updated concurrently
+                private volatile int used;
+
+                Slots (int capacity) {
+                        this.keys = new AtomicLongArray (capacity);
+                        this.expiries = new AtomicLongArray (capacity);
+                }
+
+                int threshold () {
+                        return this.keys.length () / 4 * 3;
+                }
+        }
+}
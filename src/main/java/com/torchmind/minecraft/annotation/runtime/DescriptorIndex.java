@@ -0,0 +1,510 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Caches the descriptors of all plugin jars within a directory in a single index file.
+ *
+ * Each jar is identified by its file name and validated against its size and modification time, thus a server which
+ * boots with an unchanged plugins directory only lists the directory and reads a single file instead of opening every
+ * jar. Jars which have been added or changed are read by locating the requested entries through the central directory
+ * of the memory mapped jar (inflating only the requested entries) rather than opening them as a {@link ZipFile}.
+ * Jars which cannot be read (e.g. as they are truncated or not a zip archive at all) are indexed without any resources
+ * and reported via {@link #getFailedJars()} rather than failing the entire update.
+ *
+ * Index format (big endian):
+ * <pre>
+ * int magic, int version, short resource count, UTF[] resource names, int jar count,
+ * jar:      UTF file name, long size, long modification time (ms), short resource count,
+ * resource: UTF name, int length, byte[] contents
+ * </pre>
+ *
+ * @author Johannes Donath
+ */
+public final class DescriptorIndex {
+        public static final String FILE_NAME = "plugins.index";
+        public static final int MAGIC = 0x50444958;
+        public static final int VERSION = 1;
+        public static final List<String> DEFAULT_RESOURCES = Collections.unmodifiableList (Arrays.asList ("plugin.yml", BinaryDescriptorReader.FILE_NAME));
+        private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+        private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+        private static final int LOCAL_FILE_HEADER = 0x04034b50;
+        private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+        private final List<String> resources;
+        private final Map<String, Entry> entries;
+        private final Set<String> failed = new TreeSet<> ();
+        private int reused;
+        private int read;
+
+        private DescriptorIndex (List<String> resources, Map<String, Entry> entries) {
+                this.resources = resources;
+                this.entries = entries;
+        }
+
+        /**
+         * Loads the index of a directory and refreshes it (re-writing the index file if anything changed).
+         *
+         * @param directory The plugins directory.
+         * @param indexFile The index file.
+         * @param resources The names of the resources to index.
+         * @return The index.
+         * @throws IOException when listing the directory or writing the index fails.
+         */
+        public static DescriptorIndex update (Path directory, Path indexFile, List<String> resources) throws IOException {
+                DescriptorIndex previous = load (indexFile);
+                Map<String, Entry> entries = new TreeMap<> ();
+                boolean valid = (previous != null && previous.resources.equals (resources));
+                boolean changed = !valid;
+                Set<String> failed = new TreeSet<> ();
+                int reused = 0;
+                int read = 0;
+
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream (directory, "*.jar")) {
+                        for (Path jar : stream) {
+                                BasicFileAttributes attributes = Files.readAttributes (jar, BasicFileAttributes.class);
+                                if (!attributes.isRegularFile ()) { continue; }
+
+                                String name = jar.getFileName ().toString ();
+                                long modified = attributes.lastModifiedTime ().toMillis ();
+                                Entry entry = (valid ? previous.entries.get (name) : null);
+
+                                if (entry != null && entry.size == attributes.size () && entry.modified == modified) {
+                                        reused++;
+                                } else {
+                                        Map<String, byte[]> contents;
+
+                                        // a single broken jar must not prevent indexing the remaining jars (Bukkit
+                                        // will report it once it attempts to load the jar anyway), it is however
+                                        // left out of the index file in order to retry it upon the next update as
+                                        // the failure may have been transient
+                                        try {
+                                                contents = readEntries (jar, resources);
+                                                changed = true;
+                                        } catch (IOException ex) {
+                                                contents = Collections.emptyMap ();
+                                                failed.add (name);
+                                        }
+
+                                        entry = new Entry (attributes.size (), modified, contents);
+                                        read++;
+                                }
+
+                                entries.put (name, entry);
+                        }
+                }
+
+                // removed jars do not require reading anything but still need to be dropped from the index
+                Set<String> persisted = new TreeSet<> (entries.keySet ());
+                persisted.removeAll (failed);
+                changed |= (previous != null && !previous.entries.keySet ().equals (persisted));
+
+                DescriptorIndex index = new DescriptorIndex (resources, entries);
+                index.reused = reused;
+                index.read = read;
+                index.failed.addAll (failed);
+
+                if (changed) { index.write (indexFile); }
+                return index;
+        }
+
+        /**
+         * Loads the index of a directory and refreshes it using the {@link #DEFAULT_RESOURCES}.
+         *
+         * @param directory The plugins directory.
+         * @return The index (stored as {@link #FILE_NAME} within the directory).
+         * @throws IOException when listing the directory or writing the index fails.
+         */
+        public static DescriptorIndex update (Path directory) throws IOException {
+                return update (directory, directory.resolve (FILE_NAME), DEFAULT_RESOURCES);
+        }
+
+        /**
+         * Loads an index file.
+         *
+         * @param indexFile The index file.
+         * @return The index or null if the file is missing or cannot be read.
+         */
+        public static DescriptorIndex load (Path indexFile) {
+                byte[] data;
+
+                try {
+                        data = Files.readAllBytes (indexFile);
+                } catch (IOException ex) {
+                        return null;
+                }
+
+                try (DataInputStream inputStream = new DataInputStream (new ByteArrayInputStream (data))) {
+                        if (inputStream.readInt () != MAGIC || inputStream.readInt () != VERSION) { return null; }
+
+                        String[] resources = new String[inputStream.readUnsignedShort ()];
+                        for (int i = 0; i < resources.length; i++) { resources[i] = inputStream.readUTF (); }
+
+                        Map<String, Entry> entries = new TreeMap<> ();
+                        int count = inputStream.readInt ();
+
+                        for (int i = 0; i < count; i++) {
+                                String name = inputStream.readUTF ();
+                                long size = inputStream.readLong ();
+                                long modified = inputStream.readLong ();
+                                Map<String, byte[]> contents = new LinkedHashMap<> ();
+                                int resourceCount = inputStream.readUnsignedShort ();
+
+                                for (int j = 0; j < resourceCount; j++) {
+                                        String resource = inputStream.readUTF ();
+                                        byte[] content = new byte[inputStream.readInt ()];
+                                        inputStream.readFully (content);
+                                        contents.put (resource, content);
+                                }
+
+                                entries.put (name, new Entry (size, modified, contents));
+                        }
+
+                        return new DescriptorIndex (Arrays.asList (resources), entries);
+                } catch (IOException | RuntimeException ex) {
+                        // a corrupted (or truncated) index is simply rebuilt
+                        return null;
+                }
+        }
+
+        /**
+         * Writes the index to a file (replacing the file atomically where supported).
+         *
+         * Jars which could not be read are omitted and thus read again by the next update.
+         *
+         * @param indexFile The index file.
+         * @throws IOException when writing fails.
+         */
+        public void write (Path indexFile) throws IOException {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream ();
+
+                try (DataOutputStream outputStream = new DataOutputStream (buffer)) {
+                        outputStream.writeInt (MAGIC);
+                        outputStream.writeInt (VERSION);
+                        outputStream.writeShort (this.resources.size ());
+                        for (String resource : this.resources) { outputStream.writeUTF (resource); }
+
+                        outputStream.writeInt (this.entries.size () - this.failed.size ());
+
+                        for (Map.Entry<String, Entry> entry : this.entries.entrySet ()) {
+                                if (this.failed.contains (entry.getKey ())) { continue; }
+
+                                outputStream.writeUTF (entry.getKey ());
+                                outputStream.writeLong (entry.getValue ().size);
+                                outputStream.writeLong (entry.getValue ().modified);
+                                outputStream.writeShort (entry.getValue ().resources.size ());
+
+                                for (Map.Entry<String, byte[]> resource : entry.getValue ().resources.entrySet ()) {
+                                        outputStream.writeUTF (resource.getKey ());
+                                        outputStream.writeInt (resource.getValue ().length);
+                                        outputStream.write (resource.getValue ());
+                                }
+                        }
+                }
+
+                Path temporaryFile = indexFile.resolveSibling (indexFile.getFileName () + ".tmp");
+                Files.write (temporaryFile, buffer.toByteArray ());
+
+                try {
+                        Files.move (temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                        Files.move (temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+        }
+
+        /**
+         * Retrieves the file names of all indexed jars.
+         *
+         * @return The file names.
+         */
+        public Set<String> getJars () {
+                return Collections.unmodifiableSet (this.entries.keySet ());
+        }
+
+        /**
+         * Retrieves a resource of an indexed jar.
+         *
+         * @param jar The jar file name.
+         * @param name The resource name.
+         * @return The resource contents or null if the jar is not indexed or does not contain the resource.
+         */
+        public byte[] getResource (String jar, String name) {
+                Entry entry = this.entries.get (jar);
+                return (entry != null ? entry.resources.get (name) : null);
+        }
+
+        /**
+         * Retrieves the amount of jars which have been taken from the previous index.
+         *
+         * @return The jar count.
+         */
+        public int getReusedCount () {
+                return this.reused;
+        }
+
+        /**
+         * Retrieves the amount of jars which had to be read.
+         *
+         * @return The jar count.
+         */
+        public int getReadCount () {
+                return this.read;
+        }
+
+        /**
+         * Retrieves the file names of all jars which could not be read during the last update (and have thus been
+         * indexed without any resources). These jars are not persisted and will be read again by the next update.
+         *
+         * @return The file names.
+         */
+        public Set<String> getFailedJars () {
+                return Collections.unmodifiableSet (this.failed);
+        }
+
+        /**
+         * Reads a set of entries from a jar through its central directory.
+         *
+         * Only the end of central directory record, the central directory itself and the requested entries are
+         * accessed. Jars which cannot be read this way (such as ZIP64 archives or encrypted entries) are read via
+         * {@link ZipFile} instead.
+         *
+         * @param jar The jar.
+         * @param names The entry names.
+         * @return The contents of all present entries (indexed by name).
+         * @throws IOException when reading fails or the jar is malformed.
+         */
+        public static Map<String, byte[]> readEntries (Path jar, List<String> names) throws IOException {
+                Map<String, byte[]> entries;
+
+                try (FileChannel channel = FileChannel.open (jar, StandardOpenOption.READ)) {
+                        entries = readEntries (channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size ()), names);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException ex) {
+                        // offsets and sizes of truncated or corrupted archives point outside of the mapped file
+                        throw new IOException ("Malformed zip file: " + jar.getFileName (), ex);
+                }
+
+                return (entries != null ? entries : readEntriesFallback (jar, names));
+        }
+
+        /**
+         * Reads a set of entries from a mapped jar.
+         *
+         * @param buffer The mapped jar.
+         * @param names The entry names.
+         * @return The entries or null if the jar uses features which are not supported.
+         * @throws IOException when the jar is malformed.
+         */
+        private static Map<String, byte[]> readEntries (MappedByteBuffer buffer, List<String> names) throws IOException {
+                buffer.order (ByteOrder.LITTLE_ENDIAN);
+                if (buffer.limit () < 22) { throw new IOException ("Not a zip file"); }
+
+                int end = -1;
+
+                for (int i = buffer.limit () - 22; i >= Math.max (0, buffer.limit () - 22 - MAX_COMMENT_LENGTH); i--) {
+                        if (buffer.getInt (i) == END_OF_CENTRAL_DIRECTORY) {
+                                end = i;
+                                break;
+                        }
+                }
+
+                if (end == -1) { throw new IOException ("Not a zip file"); }
+
+                int count = buffer.getShort (end + 10) & 0xFFFF;
+                long offset = buffer.getInt (end + 16) & 0xFFFFFFFFL;
+                if (count == 0xFFFF || offset == 0xFFFFFFFFL) { return null; }
+
+                byte[][] encodedNames = new byte[names.size ()][];
+                for (int i = 0; i < encodedNames.length; i++) { encodedNames[i] = names.get (i).getBytes (StandardCharsets.UTF_8); }
+
+                Map<String, byte[]> entries = new LinkedHashMap<> ();
+                int position = (int) offset;
+
+                for (int i = 0; i < count && entries.size () < names.size (); i++) {
+                        if (buffer.getInt (position) != CENTRAL_DIRECTORY_HEADER) { throw new IOException ("Malformed central directory"); }
+
+                        int nameLength = buffer.getShort (position + 28) & 0xFFFF;
+                        int extraLength = buffer.getShort (position + 30) & 0xFFFF;
+                        int commentLength = buffer.getShort (position + 32) & 0xFFFF;
+                        int match = indexOf (buffer, position + 46, nameLength, encodedNames);
+
+                        if (match != -1) {
+                                int flags = buffer.getShort (position + 8) & 0xFFFF;
+                                int method = buffer.getShort (position + 10) & 0xFFFF;
+                                long compressedSize = buffer.getInt (position + 20) & 0xFFFFFFFFL;
+                                long size = buffer.getInt (position + 24) & 0xFFFFFFFFL;
+                                long localOffset = buffer.getInt (position + 42) & 0xFFFFFFFFL;
+
+                                if ((flags & 1) != 0 || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) || compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+                                        return null;
+                                }
+
+                                entries.put (names.get (match), readEntry (buffer, (int) localOffset, method, (int) compressedSize, (int) size));
+                        }
+
+                        position += 46 + nameLength + extraLength + commentLength;
+                }
+
+                return entries;
+        }
+
+        /**
+         * Reads (and inflates) a single entry.
+         *
+         * @param buffer The mapped jar.
+         * @param offset The offset of the local file header.
+         * @param method The compression method.
+         * @param compressedSize The compressed size.
+         * @param size The uncompressed size.
+         * @return The entry contents.
+         * @throws IOException when the entry is malformed.
+         */
+        private static byte[] readEntry (MappedByteBuffer buffer, int offset, int method, int compressedSize, int size) throws IOException {
+                if (buffer.getInt (offset) != LOCAL_FILE_HEADER) { throw new IOException ("Malformed local file header"); }
+
+                // the local header may carry a different extra field than the central directory
+                int dataOffset = offset + 30 + (buffer.getShort (offset + 26) & 0xFFFF) + (buffer.getShort (offset + 28) & 0xFFFF);
+                byte[] compressed = new byte[compressedSize];
+
+                ByteBuffer slice = buffer.duplicate ();
+                slice.position (dataOffset);
+                slice.get (compressed);
+
+                if (method == ZipEntry.STORED) { return compressed; }
+
+                Inflater inflater = new Inflater (true);
+
+                try {
+                        inflater.setInput (compressed);
+                        byte[] content = new byte[size];
+                        int length = 0;
+
+                        while (length < size && !inflater.finished ()) {
+                                int inflated = inflater.inflate (content, length, size - length);
+                                if (inflated == 0 && (inflater.needsInput () || inflater.needsDictionary ())) { break; }
+                                length += inflated;
+                        }
+
+                        if (length != size) { throw new IOException ("Truncated entry"); }
+                        return content;
+                } catch (DataFormatException ex) {
+                        throw new IOException ("Malformed entry: " + ex.getMessage (), ex);
+                } finally {
+                        inflater.end ();
+                }
+        }
+
+        /**
+         * Locates an entry name within the list of requested names without decoding it.
+         *
+         * @param buffer The mapped jar.
+         * @param offset The offset of the name.
+         * @param length The name length.
+         * @param names The encoded names.
+         * @return The index of the matching name or -1.
+         */
+        private static int indexOf (MappedByteBuffer buffer, int offset, int length, byte[][] names) {
+                outer:
+                for (int i = 0; i < names.length; i++) {
+                        if (names[i].length != length) { continue; }
+
+                        for (int j = 0; j < length; j++) {
+                                if (buffer.get (offset + j) != names[i][j]) { continue outer; }
+                        }
+
+                        return i;
+                }
+
+                return -1;
+        }
+
+        /**
+         * Reads a set of entries via {@link ZipFile}.
+         *
+         * @param jar The jar.
+         * @param names The entry names.
+         * @return The contents of all present entries (indexed by name).
+         * @throws IOException when reading fails.
+         */
+        private static Map<String, byte[]> readEntriesFallback (Path jar, List<String> names) throws IOException {
+                Map<String, byte[]> entries = new LinkedHashMap<> ();
+
+                try (ZipFile zipFile = new ZipFile (jar.toFile ())) {
+                        for (String name : names) {
+                                ZipEntry entry = zipFile.getEntry (name);
+                                if (entry == null) { continue; }
+
+                                try (InputStream inputStream = zipFile.getInputStream (entry)) {
+                                        ByteArrayOutputStream outputStream = new ByteArrayOutputStream ();
+                                        byte[] buffer = new byte[4096];
+                                        int length;
+
+                                        while ((length = inputStream.read (buffer)) != -1) { outputStream.write (buffer, 0, length); }
+                                        entries.put (name, outputStream.toByteArray ());
+                                }
+                        }
+                }
+
+                return entries;
+        }
+
+        /**
+         * Represents a single indexed jar.
+         */
+        private static final class Entry {
+                private final long size;
+                private final long modified;
+                private final Map<String, byte[]> resources;
+
+                Entry (long size, long modified, Map<String, byte[]> resources) {
+                        this.size = size;
+                        this.modified = modified;
+                        this.resources = resources;
+                }
+        }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps an entity onto the rows of a table without relying on reflection.
+ *
+ * Implementations are generated for every type annotated with
+ * {@link com.torchmind.minecraft.annotation.persistence.Entity}. The insert and update statements share their parameter
+ * order (all columns followed by the identifier) and thus are bound by the same method while the select statement
+ * returns the columns in the same order.
+ *
+ * @param <T> The entity type.
+ * @param <K> The identifier type.
+ * @author Johannes Donath
+ */
+public interface EntityMapper<T, K> {
+
+        /**
+         * Retrieves the table name.
+         *
+         * @return The name.
+         */
+        String getTable ();
+
+        /**
+         * Retrieves a statement which creates the table unless it exists already.
+         *
+         * @return The statement.
+         */
+        String getCreateStatement ();
+
+        /**
+         * Retrieves a statement which selects a single row by its identifier.
+         *
+         * @return The statement.
+         */
+        String getSelectStatement ();
+
+        /**
+         * Retrieves a statement which inserts a row.
+         *
+         * @return The statement.
+         */
+        String getInsertStatement ();
+
+        /**
+         * Retrieves a statement which updates a row by its identifier.
+         *
+         * @return The statement.
+         */
+        String getUpdateStatement ();
+
+        /**
+         * Retrieves a statement which deletes a row by its identifier.
+         *
+         * @return The statement.
+         */
+        String getDeleteStatement ();
+
+        /**
+         * Retrieves the identifier of an entity.
+         *
+         * @param entity The entity.
+         * @return The identifier.
+         */
+        K getKey (T entity);
+
+        /**
+         * Creates a detached (shallow) copy of an entity.
+         *
+         * @param entity The entity.
+         * @return The copy.
+         */
+        T copy (T entity);
+
+        /**
+         * Binds all columns of an entity to an insert or update statement.
+         *
+         * @param statement The statement.
+         * @param entity The entity.
+         * @throws SQLException when binding fails.
+         */
+        void bind (PreparedStatement statement, T entity) throws SQLException;
+
+        /**
+         * Binds an identifier to the first parameter of a select or delete statement.
+         *
+         * @param statement The statement.
+         * @param key The identifier.
+         * @throws SQLException when binding fails.
+         */
+        void bindKey (PreparedStatement statement, K key) throws SQLException;
+
+        /**
+         * Reads an entity from the current row of a result set.
+         *
+         * @param resultSet The result set.
+         * @return The entity.
+         * @throws SQLException when reading fails.
+         */
+        T map (ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accumulates the execution times, invocation counts and cancellations of the event handlers of a single listener.
+ *
+ * Profiled executors pass each invocation to {@link #record(int, long, boolean)}. Counters are backed by
+ * {@link LongAdder} and thus do not contend when events are fired from multiple threads while the per handler maximum
+ * is kept within an {@link AtomicLongArray} which is only written to once a new maximum has been observed.
+ *
+ * @author Johannes Donath
+ */
+public final class HandlerProfile {
+        private final String[] names;
+        private final LongAdder[] invocations;
+        private final LongAdder[] nanos;
+        private final LongAdder[] cancellations;
+        private final AtomicLongArray max;
+
+        /**
+         * Constructs a new profile.
+         *
+         * @param names The handler names (indexed by handler).
+         */
+        public HandlerProfile (String[] names) {
+                this.names = names.clone ();
+                this.invocations = new LongAdder[names.length];
+                this.nanos = new LongAdder[names.length];
+                this.cancellations = new LongAdder[names.length];
+                this.max = new AtomicLongArray (names.length);
+
+                for (int i = 0; i < names.length; i++) {
+                        this.invocations[i] = new LongAdder ();
+                        this.nanos[i] = new LongAdder ();
+                        this.cancellations[i] = new LongAdder ();
+                }
+        }
+
+        /**
+         * Records a single handler invocation.
+         *
+         * @param handler The handler index.
+         * @param start The time at which the invocation started (as reported by {@link System#nanoTime()}).
+         * @param cancelled Indicates whether the handler cancelled the event.
+         */
+        public void record (int handler, long start, boolean cancelled) {
+                long elapsed = Math.max (0, System.nanoTime () - start);
+
+                this.invocations[handler].increment ();
+                this.nanos[handler].add (elapsed);
+                if (cancelled) { this.cancellations[handler].increment (); }
+
+                long previous;
+                while (elapsed > (previous = this.max.get (handler)) && !this.max.compareAndSet (handler, previous, elapsed)) { }
+        }
+
+        /**
+         * Retrieves the amount of profiled handlers.
+         *
+         * @return The handler count.
+         */
+        public int getHandlerCount () {
+                return this.names.length;
+        }
+
+        /**
+         * Retrieves the name of a handler.
+         *
+         * @param handler The handler index.
+         * @return The name.
+         */
+        public String getName (int handler) {
+                return this.names[handler];
+        }
+
+        /**
+         * Retrieves the amount of invocations of a handler.
+         *
+         * @param handler The handler index.
+         * @return The invocation count.
+         */
+        public long getInvocations (int handler) {
+                return this.invocations[handler].sum ();
+        }
+
+        /**
+         * Retrieves the total time spent within a handler.
+         *
+         * @param handler The handler index.
+         * @return The time (in nanoseconds).
+         */
+        public long getNanos (int handler) {
+                return this.nanos[handler].sum ();
+        }
+
+        /**
+         * Retrieves the amount of events cancelled by a handler.
+         *
+         * @param handler The handler index.
+         * @return The cancellation count.
+         */
+        public long getCancellations (int handler) {
+                return this.cancellations[handler].sum ();
+        }
+
+        /**
+         * Retrieves the longest invocation of a handler since the last call to this method and resets it.
+         *
+         * @param handler The handler index.
+         * @return The time (in nanoseconds).
+         */
+        public long getAndResetMax (int handler) {
+                return this.max.getAndSet (handler, 0);
+        }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+/**
+ * Periodically flushes the handler profiles of a plugin into a memory mapped ring file.
+ *
+ * The file ({@code profiles/handlers.ring} within the data folder of the plugin) consists of a fixed size header
+ * followed by {@link #DEFAULT_CAPACITY} fixed size records. Each record describes a single handler within a single
+ * flush interval (invocations, total and maximum time as well as cancellations) which permits locating the handler
+ * responsible for a lag spike long after it occurred. Records are only written for handlers which have been invoked
+ * within the respective interval and the oldest records are overwritten once the file is full. Since the file is
+ * mapped into memory its contents survive crashes of the server process as well.
+ *
+ * Layout (big endian):
+ * <pre>
+ * header:  int magic, int version, int record size, int capacity, long records written, long reserved
+ * record:  long timestamp (ms), long invocations, long nanos, long cancellations, long max nanos,
+ *          short name length, byte[] name (UTF-8, truncated from the front)
+ * </pre>
+ *
+ * Files may be inspected offline via {@code java -cp <plugin.jar> com.torchmind.minecraft.annotation.runtime.HandlerProfiler <file>}.
+ *
+ * @author Johannes Donath
+ */
+public final class HandlerProfiler implements Runnable {
+        public static final int MAGIC = 0x48505246;
+        public static final int VERSION = 1;
+        public static final int HEADER_SIZE = 32;
+        public static final int RECORD_SIZE = 128;
+        public static final int NAME_SIZE = RECORD_SIZE - 42;
+        public static final int DEFAULT_CAPACITY = 8192;
+        public static final long DEFAULT_INTERVAL = 20L;
+        public static final String FILE_NAME = "handlers.ring";
+        private static final Map<Plugin, HandlerProfiler> PROFILERS = new ConcurrentHashMap<> ();
+        private final Plugin plugin;
+        private final CopyOnWriteArrayList<HandlerProfile> profiles = new CopyOnWriteArrayList<> ();
+        private final Map<HandlerProfile, Snapshot> snapshots = new IdentityHashMap<> ();
+        private BukkitTask task;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long written;
+        private boolean closed;
+
+        private HandlerProfiler (Plugin plugin) {
+                this.plugin = plugin;
+        }
+
+        /**
+         * Attaches a profile to the profiler of a plugin (starting the profiler if necessary).
+         *
+         * @param plugin The plugin.
+         * @param profile The profile.
+         */
+        public static void attach (Plugin plugin, HandlerProfile profile) {
+                HandlerProfiler profiler = PROFILERS.computeIfAbsent (plugin, HandlerProfiler::new);
+                profiler.profiles.addIfAbsent (profile);
+                profiler.start ();
+        }
+
+        /**
+         * Stops the profiler of a plugin and flushes all remaining data.
+         *
+         * This method is expected to be called from within {@link Plugin#onDisable()} (the file is closed on its own
+         * when the profiler notices that the plugin has been disabled otherwise).
+         *
+         * @param plugin The plugin.
+         */
+        public static void detach (Plugin plugin) {
+                HandlerProfiler profiler = PROFILERS.remove (plugin);
+                if (profiler != null) { profiler.stop (); }
+        }
+
+        /**
+         * Retrieves the profiler of a plugin.
+         *
+         * @param plugin The plugin.
+         * @return The profiler or null if no profile has been attached.
+         */
+        public static HandlerProfiler get (Plugin plugin) {
+                return PROFILERS.get (plugin);
+        }
+
+        /**
+         * Retrieves all profiles attached to this profiler.
+         *
+         * @return The profiles.
+         */
+        public List<HandlerProfile> getProfiles () {
+                return this.profiles;
+        }
+
+        /**
+         * Schedules the flush task unless it is already running.
+         */
+        private synchronized void start () {
+                if (this.task != null || this.closed) { return; }
+                this.task = this.plugin.getServer ().getScheduler ().runTaskTimerAsynchronously (this.plugin, this, DEFAULT_INTERVAL, DEFAULT_INTERVAL);
+        }
+
+        /**
+         * Cancels the flush task, flushes the remaining data and closes the file.
+         */
+        private synchronized void stop () {
+                if (this.task != null) { this.task.cancel (); }
+                this.flush ();
+                this.close ();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run () {
+                if (!this.plugin.isEnabled ()) {
+                        PROFILERS.remove (this.plugin, this);
+                        this.stop ();
+                        return;
+                }
+
+                this.flush ();
+        }
+
+        /**
+         * Writes one record for every handler which has been invoked since the previous flush.
+         */
+        public synchronized void flush () {
+                if (this.closed || (this.buffer == null && !this.open ())) { return; }
+
+                long timestamp = System.currentTimeMillis ();
+                int capacity = this.buffer.getInt (12);
+
+                for (HandlerProfile profile : this.profiles) {
+                        Snapshot snapshot = this.snapshots.computeIfAbsent (profile, Snapshot::new);
+
+                        for (int i = 0; i < profile.getHandlerCount (); i++) {
+                                long invocations = profile.getInvocations (i);
+                                long nanos = profile.getNanos (i);
+                                long cancellations = profile.getCancellations (i);
+                                long max = profile.getAndResetMax (i);
+
+                                if (invocations == snapshot.invocations[i]) { continue; }
+
+                                int offset = HEADER_SIZE + (int) (this.written % capacity) * RECORD_SIZE;
+                                byte[] name = snapshot.names[i];
+
+                                this.buffer.putLong (offset, timestamp);
+                                this.buffer.putLong (offset + 8, invocations - snapshot.invocations[i]);
+                                this.buffer.putLong (offset + 16, nanos - snapshot.nanos[i]);
+                                this.buffer.putLong (offset + 24, cancellations - snapshot.cancellations[i]);
+                                this.buffer.putLong (offset + 32, max);
+                                this.buffer.putShort (offset + 40, (short) name.length);
+                                for (int j = 0; j < name.length; j++) { this.buffer.put (offset + 42 + j, name[j]); }
+
+                                snapshot.invocations[i] = invocations;
+                                snapshot.nanos[i] = nanos;
+                                snapshot.cancellations[i] = cancellations;
+                                this.written++;
+                        }
+                }
+
+                // the counter is updated last in order to keep readers from picking up partially written records
+                this.buffer.putLong (16, this.written);
+        }
+
+        /**
+         * Maps the ring file (continuing where a previous run left off if the file is compatible).
+         *
+         * @return True if the file has been opened, false otherwise (in which case the profiler is disabled).
+         */
+        private boolean open () {
+                File file = new File (new File (this.plugin.getDataFolder (), "profiles"), FILE_NAME);
+
+                try {
+                        Files.createDirectories (file.getParentFile ().toPath ());
+                        this.channel = FileChannel.open (file.toPath (), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+                        boolean compatible = (this.channel.size () == HEADER_SIZE + (long) DEFAULT_CAPACITY * RECORD_SIZE);
+                        this.buffer = this.channel.map (FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) DEFAULT_CAPACITY * RECORD_SIZE);
+
+                        if (compatible && this.buffer.getInt (0) == MAGIC && this.buffer.getInt (4) == VERSION && this.buffer.getInt (8) == RECORD_SIZE && this.buffer.getInt (12) == DEFAULT_CAPACITY) {
+                                this.written = this.buffer.getLong (16);
+                        } else {
+                                this.buffer.putInt (0, MAGIC);
+                                this.buffer.putInt (4, VERSION);
+                                this.buffer.putInt (8, RECORD_SIZE);
+                                this.buffer.putInt (12, DEFAULT_CAPACITY);
+                                this.buffer.putLong (16, 0);
+                                this.written = 0;
+                        }
+
+                        return true;
+                } catch (IOException ex) {
+                        this.plugin.getLogger ().log (Level.WARNING, "Cannot open handler profile " + file.getPath () + ", profiling is disabled: " + ex.getMessage (), ex);
+                        this.close ();
+                        return false;
+                }
+        }
+
+        /**
+         * Forces all pending changes to disk and closes the ring file.
+         */
+        private void close () {
+                this.closed = true;
+
+                try {
+                        if (this.buffer != null) { this.buffer.force (); }
+                        if (this.channel != null) { this.channel.close (); }
+                } catch (IOException ex) {
+                        this.plugin.getLogger ().log (Level.WARNING, "Cannot close handler profile: " + ex.getMessage (), ex);
+                }
+
+                this.buffer = null;
+                this.channel = null;
+        }
+
+        /**
+         * Prints the records of a ring file (oldest first).
+         *
+         * @param arguments The path to the ring file.
+         * @throws IOException when reading the file fails.
+         */
+        public static void main (String[] arguments) throws IOException {
+                if (arguments.length != 1) {
+                        System.err.println ("Usage: java " + HandlerProfiler.class.getName () + " <" + FILE_NAME + ">");
+                        System.exit (1);
+                        return;
+                }
+
+                Path path = Paths.get (arguments[0]);
+                ByteBuffer buffer;
+
+                try (FileChannel channel = FileChannel.open (path, StandardOpenOption.READ)) {
+                        buffer = channel.map (FileChannel.MapMode.READ_ONLY, 0, channel.size ());
+                }
+
+                if (buffer.capacity () < HEADER_SIZE || buffer.getInt (0) != MAGIC || buffer.getInt (4) != VERSION) {
+                        System.err.println ("Not a handler profile: " + path);
+                        System.exit (1);
+                        return;
+                }
+
+                int recordSize = buffer.getInt (8);
+                int capacity = buffer.getInt (12);
+                long written = buffer.getLong (16);
+                SimpleDateFormat format = new SimpleDateFormat ("yyyy-MM-dd HH:mm:ss.SSS");
+
+                System.out.println ("timestamp\thandler\tinvocations\ttotal ms\tavg us\tmax us\tcancelled %");
+
+                for (long i = Math.max (0, written - capacity); i < written; i++) {
+                        int offset = HEADER_SIZE + (int) (i % capacity) * recordSize;
+                        long invocations = buffer.getLong (offset + 8);
+                        long nanos = buffer.getLong (offset + 16);
+                        long cancellations = buffer.getLong (offset + 24);
+                        byte[] name = new byte[buffer.getShort (offset + 40)];
+                        for (int j = 0; j < name.length; j++) { name[j] = buffer.get (offset + 42 + j); }
+
+                        System.out.println (String.format (Locale.ROOT, "%s\t%s\t%d\t%.3f\t%.1f\t%.1f\t%.1f", format.format (new Date (buffer.getLong (offset))), new String (name, StandardCharsets.UTF_8), invocations, nanos / 1000000.0, nanos / 1000.0 / invocations, buffer.getLong (offset + 32) / 1000.0, cancellations * 100.0 / invocations));
+                }
+        }
+
+        /**
+         * Stores the counters of a profile as of the previous flush along with the encoded handler names.
+         */
+        private static final class Snapshot {
+                private final byte[][] names;
+                private final long[] invocations;
+                private final long[] nanos;
+                private final long[] cancellations;
+
+                Snapshot (HandlerProfile profile) {
+                        int count = profile.getHandlerCount ();
+                        this.names = new byte[count][];
+                        this.invocations = new long[count];
+                        this.nanos = new long[count];
+                        this.cancellations = new long[count];
+
+                        for (int i = 0; i < count; i++) {
+                                String name = profile.getName (i);
+                                byte[] encoded = name.getBytes (StandardCharsets.UTF_8);
+
+                                // keep the end of overly long names since it identifies the handler method
+                                while (encoded.length > NAME_SIZE) {
+                                        name = name.substring (1);
+                                        encoded = name.getBytes (StandardCharsets.UTF_8);
+                                }
+
+                                this.names[i] = encoded;
+                        }
+                }
+        }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies within logarithmic buckets without any locking.
+ *
+ * Bucket {@code i} (for {@code i > 0}) counts all latencies within {@code [2^(i - 1), 2^i)} nanoseconds while bucket
+ * zero counts latencies of zero nanoseconds. Each bucket is backed by a {@link LongAdder} which stripes its counter
+ * across cells under contention. Percentiles are thus only accurate up to a factor of two (and reported as the upper
+ * bound of their bucket) which is sufficient to tell cheap commands apart from expensive ones.
+ *
+ * @author Johannes Donath
+ */
+public final class LatencyHistogram {
+        public static final int BUCKETS = 65;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder total = new LongAdder ();
+        private final AtomicLong max = new AtomicLong ();
+
+        public LatencyHistogram () {
+                for (int i = 0; i < BUCKETS; i++) { this.buckets[i] = new LongAdder (); }
+        }
+
+        /**
+         * Records a single latency.
+         *
+         * @param nanos The latency (in nanoseconds).
+         */
+        public void record (long nanos) {
+                if (nanos < 0) { nanos = 0; }
+
+                this.buckets[64 - Long.numberOfLeadingZeros (nanos)].increment ();
+                this.total.add (nanos);
+
+                // the maximum rarely changes, thus we will only resort to CAS once we actually observed a new maximum
+                long previous;
+                while (nanos > (previous = this.max.get ()) && !this.max.compareAndSet (previous, nanos)) { }
+        }
+
+        /**
+         * Resets all buckets.
+         *
+         * Latencies which are recorded concurrently may be lost.
+         */
+        public void reset () {
+                for (LongAdder bucket : this.buckets) { bucket.reset (); }
+                this.total.reset ();
+                this.max.set (0);
+        }
+
+        /**
+         * Retrieves the amount of recorded latencies.
+         *
+         * @return The count.
+         */
+        public long getCount () {
+                long count = 0;
+                for (LongAdder bucket : this.buckets) { count += bucket.sum (); }
+                return count;
+        }
+
+        /**
+         * Retrieves the sum of all recorded latencies.
+         *
+         * @return The sum (in nanoseconds).
+         */
+        public long getTotal () {
+                return this.total.sum ();
+        }
+
+        /**
+         * Retrieves the highest recorded latency.
+         *
+         * @return The latency (in nanoseconds).
+         */
+        public long getMax () {
+                return this.max.get ();
+        }
+
+        /**
+         * Retrieves the amount of latencies recorded within each bucket.
+         *
+         * @return The counts.
+         */
+        public long[] getBuckets () {
+                long[] counts = new long[BUCKETS];
+                for (int i = 0; i < BUCKETS; i++) { counts[i] = this.buckets[i].sum (); }
+                return counts;
+        }
+
+        /**
+         * Estimates a percentile of all recorded latencies.
+         *
+         * @param percentile The percentile (between zero and one).
+         * @return The upper bound of the bucket which contains the percentile (capped at the maximum) in nanoseconds.
+         */
+        public long getPercentile (double percentile) {
+                return percentile (this.getBuckets (), this.getMax (), percentile);
+        }
+
+        /**
+         * Estimates a percentile based on a set of bucket counts.
+         *
+         * @param counts The bucket counts.
+         * @param max The highest recorded latency.
+         * @param percentile The percentile (between zero and one).
+         * @return The upper bound of the bucket which contains the percentile (capped at the maximum) in nanoseconds.
+         */
+        public static long percentile (long[] counts, long max, double percentile) {
+                long count = 0;
+                for (long bucket : counts) { count += bucket; }
+                if (count == 0) { return 0; }
+
+                long rank = Math.max (1, (long) Math.ceil (percentile * count));
+                long seen = 0;
+
+                for (int i = 0; i < counts.length; i++) {
+                        seen += counts[i];
+                        if (seen < rank) { continue; }
+
+                        return (i == 0 ? 0 : Math.min (max, (i == 64 ? Long.MAX_VALUE : (1L << i) - 1)));
+                }
+
+                return max;
+        }
+}
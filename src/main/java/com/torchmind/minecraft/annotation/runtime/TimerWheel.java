@@ -0,0 +1,385 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+/**
+ * Drives a fixed set of repeating tasks from a single scheduler entry.
+ *
+ * Tasks are kept within a hashed timer wheel: each slot holds an intrusive list of the tasks which fall into it along
+ * with the amount of full revolutions they still have to wait. Every server tick advances the wheel by one slot and
+ * runs all tasks which are due as one batch (synchronous tasks are run in place while asynchronous tasks are handed to
+ * the scheduler as a single asynchronous task). Advancing the wheel thus only ever touches the tasks of one slot rather
+ * than every task which has been scheduled.
+ *
+ * The wheel itself is not thread safe and is expected to be run by the main server thread only (e.g. via
+ * {@link org.bukkit.scheduler.BukkitScheduler#runTaskTimer(Plugin, Runnable, long, long)} with a period of one tick).
+ * Statistics may be retrieved from any thread.
+ *
+ * @author Johannes Donath
+ */
+public final class TimerWheel implements Runnable {
+        public static final int DEFAULT_SLOTS = 256;
+        public static final long TICK_NANOS = 50000000L;
+        private static final int EMPTY = -1;
+
+        private final Plugin plugin;
+        private final Handler handler;
+        private final String[] names;
+        private final long[] periods;
+        private final boolean[] async;
+
+        private final int mask;
+        private final int[] heads;
+        private final int[] next;
+        private final long[] rounds;
+        private final int[] asyncBatch;
+        private long tick = 0;
+
+        private final AtomicIntegerArray running;
+        private final AtomicLongArray runs;
+        private final AtomicLongArray failures;
+        private final AtomicLongArray overruns;
+        private final AtomicLongArray skipped;
+        private final AtomicLongArray totalNanos;
+        private final AtomicLongArray maxNanos;
+
+        public TimerWheel (Plugin plugin, Handler handler, String[] names, long[] periods, long[] delays, boolean[] async) {
+                this (plugin, handler, names, periods, delays, async, DEFAULT_SLOTS);
+        }
+
+        /**
+         * Constructs a new timer wheel.
+         *
+         * @param plugin The owning plugin.
+         * @param handler The handler which runs the tasks.
+         * @param names The task names (as used within log messages).
+         * @param periods The amount of ticks between two executions of each task.
+         * @param delays The amount of ticks before the first execution of each task.
+         * @param async Indicates whether each task is executed off the main server thread.
+         * @param slots The amount of wheel slots (a power of two).
+         */
+        public TimerWheel (Plugin plugin, Handler handler, String[] names, long[] periods, long[] delays, boolean[] async, int slots) {
+                if (slots <= 0 || Integer.bitCount (slots) != 1) { throw new IllegalArgumentException ("Slot count needs to be a power of two"); }
+                if (periods.length != names.length || delays.length != names.length || async.length != names.length) { throw new IllegalArgumentException ("Task definitions differ in length"); }
+
+                this.plugin = plugin;
+                this.handler = handler;
+                this.names = names.clone ();
+                this.periods = periods.clone ();
+                this.async = async.clone ();
+
+                this.mask = slots - 1;
+                this.heads = new int[slots];
+                this.next = new int[names.length];
+                this.rounds = new long[names.length];
+                this.asyncBatch = new int[names.length];
+                Arrays.fill (this.heads, EMPTY);
+
+                this.running = new AtomicIntegerArray (names.length);
+                this.runs = new AtomicLongArray (names.length);
+                this.failures = new AtomicLongArray (names.length);
+                this.overruns = new AtomicLongArray (names.length);
+                this.skipped = new AtomicLongArray (names.length);
+                this.totalNanos = new AtomicLongArray (names.length);
+                this.maxNanos = new AtomicLongArray (names.length);
+
+                for (int i = 0; i < names.length; i++) {
+                        if (this.periods[i] < 1) { throw new IllegalArgumentException ("Period of task " + names[i] + " needs to be at least one tick"); }
+                        if (delays[i] < 0) { throw new IllegalArgumentException ("Delay of task " + names[i] + " cannot be negative"); }
+
+                        // the wheel is advanced before its slot is processed, thus the earliest possible execution
+                        // happens one tick after the wheel has been started (just like a task with a delay of zero)
+                        this.schedule (i, Math.max (1, delays[i]));
+                }
+        }
+
+        /**
+         * Places a task within the slot it becomes due in.
+         *
+         * @param task The task.
+         * @param delay The amount of ticks (at least one) until the task becomes due.
+         */
+        private void schedule (int task, long delay) {
+                int slot = (int) ((this.tick + delay) & this.mask);
+
+                this.rounds[task] = (delay - 1) / this.heads.length;
+                this.next[task] = this.heads[slot];
+                this.heads[slot] = task;
+        }
+
+        /**
+         * Advances the wheel by one tick and runs all tasks which are due.
+         */
+        @Override
+        public void run () {
+                int slot = (int) (++this.tick & this.mask);
+                int task = this.heads[slot];
+                int batchSize = 0;
+
+                // the slot is detached before processing which permits us to re-insert tasks into the very same slot
+                // without visiting them twice
+                this.heads[slot] = EMPTY;
+
+                while (task != EMPTY) {
+                        int following = this.next[task];
+
+                        if (this.rounds[task] != 0) {
+                                this.rounds[task]--;
+                                this.next[task] = this.heads[slot];
+                                this.heads[slot] = task;
+                        } else {
+                                this.schedule (task, this.periods[task]);
+
+                                if (!this.async[task]) {
+                                        this.execute (task);
+                                } else if (this.running.compareAndSet (task, 0, 1)) {
+                                        this.asyncBatch[batchSize++] = task;
+                                } else {
+                                        // the previous execution has not completed yet, running the task again would
+                                        // permit executions to pile up
+                                        this.skipped.incrementAndGet (task);
+                                        this.overruns.incrementAndGet (task);
+                                }
+                        }
+
+                        task = following;
+                }
+
+                if (batchSize != 0) {
+                        int[] batch = Arrays.copyOf (this.asyncBatch, batchSize);
+
+                        try {
+                                this.plugin.getServer ().getScheduler ().runTaskAsynchronously (this.plugin, () -> {
+                                        for (int asyncTask : batch) {
+                                                try {
+                                                        this.execute (asyncTask);
+                                                } finally {
+                                                        this.running.set (asyncTask, 0);
+                                                }
+                                        }
+                                });
+                        } catch (RuntimeException ex) {
+                                // the batch never runs (for instance while the plugin is being disabled) and would
+                                // otherwise keep its tasks marked as running forever
+                                for (int asyncTask : batch) { this.running.set (asyncTask, 0); }
+                                throw ex;
+                        }
+                }
+        }
+
+        /**
+         * Executes a single task and records its statistics.
+         *
+         * @param task The task.
+         */
+        private void execute (int task) {
+                long start = System.nanoTime ();
+
+                try {
+                        this.handler.run (task);
+                } catch (Throwable ex) {
+                        this.failures.incrementAndGet (task);
+                        this.plugin.getLogger ().log (Level.SEVERE, "Scheduled task " + this.names[task] + " generated an exception", ex);
+                }
+
+                long elapsed = System.nanoTime () - start;
+                this.runs.incrementAndGet (task);
+                this.totalNanos.addAndGet (task, elapsed);
+
+                long max;
+                while (elapsed > (max = this.maxNanos.get (task)) && !this.maxNanos.compareAndSet (task, max, elapsed)) { }
+
+                if (elapsed > this.periods[task] * TICK_NANOS) { this.overruns.incrementAndGet (task); }
+        }
+
+        /**
+         * Retrieves the amount of ticks the wheel has been advanced by.
+         *
+         * @return The tick.
+         */
+        public long getTick () {
+                return this.tick;
+        }
+
+        /**
+         * Retrieves the amount of tasks driven by this wheel.
+         *
+         * @return The task count.
+         */
+        public int getTaskCount () {
+                return this.names.length;
+        }
+
+        /**
+         * Retrieves the name of a task.
+         *
+         * @param task The task.
+         * @return The name.
+         */
+        public String getName (int task) {
+                return this.names[task];
+        }
+
+        /**
+         * Retrieves a snapshot of the statistics of a task.
+         *
+         * @param task The task.
+         * @return The statistics.
+         */
+        public Statistics getStatistics (int task) {
+                return new Statistics (this.names[task], this.periods[task], this.runs.get (task), this.failures.get (task), this.overruns.get (task), this.skipped.get (task), this.totalNanos.get (task), this.maxNanos.get (task));
+        }
+
+        /**
+         * Runs the tasks of a timer wheel.
+         */
+        @FunctionalInterface
+        public interface Handler {
+
+                /**
+                 * Runs a task.
+                 *
+                 * @param task The task.
+                 * @throws Exception when the task fails.
+                 */
+                void run (int task) throws Exception;
+        }
+
+        /**
+         * Provides the execution statistics of a task.
+         *
+         * A task overruns when a single execution takes longer than its period or when an asynchronous task is still
+         * running once it becomes due again (in which case the execution is skipped).
+         */
+        public static final class Statistics {
+                private final String name;
+                private final long period;
+                private final long runs;
+                private final long failures;
+                private final long overruns;
+                private final long skipped;
+                private final long totalNanos;
+                private final long maxNanos;
+
+                private Statistics (String name, long period, long runs, long failures, long overruns, long skipped, long totalNanos, long maxNanos) {
+                        this.name = name;
+                        this.period = period;
+                        this.runs = runs;
+                        this.failures = failures;
+                        this.overruns = overruns;
+                        this.skipped = skipped;
+                        this.totalNanos = totalNanos;
+                        this.maxNanos = maxNanos;
+                }
+
+                /**
+                 * Retrieves the task name.
+                 *
+                 * @return The name.
+                 */
+                public String getName () {
+                        return this.name;
+                }
+
+                /**
+                 * Retrieves the amount of ticks between two executions.
+                 *
+                 * @return The period.
+                 */
+                public long getPeriod () {
+                        return this.period;
+                }
+
+                /**
+                 * Retrieves the amount of completed executions.
+                 *
+                 * @return The execution count.
+                 */
+                public long getRuns () {
+                        return this.runs;
+                }
+
+                /**
+                 * Retrieves the amount of executions which raised an exception.
+                 *
+                 * @return The failure count.
+                 */
+                public long getFailures () {
+                        return this.failures;
+                }
+
+                /**
+                 * Retrieves the amount of overruns.
+                 *
+                 * @return The overrun count.
+                 */
+                public long getOverruns () {
+                        return this.overruns;
+                }
+
+                /**
+                 * Retrieves the amount of executions which have been skipped as the previous execution was still running.
+                 *
+                 * @return The skip count.
+                 */
+                public long getSkipped () {
+                        return this.skipped;
+                }
+
+                /**
+                 * Retrieves the total execution time.
+                 *
+                 * @return The time (in nanoseconds).
+                 */
+                public long getTotalNanos () {
+                        return this.totalNanos;
+                }
+
+                /**
+                 * Retrieves the longest execution time.
+                 *
+                 * @return The time (in nanoseconds).
+                 */
+                public long getMaxNanos () {
+                        return this.maxNanos;
+                }
+
+                /**
+                 * Retrieves the average execution time.
+                 *
+                 * @return The time (in nanoseconds).
+                 */
+                public long getAverageNanos () {
+                        return (this.runs == 0 ? 0 : this.totalNanos / this.runs);
+                }
+
+                /**
+                 * {@inheritDoc}
+                 */
+                @Override
+                public String toString () {
+                        return String.format ("%s (every %d ticks): %d runs, %d failures, %d overruns (%d skipped), avg %.3f ms, max %.3f ms", this.name, this.period, this.runs, this.failures, this.overruns, this.skipped, this.getAverageNanos () / 1000000.0, this.maxNanos / 1000000.0);
+                }
+        }
+}
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persists entities asynchronously in batched transactions.
+ *
+ * Saving or deleting an entity merely records a detached copy within a map of pending writes (replacing any write of
+ * the same entity which has not been flushed yet) and thus never blocks the calling thread on the database. Pending
+ * writes are flushed periodically (or as soon as a full batch has accumulated) by a single background thread which
+ * writes each batch within its own transaction. Rows are updated first and inserted if the update did not affect any
+ * row which keeps the generated statements portable between databases.
+ *
+ * When a batch fails, its writes are retried one by one in order to isolate the offending rows while the remaining
+ * batches are flushed as usual. Writes which fail remain pending and are retried upon the next flush unless they have
+ * been replaced in the meantime. Writes which fail {@link #MAX_ATTEMPTS} times in a row are dropped (see
+ * {@link #getDroppedCount()}) so that a single bad row cannot hold back the queue forever. Transient failures (such as
+ * an unreachable database) abort the flush without counting against any write.
+ *
+ * @param <T> The entity type.
+ * @param <K> The identifier type.
+ * @author Johannes Donath
+ */
+public final class WriteBehindQueue<T, K> {
+        public static final int DEFAULT_BATCH_SIZE = 256;
+        public static final long DEFAULT_INTERVAL = 1000;
+        public static final int MAX_ATTEMPTS = 3;
+
+        private final EntityMapper<T, K> mapper;
+        private final ConnectionFactory connectionFactory;
+        private final int batchSize;
+        private final ScheduledThreadPoolExecutor executor;
+        private final ConcurrentHashMap<K, Write<T>> pending = new ConcurrentHashMap<> ();
+        private final AtomicBoolean flushRequested = new AtomicBoolean ();
+        private volatile boolean shutdown;
+
+        private final LongAdder scheduled = new LongAdder ();
+        private final LongAdder coalesced = new LongAdder ();
+        private final LongAdder written = new LongAdder ();
+        private final LongAdder batches = new LongAdder ();
+        private final LongAdder failures = new LongAdder ();
+        private final LongAdder dropped = new LongAdder ();
+        private volatile Exception lastFailure;
+
+        /**
+         * Constructs a new queue which flushes once per second in batches of up to {@link #DEFAULT_BATCH_SIZE} writes.
+         *
+         * @param mapper The entity mapper.
+         * @param connectionFactory The connection factory.
+         */
+        public WriteBehindQueue (EntityMapper<T, K> mapper, ConnectionFactory connectionFactory) {
+                this (mapper, connectionFactory, DEFAULT_BATCH_SIZE, DEFAULT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Constructs a new queue.
+         *
+         * @param mapper The entity mapper.
+         * @param connectionFactory The connection factory.
+         * @param batchSize The maximum amount of writes per transaction (reaching it triggers an early flush).
+         * @param interval The delay between two periodic flushes.
+         * @param unit The unit of the interval.
+         */
+        public WriteBehindQueue (EntityMapper<T, K> mapper, ConnectionFactory connectionFactory, int batchSize, long interval, TimeUnit unit) {
+                if (batchSize < 1) { throw new IllegalArgumentException ("Batch size needs to be positive"); }
+
+                this.mapper = mapper;
+                this.connectionFactory = connectionFactory;
+                this.batchSize = batchSize;
+
+                this.executor = new ScheduledThreadPoolExecutor (1, (r) -> {
+                        Thread thread = new Thread (r, "Write Behind Queue (" + mapper.getTable () + ")");
+                        thread.setDaemon (true);
+                        return thread;
+                });
+                this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy (false);
+                this.executor.scheduleWithFixedDelay (this::flushPending, interval, interval, unit);
+        }
+
+        /**
+         * Creates the table of the entity unless it exists already.
+         *
+         * @return A future which completes once the table has been created.
+         */
+        public CompletableFuture<Void> createTable () {
+                return CompletableFuture.runAsync (() -> {
+                        try (Connection connection = this.connectionFactory.open (); Statement statement = connection.createStatement ()) {
+                                statement.execute (this.mapper.getCreateStatement ());
+                        } catch (SQLException ex) {
+                                throw new CompletionException (ex);
+                        }
+                }, this.executor);
+        }
+
+        /**
+         * Schedules an entity to be saved.
+         *
+         * The entity is copied immediately and thus may be modified (or discarded) right after this method returns.
+         *
+         * @param entity The entity.
+         */
+        public void save (T entity) {
+                this.enqueue (this.mapper.getKey (entity), new Write<> (this.mapper.copy (entity)));
+        }
+
+        /**
+         * Schedules an entity to be deleted.
+         *
+         * @param key The identifier.
+         */
+        public void delete (K key) {
+                this.enqueue (key, new Write<> (null));
+        }
+
+        /**
+         * Records a pending write and requests an early flush if a full batch has accumulated.
+         *
+         * @param key The identifier.
+         * @param write The write.
+         */
+        private void enqueue (K key, Write<T> write) {
+                if (this.shutdown) { throw new IllegalStateException ("Queue has been shut down"); }
+                if (key == null) { throw new IllegalArgumentException ("Entity identifier cannot be null"); }
+
+                this.scheduled.increment ();
+                if (this.pending.put (key, write) != null) { this.coalesced.increment (); }
+
+                if (this.pending.size () >= this.batchSize && this.flushRequested.compareAndSet (false, true)) {
+                        try {
+                                this.executor.execute (this::flushPending);
+                        } catch (RejectedExecutionException ex) {
+                                // the queue is shutting down and will flush all pending writes on its own
+                                this.flushRequested.set (false);
+                        }
+                }
+        }
+
+        /**
+         * Loads an entity.
+         *
+         * Pending writes take precedence over the database contents and thus an entity which has just been saved (or
+         * deleted) is returned (or omitted) without accessing the database.
+         *
+         * @param key The identifier.
+         * @return A future which completes with a copy of the entity or null if no such entity exists.
+         */
+        public CompletableFuture<T> load (K key) {
+                Write<T> write = this.pending.get (key);
+                if (write != null) { return CompletableFuture.completedFuture ((write.entity != null ? this.mapper.copy (write.entity) : null)); }
+
+                return CompletableFuture.supplyAsync (() -> {
+                        // the entity may have been saved while this task was waiting for the flush thread
+                        Write<T> current = this.pending.get (key);
+                        if (current != null) { return (current.entity != null ? this.mapper.copy (current.entity) : null); }
+
+                        try (Connection connection = this.connectionFactory.open (); PreparedStatement statement = connection.prepareStatement (this.mapper.getSelectStatement ())) {
+                                this.mapper.bindKey (statement, key);
+
+                                try (ResultSet resultSet = statement.executeQuery ()) {
+                                        return (resultSet.next () ? this.mapper.map (resultSet) : null);
+                                }
+                        } catch (SQLException ex) {
+                                throw new CompletionException (ex);
+                        }
+                }, this.executor);
+        }
+
+        /**
+         * Requests an immediate flush of all pending writes.
+         *
+         * @return A future which completes with true if all writes which were pending have been written.
+         */
+        public CompletableFuture<Boolean> flush () {
+                return CompletableFuture.supplyAsync (this::flushPending, this.executor);
+        }
+
+        /**
+         * Flushes all pending writes in batches.
+         *
+         * @return True if all writes have been written, false if a write failed (or has been dropped).
+         */
+        private boolean flushPending () {
+                this.flushRequested.set (false);
+
+                // the iterator visits each entry at most once and thus the flush terminates even if writes are
+                // continuously replaced while it is running
+                Iterator<Map.Entry<K, Write<T>>> iterator = this.pending.entrySet ().iterator ();
+                List<Map.Entry<K, Write<T>>> batch = new ArrayList<> (Math.min (this.batchSize, this.pending.size () + 1));
+                boolean complete = true;
+
+                if (!iterator.hasNext ()) { return true; }
+
+                try (Connection connection = this.connectionFactory.open ()) {
+                        while (iterator.hasNext ()) {
+                                batch.add (new AbstractMap.SimpleImmutableEntry<> (iterator.next ()));
+
+                                if (batch.size () == this.batchSize || !iterator.hasNext ()) {
+                                        try {
+                                                this.write (connection, batch);
+                                                this.complete (batch);
+                                        } catch (SQLException | RuntimeException ex) {
+                                                // exceptions would otherwise silently cancel the periodic flush
+                                                this.failures.increment ();
+                                                this.lastFailure = ex;
+
+                                                // transient failures would fail each individual write as well
+                                                if (isTransient (ex)) { return false; }
+                                                if (!this.writeIndividually (connection, batch)) { complete = false; }
+                                        }
+
+                                        batch.clear ();
+                                }
+                        }
+                } catch (SQLException | RuntimeException ex) {
+                        // failures of the connection itself (opening it or retrying individual writes after the database
+                        // became unavailable) have not been recorded yet
+                        if (ex != this.lastFailure) {
+                                this.failures.increment ();
+                                this.lastFailure = ex;
+                        }
+
+                        return false;
+                }
+
+                return complete;
+        }
+
+        /**
+         * Retries each write of a failed batch within its own transaction and drops writes which keep failing.
+         *
+         * @param connection The connection.
+         * @param batch The failed batch.
+         * @return True if all writes have been written.
+         * @throws SQLException when the database has become unavailable.
+         */
+        private boolean writeIndividually (Connection connection, List<Map.Entry<K, Write<T>>> batch) throws SQLException {
+                boolean complete = true;
+
+                for (Map.Entry<K, Write<T>> entry : batch) {
+                        List<Map.Entry<K, Write<T>>> single = Collections.singletonList (entry);
+
+                        try {
+                                this.write (connection, single);
+                                this.complete (single);
+                        } catch (SQLException | RuntimeException ex) {
+                                this.failures.increment ();
+                                this.lastFailure = ex;
+                                complete = false;
+
+                                if (isTransient (ex)) { throw (SQLException) ex; }
+
+                                // the write has been retried often enough and would otherwise block its entity forever
+                                if (++entry.getValue ().attempts >= MAX_ATTEMPTS && this.pending.remove (entry.getKey (), entry.getValue ())) {
+                                        this.dropped.increment ();
+                                }
+                        }
+                }
+
+                return complete;
+        }
+
+        /**
+         * Removes a batch which has been written from the pending writes.
+         *
+         * @param batch The batch.
+         */
+        private void complete (List<Map.Entry<K, Write<T>>> batch) {
+                // writes which have been replaced while the batch was written remain pending
+                for (Map.Entry<K, Write<T>> entry : batch) { this.pending.remove (entry.getKey (), entry.getValue ()); }
+
+                this.written.add (batch.size ());
+                this.batches.increment ();
+        }
+
+        /**
+         * Checks whether an exception indicates a failure which is unrelated to the written rows.
+         *
+         * @param ex The exception.
+         * @return True if transient.
+         */
+        private static boolean isTransient (Exception ex) {
+                return (ex instanceof SQLTransientException || ex instanceof SQLRecoverableException);
+        }
+
+        /**
+         * Writes a batch of pending writes within a single transaction.
+         *
+         * @param connection The connection.
+         * @param batch The batch.
+         * @throws SQLException when writing fails.
+         */
+        private void write (Connection connection, List<Map.Entry<K, Write<T>>> batch) throws SQLException {
+                List<T> saves = new ArrayList<> (batch.size ());
+                List<K> deletes = new ArrayList<> ();
+
+                for (Map.Entry<K, Write<T>> entry : batch) {
+                        if (entry.getValue ().entity != null) {
+                                saves.add (entry.getValue ().entity);
+                        } else {
+                                deletes.add (entry.getKey ());
+                        }
+                }
+
+                boolean autoCommit = connection.getAutoCommit ();
+                connection.setAutoCommit (false);
+
+                try {
+                        if (!deletes.isEmpty ()) {
+                                try (PreparedStatement statement = connection.prepareStatement (this.mapper.getDeleteStatement ())) {
+                                        for (K key : deletes) {
+                                                this.mapper.bindKey (statement, key);
+                                                statement.addBatch ();
+                                        }
+
+                                        statement.executeBatch ();
+                                }
+                        }
+
+                        if (!saves.isEmpty ()) { this.upsert (connection, saves); }
+
+                        connection.commit ();
+                } catch (SQLException | RuntimeException ex) {
+                        connection.rollback ();
+                        throw ex;
+                } finally {
+                        connection.setAutoCommit (autoCommit);
+                }
+        }
+
+        /**
+         * Updates the rows of a list of entities and inserts the rows which did not exist yet.
+         *
+         * @param connection The connection.
+         * @param entities The entities.
+         * @throws SQLException when writing fails.
+         */
+        private void upsert (Connection connection, List<T> entities) throws SQLException {
+                List<T> inserts = new ArrayList<> ();
+
+                try (PreparedStatement statement = connection.prepareStatement (this.mapper.getUpdateStatement ())) {
+                        for (T entity : entities) {
+                                this.mapper.bind (statement, entity);
+                                statement.addBatch ();
+                        }
+
+                        int[] counts = statement.executeBatch ();
+
+                        for (int i = 0; i < entities.size (); i++) {
+                                int count = (i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+
+                                // some drivers (for instance when rewriting batches) do not report the affected rows, in
+                                // which case we repeat the (idempotent) update on its own
+                                if (count == Statement.SUCCESS_NO_INFO) {
+                                        this.mapper.bind (statement, entities.get (i));
+                                        count = statement.executeUpdate ();
+                                }
+
+                                if (count == 0) { inserts.add (entities.get (i)); }
+                        }
+                }
+
+                if (inserts.isEmpty ()) { return; }
+
+                try (PreparedStatement statement = connection.prepareStatement (this.mapper.getInsertStatement ())) {
+                        for (T entity : inserts) {
+                                this.mapper.bind (statement, entity);
+                                statement.addBatch ();
+                        }
+
+                        statement.executeBatch ();
+                }
+        }
+
+        /**
+         * Flushes all pending writes and stops the flush thread.
+         *
+         * No further entities may be saved once this method has been called. This method should be called from within
+         * {@code onDisable} (after the last entity has been saved).
+         *
+         * @param timeout The maximum time to wait for the final flush.
+         * @param unit The unit of the timeout.
+         * @return True if all pending writes have been written.
+         * @throws InterruptedException when interrupted while waiting.
+         */
+        public boolean shutdown (long timeout, TimeUnit unit) throws InterruptedException {
+                this.shutdown = true;
+
+                try {
+                        this.executor.execute (this::flushPending);
+                } catch (RejectedExecutionException ignore) {
+                        // the queue has already been shut down
+                }
+
+                this.executor.shutdown ();
+                return (this.executor.awaitTermination (timeout, unit) && this.pending.isEmpty ());
+        }
+
+        /**
+         * Retrieves the amount of writes which have not been flushed yet.
+         *
+         * @return The amount of writes.
+         */
+        public int getPendingCount () {
+                return this.pending.size ();
+        }
+
+        /**
+         * Retrieves the total amount of saves and deletes which have been scheduled.
+         *
+         * @return The amount of writes.
+         */
+        public long getScheduledCount () {
+                return this.scheduled.sum ();
+        }
+
+        /**
+         * Retrieves the amount of scheduled writes which replaced a pending write of the same entity.
+         *
+         * @return The amount of writes.
+         */
+        public long getCoalescedCount () {
+                return this.coalesced.sum ();
+        }
+
+        /**
+         * Retrieves the amount of writes which have been written to the database.
+         *
+         * @return The amount of writes.
+         */
+        public long getWrittenCount () {
+                return this.written.sum ();
+        }
+
+        /**
+         * Retrieves the amount of transactions which have been committed.
+         *
+         * @return The amount of batches.
+         */
+        public long getBatchCount () {
+                return this.batches.sum ();
+        }
+
+        /**
+         * Retrieves the amount of batches (including the individual retries of failed batches) which failed to write.
+         *
+         * @return The amount of failures.
+         */
+        public long getFailureCount () {
+                return this.failures.sum ();
+        }
+
+        /**
+         * Retrieves the amount of writes which have been dropped after failing {@link #MAX_ATTEMPTS} times.
+         *
+         * @return The amount of writes.
+         */
+        public long getDroppedCount () {
+                return this.dropped.sum ();
+        }
+
+        /**
+         * Retrieves the cause of the most recent failure.
+         *
+         * @return The exception or null if no write failed so far.
+         */
+        public Exception getLastFailure () {
+                return this.lastFailure;
+        }
+
+        /**
+         * Opens database connections for a queue.
+         *
+         * Connections are closed once they are no longer needed, thus factories should either open a new connection or
+         * hand out a connection from a pool (for instance {@code dataSource::getConnection}).
+         */
+        @FunctionalInterface
+        public interface ConnectionFactory {
+
+                /**
+                 * Opens a connection.
+                 *
+                 * @return The connection.
+                 * @throws SQLException when the connection cannot be opened.
+                 */
+                Connection open () throws SQLException;
+        }
+
+        /**
+         * Represents a pending write (which is compared by identity in order to detect replaced writes).
+         *
+         * @param <T> The entity type.
+         */
+        private static final class Write<T> {
+                private final T entity;
+                private int attempts; // only accessed by the flush thread
+
+                Write (T entity) {
+                        this.entity = entity;
+                }
+        }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.scheduler;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares a method which is invoked repeatedly by the scheduler.
+ *
+ * All scheduled methods of a plugin are driven by a single generated task (named {@code <Plugin>Scheduler}) which
+ * keeps them within a hashed timer wheel and runs all methods which are due within the same tick as one batch.
+ * Scheduled methods may not accept any parameters and need to be static, declared by the plugin class or declared by
+ * a type with an accessible default constructor.
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.METHOD)
+@Retention (RetentionPolicy.CLASS)
+public @interface Scheduled {
+        /**
+         * Specifies the amount of ticks between two invocations.
+         */
+        long period ();
+
+        /**
+         * Specifies the amount of ticks before the first invocation.
+         */
+        long delay () default 0;
+
+        /**
+         * Specifies whether the method is invoked off the main server thread.
+         */
+        boolean async () default false;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.scheduler;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares a job method which processes a single item of a larger batch within a limited amount of time per tick.
+ *
+ * A factory (located within the generated {@code <Plugin>Jobs} class and named after the method) turns the method into
+ * a resumable {@link com.torchmind.minecraft.annotation.runtime.BudgetedJob} over an {@link Iterable} or
+ * {@link java.util.Spliterator} which processes items on the main thread until the budget of the current tick has been
+ * used up and continues with the next item within the following tick. Job methods accept exactly one parameter (the
+ * item) and return either {@code void} or {@code boolean} (where {@code false} stops the job early).
+ *
+ * @author Johannes Donath
+ */
+@Documented
+@Target (ElementType.METHOD)
+@Retention (RetentionPolicy.CLASS)
+public @interface TickBudgeted {
+        /**
+         * Specifies the maximum amount of time (in microseconds) the job may spend within a single tick.
+         */
+        long maxMicrosPerTick () default 5000;
+}
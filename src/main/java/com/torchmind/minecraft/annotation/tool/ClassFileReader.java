@@ -0,0 +1,539 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.tool;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the annotations of a class (and its methods) from its class file without loading it.
+ *
+ * The reader only decodes the constant pool and the annotation attributes. Since annotations reference their type
+ * through a UTF-8 constant, classes which do not contain any of the requested annotation descriptors within their
+ * constant pool are rejected before their members are even looked at which makes scanning large amounts of classes
+ * rather cheap.
+ *
+ * Parameter names are recovered from the {@code MethodParameters} attribute (when compiled with {@code -parameters})
+ * or the local variable table (when compiled with debug information) and are unavailable otherwise.
+ *
+ * @author Johannes Donath
+ */
+public final class ClassFileReader {
+        private static final int MAGIC = 0xCAFEBABE;
+        private static final int ACC_STATIC = 0x0008;
+        private static final int ACC_VARARGS = 0x0080;
+        private static final String CODE = "Code";
+        private static final String LOCAL_VARIABLE_TABLE = "LocalVariableTable";
+        private static final String METHOD_PARAMETERS = "MethodParameters";
+        private static final String RUNTIME_INVISIBLE_ANNOTATIONS = "RuntimeInvisibleAnnotations";
+        private static final String RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations";
+
+        private final ByteBuffer buffer;
+        private Object[] constants;
+
+        private ClassFileReader (byte[] data) {
+                this.buffer = ByteBuffer.wrap (data);
+        }
+
+        /**
+         * Reads the annotations of a class.
+         *
+         * @param data The class file.
+         * @param descriptors The descriptors of all annotation types of interest (e.g. {@code Lcom/example/Foo;}).
+         * @return The class or null if it does not reference any of the requested annotation types.
+         * @throws IllegalArgumentException when the class file is malformed.
+         */
+        public static ClassInfo read (byte[] data, Set<String> descriptors) {
+                try {
+                        return (new ClassFileReader (data)).read (descriptors);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException ex) {
+                        throw new IllegalArgumentException ("Malformed class file: " + ex.getMessage (), ex);
+                }
+        }
+
+        /**
+         * Reads the class file.
+         *
+         * @param descriptors The descriptors of all annotation types of interest.
+         * @return The class or null if it does not reference any of the requested annotation types.
+         */
+        private ClassInfo read (Set<String> descriptors) {
+                if (this.buffer.getInt () != MAGIC) { throw new IllegalArgumentException ("Not a class file"); }
+                this.buffer.getInt ();
+
+                if (!this.readConstantPool (descriptors)) { return null; }
+
+                this.buffer.getShort ();
+                String name = this.className (this.buffer.getShort ());
+                this.buffer.getShort ();
+                this.skip (2 * this.unsignedShort ());
+
+                // fields cannot carry any of our annotations and are thus skipped entirely
+                int fieldCount = this.unsignedShort ();
+                for (int i = 0; i < fieldCount; i++) {
+                        this.skip (6);
+                        this.skipAttributes ();
+                }
+
+                List<MethodInfo> methods = new ArrayList<> ();
+                int methodCount = this.unsignedShort ();
+
+                for (int i = 0; i < methodCount; i++) {
+                        int access = this.unsignedShort ();
+                        String methodName = this.utf8 (this.buffer.getShort ());
+                        String methodDescriptor = this.utf8 (this.buffer.getShort ());
+                        int[] slots = parameterSlots (methodDescriptor, (access & ACC_STATIC) == 0);
+                        String[] parameterNames = new String[slots.length];
+                        List<AnnotationInfo> annotations = this.readAnnotationAttributes (slots, parameterNames);
+
+                        if (!annotations.isEmpty ()) { methods.add (new MethodInfo (methodName, methodDescriptor, (access & ACC_VARARGS) != 0, parameterNames, annotations)); }
+                }
+
+                return new ClassInfo (name, this.readAnnotationAttributes (null, null), methods);
+        }
+
+        /**
+         * Decodes the constant pool.
+         *
+         * @param descriptors The descriptors of all annotation types of interest.
+         * @return True if at least one of the descriptors is referenced.
+         */
+        private boolean readConstantPool (Set<String> descriptors) {
+                int count = this.unsignedShort ();
+                boolean relevant = false;
+                this.constants = new Object[count];
+
+                for (int i = 1; i < count; i++) {
+                        int tag = this.buffer.get ();
+
+                        switch (tag) {
+                                case 1:
+                                        int length = this.unsignedShort ();
+                                        String value = new String (this.buffer.array (), this.buffer.position (), length, StandardCharsets.UTF_8);
+
+                                        // Note: class files use modified UTF-8 which only differs for NUL and
+                                        // supplementary characters neither of which occur within type descriptors
+                                        this.constants[i] = value;
+                                        this.skip (length);
+                                        relevant |= descriptors.contains (value);
+                                        break;
+                                case 3: this.constants[i] = this.buffer.getInt (); break;
+                                case 4: this.constants[i] = this.buffer.getFloat (); break;
+                                case 5: this.constants[i++] = this.buffer.getLong (); break;
+                                case 6: this.constants[i++] = this.buffer.getDouble (); break;
+                                case 7: this.constants[i] = new ClassReference (this.unsignedShort ()); break;
+                                case 8: case 16: case 19: case 20: this.skip (2); break;
+                                case 15: this.skip (3); break;
+                                case 9: case 10: case 11: case 12: case 17: case 18: this.skip (4); break;
+                                default: throw new IllegalArgumentException ("Unknown constant pool tag " + tag);
+                        }
+                }
+
+                return relevant;
+        }
+
+        /**
+         * Reads all annotations from the attributes of the current member (skipping all other attributes).
+         *
+         * @param slots The local variable slots of the method parameters or null if the member is not a method.
+         * @param parameterNames The array to store the recovered parameter names in or null.
+         * @return The annotations.
+         */
+        private List<AnnotationInfo> readAnnotationAttributes (int[] slots, String[] parameterNames) {
+                List<AnnotationInfo> annotations = Collections.emptyList ();
+                int count = this.unsignedShort ();
+
+                for (int i = 0; i < count; i++) {
+                        String name = this.utf8 (this.buffer.getShort ());
+                        int length = this.buffer.getInt ();
+
+                        if (parameterNames != null && (CODE.equals (name) || METHOD_PARAMETERS.equals (name))) {
+                                int end = this.buffer.position () + length;
+                                if (CODE.equals (name)) { this.readLocalVariableNames (slots, parameterNames); } else { this.readParameterNames (parameterNames); }
+                                this.buffer.position (end);
+                                continue;
+                        }
+
+                        if (!RUNTIME_INVISIBLE_ANNOTATIONS.equals (name) && !RUNTIME_VISIBLE_ANNOTATIONS.equals (name)) {
+                                this.skip (length);
+                                continue;
+                        }
+
+                        if (annotations.isEmpty ()) { annotations = new ArrayList<> (); }
+
+                        int annotationCount = this.unsignedShort ();
+                        for (int j = 0; j < annotationCount; j++) { annotations.add (this.readAnnotation ()); }
+                }
+
+                return annotations;
+        }
+
+        /**
+         * Reads the parameter names from a {@code MethodParameters} attribute (which takes precedence over the local
+         * variable table).
+         *
+         * @param parameterNames The parameter names.
+         */
+        private void readParameterNames (String[] parameterNames) {
+                int count = this.buffer.get () & 0xFF;
+                if (count != parameterNames.length) { return; }
+
+                for (int i = 0; i < count; i++) {
+                        int name = this.unsignedShort ();
+                        this.skip (2);
+
+                        if (name != 0) { parameterNames[i] = this.utf8 ((short) name); }
+                }
+        }
+
+        /**
+         * Reads the parameter names from the local variable table within a {@code Code} attribute.
+         *
+         * @param slots The local variable slots of all parameters.
+         * @param parameterNames The parameter names.
+         */
+        private void readLocalVariableNames (int[] slots, String[] parameterNames) {
+                this.skip (4);
+                this.skip (this.buffer.getInt ());
+                this.skip (8 * this.unsignedShort ());
+
+                int count = this.unsignedShort ();
+                for (int i = 0; i < count; i++) {
+                        String name = this.utf8 (this.buffer.getShort ());
+                        int length = this.buffer.getInt ();
+
+                        if (!LOCAL_VARIABLE_TABLE.equals (name)) {
+                                this.skip (length);
+                                continue;
+                        }
+
+                        int variableCount = this.unsignedShort ();
+                        for (int j = 0; j < variableCount; j++) {
+                                int start = this.unsignedShort ();
+                                this.skip (2);
+                                String variableName = this.utf8 (this.buffer.getShort ());
+                                this.skip (2);
+                                int slot = this.unsignedShort ();
+
+                                // parameters are the only variables which are in scope from the very first instruction
+                                if (start != 0) { continue; }
+
+                                for (int k = 0; k < slots.length; k++) {
+                                        if (slots[k] == slot && parameterNames[k] == null) { parameterNames[k] = variableName; }
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Computes the local variable slots occupied by the parameters of a method.
+         *
+         * @param descriptor The method descriptor.
+         * @param instance Indicates whether the method is an instance method (and thus receives this in slot zero).
+         * @return The slots.
+         */
+        private static int[] parameterSlots (String descriptor, boolean instance) {
+                List<Integer> slots = new ArrayList<> ();
+                int slot = (instance ? 1 : 0);
+                int i = 1;
+
+                while (descriptor.charAt (i) != ')') {
+                        boolean array = false;
+                        while (descriptor.charAt (i) == '[') {
+                                array = true;
+                                i++;
+                        }
+
+                        char type = descriptor.charAt (i);
+                        i = (type == 'L' ? descriptor.indexOf (';', i) : i) + 1;
+
+                        slots.add (slot);
+                        slot += (!array && (type == 'J' || type == 'D') ? 2 : 1);
+                }
+
+                int[] result = new int[slots.size ()];
+                for (int j = 0; j < result.length; j++) { result[j] = slots.get (j); }
+                return result;
+        }
+
+        /**
+         * Reads a single annotation.
+         *
+         * @return The annotation.
+         */
+        private AnnotationInfo readAnnotation () {
+                String descriptor = this.utf8 (this.buffer.getShort ());
+                Map<String, Object> values = new LinkedHashMap<> ();
+                int count = this.unsignedShort ();
+
+                for (int i = 0; i < count; i++) {
+                        String name = this.utf8 (this.buffer.getShort ());
+                        values.put (name, this.readElementValue ());
+                }
+
+                return new AnnotationInfo (descriptor.substring (1, descriptor.length () - 1).replace ('/', '.'), values);
+        }
+
+        /**
+         * Reads a single annotation element value.
+         *
+         * Primitives (including booleans and chars which are stored as integers) and strings are returned as their
+         * constant, enum constants as {@link EnumValue}, classes as their descriptor, nested annotations as
+         * {@link AnnotationInfo} and arrays as lists.
+         *
+         * @return The value.
+         */
+        private Object readElementValue () {
+                char tag = (char) this.buffer.get ();
+
+                switch (tag) {
+                        case 'B': case 'C': case 'D': case 'F': case 'I': case 'J': case 'S': case 'Z': case 's': case 'c':
+                                return this.constants[this.unsignedShort ()];
+                        case 'e':
+                                String type = this.utf8 (this.buffer.getShort ());
+                                return new EnumValue (type.substring (1, type.length () - 1).replace ('/', '.'), this.utf8 (this.buffer.getShort ()));
+                        case '@':
+                                return this.readAnnotation ();
+                        case '[':
+                                int count = this.unsignedShort ();
+                                List<Object> values = new ArrayList<> (count);
+                                for (int i = 0; i < count; i++) { values.add (this.readElementValue ()); }
+                                return values;
+                        default:
+                                throw new IllegalArgumentException ("Unknown element value tag " + tag);
+                }
+        }
+
+        /**
+         * Skips all attributes of the current member.
+         */
+        private void skipAttributes () {
+                int count = this.unsignedShort ();
+
+                for (int i = 0; i < count; i++) {
+                        this.skip (2);
+                        this.skip (this.buffer.getInt ());
+                }
+        }
+
+        private String utf8 (short index) {
+                return (String) this.constants[index & 0xFFFF];
+        }
+
+        private String className (short index) {
+                return this.utf8 ((short) ((ClassReference) this.constants[index & 0xFFFF]).nameIndex).replace ('/', '.');
+        }
+
+        private int unsignedShort () {
+                return this.buffer.getShort () & 0xFFFF;
+        }
+
+        private void skip (int length) {
+                this.buffer.position (this.buffer.position () + length);
+        }
+
+        /**
+         * Represents an unresolved class constant.
+         */
+        private static final class ClassReference {
+                private final int nameIndex;
+
+                ClassReference (int nameIndex) {
+                        this.nameIndex = nameIndex;
+                }
+        }
+
+        /**
+         * Represents the annotations of a class and its methods.
+         */
+        public static final class ClassInfo {
+                private final String name;
+                private final List<AnnotationInfo> annotations;
+                private final List<MethodInfo> methods;
+
+                ClassInfo (String name, List<AnnotationInfo> annotations, List<MethodInfo> methods) {
+                        this.name = name;
+                        this.annotations = annotations;
+                        this.methods = methods;
+                }
+
+                /**
+                 * Retrieves the binary name of the class.
+                 *
+                 * @return The name.
+                 */
+                public String getName () {
+                        return this.name;
+                }
+
+                /**
+                 * Retrieves the annotations of the class.
+                 *
+                 * @return The annotations.
+                 */
+                public List<AnnotationInfo> getAnnotations () {
+                        return this.annotations;
+                }
+
+                /**
+                 * Retrieves all annotated methods of the class.
+                 *
+                 * @return The methods.
+                 */
+                public List<MethodInfo> getMethods () {
+                        return this.methods;
+                }
+        }
+
+        /**
+         * Represents the annotations of a method.
+         */
+        public static final class MethodInfo {
+                private final String name;
+                private final String descriptor;
+                private final boolean varArgs;
+                private final String[] parameterNames;
+                private final List<AnnotationInfo> annotations;
+
+                MethodInfo (String name, String descriptor, boolean varArgs, String[] parameterNames, List<AnnotationInfo> annotations) {
+                        this.name = name;
+                        this.descriptor = descriptor;
+                        this.varArgs = varArgs;
+                        this.parameterNames = parameterNames;
+                        this.annotations = annotations;
+                }
+
+                /**
+                 * Retrieves the method name.
+                 *
+                 * @return The name.
+                 */
+                public String getName () {
+                        return this.name;
+                }
+
+                /**
+                 * Retrieves the method descriptor.
+                 *
+                 * @return The descriptor.
+                 */
+                public String getDescriptor () {
+                        return this.descriptor;
+                }
+
+                /**
+                 * Checks whether the method accepts a variable amount of arguments.
+                 *
+                 * @return True if variable arity.
+                 */
+                public boolean isVarArgs () {
+                        return this.varArgs;
+                }
+
+                /**
+                 * Retrieves the names of all method parameters.
+                 *
+                 * @return The names or null if the class file does not carry them.
+                 */
+                public List<String> getParameterNames () {
+                        for (String parameterName : this.parameterNames) {
+                                if (parameterName == null) { return null; }
+                        }
+
+                        return Collections.unmodifiableList (Arrays.asList (this.parameterNames));
+                }
+
+                /**
+                 * Retrieves the annotations of the method.
+                 *
+                 * @return The annotations.
+                 */
+                public List<AnnotationInfo> getAnnotations () {
+                        return this.annotations;
+                }
+        }
+
+        /**
+         * Represents a single annotation along with its explicitly specified values.
+         */
+        public static final class AnnotationInfo {
+                private final String type;
+                private final Map<String, Object> values;
+
+                AnnotationInfo (String type, Map<String, Object> values) {
+                        this.type = type;
+                        this.values = values;
+                }
+
+                /**
+                 * Retrieves the binary name of the annotation type.
+                 *
+                 * @return The type name.
+                 */
+                public String getType () {
+                        return this.type;
+                }
+
+                /**
+                 * Retrieves all explicitly specified values (default values are not stored within class files).
+                 *
+                 * @return The values (indexed by element name).
+                 */
+                public Map<String, Object> getValues () {
+                        return this.values;
+                }
+        }
+
+        /**
+         * Represents an enum constant.
+         */
+        public static final class EnumValue {
+                private final String type;
+                private final String name;
+
+                EnumValue (String type, String name) {
+                        this.type = type;
+                        this.name = name;
+                }
+
+                /**
+                 * Retrieves the binary name of the enum type.
+                 *
+                 * @return The type name.
+                 */
+                public String getType () {
+                        return this.type;
+                }
+
+                /**
+                 * Retrieves the name of the constant.
+                 *
+                 * @return The name.
+                 */
+                public String getName () {
+                        return this.name;
+                }
+        }
+}
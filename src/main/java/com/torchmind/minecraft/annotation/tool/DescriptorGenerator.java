@@ -0,0 +1,546 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.tool;
+
+import com.torchmind.minecraft.annotation.Plugin;
+import com.torchmind.minecraft.annotation.command.Command;
+import com.torchmind.minecraft.annotation.command.Commands;
+import com.torchmind.minecraft.annotation.dependency.Dependency;
+import com.torchmind.minecraft.annotation.dependency.LoadBefore;
+import com.torchmind.minecraft.annotation.dependency.SoftDependency;
+import com.torchmind.minecraft.annotation.permission.Permission;
+import com.torchmind.minecraft.annotation.permission.Permissions;
+import com.torchmind.minecraft.annotation.processor.BinaryDescriptorEmitter;
+import com.torchmind.minecraft.annotation.processor.DescriptorWriter;
+import com.torchmind.minecraft.annotation.processor.YamlDescriptorEmitter;
+import com.torchmind.minecraft.annotation.runtime.BinaryDescriptorReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.annotation.Annotation;
+import java.lang.annotation.Repeatable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Generates the plugin descriptor from compiled classes rather than sources.
+ *
+ * Since all annotations are retained within the class files, the descriptor (as well as its binary version and the
+ * dependency fragment) may be regenerated without recompiling the plugin which comes in handy when the same classes are
+ * re-packaged several times. Classes are read in parallel using a {@link ClassFileReader} (without loading them) and
+ * the descriptor is written via the {@link DescriptorWriter} used by the annotation processor and is thus identical to
+ * the descriptor produced during compilation.
+ *
+ * Note that the generator assumes that the classes have been compiled (and thus validated) by the annotation processor
+ * before and does not repeat any of its checks.
+ *
+ * @author Johannes Donath
+ */
+public class DescriptorGenerator {
+        public static final String DESCRIPTOR_FILE = "plugin.yml";
+        private static final String SOURCE_DATE_EPOCH = "SOURCE_DATE_EPOCH";
+        private static final int THRESHOLD = 64;
+        private static final Set<String> DESCRIPTORS = new HashSet<> ();
+
+        static {
+                for (Class<?> type : new Class<?>[] {Plugin.class, Command.class, Commands.class, Permission.class, Permissions.class}) {
+                        DESCRIPTORS.add ("L" + type.getName ().replace ('.', '/') + ";");
+                }
+        }
+
+        private final List<ClassFileReader.ClassInfo> classes;
+        private final Manifest manifest;
+
+        private DescriptorGenerator (List<ClassFileReader.ClassInfo> classes, Manifest manifest) {
+                this.classes = classes;
+                this.manifest = manifest;
+        }
+
+        /**
+         * Scans a set of class directories and jars.
+         *
+         * @param inputs The directories and jars.
+         * @param pool The pool to read classes within.
+         * @return The generator.
+         * @throws IOException when reading fails.
+         */
+        public static DescriptorGenerator scan (Collection<File> inputs, ForkJoinPool pool) throws IOException {
+                List<Source> sources = new ArrayList<> ();
+                List<JarFile> jars = new ArrayList<> ();
+                Manifest manifest = null;
+
+                try {
+                        for (File input : inputs) {
+                                if (input.isDirectory ()) {
+                                        try (Stream<Path> stream = Files.walk (input.toPath ())) {
+                                                stream.filter ((p) -> p.toString ().endsWith (".class")).forEach ((p) -> sources.add (new Source (p, null, null)));
+                                        }
+
+                                        File manifestFile = new File (input, JarFile.MANIFEST_NAME);
+                                        if (manifest == null && manifestFile.isFile ()) {
+                                                try (InputStream inputStream = new FileInputStream (manifestFile)) {
+                                                        manifest = new Manifest (inputStream);
+                                                }
+                                        }
+
+                                        continue;
+                                }
+
+                                JarFile jar = new JarFile (input);
+                                jars.add (jar);
+                                if (manifest == null) { manifest = jar.getManifest (); }
+
+                                jar.stream ().filter ((e) -> e.getName ().endsWith (".class") && !e.getName ().startsWith ("META-INF/")).forEach ((e) -> sources.add (new Source (null, jar, e)));
+                        }
+
+                        List<ClassFileReader.ClassInfo> classes = pool.invoke (new ScanTask (sources, 0, sources.size ()));
+
+                        // the processor keeps commands and permissions in maps which are indexed by name, thus the only
+                        // thing which remains to be sorted is the order in which duplicates override each other
+                        classes.sort (Comparator.comparing (ClassFileReader.ClassInfo::getName));
+                        return new DescriptorGenerator (classes, manifest);
+                } finally {
+                        for (JarFile jar : jars) { jar.close (); }
+                }
+        }
+
+        /**
+         * Retrieves all classes which declare at least one relevant annotation.
+         *
+         * @return The classes.
+         */
+        public List<ClassFileReader.ClassInfo> getClasses () {
+                return this.classes;
+        }
+
+        /**
+         * Builds the top level descriptor values.
+         *
+         * @return The values.
+         * @throws IllegalStateException when no or more than one plugin class is present or the manifest lacks a value.
+         */
+        public Map<String, Object> createValues () {
+                List<ClassFileReader.ClassInfo> pluginClasses = this.classes.stream ().filter ((c) -> !annotationsByType (c.getAnnotations (), Plugin.class).isEmpty ()).collect (Collectors.toList ());
+
+                if (pluginClasses.size () != 1) {
+                        throw new IllegalStateException ((pluginClasses.isEmpty () ? "Found no plugin class." : "Found more than one plugin class."));
+                }
+
+                ClassFileReader.ClassInfo pluginClass = pluginClasses.get (0);
+                Plugin annotation = annotationsByType (pluginClass.getAnnotations (), Plugin.class).get (0);
+                String name = annotation.name ();
+                String version = annotation.version ();
+
+                if (Plugin.MANIFEST_VALUE.equals (name) || Plugin.MANIFEST_VALUE.equals (version)) {
+                        if (this.manifest == null) { throw new IllegalStateException ("Cannot locate manifest! Either provide a manifest or use hardcoded values."); }
+                        Attributes attributes = this.manifest.getMainAttributes ();
+
+                        if (Plugin.MANIFEST_VALUE.equals (name)) { name = attributes.getValue (Attributes.Name.IMPLEMENTATION_TITLE); }
+                        if (Plugin.MANIFEST_VALUE.equals (version)) { version = attributes.getValue (Attributes.Name.IMPLEMENTATION_VERSION); }
+
+                        if (name == null || version == null) { throw new IllegalStateException ("Implementation-Title or Implementation-Version is not specified in plugin manifest."); }
+                }
+
+                return DescriptorWriter.createValues (pluginClass.getName (), annotation, name, version, toArray (annotationsByType (pluginClass.getAnnotations (), Dependency.class), Dependency.class), toArray (annotationsByType (pluginClass.getAnnotations (), LoadBefore.class), LoadBefore.class), toArray (annotationsByType (pluginClass.getAnnotations (), SoftDependency.class), SoftDependency.class));
+        }
+
+        /**
+         * Retrieves all declared commands (indexed by name).
+         *
+         * @return The commands.
+         */
+        public Map<String, Command> getCommands () {
+                Map<String, Command> commands = new TreeMap<> ();
+
+                for (ClassFileReader.ClassInfo type : this.classes) {
+                        for (Command command : annotationsByType (type.getAnnotations (), Command.class)) { commands.put (command.name (), command); }
+
+                        for (ClassFileReader.MethodInfo method : type.getMethods ()) {
+                                for (Command command : annotationsByType (method.getAnnotations (), Command.class)) { commands.put (command.name (), command); }
+                        }
+                }
+
+                return commands;
+        }
+
+        /**
+         * Retrieves the usages derived for all command methods which do not declare a usage (indexed by command name).
+         *
+         * Usages can only be derived if the class files carry parameter names (e.g. when compiled with debug information
+         * or {@code -parameters}).
+         *
+         * @return The usages.
+         */
+        public Map<String, String> getUsages () {
+                Map<String, String> usages = new HashMap<> ();
+
+                for (ClassFileReader.ClassInfo type : this.classes) {
+                        for (ClassFileReader.MethodInfo method : type.getMethods ()) {
+                                List<String> parameterNames = method.getParameterNames ();
+                                if (parameterNames == null || parameterNames.isEmpty ()) { continue; }
+
+                                for (Command command : annotationsByType (method.getAnnotations (), Command.class)) {
+                                        if (command.usage ().isEmpty ()) { usages.put (command.name (), DescriptorWriter.deriveUsage (parameterNames.subList (1, parameterNames.size ()), method.isVarArgs ())); }
+                                }
+                        }
+                }
+
+                return usages;
+        }
+
+        /**
+         * Retrieves all declared permissions (indexed by name).
+         *
+         * @return The permissions.
+         */
+        public Map<String, Permission> getPermissions () {
+                Map<String, Permission> permissions = new TreeMap<> ();
+
+                for (ClassFileReader.ClassInfo type : this.classes) {
+                        for (Permission permission : annotationsByType (type.getAnnotations (), Permission.class)) { permissions.put (permission.name (), permission); }
+                }
+
+                return permissions;
+        }
+
+        /**
+         * Writes the descriptor, its binary version and the dependency fragment.
+         *
+         * Files are only written if their contents differ from the existing files.
+         *
+         * @param directory The output directory.
+         * @param timestamp The timestamp to include within the generated files or null.
+         * @param timingsCommand The name of the timings command (if commands have been instrumented) or null.
+         * @throws IOException when writing fails.
+         */
+        public void write (File directory, String timestamp, String timingsCommand) throws IOException {
+                Map<String, Object> plugin = this.createValues ();
+                Collection<Command> commands = this.getCommands ().values ();
+                Map<String, String> usages = this.getUsages ();
+                Collection<Permission> permissions = this.getPermissions ().values ();
+
+                StringWriter descriptor = new StringWriter ();
+                YamlDescriptorEmitter emitter = new YamlDescriptorEmitter (descriptor);
+                emitter.comment ("Plugin descriptor automatically generated" + (timestamp != null ? " at " + timestamp : "") + ".");
+                DescriptorWriter.emitDescriptor (emitter, plugin, commands, usages, permissions, timingsCommand);
+                writeFile (new File (directory, DESCRIPTOR_FILE), descriptor.toString ().getBytes (StandardCharsets.UTF_8));
+
+                ByteArrayOutputStream binaryDescriptor = new ByteArrayOutputStream ();
+                DescriptorWriter.emitDescriptor (new BinaryDescriptorEmitter (binaryDescriptor), plugin, commands, usages, permissions, timingsCommand);
+                writeFile (new File (directory, BinaryDescriptorReader.FILE_NAME), binaryDescriptor.toByteArray ());
+
+                StringWriter dependencies = new StringWriter ();
+                emitter = new YamlDescriptorEmitter (dependencies);
+                emitter.comment ("Plugin dependency fragment automatically generated" + (timestamp != null ? " at " + timestamp : "") + ".");
+                DescriptorWriter.emitDependencies (emitter, plugin);
+                writeFile (new File (directory, LoadPlanner.FRAGMENT_FILE), dependencies.toString ().getBytes (StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Writes a file unless its contents did not change.
+         *
+         * @param file The file.
+         * @param content The content.
+         * @throws IOException when writing fails.
+         */
+        private static void writeFile (File file, byte[] content) throws IOException {
+                if (file.isFile () && Arrays.equals (content, Files.readAllBytes (file.toPath ()))) { return; }
+
+                Files.createDirectories (file.getAbsoluteFile ().getParentFile ().toPath ());
+                Files.write (file.toPath (), content);
+        }
+
+        /**
+         * Retrieves all annotations of a certain type (unwrapping their container if the annotation is repeatable).
+         *
+         * @param annotations The annotations.
+         * @param type The annotation type.
+         * @param <A> The annotation type.
+         * @return The annotation instances.
+         */
+        @SuppressWarnings ("unchecked")
+        public static <A extends Annotation> List<A> annotationsByType (List<ClassFileReader.AnnotationInfo> annotations, Class<A> type) {
+                Repeatable repeatable = type.getAnnotation (Repeatable.class);
+                String containerType = (repeatable != null ? repeatable.value ().getName () : null);
+                List<A> result = new ArrayList<> ();
+
+                for (ClassFileReader.AnnotationInfo annotation : annotations) {
+                        if (annotation.getType ().equals (type.getName ())) {
+                                result.add (createProxy (type, annotation));
+                        } else if (annotation.getType ().equals (containerType)) {
+                                for (Object value : (List<Object>) annotation.getValues ().get ("value")) {
+                                        result.add (createProxy (type, (ClassFileReader.AnnotationInfo) value));
+                                }
+                        }
+                }
+
+                return result;
+        }
+
+        /**
+         * Creates an annotation instance which is backed by the values read from a class file.
+         *
+         * Values which have not been specified explicitly are resolved from the defaults of the annotation type.
+         *
+         * @param type The annotation type.
+         * @param annotation The annotation values.
+         * @param <A> The annotation type.
+         * @return The annotation instance.
+         */
+        public static <A extends Annotation> A createProxy (Class<A> type, ClassFileReader.AnnotationInfo annotation) {
+                return type.cast (Proxy.newProxyInstance (type.getClassLoader (), new Class<?>[] {type}, (proxy, method, arguments) -> {
+                        switch (method.getName ()) {
+                                case "annotationType": return type;
+                                case "hashCode": return System.identityHashCode (proxy);
+                                case "equals": return (proxy == arguments[0]);
+                                case "toString": return "@" + type.getName () + annotation.getValues ();
+                        }
+
+                        Object value = annotation.getValues ().get (method.getName ());
+                        return (value == null ? method.getDefaultValue () : convert (value, method.getReturnType ()));
+                }));
+        }
+
+        /**
+         * Converts a value read from a class file into the type expected by an annotation element.
+         *
+         * @param value The value.
+         * @param type The element type.
+         * @return The converted value.
+         */
+        @SuppressWarnings ({"unchecked", "rawtypes"})
+        private static Object convert (Object value, Class<?> type) {
+                if (type.isArray ()) {
+                        List<Object> values = (List<Object>) value;
+                        Object array = Array.newInstance (type.getComponentType (), values.size ());
+
+                        for (int i = 0; i < values.size (); i++) { Array.set (array, i, convert (values.get (i), type.getComponentType ())); }
+                        return array;
+                }
+
+                if (type.isEnum ()) { return Enum.valueOf ((Class) type, ((ClassFileReader.EnumValue) value).getName ()); }
+                if (type.isAnnotation ()) { return createProxy ((Class) type, (ClassFileReader.AnnotationInfo) value); }
+
+                // booleans, chars, bytes and shorts are stored as integer constants
+                if (type == boolean.class) { return ((Integer) value != 0); }
+                if (type == char.class) { return (char) (int) (Integer) value; }
+                if (type == byte.class) { return (byte) (int) (Integer) value; }
+                if (type == short.class) { return (short) (int) (Integer) value; }
+                if (type == Class.class) { throw new IllegalArgumentException ("Class values are not supported"); }
+
+                return value;
+        }
+
+        /**
+         * Converts a list of annotations into an array.
+         *
+         * @param annotations The annotations.
+         * @param type The annotation type.
+         * @param <A> The annotation type.
+         * @return The array.
+         */
+        @SuppressWarnings ("unchecked")
+        private static <A> A[] toArray (List<A> annotations, Class<A> type) {
+                return annotations.toArray ((A[]) Array.newInstance (type, annotations.size ()));
+        }
+
+        /**
+         * Formats the timestamp which is included within the generated files (if requested).
+         *
+         * Mirrors the processor: The SOURCE_DATE_EPOCH environment variable takes precedence over the current time.
+         *
+         * @param enabled Indicates whether a timestamp has been requested explicitly.
+         * @return The timestamp or null.
+         */
+        private static String getTimestamp (boolean enabled) {
+                String sourceDateEpoch = System.getenv (SOURCE_DATE_EPOCH);
+                if (sourceDateEpoch == null && !enabled) { return null; }
+
+                SimpleDateFormat format = new SimpleDateFormat ("MM/dd/yyyy HH:mm:ss z");
+                format.setTimeZone (TimeZone.getTimeZone ("UTC"));
+
+                return format.format ((sourceDateEpoch != null ? new Date (Long.parseLong (sourceDateEpoch.trim ()) * 1000L) : new Date ()));
+        }
+
+        /**
+         * Generates the descriptor for a set of class directories and jars.
+         *
+         * The descriptor is written to the output directory (or the class directory if only a single directory is
+         * passed). The process terminates with a non-zero exit code if the descriptor cannot be generated.
+         *
+         * @param arguments The arguments.
+         * @throws IOException when reading or writing fails.
+         */
+        public static void main (String[] arguments) throws IOException {
+                File output = null;
+                String timingsCommand = null;
+                boolean timestamp = false;
+                int parallelism = Runtime.getRuntime ().availableProcessors ();
+                List<File> inputs = new ArrayList<> ();
+
+                for (int i = 0; i < arguments.length; i++) {
+                        if ("--output".equals (arguments[i]) && i + 1 < arguments.length) {
+                                output = new File (arguments[++i]);
+                        } else if ("--timings-command".equals (arguments[i]) && i + 1 < arguments.length) {
+                                timingsCommand = arguments[++i];
+                        } else if ("--parallelism".equals (arguments[i]) && i + 1 < arguments.length) {
+                                parallelism = Integer.parseInt (arguments[++i]);
+                        } else if ("--timestamp".equals (arguments[i])) {
+                                timestamp = true;
+                        } else {
+                                inputs.add (new File (arguments[i]));
+                        }
+                }
+
+                // the descriptor is written next to the classes by default (just like the processor would)
+                if (output == null && inputs.size () == 1 && inputs.get (0).isDirectory ()) { output = inputs.get (0); }
+
+                if (inputs.isEmpty () || output == null) {
+                        System.err.println ("Usage: DescriptorGenerator [--output <directory>] [--timings-command <name>] [--timestamp] [--parallelism <threads>] <class directory or jar>...");
+                        System.exit (2);
+                }
+
+                long start = System.nanoTime ();
+                ForkJoinPool pool = new ForkJoinPool (parallelism);
+
+                try {
+                        DescriptorGenerator generator = scan (inputs, pool);
+                        generator.write (output, getTimestamp (timestamp), timingsCommand);
+
+                        System.out.printf ("Generated descriptor from %d annotated classes within %.1f ms%n", generator.getClasses ().size (), (System.nanoTime () - start) / 1000000.0);
+                } catch (IllegalStateException | IllegalArgumentException ex) {
+                        System.err.println ("Cannot generate descriptor: " + ex.getMessage ());
+                        System.exit (1);
+                } finally {
+                        pool.shutdown ();
+                }
+        }
+
+        /**
+         * Represents a class file within a directory or jar.
+         */
+        private static final class Source {
+                private final Path path;
+                private final JarFile jar;
+                private final ZipEntry entry;
+
+                Source (Path path, JarFile jar, ZipEntry entry) {
+                        this.path = path;
+                        this.jar = jar;
+                        this.entry = entry;
+                }
+
+                /**
+                 * Reads the class file.
+                 *
+                 * @return The contents.
+                 * @throws IOException when reading fails.
+                 */
+                byte[] read () throws IOException {
+                        if (this.path != null) { return Files.readAllBytes (this.path); }
+
+                        try (InputStream inputStream = this.jar.getInputStream (this.entry)) {
+                                ByteArrayOutputStream outputStream = new ByteArrayOutputStream ((this.entry.getSize () > 0 ? (int) this.entry.getSize () : 4096));
+                                byte[] buffer = new byte[4096];
+                                int length;
+
+                                while ((length = inputStream.read (buffer)) != -1) { outputStream.write (buffer, 0, length); }
+                                return outputStream.toByteArray ();
+                        }
+                }
+
+                @Override
+                public String toString () {
+                        return (this.path != null ? this.path.toString () : this.jar.getName () + "!/" + this.entry.getName ());
+                }
+        }
+
+        /**
+         * Reads a range of class files (splitting it up as long as it exceeds {@link #THRESHOLD} classes).
+         */
+        private static final class ScanTask extends RecursiveTask<List<ClassFileReader.ClassInfo>> {
+                private static final long serialVersionUID = 1L;
+
+                private final List<Source> sources;
+                private final int from;
+                private final int to;
+
+                ScanTask (List<Source> sources, int from, int to) {
+                        this.sources = sources;
+                        this.from = from;
+                        this.to = to;
+                }
+
+                @Override
+                protected List<ClassFileReader.ClassInfo> compute () {
+                        if (this.to - this.from > THRESHOLD) {
+                                int middle = (this.from + this.to) >>> 1;
+                                ScanTask left = new ScanTask (this.sources, this.from, middle);
+                                left.fork ();
+
+                                List<ClassFileReader.ClassInfo> classes = new ScanTask (this.sources, middle, this.to).compute ();
+                                classes.addAll (left.join ());
+                                return classes;
+                        }
+
+                        List<ClassFileReader.ClassInfo> classes = new ArrayList<> ();
+
+                        for (int i = this.from; i < this.to; i++) {
+                                Source source = this.sources.get (i);
+
+                                try {
+                                        ClassFileReader.ClassInfo type = ClassFileReader.read (source.read (), DESCRIPTORS);
+                                        if (type != null) { classes.add (type); }
+                                } catch (IOException ex) {
+                                        throw new IllegalStateException ("Cannot read " + source + ": " + ex.getMessage (), ex);
+                                } catch (IllegalArgumentException ex) {
+                                        throw new IllegalArgumentException ("Cannot read " + source + ": " + ex.getMessage (), ex);
+                                }
+                        }
+
+                        return classes;
+                }
+        }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.tool;
+
+import com.torchmind.minecraft.annotation.processor.DescriptorEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Represents a server wide load plan as computed by the {@link LoadPlanner}.
+ *
+ * @author Johannes Donath
+ */
+public class LoadPlan {
+        final List<String> order = new ArrayList<> ();
+        final Map<String, List<List<String>>> levels = new LinkedHashMap<> ();
+        final Map<String, List<String>> criticalPaths = new LinkedHashMap<> ();
+        final Map<String, Long> criticalPathWeights = new LinkedHashMap<> ();
+        final List<List<String>> cycles = new ArrayList<> ();
+        final Map<String, List<String>> missing = new TreeMap<> ();
+        final List<String> unresolved = new ArrayList<> ();
+        final List<String> warnings = new ArrayList<> ();
+
+        LoadPlan () {
+        }
+
+        /**
+         * Retrieves all loadable plugins in a valid load order.
+         *
+         * @return The plugin names.
+         */
+        public List<String> getOrder () {
+                return Collections.unmodifiableList (this.order);
+        }
+
+        /**
+         * Retrieves the levels of a load phase.
+         *
+         * All plugins within a level only depend on plugins of previous levels (or phases) and may thus be enabled in
+         * parallel once all previous levels have been enabled.
+         *
+         * @param phase The phase (STARTUP or POSTWORLD).
+         * @return The levels.
+         */
+        public List<List<String>> getLevels (String phase) {
+                return this.levels.getOrDefault (phase, Collections.emptyList ());
+        }
+
+        /**
+         * Retrieves the critical path (the longest weighted chain of dependencies) of a load phase.
+         *
+         * @param phase The phase (STARTUP or POSTWORLD).
+         * @return The plugin names.
+         */
+        public List<String> getCriticalPath (String phase) {
+                return this.criticalPaths.getOrDefault (phase, Collections.emptyList ());
+        }
+
+        /**
+         * Retrieves all detected dependency cycles.
+         *
+         * @return The cycles (each of which starts and ends with the same plugin).
+         */
+        public List<List<String>> getCycles () {
+                return Collections.unmodifiableList (this.cycles);
+        }
+
+        /**
+         * Retrieves all missing hard dependencies.
+         *
+         * @return A map of plugin names and their missing dependencies.
+         */
+        public Map<String, List<String>> getMissing () {
+                return Collections.unmodifiableMap (this.missing);
+        }
+
+        /**
+         * Retrieves all plugins which cannot be loaded due to cycles or missing dependencies.
+         *
+         * @return The plugin names.
+         */
+        public List<String> getUnresolved () {
+                return Collections.unmodifiableList (this.unresolved);
+        }
+
+        /**
+         * Retrieves all warnings (such as broken soft dependency cycles) which were encountered while planning.
+         *
+         * @return The warnings.
+         */
+        public List<String> getWarnings () {
+                return Collections.unmodifiableList (this.warnings);
+        }
+
+        /**
+         * Checks whether all plugins can be loaded.
+         *
+         * @return True if valid.
+         */
+        public boolean isValid () {
+                return this.unresolved.isEmpty ();
+        }
+
+        /**
+         * Emits the plan in a machine readable form.
+         *
+         * @param emitter The emitter.
+         * @throws IOException when emitting fails.
+         */
+        public void emit (DescriptorEmitter emitter) throws IOException {
+                emitter.value ("order", this.order.toArray (new String[this.order.size ()]));
+                emitter.beginMap ("phases");
+
+                for (Map.Entry<String, List<List<String>>> phase : this.levels.entrySet ()) {
+                        emitter.beginMap (phase.getKey ());
+                        emitter.value ("critical-path", this.criticalPaths.get (phase.getKey ()).toArray (new String[0]));
+                        emitter.value ("critical-path-weight", Long.toString (this.criticalPathWeights.get (phase.getKey ())));
+                        emitter.beginMap ("levels");
+
+                        for (int i = 0; i < phase.getValue ().size (); i++) {
+                                emitter.value ("level-" + i, phase.getValue ().get (i).toArray (new String[0]));
+                        }
+
+                        emitter.endMap ();
+                        emitter.endMap ();
+                }
+
+                emitter.endMap ();
+                emitter.beginMap ("cycles");
+
+                for (int i = 0; i < this.cycles.size (); i++) {
+                        emitter.value ("cycle-" + i, this.cycles.get (i).toArray (new String[0]));
+                }
+
+                emitter.endMap ();
+                emitter.beginMap ("missing");
+
+                for (Map.Entry<String, List<String>> entry : this.missing.entrySet ()) {
+                        emitter.value (entry.getKey (), entry.getValue ().toArray (new String[0]));
+                }
+
+                emitter.endMap ();
+                emitter.value ("unresolved", this.unresolved.toArray (new String[0]));
+                emitter.value ("warnings", this.warnings.toArray (new String[0]));
+                emitter.finish ();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString () {
+                StringBuilder builder = new StringBuilder ();
+
+                builder.append ("Load order (").append (this.order.size ()).append (" plugins): ").append (String.join (", ", this.order)).append ('\n');
+
+                for (Map.Entry<String, List<List<String>>> phase : this.levels.entrySet ()) {
+                        builder.append ('\n').append (phase.getKey ()).append (":\n");
+
+                        for (int i = 0; i < phase.getValue ().size (); i++) {
+                                builder.append ("  Level ").append (i).append (" (").append (phase.getValue ().get (i).size ()).append (" in parallel): ").append (String.join (", ", phase.getValue ().get (i))).append ('\n');
+                        }
+
+                        builder.append ("  Critical path (weight ").append (this.criticalPathWeights.get (phase.getKey ())).append ("): ").append (String.join (" -> ", this.criticalPaths.get (phase.getKey ()))).append ('\n');
+                }
+
+                if (!this.cycles.isEmpty ()) {
+                        builder.append ("\nCycles:\n");
+                        for (List<String> cycle : this.cycles) { builder.append ("  ").append (String.join (" -> ", cycle)).append ('\n'); }
+                }
+
+                if (!this.missing.isEmpty ()) {
+                        builder.append ("\nMissing dependencies:\n");
+                        for (Map.Entry<String, List<String>> entry : this.missing.entrySet ()) { builder.append ("  ").append (entry.getKey ()).append (" requires ").append (String.join (", ", entry.getValue ())).append ('\n'); }
+                }
+
+                if (!this.unresolved.isEmpty ()) {
+                        builder.append ("\nCannot be loaded: ").append (String.join (", ", this.unresolved)).append ('\n');
+                }
+
+                if (!this.warnings.isEmpty ()) {
+                        builder.append ("\nWarnings:\n");
+                        for (String warning : this.warnings) { builder.append ("  ").append (warning).append ('\n'); }
+                }
+
+                return builder.toString ();
+        }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.tool;
+
+import com.torchmind.minecraft.annotation.processor.YamlDescriptorEmitter;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Merges the dependency declarations of a set of plugins into a server wide load plan.
+ *
+ * The planner mirrors Bukkit's semantics: Hard dependencies ({@code depend}) need to be present and are loaded first,
+ * soft dependencies ({@code softdepend}) are loaded first if present and {@code loadbefore} reverses the relation. The
+ * resulting plan lists all plugins in a valid load order, groups the plugins of each load phase into levels of plugins
+ * which do not depend on each other (and may thus be enabled in parallel) and reports the critical path through each
+ * phase as well as all cycles and missing dependencies.
+ *
+ * Just like Bukkit, the planner breaks cycles which consist of soft dependencies (or {@code loadbefore} declarations)
+ * by loading one of the involved plugins while ignoring its soft dependencies. Such cycles are reported as warnings
+ * while cycles of hard dependencies render all involved plugins unresolved.
+ *
+ * @author Johannes Donath
+ */
+public class LoadPlanner {
+        public static final String FRAGMENT_FILE = "META-INF/plugin-dependencies.yml";
+        private static final String DESCRIPTOR_FILE = "plugin.yml";
+        private static final String[] PHASES = {"STARTUP", "POSTWORLD"};
+
+        private final Map<String, Node> nodes = new TreeMap<> ();
+
+        /**
+         * Adds a plugin based on its (parsed) descriptor or dependency fragment.
+         *
+         * @param descriptor The descriptor values.
+         * @throws IllegalArgumentException when the descriptor lacks a name or a plugin of the same name has been added
+         *                                  before.
+         */
+        public void add (Map<?, ?> descriptor) {
+                Object name = descriptor.get ("name");
+                if (name == null) { throw new IllegalArgumentException ("Descriptor does not declare a plugin name"); }
+
+                Node node = new Node (name.toString (), (PHASES[0].equalsIgnoreCase (String.valueOf (descriptor.get ("load"))) ? PHASES[0] : PHASES[1]));
+                node.depend.addAll (toList (descriptor.get ("depend")));
+                node.softDepend.addAll (toList (descriptor.get ("softdepend")));
+                node.loadBefore.addAll (toList (descriptor.get ("loadbefore")));
+
+                if (this.nodes.putIfAbsent (node.name, node) != null) {
+                        throw new IllegalArgumentException ("Duplicate plugin: " + node.name);
+                }
+        }
+
+        /**
+         * Sets the weight (such as the measured enable time in milliseconds) of a plugin which is used when
+         * computing the critical path. Plugins default to a weight of one.
+         *
+         * @param name The plugin name.
+         * @param weight The weight.
+         */
+        public void setWeight (String name, long weight) {
+                Node node = this.nodes.get (name);
+                if (node != null) { node.weight = weight; }
+        }
+
+        /**
+         * Computes the load plan for all plugins added so far.
+         *
+         * @return The plan.
+         */
+        public LoadPlan plan () {
+                LoadPlan plan = new LoadPlan ();
+
+                for (Node node : this.nodes.values ()) {
+                        node.predecessors.clear ();
+                        node.hardPredecessors.clear ();
+                        node.successors.clear ();
+                }
+
+                // Bukkit will refuse to load plugins with missing hard dependencies (as well as every plugin which
+                // depends on them), thus we will drop them before ordering anything
+                TreeSet<String> unresolved = new TreeSet<> ();
+
+                for (Node node : this.nodes.values ()) {
+                        List<String> missing = new ArrayList<> ();
+
+                        for (String dependency : node.depend) {
+                                if (!this.nodes.containsKey (dependency)) { missing.add (dependency); }
+                        }
+
+                        if (!missing.isEmpty ()) {
+                                plan.missing.put (node.name, missing);
+                                unresolved.add (node.name);
+                        }
+                }
+
+                this.propagate (unresolved);
+
+                for (Node node : this.nodes.values ()) {
+                        if (unresolved.contains (node.name)) { continue; }
+
+                        for (String dependency : node.depend) { this.link (dependency, node.name, true, unresolved); }
+                        for (String dependency : node.softDepend) { this.link (dependency, node.name, false, unresolved); }
+                        for (String dependent : node.loadBefore) { this.link (node.name, dependent, false, unresolved); }
+                }
+
+                // Kahn's algorithm (with alphabetical tie breaking to keep the plan stable)
+                Map<String, Integer> inDegree = new HashMap<> ();
+                TreeSet<String> ready = new TreeSet<> ();
+
+                for (Node node : this.nodes.values ()) {
+                        if (unresolved.contains (node.name)) { continue; }
+
+                        inDegree.put (node.name, node.predecessors.size ());
+                        if (node.predecessors.isEmpty ()) { ready.add (node.name); }
+                }
+
+                Set<String> ordered = new HashSet<> ();
+
+                while (true) {
+                        if (ready.isEmpty ()) {
+                                String released = this.breakSoftCycle (inDegree, ordered, plan);
+                                if (released == null) { break; }
+
+                                ready.add (released);
+                        }
+
+                        Node node = this.nodes.get (ready.pollFirst ());
+                        plan.order.add (node.name);
+                        ordered.add (node.name);
+
+                        for (String successor : node.successors) {
+                                if (inDegree.merge (successor, -1, Integer::sum) == 0) { ready.add (successor); }
+                        }
+                }
+
+                // anything left at this point is either part of a cycle or depends on one
+                for (Map.Entry<String, Integer> entry : inDegree.entrySet ()) {
+                        if (entry.getValue () > 0) { unresolved.add (entry.getKey ()); }
+                }
+
+                plan.cycles.addAll (this.findCycles (unresolved));
+                plan.unresolved.addAll (unresolved);
+
+                for (String phase : PHASES) {
+                        this.planPhase (plan, phase);
+                }
+
+                return plan;
+        }
+
+        /**
+         * Releases a plugin which is only waiting for soft dependencies that cannot be loaded before it (as they are
+         * part of a cycle) by removing the respective edges.
+         *
+         * Bukkit resolves such situations by loading the first plugin it encounters whose hard dependencies have all
+         * been loaded while ignoring its soft dependencies. We will pick the alphabetically first plugin instead in
+         * order to keep the plan stable.
+         *
+         * @param inDegree The amount of remaining predecessors of each plugin.
+         * @param ordered The plugins which have been ordered already.
+         * @param plan The plan.
+         * @return The released plugin or null if all remaining plugins are waiting for hard dependencies.
+         */
+        private String breakSoftCycle (Map<String, Integer> inDegree, Set<String> ordered, LoadPlan plan) {
+                for (Node node : this.nodes.values ()) {
+                        Integer remaining = inDegree.get (node.name);
+                        if (remaining == null || remaining == 0 || ordered.contains (node.name) || !ordered.containsAll (node.hardPredecessors)) { continue; }
+
+                        List<String> ignored = new ArrayList<> ();
+
+                        for (String predecessor : new ArrayList<> (node.predecessors)) {
+                                if (ordered.contains (predecessor)) { continue; }
+
+                                this.nodes.get (predecessor).successors.remove (node.name);
+                                node.predecessors.remove (predecessor);
+                                ignored.add (predecessor);
+                        }
+
+                        inDegree.put (node.name, 0);
+                        plan.warnings.add (node.name + " is loaded before its soft dependencies " + String.join (", ", ignored) + " in order to break a dependency cycle");
+                        return node.name;
+                }
+
+                return null;
+        }
+
+        /**
+         * Computes the levels and critical path of a single load phase.
+         *
+         * Dependencies which reside within an earlier phase are considered satisfied as Bukkit enables all plugins of
+         * a phase before moving on to the next one.
+         *
+         * @param plan The plan.
+         * @param phase The phase.
+         */
+        private void planPhase (LoadPlan plan, String phase) {
+                Map<String, Integer> levels = new HashMap<> ();
+                Map<String, Long> finish = new HashMap<> ();
+                Map<String, String> critical = new HashMap<> ();
+                List<List<String>> groups = new ArrayList<> ();
+                String last = null;
+
+                for (String name : plan.order) {
+                        Node node = this.nodes.get (name);
+                        if (!node.phase.equals (phase)) { continue; }
+
+                        int level = 0;
+                        long start = 0;
+
+                        for (String predecessor : node.predecessors) {
+                                Node predecessorNode = this.nodes.get (predecessor);
+
+                                if (!predecessorNode.phase.equals (phase)) {
+                                        if (phase.equals (PHASES[0])) { plan.warnings.add (name + " is enabled during " + phase + " before its dependency " + predecessor + " (" + predecessorNode.phase + ")"); }
+                                        continue;
+                                }
+
+                                level = Math.max (level, levels.get (predecessor) + 1);
+
+                                if (finish.get (predecessor) > start) {
+                                        start = finish.get (predecessor);
+                                        critical.put (name, predecessor);
+                                }
+                        }
+
+                        levels.put (name, level);
+                        finish.put (name, start + node.weight);
+
+                        while (groups.size () <= level) { groups.add (new ArrayList<> ()); }
+                        groups.get (level).add (name);
+
+                        if (last == null || finish.get (name) > finish.get (last)) { last = name; }
+                }
+
+                if (groups.isEmpty ()) { return; }
+
+                List<String> criticalPath = new ArrayList<> ();
+                for (String name = last; name != null; name = critical.get (name)) { criticalPath.add (name); }
+                Collections.reverse (criticalPath);
+
+                plan.levels.put (phase, groups);
+                plan.criticalPaths.put (phase, criticalPath);
+                plan.criticalPathWeights.put (phase, finish.get (last));
+        }
+
+        /**
+         * Marks every plugin which (transitively) requires an unresolved plugin as unresolved.
+         *
+         * @param unresolved The set of unresolved plugins.
+         */
+        private void propagate (TreeSet<String> unresolved) {
+                boolean changed = true;
+
+                while (changed) {
+                        changed = false;
+
+                        for (Node node : this.nodes.values ()) {
+                                if (unresolved.contains (node.name)) { continue; }
+
+                                for (String dependency : node.depend) {
+                                        if (unresolved.contains (dependency)) {
+                                                changed |= unresolved.add (node.name);
+                                                break;
+                                        }
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Adds an edge between two plugins (if both of them are going to be loaded).
+         *
+         * @param before The plugin which is loaded first.
+         * @param after The plugin which is loaded afterwards.
+         * @param hard Indicates whether the edge represents a hard dependency.
+         * @param unresolved The set of unresolved plugins.
+         */
+        private void link (String before, String after, boolean hard, Collection<String> unresolved) {
+                Node beforeNode = this.nodes.get (before);
+                Node afterNode = this.nodes.get (after);
+
+                if (beforeNode == null || afterNode == null || unresolved.contains (before) || unresolved.contains (after)) { return; }
+
+                beforeNode.successors.add (after);
+                afterNode.predecessors.add (before);
+                if (hard) { afterNode.hardPredecessors.add (before); }
+        }
+
+        /**
+         * Locates one representative cycle within each strongly connected component of the specified plugins.
+         *
+         * @param candidates The plugins which could not be ordered.
+         * @return The cycles (each of which starts and ends with the same plugin).
+         */
+        private List<List<String>> findCycles (Collection<String> candidates) {
+                List<List<String>> cycles = new ArrayList<> ();
+                Map<String, Integer> state = new HashMap<> ();
+
+                for (String candidate : new TreeSet<> (candidates)) {
+                        if (!state.containsKey (candidate)) {
+                                this.findCycles (candidate, candidates, state, new ArrayList<> (), cycles);
+                        }
+                }
+
+                return cycles;
+        }
+
+        /**
+         * Performs a depth first search for cycles.
+         *
+         * @param name The current plugin.
+         * @param candidates The plugins which could not be ordered.
+         * @param state The visitation state (1 = on stack, 2 = done).
+         * @param stack The current path.
+         * @param cycles The cycles found so far.
+         */
+        private void findCycles (String name, Collection<String> candidates, Map<String, Integer> state, List<String> stack, List<List<String>> cycles) {
+                state.put (name, 1);
+                stack.add (name);
+
+                for (String successor : this.nodes.get (name).successors) {
+                        if (!candidates.contains (successor)) { continue; }
+
+                        Integer successorState = state.get (successor);
+
+                        if (successorState == null) {
+                                this.findCycles (successor, candidates, state, stack, cycles);
+                        } else if (successorState == 1) {
+                                List<String> cycle = new ArrayList<> (stack.subList (stack.indexOf (successor), stack.size ()));
+                                cycle.add (successor);
+                                cycles.add (cycle);
+                        }
+                }
+
+                stack.remove (stack.size () - 1);
+                state.put (name, 2);
+        }
+
+        /**
+         * Converts a descriptor value into a list of strings.
+         *
+         * @param value The value (either null, a single value or a list).
+         * @return The list.
+         */
+        private static List<String> toList (Object value) {
+                if (value == null) { return Collections.emptyList (); }
+                if (!(value instanceof List)) { return Collections.singletonList (value.toString ()); }
+
+                List<String> values = new ArrayList<> ();
+                for (Object element : (List<?>) value) { values.add (element.toString ()); }
+                return values;
+        }
+
+        /**
+         * Reads the dependency information of a plugin.
+         *
+         * Jars are searched for a dependency fragment first and fall back to their plugin.yml (which allows including
+         * plugins which have not been built with this processor). Any other file is expected to be a fragment or
+         * descriptor itself.
+         *
+         * @param file The file.
+         * @return The descriptor values or null if the jar is not a plugin.
+         * @throws IOException when reading fails.
+         */
+        public static Map<?, ?> read (File file) throws IOException {
+                if (!file.getName ().endsWith (".jar")) {
+                        try (InputStream inputStream = new FileInputStream (file)) {
+                                return (Map<?, ?>) new Yaml ().load (inputStream);
+                        }
+                }
+
+                try (JarFile jarFile = new JarFile (file)) {
+                        ZipEntry entry = jarFile.getEntry (FRAGMENT_FILE);
+                        if (entry == null) { entry = jarFile.getEntry (DESCRIPTOR_FILE); }
+                        if (entry == null) { return null; }
+
+                        try (InputStream inputStream = jarFile.getInputStream (entry)) {
+                                return (Map<?, ?>) new Yaml ().load (inputStream);
+                        }
+                }
+        }
+
+        /**
+         * Builds a load plan from the command line.
+         *
+         * Usage: {@code LoadPlanner [--weights <file>] [--output <file>] <jar, directory or fragment>...}
+         *
+         * The optional weights file is a properties file which maps plugin names to their (measured) enable times. The
+         * plan is printed to the console and written in YAML form to the output file (if any). The process terminates
+         * with a non-zero exit code if the plan contains cycles of hard dependencies or missing dependencies.
+         *
+         * @param arguments The arguments.
+         * @throws IOException when reading or writing fails.
+         */
+        public static void main (String[] arguments) throws IOException {
+                LoadPlanner planner = new LoadPlanner ();
+                Properties weights = new Properties ();
+                File output = null;
+                List<File> files = new ArrayList<> ();
+
+                for (int i = 0; i < arguments.length; i++) {
+                        if ("--weights".equals (arguments[i]) && i + 1 < arguments.length) {
+                                try (InputStream inputStream = new FileInputStream (arguments[++i])) {
+                                        weights.load (inputStream);
+                                }
+                        } else if ("--output".equals (arguments[i]) && i + 1 < arguments.length) {
+                                output = new File (arguments[++i]);
+                        } else {
+                                File file = new File (arguments[i]);
+                                File[] children = file.listFiles ((d, n) -> n.endsWith (".jar"));
+
+                                files.addAll ((children != null ? Arrays.asList (children) : Collections.singletonList (file)));
+                        }
+                }
+
+                if (files.isEmpty ()) {
+                        System.err.println ("Usage: LoadPlanner [--weights <file>] [--output <file>] <jar, directory or fragment>...");
+                        System.exit (2);
+                }
+
+                for (File file : files) {
+                        Map<?, ?> descriptor = read (file);
+
+                        if (descriptor == null) {
+                                System.err.println ("Skipping " + file + ": Not a plugin");
+                                continue;
+                        }
+
+                        planner.add (descriptor);
+                }
+
+                for (String name : weights.stringPropertyNames ()) {
+                        planner.setWeight (name, Long.parseLong (weights.getProperty (name).trim ()));
+                }
+
+                LoadPlan plan = planner.plan ();
+                System.out.print (plan);
+
+                if (output != null) {
+                        try (Writer writer = new OutputStreamWriter (new FileOutputStream (output), StandardCharsets.UTF_8)) {
+                                YamlDescriptorEmitter emitter = new YamlDescriptorEmitter (writer);
+
+                                emitter.comment ("Load plan automatically generated.");
+                                plan.emit (emitter);
+                        }
+                }
+
+                if (!plan.isValid ()) { System.exit (1); }
+        }
+
+        /**
+         * Represents a single plugin within the dependency graph.
+         */
+        private static class Node {
+                private final String name;
+                private final String phase;
+                private final List<String> depend = new ArrayList<> ();
+                private final List<String> softDepend = new ArrayList<> ();
+                private final List<String> loadBefore = new ArrayList<> ();
+                private final TreeSet<String> predecessors = new TreeSet<> ();
+                private final TreeSet<String> hardPredecessors = new TreeSet<> ();
+                private final TreeSet<String> successors = new TreeSet<> ();
+                private long weight = 1;
+
+                Node (String name, String phase) {
+                        this.name = name;
+                        this.phase = phase;
+                }
+        }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.tool;
+
+import com.torchmind.minecraft.annotation.runtime.DescriptorIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds (or refreshes) the {@link DescriptorIndex} of a plugins directory.
+ *
+ * Running the indexer as part of a deployment ensures that servers find an up to date index upon their first boot
+ * and thus never need to open any of the plugin jars themselves.
+ *
+ * @author Johannes Donath
+ */
+public class PluginIndexer {
+
+        /**
+         * Refreshes the index of a plugins directory.
+         *
+         * Additional resources may be indexed by passing {@code --resource <name>} (in which case the default resources
+         * need to be listed explicitly). The index is written to {@link DescriptorIndex#FILE_NAME} within the directory
+         * unless another file is passed via {@code --index <file>}.
+         *
+         * @param arguments The arguments.
+         * @throws IOException when reading or writing fails.
+         */
+        public static void main (String[] arguments) throws IOException {
+                Path directory = null;
+                Path indexFile = null;
+                List<String> resources = new ArrayList<> ();
+
+                for (int i = 0; i < arguments.length; i++) {
+                        if ("--index".equals (arguments[i]) && i + 1 < arguments.length) {
+                                indexFile = Paths.get (arguments[++i]);
+                        } else if ("--resource".equals (arguments[i]) && i + 1 < arguments.length) {
+                                resources.add (arguments[++i]);
+                        } else {
+                                directory = Paths.get (arguments[i]);
+                        }
+                }
+
+                if (directory == null || !Files.isDirectory (directory)) {
+                        System.err.println ("Usage: PluginIndexer [--index <file>] [--resource <name>]... <plugins directory>");
+                        System.exit (2);
+                }
+
+                if (indexFile == null) { indexFile = directory.resolve (DescriptorIndex.FILE_NAME); }
+                if (resources.isEmpty ()) { resources.addAll (DescriptorIndex.DEFAULT_RESOURCES); }
+
+                long start = System.nanoTime ();
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, resources);
+
+                System.out.printf ("Indexed %d jars (%d unchanged, %d read) within %.1f ms%n", index.getJars ().size (), index.getReusedCount (), index.getReadCount (), (System.nanoTime () - start) / 1000000.0);
+        }
+}
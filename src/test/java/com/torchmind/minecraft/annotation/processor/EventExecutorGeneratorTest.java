@@ -0,0 +1,401 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.processor;
+
+import com.torchmind.minecraft.annotation.runtime.HandlerProfile;
+import com.torchmind.minecraft.annotation.runtime.HandlerProfiler;
+import org.bukkit.Server;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the executors generated by {@link EventExecutorGenerator} by compiling a listener with the processor and
+ * dispatching events through the registered executors the way Bukkit does.
+ *
+ * @author Johannes Donath
+ */
+public class EventExecutorGeneratorTest {
+        private static final String[][] SOURCES = {
+                {"example/ParentEvent.java", "package example;\n"
+                        + "public class ParentEvent extends org.bukkit.event.Event implements org.bukkit.event.Cancellable {\n"
+                        + "        private boolean cancelled;\n"
+                        + "        @Override public org.bukkit.event.HandlerList getHandlers () { return null; }\n"
+                        + "        @Override public boolean isCancelled () { return this.cancelled; }\n"
+                        + "        @Override public void setCancelled (boolean cancelled) { this.cancelled = cancelled; }\n"
+                        + "}\n"},
+                {"example/ChildEvent.java", "package example;\n"
+                        + "public class ChildEvent extends ParentEvent {\n"
+                        + "}\n"},
+                {"example/OtherEvent.java", "package example;\n"
+                        + "public class OtherEvent extends org.bukkit.event.Event {\n"
+                        + "        @Override public org.bukkit.event.HandlerList getHandlers () { return null; }\n"
+                        + "}\n"},
+                {"example/FailingEvent.java", "package example;\n"
+                        + "public class FailingEvent extends OtherEvent {\n"
+                        + "}\n"},
+                {"example/ExampleListener.java", "package example;\n"
+                        + "import org.bukkit.event.EventHandler;\n"
+                        + "import org.bukkit.event.EventPriority;\n"
+                        + "public class ExampleListener implements org.bukkit.event.Listener {\n"
+                        + "        public static final java.util.List<String> CALLS = new java.util.ArrayList<> ();\n"
+                        + "        private final String name;\n"
+                        + "        public ExampleListener (String name) { this.name = name; }\n"
+                        + "        @EventHandler (priority = EventPriority.HIGH, ignoreCancelled = true)\n"
+                        + "        public void onParent (ParentEvent event) { CALLS.add (this.name + \":parent\"); }\n"
+                        + "        @EventHandler\n"
+                        + "        void onChild (ChildEvent event) { CALLS.add (this.name + \":child\"); event.setCancelled (true); }\n"
+                        + "        @EventHandler (priority = EventPriority.MONITOR)\n"
+                        + "        public static void onOther (OtherEvent event) { CALLS.add (\"static:other\"); }\n"
+                        + "        @EventHandler (priority = EventPriority.LOWEST)\n"
+                        + "        protected void onFailing (FailingEvent event) { throw new IllegalStateException (\"failed\"); }\n"
+                        + "}\n"}
+        };
+
+        @Rule
+        public final TemporaryFolder folder = new TemporaryFolder ();
+
+        /**
+         * Compiles the example listener with the annotation processor.
+         *
+         * @param profile Indicates whether listeners are to be profiled.
+         * @return A class loader which provides the compiled and generated classes.
+         * @throws IOException when writing the sources fails.
+         */
+        private ClassLoader compile (boolean profile) throws IOException {
+                Path sourceDirectory = this.folder.newFolder ().toPath ();
+                Path outputDirectory = this.folder.newFolder ().toPath ();
+                List<File> files = new ArrayList<> ();
+
+                for (String[] source : SOURCES) {
+                        Path file = sourceDirectory.resolve (source[0]);
+                        Files.createDirectories (file.getParent ());
+                        Files.write (file, source[1].getBytes (StandardCharsets.UTF_8));
+                        files.add (file.toFile ());
+                }
+
+                JavaCompiler compiler = ToolProvider.getSystemJavaCompiler ();
+                DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<> ();
+
+                try (StandardJavaFileManager fileManager = compiler.getStandardFileManager (diagnostics, null, StandardCharsets.UTF_8)) {
+                        List<String> options = Arrays.asList (
+                                "-d", outputDirectory.toString (),
+                                "-s", outputDirectory.toString (),
+                                "-classpath", System.getProperty ("java.class.path"),
+                                "-processor", PluginAnnotationProcessor.class.getName (),
+                                "-A" + PluginAnnotationProcessor.OPTION_PROFILE_LISTENERS + "=" + profile
+                        );
+
+                        boolean success = compiler.getTask (null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromFiles (files)).call ();
+
+                        // warnings without a source (such as source version mismatches) stem from the compiler itself
+                        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics ()) {
+                                assertFalse (diagnostic.toString (), diagnostic.getKind () == Diagnostic.Kind.ERROR || (diagnostic.getKind () == Diagnostic.Kind.WARNING && diagnostic.getSource () != null));
+                        }
+
+                        assertTrue (success);
+                }
+
+                return new URLClassLoader (new URL[] {outputDirectory.toUri ().toURL ()}, this.getClass ().getClassLoader ());
+        }
+
+        /**
+         * Creates a plugin which records all event registrations.
+         *
+         * @param registrations The list of registrations.
+         * @return The plugin.
+         * @throws IOException when creating the data folder fails.
+         */
+        private Plugin plugin (List<Registration> registrations) throws IOException {
+                File dataFolder = this.folder.newFolder ();
+                ClassLoader classLoader = this.getClass ().getClassLoader ();
+
+                BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance (classLoader, new Class<?>[] {BukkitScheduler.class}, (proxy, method, arguments) -> {
+                        if (!method.getName ().equals ("runTaskTimerAsynchronously")) { throw new UnsupportedOperationException (method.getName ()); }
+                        return null;
+                });
+                PluginManager pluginManager = (PluginManager) Proxy.newProxyInstance (classLoader, new Class<?>[] {PluginManager.class}, (proxy, method, arguments) -> {
+                        if (!method.getName ().equals ("registerEvent") || arguments.length != 6) { throw new UnsupportedOperationException (method.getName ()); }
+
+                        registrations.add (new Registration ((Class<?>) arguments[0], (Listener) arguments[1], (EventPriority) arguments[2], (EventExecutor) arguments[3], (Boolean) arguments[5]));
+                        return null;
+                });
+                Server server = (Server) Proxy.newProxyInstance (classLoader, new Class<?>[] {Server.class}, (proxy, method, arguments) -> {
+                        switch (method.getName ()) {
+                                case "getPluginManager": return pluginManager;
+                                case "getScheduler": return scheduler;
+                                default: throw new UnsupportedOperationException (method.getName ());
+                        }
+                });
+
+                return (Plugin) Proxy.newProxyInstance (classLoader, new Class<?>[] {Plugin.class}, (proxy, method, arguments) -> {
+                        switch (method.getName ()) {
+                                case "getServer": return server;
+                                case "getDataFolder": return dataFolder;
+                                case "hashCode": return System.identityHashCode (proxy);
+                                case "equals": return proxy == arguments[0];
+                                default: throw new UnsupportedOperationException (method.getName ());
+                        }
+                });
+        }
+
+        /**
+         * Registers the example listener via its generated executors.
+         *
+         * @param classLoader The class loader.
+         * @param plugin The plugin.
+         * @param name The listener name.
+         * @throws ReflectiveOperationException when the listener or its executors cannot be accessed.
+         */
+        private static void register (ClassLoader classLoader, Plugin plugin, String name) throws ReflectiveOperationException {
+                Class<?> listenerType = classLoader.loadClass ("example.ExampleListener");
+                Object listener = listenerType.getConstructor (String.class).newInstance (name);
+
+                classLoader.loadClass ("example.ExampleListener" + EventExecutorGenerator.SUFFIX).getMethod ("register", listenerType, Plugin.class).invoke (null, listener, plugin);
+        }
+
+        /**
+         * Creates an event.
+         *
+         * @param classLoader The class loader.
+         * @param name The simple name of the event type.
+         * @return The event.
+         * @throws ReflectiveOperationException when the event cannot be constructed.
+         */
+        private static Event event (ClassLoader classLoader, String name) throws ReflectiveOperationException {
+                return (Event) classLoader.loadClass ("example." + name).newInstance ();
+        }
+
+        /**
+         * Retrieves (and clears) the handler invocations recorded by the example listener.
+         *
+         * @param classLoader The class loader.
+         * @return The invocations.
+         * @throws ReflectiveOperationException when the listener cannot be accessed.
+         */
+        @SuppressWarnings ("unchecked")
+        private static List<String> calls (ClassLoader classLoader) throws ReflectiveOperationException {
+                List<String> calls = (List<String>) classLoader.loadClass ("example.ExampleListener").getField ("CALLS").get (null);
+                List<String> copy = new ArrayList<> (calls);
+                calls.clear ();
+                return copy;
+        }
+
+        /**
+         * Fires an event at all registered executors in order of their priority.
+         *
+         * Bukkit passes events to all handlers of a shared handler list (regardless of the event type they have been
+         * registered for) and thus executors are expected to filter out events they cannot handle on their own.
+         *
+         * @param registrations The registrations.
+         * @param event The event.
+         * @throws EventException when a handler fails.
+         */
+        private static void fire (List<Registration> registrations, Event event) throws EventException {
+                List<Registration> sorted = new ArrayList<> (registrations);
+                sorted.sort (Comparator.comparing ((r) -> r.priority));
+
+                for (Registration registration : sorted) {
+                        if (registration.ignoreCancelled && event instanceof Cancellable && ((Cancellable) event).isCancelled ()) { continue; }
+                        registration.executor.execute (registration.listener, event);
+                }
+        }
+
+        /**
+         * Locates the registration of a certain event type.
+         *
+         * @param registrations The registrations.
+         * @param eventType The simple name of the event type.
+         * @return The registration or null if no such registration exists.
+         */
+        private static Registration find (List<Registration> registrations, String eventType) {
+                return registrations.stream ().filter ((r) -> r.event.getName ().equals ("example." + eventType)).findFirst ().orElse (null);
+        }
+
+        @Test
+        public void testHandlersAreRegisteredWithTheirOptions () throws IOException, ReflectiveOperationException {
+                ClassLoader classLoader = this.compile (false);
+                List<Registration> registrations = new ArrayList<> ();
+                register (classLoader, this.plugin (registrations), "a");
+
+                assertEquals (4, registrations.size ());
+                assertEquals (EventPriority.HIGH, find (registrations, "ParentEvent").priority);
+                assertTrue (find (registrations, "ParentEvent").ignoreCancelled);
+                assertEquals (EventPriority.NORMAL, find (registrations, "ChildEvent").priority);
+                assertFalse (find (registrations, "ChildEvent").ignoreCancelled);
+                assertEquals (EventPriority.MONITOR, find (registrations, "OtherEvent").priority);
+                assertEquals (EventPriority.LOWEST, find (registrations, "FailingEvent").priority);
+
+                // the profiling wrapper is only generated when requested
+                Class<?> executors = classLoader.loadClass ("example.ExampleListener" + EventExecutorGenerator.SUFFIX);
+                assertFalse (Arrays.stream (executors.getMethods ()).anyMatch ((m) -> m.getName ().equals ("getProfile")));
+        }
+
+        @Test
+        public void testExecutorsFilterEventsByType () throws IOException, ReflectiveOperationException, EventException {
+                ClassLoader classLoader = this.compile (false);
+                List<Registration> registrations = new ArrayList<> ();
+                register (classLoader, this.plugin (registrations), "a");
+
+                fire (registrations, event (classLoader, "ParentEvent"));
+                assertEquals (Arrays.asList ("a:parent"), calls (classLoader));
+
+                // the child handler runs first and cancels the event which the parent handler ignores
+                Event event = event (classLoader, "ChildEvent");
+                fire (registrations, event);
+                assertEquals (Arrays.asList ("a:child"), calls (classLoader));
+                assertTrue (((Cancellable) event).isCancelled ());
+
+                fire (registrations, event (classLoader, "OtherEvent"));
+                assertEquals (Arrays.asList ("static:other"), calls (classLoader));
+        }
+
+        @Test
+        public void testStaticAndInstanceHandlers () throws IOException, ReflectiveOperationException, EventException {
+                ClassLoader classLoader = this.compile (false);
+                List<Registration> registrations = new ArrayList<> ();
+                Plugin plugin = this.plugin (registrations);
+                register (classLoader, plugin, "a");
+                register (classLoader, plugin, "b");
+
+                // instance handlers are invoked on the listener they have been registered with
+                fire (registrations, event (classLoader, "ParentEvent"));
+                assertEquals (Arrays.asList ("a:parent", "b:parent"), calls (classLoader));
+
+                // static handlers do not require a listener instance at all
+                find (registrations, "OtherEvent").executor.execute (null, event (classLoader, "OtherEvent"));
+                assertEquals (Arrays.asList ("static:other"), calls (classLoader));
+        }
+
+        @Test
+        public void testHandlerExceptionsAreWrapped () throws IOException, ReflectiveOperationException {
+                ClassLoader classLoader = this.compile (false);
+                List<Registration> registrations = new ArrayList<> ();
+                register (classLoader, this.plugin (registrations), "a");
+
+                try {
+                        fire (registrations, event (classLoader, "FailingEvent"));
+                        throw new AssertionError ("Handler exception has not been propagated");
+                } catch (EventException ex) {
+                        assertTrue (ex.getCause () instanceof IllegalStateException);
+                }
+        }
+
+        @Test
+        public void testProfiledExecutorsRecordInvocations () throws IOException, ReflectiveOperationException, EventException {
+                ClassLoader classLoader = this.compile (true);
+                List<Registration> registrations = new ArrayList<> ();
+                Plugin plugin = this.plugin (registrations);
+                register (classLoader, plugin, "a");
+
+                try {
+                        HandlerProfile profile = (HandlerProfile) classLoader.loadClass ("example.ExampleListener" + EventExecutorGenerator.SUFFIX).getMethod ("getProfile").invoke (null);
+                        assertNotNull (HandlerProfiler.get (plugin));
+                        assertTrue (HandlerProfiler.get (plugin).getProfiles ().contains (profile));
+
+                        int parent = -1;
+                        int child = -1;
+                        int failing = -1;
+
+                        for (int i = 0; i < profile.getHandlerCount (); i++) {
+                                switch (profile.getName (i)) {
+                                        case "example.ExampleListener#onParent": parent = i; break;
+                                        case "example.ExampleListener#onChild": child = i; break;
+                                        case "example.ExampleListener#onFailing": failing = i; break;
+                                }
+                        }
+
+                        fire (registrations, event (classLoader, "ParentEvent"));
+                        fire (registrations, event (classLoader, "ParentEvent"));
+                        fire (registrations, event (classLoader, "ChildEvent"));
+
+                        // cancellations which precede a handler are not attributed to it
+                        Event cancelled = event (classLoader, "ChildEvent");
+                        ((Cancellable) cancelled).setCancelled (true);
+                        fire (registrations, cancelled);
+
+                        try {
+                                fire (registrations, event (classLoader, "FailingEvent"));
+                        } catch (EventException ignore) {
+                        }
+
+                        assertEquals (2, profile.getInvocations (parent));
+                        assertEquals (0, profile.getCancellations (parent));
+                        assertEquals (2, profile.getInvocations (child));
+                        assertEquals (1, profile.getCancellations (child));
+                        assertEquals (1, profile.getInvocations (failing));
+                        assertTrue (profile.getNanos (parent) >= 0);
+                } finally {
+                        HandlerProfiler.detach (plugin);
+                }
+
+                assertNull (HandlerProfiler.get (plugin));
+        }
+
+        /**
+         * Represents a single call to {@link PluginManager#registerEvent(Class, Listener, EventPriority, EventExecutor, Plugin, boolean)}.
+         */
+        private static final class Registration {
+                private final Class<?> event;
+                private final Listener listener;
+                private final EventPriority priority;
+                private final EventExecutor executor;
+                private final boolean ignoreCancelled;
+
+                Registration (Class<?> event, Listener listener, EventPriority priority, EventExecutor executor, boolean ignoreCancelled) {
+                        this.event = event;
+                        this.listener = listener;
+                        this.priority = priority;
+                        this.executor = executor;
+                        this.ignoreCancelled = ignoreCancelled;
+                }
+        }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the expiry and eviction of cooldowns within a {@link CooldownTable}.
+ *
+ * @author Johannes Donath
+ */
+public class CooldownTableTest {
+        private static final long SECOND = TimeUnit.SECONDS.toNanos (1);
+
+        @Test
+        public void testCooldownExpires () {
+                CooldownTable table = new CooldownTable (1000);
+                UUID id = UUID.randomUUID ();
+                long now = System.nanoTime ();
+
+                assertEquals (0, table.tryAcquire (id, now));
+                assertEquals (SECOND, table.tryAcquire (id, now));
+                assertEquals (SECOND / 4, table.tryAcquire (id, now + SECOND * 3 / 4));
+                assertEquals (0, table.tryAcquire (id, now + SECOND));
+
+                // the cooldown restarts with the successful acquisition
+                assertEquals (SECOND / 2, table.tryAcquire (id, now + SECOND * 3 / 2));
+        }
+
+        @Test
+        public void testPlayersDoNotShareCooldowns () {
+                CooldownTable table = new CooldownTable (1000);
+                long now = System.nanoTime ();
+
+                assertEquals (0, table.tryAcquire (UUID.randomUUID (), now));
+                assertEquals (0, table.tryAcquire (UUID.randomUUID (), now));
+                assertEquals (2, table.size ());
+        }
+
+        @Test
+        public void testEviction () {
+                CooldownTable table = new CooldownTable (1000);
+                UUID id = UUID.randomUUID ();
+                long now = System.nanoTime ();
+
+                assertEquals (0, table.tryAcquire (id, now));
+                table.evict (id);
+                assertEquals (0, table.size ());
+                assertEquals (0, table.tryAcquire (id, now));
+                assertEquals (1, table.size ());
+        }
+
+        @Test
+        public void testRebuildRetainsActiveCooldowns () {
+                CooldownTable table = new CooldownTable (1000, 16);
+                long now = System.nanoTime ();
+                List<UUID> active = new ArrayList<> ();
+
+                for (int i = 0; i < 10; i++) {
+                        UUID id = UUID.randomUUID ();
+                        active.add (id);
+                        assertEquals (0, table.tryAcquire (id, now));
+                }
+
+                // expired (and evicted) players are dropped while the table is rebuilt, all others need to keep their
+                // cooldown no matter how often the table grows
+                for (int i = 0; i < 1000; i++) {
+                        UUID id = UUID.randomUUID ();
+                        assertEquals (0, table.tryAcquire (id, now + SECOND / 2 - i));
+                        if (i % 2 == 0) { table.evict (id); }
+                }
+
+                for (UUID id : active) {
+                        assertTrue (table.tryAcquire (id, now + SECOND / 2) > 0);
+                }
+
+                assertEquals (0, table.tryAcquire (active.get (0), now + SECOND));
+        }
+
+        @Test
+        public void testConcurrentAcquisitionHasASingleWinner () throws InterruptedException {
+                CooldownTable table = new CooldownTable (60000);
+                UUID id = UUID.randomUUID ();
+                long now = System.nanoTime ();
+                CountDownLatch start = new CountDownLatch (1);
+                AtomicInteger winners = new AtomicInteger ();
+                List<Thread> threads = new ArrayList<> ();
+
+                for (int i = 0; i < 8; i++) {
+                        Thread thread = new Thread (() -> {
+                                try {
+                                        start.await ();
+                                } catch (InterruptedException ex) {
+                                        return;
+                                }
+
+                                for (int j = 0; j < 1000; j++) {
+                                        if (table.tryAcquire (id, now + j) == 0) { winners.incrementAndGet (); }
+                                }
+                        });
+
+                        thread.start ();
+                        threads.add (thread);
+                }
+
+                start.countDown ();
+                for (Thread thread : threads) { thread.join (); }
+
+                assertEquals (1, winners.get ());
+        }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the reuse and invalidation of {@link DescriptorIndex} entries.
+ *
+ * @author Johannes Donath
+ */
+public class DescriptorIndexTest {
+        private static final List<String> RESOURCES = Arrays.asList ("plugin.yml", "config.yml");
+
+        @Rule
+        public final TemporaryFolder folder = new TemporaryFolder ();
+
+        /**
+         * Writes a jar which contains a plugin descriptor (compressed) and a configuration (stored).
+         *
+         * @param jar The jar.
+         * @param name The plugin name.
+         * @param modified The modification time (in milliseconds).
+         * @throws IOException when writing fails.
+         */
+        private static void writeJar (Path jar, String name, long modified) throws IOException {
+                byte[] configuration = ("name: " + name + "\n").getBytes (StandardCharsets.UTF_8);
+                CRC32 checksum = new CRC32 ();
+                checksum.update (configuration);
+
+                try (ZipOutputStream outputStream = new ZipOutputStream (Files.newOutputStream (jar))) {
+                        outputStream.putNextEntry (new ZipEntry ("com/example/Main.class"));
+                        outputStream.write (new byte[128]);
+
+                        outputStream.putNextEntry (new ZipEntry ("plugin.yml"));
+                        outputStream.write (descriptor (name));
+
+                        ZipEntry entry = new ZipEntry ("config.yml");
+                        entry.setMethod (ZipEntry.STORED);
+                        entry.setSize (configuration.length);
+                        entry.setCrc (checksum.getValue ());
+                        outputStream.putNextEntry (entry);
+                        outputStream.write (configuration);
+                }
+
+                Files.setLastModifiedTime (jar, FileTime.fromMillis (modified));
+        }
+
+        /**
+         * Creates the descriptor of a plugin.
+         *
+         * @param name The plugin name.
+         * @return The encoded descriptor.
+         */
+        private static byte[] descriptor (String name) {
+                return ("name: " + name + "\nversion: 1.0\nmain: com.example.Main\n").getBytes (StandardCharsets.UTF_8);
+        }
+
+        @Test
+        public void testUnchangedJarsAreReused () throws IOException {
+                Path directory = this.folder.newFolder ().toPath ();
+                Path indexFile = directory.resolve (DescriptorIndex.FILE_NAME);
+                writeJar (directory.resolve ("a.jar"), "A", 100000L);
+                writeJar (directory.resolve ("b.jar"), "B", 100000L);
+
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (2, index.getReadCount ());
+                assertEquals (0, index.getReusedCount ());
+                assertArrayEquals (descriptor ("A"), index.getResource ("a.jar", "plugin.yml"));
+                assertArrayEquals ("name: B\n".getBytes (StandardCharsets.UTF_8), index.getResource ("b.jar", "config.yml"));
+                assertTrue (Files.exists (indexFile));
+
+                FileTime written = Files.getLastModifiedTime (indexFile);
+                Files.setLastModifiedTime (indexFile, FileTime.fromMillis (0));
+
+                index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (0, index.getReadCount ());
+                assertEquals (2, index.getReusedCount ());
+                assertArrayEquals (descriptor ("B"), index.getResource ("b.jar", "plugin.yml"));
+
+                // the index file is only re-written if anything changed
+                assertEquals (0, Files.getLastModifiedTime (indexFile).toMillis ());
+                assertTrue (written.toMillis () != 0);
+        }
+
+        @Test
+        public void testChangedAndRemovedJarsAreInvalidated () throws IOException {
+                Path directory = this.folder.newFolder ().toPath ();
+                Path indexFile = directory.resolve (DescriptorIndex.FILE_NAME);
+                writeJar (directory.resolve ("a.jar"), "A", 100000L);
+                writeJar (directory.resolve ("b.jar"), "B", 100000L);
+                writeJar (directory.resolve ("c.jar"), "C", 100000L);
+                DescriptorIndex.update (directory, indexFile, RESOURCES);
+
+                writeJar (directory.resolve ("a.jar"), "Changed", 200000L);
+                Files.delete (directory.resolve ("c.jar"));
+
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (1, index.getReadCount ());
+                assertEquals (1, index.getReusedCount ());
+                assertEquals (new HashSet<> (Arrays.asList ("a.jar", "b.jar")), index.getJars ());
+                assertArrayEquals (descriptor ("Changed"), index.getResource ("a.jar", "plugin.yml"));
+                assertNull (index.getResource ("c.jar", "plugin.yml"));
+
+                // the removal needs to be persisted as well
+                assertEquals (index.getJars (), DescriptorIndex.load (indexFile).getJars ());
+        }
+
+        @Test
+        public void testChangedResourcesInvalidateTheIndex () throws IOException {
+                Path directory = this.folder.newFolder ().toPath ();
+                Path indexFile = directory.resolve (DescriptorIndex.FILE_NAME);
+                writeJar (directory.resolve ("a.jar"), "A", 100000L);
+                DescriptorIndex.update (directory, indexFile, RESOURCES);
+
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, Collections.singletonList ("plugin.yml"));
+                assertEquals (1, index.getReadCount ());
+                assertNull (index.getResource ("a.jar", "config.yml"));
+        }
+
+        @Test
+        public void testCorruptedIndexIsRebuilt () throws IOException {
+                Path directory = this.folder.newFolder ().toPath ();
+                Path indexFile = directory.resolve (DescriptorIndex.FILE_NAME);
+                writeJar (directory.resolve ("a.jar"), "A", 100000L);
+                DescriptorIndex.update (directory, indexFile, RESOURCES);
+
+                byte[] data = Files.readAllBytes (indexFile);
+                Files.write (indexFile, Arrays.copyOf (data, data.length / 2));
+                assertNull (DescriptorIndex.load (indexFile));
+
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (1, index.getReadCount ());
+                assertArrayEquals (descriptor ("A"), index.getResource ("a.jar", "plugin.yml"));
+        }
+
+        @Test
+        public void testMalformedJarsAreIndexedWithoutResources () throws IOException {
+                Path directory = this.folder.newFolder ().toPath ();
+                Path indexFile = directory.resolve (DescriptorIndex.FILE_NAME);
+                writeJar (directory.resolve ("a.jar"), "A", 100000L);
+                writeJar (directory.resolve ("truncated.jar"), "Truncated", 100000L);
+
+                byte[] data = Files.readAllBytes (directory.resolve ("truncated.jar"));
+                Files.write (directory.resolve ("truncated.jar"), Arrays.copyOf (data, data.length - 30));
+
+                try (OutputStream outputStream = Files.newOutputStream (directory.resolve ("empty.jar"))) {
+                        outputStream.write (new byte[] {'P', 'K'});
+                }
+
+                Files.write (directory.resolve ("text.jar"), "This is not a zip file at all, but a rather lengthy text file instead.".getBytes (StandardCharsets.UTF_8));
+
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (new HashSet<> (Arrays.asList ("empty.jar", "text.jar", "truncated.jar")), index.getFailedJars ());
+                assertEquals (4, index.getJars ().size ());
+                assertArrayEquals (descriptor ("A"), index.getResource ("a.jar", "plugin.yml"));
+                assertNull (index.getResource ("truncated.jar", "plugin.yml"));
+        }
+
+        @Test
+        public void testFailedJarsAreRetried () throws IOException {
+                Path directory = this.folder.newFolder ().toPath ();
+                Path indexFile = directory.resolve (DescriptorIndex.FILE_NAME);
+                Path jar = directory.resolve ("a.jar");
+                writeJar (directory.resolve ("b.jar"), "B", 100000L);
+                Files.write (jar, "This is not a zip file at all, but a rather lengthy text file instead.".getBytes (StandardCharsets.UTF_8));
+
+                DescriptorIndex index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (Collections.singleton ("a.jar"), index.getFailedJars ());
+                assertEquals (Collections.singleton ("b.jar"), DescriptorIndex.load (indexFile).getJars ());
+
+                // unchanged jars which failed before are read (and reported) again
+                index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertEquals (1, index.getReadCount ());
+                assertEquals (1, index.getReusedCount ());
+                assertEquals (Collections.singleton ("a.jar"), index.getFailedJars ());
+
+                writeJar (jar, "A", 100000L);
+                index = DescriptorIndex.update (directory, indexFile, RESOURCES);
+                assertTrue (index.getFailedJars ().isEmpty ());
+                assertArrayEquals (descriptor ("A"), index.getResource ("a.jar", "plugin.yml"));
+                assertEquals (index.getJars (), DescriptorIndex.load (indexFile).getJars ());
+        }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies the slot and round computations of {@link TimerWheel}.
+ *
+ * @author Johannes Donath
+ */
+public class TimerWheelTest {
+
+        /**
+         * Creates a plugin which passes asynchronous tasks to the specified list instead of executing them.
+         *
+         * @param asyncTasks The list of submitted asynchronous tasks.
+         * @return The plugin.
+         */
+        private static Plugin plugin (List<Runnable> asyncTasks) {
+                Logger logger = Logger.getAnonymousLogger ();
+                logger.setLevel (Level.OFF);
+
+                BukkitScheduler scheduler = (BukkitScheduler) Proxy.newProxyInstance (TimerWheelTest.class.getClassLoader (), new Class<?>[] {BukkitScheduler.class}, (proxy, method, arguments) -> {
+                        if (!method.getName ().equals ("runTaskAsynchronously")) { throw new UnsupportedOperationException (method.getName ()); }
+
+                        asyncTasks.add ((Runnable) arguments[1]);
+                        return null;
+                });
+                Server server = (Server) Proxy.newProxyInstance (TimerWheelTest.class.getClassLoader (), new Class<?>[] {Server.class}, (proxy, method, arguments) -> {
+                        if (!method.getName ().equals ("getScheduler")) { throw new UnsupportedOperationException (method.getName ()); }
+                        return scheduler;
+                });
+
+                return (Plugin) Proxy.newProxyInstance (TimerWheelTest.class.getClassLoader (), new Class<?>[] {Plugin.class}, (proxy, method, arguments) -> {
+                        switch (method.getName ()) {
+                                case "getLogger": return logger;
+                                case "getServer": return server;
+                                default: throw new UnsupportedOperationException (method.getName ());
+                        }
+                });
+        }
+
+        /**
+         * Runs a set of synchronous tasks for a certain amount of ticks.
+         *
+         * @param periods The task periods.
+         * @param delays The task delays.
+         * @param slots The amount of wheel slots.
+         * @param ticks The amount of ticks.
+         * @return The ticks at which each task has been executed.
+         */
+        private static List<List<Long>> run (long[] periods, long[] delays, int slots, int ticks) {
+                List<List<Long>> executions = new ArrayList<> ();
+                String[] names = new String[periods.length];
+
+                for (int i = 0; i < periods.length; i++) {
+                        executions.add (new ArrayList<> ());
+                        names[i] = "task" + i;
+                }
+
+                TimerWheel[] wheel = new TimerWheel[1];
+                wheel[0] = new TimerWheel (plugin (new ArrayList<> ()), (task) -> executions.get (task).add (wheel[0].getTick ()), names, periods, delays, new boolean[periods.length], slots);
+
+                for (int i = 0; i < ticks; i++) { wheel[0].run (); }
+                return executions;
+        }
+
+        /**
+         * Computes the ticks at which a task is expected to be executed.
+         *
+         * @param period The task period.
+         * @param delay The task delay.
+         * @param ticks The amount of ticks.
+         * @return The ticks.
+         */
+        private static List<Long> expected (long period, long delay, int ticks) {
+                List<Long> executions = new ArrayList<> ();
+                for (long tick = Math.max (1, delay); tick <= ticks; tick += period) { executions.add (tick); }
+                return executions;
+        }
+
+        @Test
+        public void testTasksRunAtTheirPeriod () {
+                long[] periods = {1, 3, 8, 10, 20};
+                long[] delays = {0, 2, 0, 5, 17};
+                List<List<Long>> executions = run (periods, delays, 8, 200);
+
+                for (int i = 0; i < periods.length; i++) {
+                        assertEquals ("task" + i, expected (periods[i], delays[i], 200), executions.get (i));
+                }
+        }
+
+        @Test
+        public void testDelaysAndPeriodsExceedingTheWheel () {
+                // periods which are multiples of the slot count end up within the very same slot and are thus only told
+                // apart by their remaining rounds
+                long[] periods = {9, 4, 16, 33};
+                long[] delays = {13, 4, 64, 1};
+                List<List<Long>> executions = run (periods, delays, 4, 150);
+
+                for (int i = 0; i < periods.length; i++) {
+                        assertEquals ("task" + i, expected (periods[i], delays[i], 150), executions.get (i));
+                }
+        }
+
+        @Test
+        public void testFailuresAreCounted () {
+                TimerWheel wheel = new TimerWheel (plugin (new ArrayList<> ()), (task) -> {
+                        if (task == 0) { throw new IllegalStateException ("Expected"); }
+                }, new String[] {"failing", "working"}, new long[] {2, 2}, new long[] {0, 0}, new boolean[2], 4);
+
+                for (int i = 0; i < 10; i++) { wheel.run (); }
+
+                assertEquals (5, wheel.getStatistics (0).getRuns ());
+                assertEquals (5, wheel.getStatistics (0).getFailures ());
+                assertEquals (5, wheel.getStatistics (1).getRuns ());
+                assertEquals (0, wheel.getStatistics (1).getFailures ());
+        }
+
+        @Test
+        public void testOverlappingAsyncExecutionsAreSkipped () {
+                List<Runnable> asyncTasks = new ArrayList<> ();
+                int[] executions = new int[1];
+                TimerWheel wheel = new TimerWheel (plugin (asyncTasks), (task) -> executions[0]++, new String[] {"async"}, new long[] {1}, new long[] {0}, new boolean[] {true}, 4);
+
+                wheel.run ();
+                wheel.run ();
+                wheel.run ();
+
+                assertEquals (1, asyncTasks.size ());
+                assertEquals (2, wheel.getStatistics (0).getSkipped ());
+                assertEquals (0, executions[0]);
+
+                asyncTasks.get (0).run ();
+                wheel.run ();
+
+                assertEquals (1, executions[0]);
+                assertEquals (2, asyncTasks.size ());
+                assertEquals (2, wheel.getStatistics (0).getSkipped ());
+        }
+
+        @Test
+        public void testRejectedAsyncBatchesDoNotBlockTasks () {
+                // the scheduler refuses the first batch as it does while the plugin is being disabled
+                List<Runnable> asyncTasks = new ArrayList<Runnable> () {
+                        private boolean rejected;
+
+                        @Override
+                        public boolean add (Runnable runnable) {
+                                if (!this.rejected) {
+                                        this.rejected = true;
+                                        throw new IllegalStateException ("Plugin disabled");
+                                }
+
+                                return super.add (runnable);
+                        }
+                };
+                TimerWheel wheel = new TimerWheel (plugin (asyncTasks), (task) -> { }, new String[] {"async"}, new long[] {1}, new long[] {0}, new boolean[] {true}, 4);
+
+                try {
+                        wheel.run ();
+                        throw new AssertionError ("Rejection has not been propagated");
+                } catch (IllegalStateException ignore) {
+                }
+
+                wheel.run ();
+                assertEquals (1, asyncTasks.size ());
+                assertEquals (0, wheel.getStatistics (0).getSkipped ());
+        }
+
+        @Test (expected = IllegalArgumentException.class)
+        public void testSlotCountNeedsToBeAPowerOfTwo () {
+                new TimerWheel (plugin (new ArrayList<> ()), (task) -> { }, new String[0], new long[0], new long[0], new boolean[0], 12);
+        }
+}
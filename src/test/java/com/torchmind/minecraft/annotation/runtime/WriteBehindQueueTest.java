@@ -0,0 +1,307 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.runtime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the batching, coalescing and failure handling of a {@link WriteBehindQueue} against an in-memory database.
+ *
+ * @author Johannes Donath
+ */
+public class WriteBehindQueueTest {
+        private static final AtomicInteger DATABASES = new AtomicInteger ();
+
+        private String url;
+        private Connection connection;
+        private WriteBehindQueue<Profile, String> queue;
+
+        @Before
+        public void setUp () throws SQLException, ExecutionException, InterruptedException {
+                // the database lives as long as this connection remains open
+                this.url = "jdbc:h2:mem:queue" + DATABASES.incrementAndGet ();
+                this.connection = DriverManager.getConnection (this.url);
+                this.queue = this.createQueue (2);
+        }
+
+        @After
+        public void tearDown () throws SQLException, InterruptedException {
+                this.queue.shutdown (5, TimeUnit.SECONDS);
+                this.connection.close ();
+        }
+
+        /**
+         * Creates a queue which only flushes on request (or once a full batch has accumulated).
+         *
+         * @param batchSize The batch size.
+         * @return The queue.
+         */
+        private WriteBehindQueue<Profile, String> createQueue (int batchSize) throws ExecutionException, InterruptedException {
+                WriteBehindQueue<Profile, String> queue = new WriteBehindQueue<> (new ProfileMapper (), () -> DriverManager.getConnection (this.url), batchSize, 1, TimeUnit.HOURS);
+                queue.createTable ().get ();
+                return queue;
+        }
+
+        /**
+         * Reads the score of a profile directly from the database.
+         *
+         * @param id The identifier.
+         * @return The score or null if no such row exists.
+         */
+        private Integer score (String id) throws SQLException {
+                try (PreparedStatement statement = this.connection.prepareStatement ("SELECT score FROM profile WHERE id = ?")) {
+                        statement.setString (1, id);
+
+                        try (ResultSet resultSet = statement.executeQuery ()) {
+                                return (resultSet.next () ? resultSet.getInt (1) : null);
+                        }
+                }
+        }
+
+        /**
+         * Counts the rows within the profile table.
+         *
+         * @return The amount of rows.
+         */
+        private int count () throws SQLException {
+                try (Statement statement = this.connection.createStatement (); ResultSet resultSet = statement.executeQuery ("SELECT COUNT(*) FROM profile")) {
+                        resultSet.next ();
+                        return resultSet.getInt (1);
+                }
+        }
+
+        @Test
+        public void testSavesAreInsertedAndUpdated () throws SQLException, ExecutionException, InterruptedException {
+                Profile profile = new Profile ("a", 1);
+                this.queue.save (profile);
+                this.queue.save (new Profile ("b", 2));
+                this.queue.save (new Profile ("c", 3));
+                assertTrue (this.queue.flush ().get ());
+
+                assertEquals (3, this.count ());
+                assertEquals (Integer.valueOf (1), this.score ("a"));
+                assertEquals (Integer.valueOf (3), this.score ("c"));
+
+                // the queue keeps a copy and thus is unaffected by later modifications
+                profile.score = 42;
+                assertEquals (1, this.queue.load ("a").get ().score);
+
+                this.queue.save (profile);
+                assertTrue (this.queue.flush ().get ());
+                assertEquals (3, this.count ());
+                assertEquals (Integer.valueOf (42), this.score ("a"));
+                assertEquals (42, this.queue.load ("a").get ().score);
+                assertEquals (4, this.queue.getWrittenCount ());
+                assertEquals (0, this.queue.getPendingCount ());
+        }
+
+        @Test
+        public void testDeletesRemoveRows () throws SQLException, ExecutionException, InterruptedException {
+                this.queue.save (new Profile ("a", 1));
+                this.queue.save (new Profile ("b", 2));
+                assertTrue (this.queue.flush ().get ());
+
+                this.queue.delete ("a");
+                assertNull (this.queue.load ("a").get ());
+                assertTrue (this.queue.flush ().get ());
+
+                assertNull (this.score ("a"));
+                assertEquals (Integer.valueOf (2), this.score ("b"));
+                assertNull (this.queue.load ("a").get ());
+        }
+
+        @Test
+        public void testWritesAreCoalesced () throws SQLException, ExecutionException, InterruptedException {
+                WriteBehindQueue<Profile, String> queue = this.createQueue (WriteBehindQueue.DEFAULT_BATCH_SIZE);
+
+                try {
+                        for (int i = 0; i < 10; i++) { queue.save (new Profile ("a", i)); }
+                        queue.delete ("b");
+                        queue.save (new Profile ("b", 1));
+
+                        assertEquals (2, queue.getPendingCount ());
+                        assertEquals (12, queue.getScheduledCount ());
+                        assertEquals (10, queue.getCoalescedCount ());
+                        assertEquals (9, queue.load ("a").get ().score);
+
+                        assertTrue (queue.flush ().get ());
+                        assertEquals (2, queue.getWrittenCount ());
+                        assertEquals (1, queue.getBatchCount ());
+                        assertEquals (Integer.valueOf (9), this.score ("a"));
+                        assertEquals (Integer.valueOf (1), this.score ("b"));
+                } finally {
+                        queue.shutdown (5, TimeUnit.SECONDS);
+                }
+        }
+
+        @Test
+        public void testShutdownFlushesPendingWrites () throws SQLException, ExecutionException, InterruptedException {
+                WriteBehindQueue<Profile, String> queue = this.createQueue (WriteBehindQueue.DEFAULT_BATCH_SIZE);
+
+                for (int i = 0; i < 100; i++) { queue.save (new Profile ("profile-" + i, i)); }
+                assertEquals (0, this.count ());
+
+                assertTrue (queue.shutdown (5, TimeUnit.SECONDS));
+                assertEquals (100, this.count ());
+                assertEquals (Integer.valueOf (99), this.score ("profile-99"));
+
+                try {
+                        queue.save (new Profile ("a", 1));
+                        throw new AssertionError ("Queue accepted a write after shutdown");
+                } catch (IllegalStateException ignore) {
+                }
+        }
+
+        @Test
+        public void testFailingWritesDoNotBlockOtherWrites () throws SQLException, ExecutionException, InterruptedException {
+                // the table rejects negative scores
+                this.queue.save (new Profile ("a", 1));
+                this.queue.save (new Profile ("b", -1));
+                this.queue.save (new Profile ("c", 3));
+                this.queue.save (new Profile ("d", 4));
+                this.queue.save (new Profile ("e", 5));
+
+                assertFalse (this.queue.flush ().get ());
+                assertEquals (4, this.count ());
+                assertNull (this.score ("b"));
+                assertEquals (Integer.valueOf (5), this.score ("e"));
+                assertEquals (1, this.queue.getPendingCount ());
+                assertTrue (this.queue.getFailureCount () > 0);
+                assertTrue (this.queue.getLastFailure () instanceof SQLException);
+
+                // the write is retried until it has failed often enough
+                for (int i = 0; i < WriteBehindQueue.MAX_ATTEMPTS; i++) { this.queue.flush ().get (); }
+                assertEquals (0, this.queue.getPendingCount ());
+                assertEquals (1, this.queue.getDroppedCount ());
+                assertEquals (4, this.count ());
+
+                // replacing a failing write resets its attempts
+                this.queue.save (new Profile ("b", 2));
+                assertTrue (this.queue.flush ().get ());
+                assertEquals (Integer.valueOf (2), this.score ("b"));
+        }
+
+        @Test
+        public void testUnavailableDatabaseRetainsWrites () throws SQLException, ExecutionException, InterruptedException {
+                WriteBehindQueue<Profile, String> queue = new WriteBehindQueue<> (new ProfileMapper (), () -> {
+                        throw new SQLException ("Database unavailable");
+                }, 2, 1, TimeUnit.HOURS);
+
+                try {
+                        queue.save (new Profile ("a", 1));
+
+                        for (int i = 0; i <= WriteBehindQueue.MAX_ATTEMPTS; i++) { assertFalse (queue.flush ().get ()); }
+                        assertEquals (1, queue.getPendingCount ());
+                        assertEquals (0, queue.getDroppedCount ());
+                        assertEquals ("Database unavailable", queue.getLastFailure ().getMessage ());
+                } finally {
+                        assertFalse (queue.shutdown (5, TimeUnit.SECONDS));
+                }
+        }
+
+        /**
+         * Represents a simple entity.
+         */
+        private static final class Profile {
+                private final String id;
+                private int score;
+
+                Profile (String id, int score) {
+                        this.id = id;
+                        this.score = score;
+                }
+        }
+
+        /**
+         * Maps profiles in the same way a generated mapper would.
+         */
+        private static final class ProfileMapper implements EntityMapper<Profile, String> {
+
+                @Override
+                public String getTable () {
+                        return "profile";
+                }
+
+                @Override
+                public String getCreateStatement () {
+                        return "CREATE TABLE IF NOT EXISTS profile (score INTEGER NOT NULL CHECK (score >= 0), id VARCHAR(36) NOT NULL PRIMARY KEY)";
+                }
+
+                @Override
+                public String getSelectStatement () {
+                        return "SELECT score, id FROM profile WHERE id = ?";
+                }
+
+                @Override
+                public String getInsertStatement () {
+                        return "INSERT INTO profile (score, id) VALUES (?, ?)";
+                }
+
+                @Override
+                public String getUpdateStatement () {
+                        return "UPDATE profile SET score = ? WHERE id = ?";
+                }
+
+                @Override
+                public String getDeleteStatement () {
+                        return "DELETE FROM profile WHERE id = ?";
+                }
+
+                @Override
+                public String getKey (Profile entity) {
+                        return entity.id;
+                }
+
+                @Override
+                public Profile copy (Profile entity) {
+                        return new Profile (entity.id, entity.score);
+                }
+
+                @Override
+                public void bind (PreparedStatement statement, Profile entity) throws SQLException {
+                        statement.setInt (1, entity.score);
+                        statement.setString (2, entity.id);
+                }
+
+                @Override
+                public void bindKey (PreparedStatement statement, String key) throws SQLException {
+                        statement.setString (1, key);
+                }
+
+                @Override
+                public Profile map (ResultSet resultSet) throws SQLException {
+                        return new Profile (resultSet.getString (2), resultSet.getInt (1));
+                }
+        }
+}
@@ -1,5 +1,6 @@
 package com.torchmind.minecraft.annotation.test;
 
+import com.torchmind.minecraft.annotation.command.ExecutionMode;
 import com.torchmind.minecraft.annotation.permission.Permission;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -10,6 +11,7 @@ import org.bukkit.permissions.PermissionDefault;
  * Showcases command annotations outside of main class
  */
 @com.torchmind.minecraft.annotation.command.Command (name = "testext", aliases = "testext2", permission = "test.testext", permissionMessage = "Oopsy!", usage = "/testext test test")
+@com.torchmind.minecraft.annotation.command.Command (name = "testasync", usage = "/testasync", executionMode = ExecutionMode.ASYNC, maxInFlight = 2, cooldown = 5000)
 @Permission (name = "test.testext", description = "Provides access to /textext command", defaultValue = PermissionDefault.TRUE)
 public class CommandTest implements CommandExecutor {
         @Override
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.test;
+
+import com.torchmind.minecraft.annotation.scheduler.Scheduled;
+import com.torchmind.minecraft.annotation.scheduler.TickBudgeted;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Showcases generated event executors.
+ *
+ * @author Johannes Donath
+ */
+public class ExampleListener implements Listener {
+
+        @EventHandler (priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onPlayerMove (PlayerMoveEvent event) {
+        }
+
+        @EventHandler
+        void onPlayerQuit (PlayerQuitEvent event) {
+        }
+
+        @Scheduled (period = 6000, delay = 6000, async = true)
+        void expireSessions () {
+        }
+
+        @TickBudgeted (maxMicrosPerTick = 500)
+        void restoreSession (java.util.UUID player) {
+        }
+}
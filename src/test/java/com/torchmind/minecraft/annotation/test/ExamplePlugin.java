@@ -18,11 +18,19 @@ package com.torchmind.minecraft.annotation.test;
 
 import com.torchmind.minecraft.annotation.Plugin;
 import com.torchmind.minecraft.annotation.command.Command;
+import com.torchmind.minecraft.annotation.command.Completion;
+import com.torchmind.minecraft.annotation.command.ExecutionMode;
 import com.torchmind.minecraft.annotation.dependency.Dependency;
 import com.torchmind.minecraft.annotation.dependency.LoadBefore;
 import com.torchmind.minecraft.annotation.dependency.SoftDependency;
+import com.torchmind.minecraft.annotation.message.Message;
 import com.torchmind.minecraft.annotation.permission.ChildPermission;
 import com.torchmind.minecraft.annotation.permission.Permission;
+import com.torchmind.minecraft.annotation.scheduler.Scheduled;
+import com.torchmind.minecraft.annotation.scheduler.TickBudgeted;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
 import org.bukkit.permissions.PermissionDefault;
 import org.bukkit.plugin.PluginLoadOrder;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -34,14 +42,50 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 @Plugin (name = "Test Plugin", version = "0.1.0", description = "This is a test plugin", load = PluginLoadOrder.STARTUP, author = "Akkarin", website = "http://www.example.org", database = true, prefix = "ExamplePlugin")
 @Command (name = "test", aliases = "test2", permission = "test.test", permissionMessage = "Oopsy!", usage = "/test test test")
-@Command (name = "test3", aliases = "test4", permission = "test.test", permissionMessage = "Oopsy!", usage = "/test test test")
+@Command (name = "test3", aliases = "test4", permission = "test.test", permissionMessage = "You need <permission> to do that.", usage = "/test test test")
+@Completion (command = "test", value = {"add", "list", "remove"})
+@Completion (command = "test", path = "add", value = {"apple", "banana", "cherry"})
 @Dependency ("TestPlugin2")
 @Dependency ("TestPlugin3")
 @LoadBefore ("TestPlugin4")
 @LoadBefore ("TestPlugin5")
 @SoftDependency ("TestPlugin6")
 @SoftDependency ("TestPlugin7")
+@Message (key = "give.success", template = "&aGave {1} items to &e{0}&a.")
+@Message (key = "give.unknown-player", template = "&cThere is no player named {0} online.")
+@Message (key = "reload", template = "&7Configuration reloaded.")
 @Permission (name = "test", description = "Provides access to all commands.", defaultValue = PermissionDefault.TRUE, children = { @ChildPermission ("test.test"), @ChildPermission (value = "test.notTest", inherit = false) })
 @Permission (name = "test.test", description = "Provides access to the test command.", defaultValue = PermissionDefault.TRUE)
 public class ExamplePlugin extends JavaPlugin {
+
+        @Command (name = "give", usage = "/<command> <player> <amount> [reason...]")
+        public void give (CommandSender sender, Player target, int amount, String... reason) {
+        }
+
+        @Command (name = "gamemode", executionMode = ExecutionMode.ASYNC)
+        static boolean gamemode (Player sender, GameMode mode, boolean announce, double speed, World world, long... ids) {
+                return true;
+        }
+
+        @Scheduled (period = 20)
+        void autosave () {
+        }
+
+        @Scheduled (period = 1200, delay = 100, async = true)
+        static void purgeCaches () {
+        }
+
+        @TickBudgeted (maxMicrosPerTick = 2000)
+        void migrate (World world) {
+        }
+
+        @TickBudgeted
+        static boolean rank (long score) {
+                return true;
+        }
+
+        public enum GameMode {
+                CREATIVE,
+                SURVIVAL
+        }
 }
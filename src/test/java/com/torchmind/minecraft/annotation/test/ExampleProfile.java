@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.test;
+
+import com.torchmind.minecraft.annotation.persistence.Column;
+import com.torchmind.minecraft.annotation.persistence.Entity;
+import com.torchmind.minecraft.annotation.persistence.Id;
+
+import java.util.UUID;
+
+/**
+ * Showcases generated row mappers.
+ *
+ * @author Johannes Donath
+ */
+@Entity (table = "player_profiles")
+public class ExampleProfile {
+        @Id
+        UUID uniqueId;
+
+        @Column (length = 16)
+        String name;
+
+        @Column
+        int kills;
+
+        @Column
+        long lastSeen;
+
+        @Column
+        Double balance;
+
+        @Column
+        ExamplePlugin.GameMode gameMode;
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.test;
+
+import com.torchmind.minecraft.annotation.config.ConfigSection;
+import com.torchmind.minecraft.annotation.config.ConfigValue;
+
+import java.util.List;
+
+/**
+ * Showcases generated configuration snapshots.
+ *
+ * @author Johannes Donath
+ */
+@ConfigSection
+public interface ExampleSettings {
+        @ConfigValue (defaultValue = "Welcome!")
+        String motd ();
+
+        @ConfigValue (path = "spawn.radius", defaultValue = "16")
+        int spawnRadius ();
+
+        @ConfigValue (defaultValue = {"world", "world_nether"})
+        List<String> worlds ();
+
+        Limits limits ();
+
+        interface Limits {
+                @ConfigValue (defaultValue = "2.5")
+                double cooldown ();
+
+                @ConfigValue (defaultValue = "10000000000")
+                long maxEntities ();
+
+                @ConfigValue (defaultValue = "0.00001")
+                float ratio ();
+
+                @ConfigValue (defaultValue = "true")
+                boolean enabled ();
+        }
+}
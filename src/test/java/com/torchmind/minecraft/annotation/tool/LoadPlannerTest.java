@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Johannes Donath <johannesd@torchmind.com>
+ * and other copyright owners as documented in the project's IP log.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.torchmind.minecraft.annotation.tool;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the load order, levels and cycle detection of {@link LoadPlanner}.
+ *
+ * @author Johannes Donath
+ */
+public class LoadPlannerTest {
+
+        /**
+         * Creates a descriptor.
+         *
+         * @param name The plugin name.
+         * @param depend The hard dependencies.
+         * @param softDepend The soft dependencies.
+         * @param loadBefore The plugins which are to be loaded afterwards.
+         * @return The descriptor.
+         */
+        private static Map<String, Object> descriptor (String name, List<String> depend, List<String> softDepend, List<String> loadBefore) {
+                Map<String, Object> descriptor = new HashMap<> ();
+                descriptor.put ("name", name);
+                descriptor.put ("depend", depend);
+                descriptor.put ("softdepend", softDepend);
+                descriptor.put ("loadbefore", loadBefore);
+                return descriptor;
+        }
+
+        /**
+         * Creates a descriptor which only declares hard dependencies.
+         *
+         * @param name The plugin name.
+         * @param depend The hard dependencies.
+         * @return The descriptor.
+         */
+        private static Map<String, Object> descriptor (String name, String... depend) {
+                return descriptor (name, Arrays.asList (depend), Collections.emptyList (), Collections.emptyList ());
+        }
+
+        @Test
+        public void testOrderAndLevels () {
+                LoadPlanner planner = new LoadPlanner ();
+                planner.add (descriptor ("Economy", "Vault"));
+                planner.add (descriptor ("Vault"));
+                planner.add (descriptor ("Shop", "Economy", "Vault"));
+                planner.add (descriptor ("Chat"));
+                planner.add (descriptor ("Permissions", Collections.emptyList (), Collections.emptyList (), Collections.singletonList ("Chat")));
+
+                planner.setWeight ("Vault", 5);
+                LoadPlan plan = planner.plan ();
+
+                assertTrue (plan.isValid ());
+                assertEquals (Arrays.asList ("Permissions", "Chat", "Vault", "Economy", "Shop"), plan.getOrder ());
+                assertEquals (Arrays.asList (Arrays.asList ("Permissions", "Vault"), Arrays.asList ("Chat", "Economy"), Collections.singletonList ("Shop")), plan.getLevels ("POSTWORLD"));
+                assertEquals (Arrays.asList ("Vault", "Economy", "Shop"), plan.getCriticalPath ("POSTWORLD"));
+                assertTrue (plan.getLevels ("STARTUP").isEmpty ());
+        }
+
+        @Test
+        public void testMissingDependenciesPropagate () {
+                LoadPlanner planner = new LoadPlanner ();
+                planner.add (descriptor ("Economy", "Vault"));
+                planner.add (descriptor ("Shop", "Economy"));
+                planner.add (descriptor ("Chat"));
+
+                LoadPlan plan = planner.plan ();
+
+                assertFalse (plan.isValid ());
+                assertEquals (Collections.singletonMap ("Economy", Collections.singletonList ("Vault")), plan.getMissing ());
+                assertEquals (Arrays.asList ("Economy", "Shop"), plan.getUnresolved ());
+                assertEquals (Collections.singletonList ("Chat"), plan.getOrder ());
+        }
+
+        @Test
+        public void testHardCyclesAreFatal () {
+                LoadPlanner planner = new LoadPlanner ();
+                planner.add (descriptor ("A", "B"));
+                planner.add (descriptor ("B", "A"));
+                planner.add (descriptor ("C", "A"));
+                planner.add (descriptor ("D"));
+
+                LoadPlan plan = planner.plan ();
+
+                assertFalse (plan.isValid ());
+                assertEquals (Collections.singletonList (Arrays.asList ("A", "B", "A")), plan.getCycles ());
+                assertEquals (Arrays.asList ("A", "B", "C"), plan.getUnresolved ());
+                assertEquals (Collections.singletonList ("D"), plan.getOrder ());
+        }
+
+        @Test
+        public void testSoftCyclesAreBroken () {
+                LoadPlanner planner = new LoadPlanner ();
+                planner.add (descriptor ("A", Collections.emptyList (), Collections.singletonList ("B"), Collections.emptyList ()));
+                planner.add (descriptor ("B", Collections.emptyList (), Collections.singletonList ("A"), Collections.emptyList ()));
+                planner.add (descriptor ("C", "A"));
+
+                LoadPlan plan = planner.plan ();
+
+                assertTrue (plan.isValid ());
+                assertTrue (plan.getCycles ().isEmpty ());
+                assertEquals (Arrays.asList ("A", "B", "C"), plan.getOrder ());
+                assertEquals (1, plan.getWarnings ().size ());
+                assertTrue (plan.getWarnings ().get (0).startsWith ("A is loaded before its soft dependencies B"));
+        }
+
+        @Test
+        public void testSoftCyclesRespectHardDependencies () {
+                // neither A nor B can be loaded before the plugins they require thus the cycle needs to be broken at C
+                LoadPlanner planner = new LoadPlanner ();
+                planner.add (descriptor ("A", "C"));
+                planner.add (descriptor ("B", "A"));
+                planner.add (descriptor ("C", Collections.emptyList (), Collections.singletonList ("B"), Collections.emptyList ()));
+
+                LoadPlan plan = planner.plan ();
+
+                assertTrue (plan.isValid ());
+                assertEquals (Arrays.asList ("C", "A", "B"), plan.getOrder ());
+                assertEquals (1, plan.getWarnings ().size ());
+                assertTrue (plan.getWarnings ().get (0).startsWith ("C is loaded before its soft dependencies B"));
+        }
+}